@@ -2,6 +2,7 @@ plugins {
     `java-library`
     id("xyz.jpenilla.run-paper") version "3.0.2"
     id("com.gradleup.shadow") version "9.3.1"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = property("group") as String
@@ -26,6 +27,16 @@ dependencies {
     compileOnly("io.papermc.paper:paper-api:1.21.11-R0.1-SNAPSHOT")
     compileOnly("com.google.code.gson:gson:2.11.0")
     implementation("org.bstats:bstats-bukkit:3.1.0")
+    //storage.type: h2 is a real backend, so H2 ships in the jar (relocated below). the tests use it in memory
+    implementation("com.h2database:h2:2.3.232")
+    testImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    jmh("com.google.code.gson:gson:2.11.0")
+}
+
+jmh {
+    jmhVersion = "1.37"
 }
 
 tasks {
@@ -51,10 +62,18 @@ tasks {
         configurations = project.configurations.runtimeClasspath.map { setOf(it) }
 
         dependencies {
-            exclude { it.moduleGroup != "org.bstats" }
+            exclude { it.moduleGroup != "org.bstats" && it.moduleGroup != "com.h2database" }
         }
 
         relocate("org.bstats", project.group.toString())
+        //another plugin bundling its own H2 must not see ours, or the other way round
+        relocate("org.h2", "com.askai.libs.h2")
+        //keeps META-INF/services/java.sql.Driver pointing at the relocated driver
+        mergeServiceFiles()
+    }
+
+    test {
+        useJUnitPlatform()
     }
 
     build {
@@ -0,0 +1,93 @@
+package com.askai.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//run with ./gradlew jmh. compares one pass of the automaton with checking each word in turn, for a typical
+//clean /chat prompt (the common case, and the worst case for the word-by-word check)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptFilterBenchmark {
+    private static final String QUESTION = "How do I build an automatic sugar cane farm with observers and "
+            + "pistons in 1.21? I have 64 redstone, 12 observers and a chest of hoppers.";
+
+    @Param({"100", "10000"})
+    public int patterns;
+
+    @Param({"1", "10"})
+    public int repeat;
+
+    private List<String> words;
+    private PromptFilter filter;
+    private String prompt;
+
+    @Setup
+    public void setup() {
+        //made-up words and two-word phrases that never occur in the prompt
+        Random random = new Random(42);
+        words = new ArrayList<>(patterns);
+        for (int i = 0; i < patterns; i++) {
+            String word = randomWord(random);
+            words.add(i % 4 == 0 ? word + " " + randomWord(random) : word);
+        }
+        List<PromptFilter.Rule> rules = List.of(
+                new PromptFilter.Rule("blocked", PromptFilter.Action.REJECT, "", words, List.of(), List.of(),
+                        true, Map.of()),
+                new PromptFilter.Rule("email", PromptFilter.Action.REDACT, "", List.of(), List.of(),
+                        List.of("\\b[\\w.+-]+@[\\w-]+\\.[\\w.]+\\b"), true, Map.of()));
+        filter = PromptFilter.build(rules, "***", Path.of("."), warning -> {
+        });
+        prompt = (QUESTION + " ").repeat(repeat);
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder("zq");
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++) word.append((char) ('a' + random.nextInt(26)));
+        return word.toString();
+    }
+
+    @Benchmark
+    public PromptFilter.Result automaton() {
+        return filter.apply(prompt);
+    }
+
+    //what a filter without the automaton would do: lowercase once, then search for every word
+    @Benchmark
+    public boolean wordByWord() {
+        String lower = prompt.toLowerCase(Locale.ROOT);
+        for (String word : words) {
+            if (lower.contains(word)) return true;
+        }
+        return false;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PromptFilter rebuild() {
+        return PromptFilter.build(List.of(new PromptFilter.Rule("blocked", PromptFilter.Action.REJECT, "", words,
+                List.of(), List.of(), true, Map.of())), "***", Path.of("."), warning -> {
+        });
+    }
+}
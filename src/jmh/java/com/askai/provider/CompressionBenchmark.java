@@ -0,0 +1,72 @@
+package com.askai.provider;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+//run with ./gradlew jmh. reports the time to decode and parse a typical completion response with and without gzip,
+//and the time to gzip a long request body. bytes on the wire for each payload are printed during setup
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    private static final String ANSWER = "To build an automatic sugar cane farm, place a row of sugar cane on sand "
+            + "next to water, put observers facing the second block of each cane and pistons behind them. "
+            + "Hoppers under the row feed a chest at the end. ";
+    private static final String MESSAGE = "{\"role\":\"user\",\"content\":\"How do I build an automatic sugar "
+            + "cane farm with observers and pistons in 1.21? I have 64 redstone and 12 observers.\"},"
+            + "{\"role\":\"assistant\",\"content\":\"" + ANSWER + "\"},";
+
+    //"short" is a one paragraph answer, "long" a max-tokens sized one
+    @Param({"short", "long"})
+    public String payload;
+
+    @Param({"identity", "gzip"})
+    public String encoding;
+
+    private byte[] response;
+    private byte[] request;
+
+    @Setup
+    public void setup() {
+        String text = ANSWER.repeat(payload.equals("short") ? 1 : 40);
+        byte[] json = ("{\"id\":\"chatcmpl-9xYz\",\"object\":\"chat.completion\",\"created\":1735689600,"
+                + "\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\","
+                + "\"content\":\"" + text + "\"},\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":412,\"completion_tokens\":" + text.length() / 4
+                + ",\"total_tokens\":" + (412 + text.length() / 4) + "}}").getBytes(StandardCharsets.UTF_8);
+        response = encoding.equals("gzip") ? HttpCompression.gzip(json) : json;
+        request = ("{\"model\":\"gpt-4o-mini\",\"messages\":[" + MESSAGE.repeat(payload.equals("short") ? 2 : 30)
+                + "{\"role\":\"user\",\"content\":\"and with bamboo?\"}]}").getBytes(StandardCharsets.UTF_8);
+        System.out.printf("%n%s response: %d bytes as identity, %d bytes as gzip; request: %d bytes as identity, "
+                        + "%d bytes as gzip%n", payload, json.length, HttpCompression.gzip(json).length,
+                request.length, HttpCompression.gzip(request).length);
+    }
+
+    @Benchmark
+    public JsonElement decodeAndParse() {
+        byte[] body = encoding.equals("gzip") ? HttpCompression.gunzip(response) : response;
+        return JsonParser.parseString(new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() {
+        return encoding.equals("gzip") ? HttpCompression.gzip(request) : request;
+    }
+}
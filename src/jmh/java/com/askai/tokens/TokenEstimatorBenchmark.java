@@ -0,0 +1,50 @@
+package com.askai.tokens;
+
+import com.askai.model.AIProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//run with ./gradlew jmh. reports average time per estimate of a typical /chat prompt
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenEstimatorBenchmark {
+    private static final String SYSTEM_PROMPT = "You are a helpful assistant in a Minecraft server. Keep responses "
+            + "concise and relevant. Responses should be clear and concise, not be overly detailed.";
+    private static final String QUESTION = "How do I build an automatic sugar cane farm with observers and "
+            + "pistons in 1.21? I have 64 redstone, 12 observers and a chest of hoppers.";
+
+    @Param({"openai", "anthropic", "gemini"})
+    public String provider;
+
+    @Param({"1", "10"})
+    public int repeat;
+
+    private TokenEstimator estimator;
+    private String text;
+
+    @Setup
+    public void setup() {
+        estimator = TokenEstimators.forProvider(AIProvider.fromId(provider));
+        text = (SYSTEM_PROMPT + "\n" + QUESTION + "\n").repeat(repeat);
+    }
+
+    @Benchmark
+    public int estimate() {
+        return estimator.estimate(text);
+    }
+}
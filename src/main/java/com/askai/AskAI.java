@@ -1,68 +1,198 @@
 package com.askai;
 
+import com.askai.api.AskAIService;
+import com.askai.capture.TraceFile;
+import com.askai.capture.TraceRecorder;
 import com.askai.command.ChatCommand;
 import com.askai.config.PluginConfig;
 import com.askai.crypto.KeyEncryptor;
+import com.askai.crypto.KeyRotationJob;
+import com.askai.delivery.DeliveryQueue;
+import com.askai.filter.PromptFilter;
+import com.askai.jfr.CommandPreprocessEvent;
+import com.askai.keypool.KeyPool;
+import com.askai.knowledge.KnowledgeBase;
+import com.askai.load.AdmissionController;
+import com.askai.load.TickHealth;
+import com.askai.model.AIProvider;
+import com.askai.model.ServerKey;
+import com.askai.model.UserSettings;
+import com.askai.network.InProcessCoordinator;
+import com.askai.network.NetworkCoordinator;
+import com.askai.network.NetworkEvents;
+import com.askai.network.RedisCoordinator;
+import com.askai.network.SharedRateLimiter;
+import com.askai.pipeline.ChatPipeline;
+import com.askai.pipeline.RequestHedger;
+import com.askai.pipeline.SimilarityCache;
+import com.askai.provider.ConnectionWarmer;
+import com.askai.provider.HttpClientSettings;
+import com.askai.provider.HttpCompression;
 import com.askai.provider.ProviderRegistry;
+import com.askai.routing.ModelRouter;
+import com.askai.routing.RoutingDecision;
+import com.askai.scheduler.PluginScheduler;
+import com.askai.service.PluginAskAIService;
+import com.askai.storage.CachingSettingsStorage;
 import com.askai.storage.DatabaseManager;
-import com.askai.storage.UserSettingsRepository;
+import com.askai.storage.H2SettingsStorage;
+import com.askai.storage.MySqlSettingsStorage;
+import com.askai.storage.SettingsStorage;
+import com.askai.storage.SqliteMaintenance;
+import com.askai.storage.SqliteSettingsStorage;
+import com.askai.tools.ToolExecutor;
+import com.askai.tools.ToolRegistry;
+import com.askai.transcript.TranscriptWriter;
 import com.askai.util.RateLimiter;
+import com.askai.util.SlidingWindowRateLimiter;
+import com.askai.util.TextFormatter;
 import io.papermc.paper.plugin.lifecycle.event.types.LifecycleEvents;
 import org.bstats.bukkit.Metrics;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
 import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 public final class AskAI extends JavaPlugin implements Listener {
+    //settings row that holds the primary server-mode keys
+    public static final UUID SERVER_UUID = new UUID(0L, 0L);
+    private static final String JFR_SETTINGS = "askai.jfc";
+
     private PluginConfig pluginConfig;
-    private KeyEncryptor keyEncryptor;
-    private DatabaseManager databaseManager;
-    private UserSettingsRepository settingsRepo;
-    private ProviderRegistry providerRegistry;
-    private RateLimiter rateLimiter;
-    private HttpClient httpClient;
+    private volatile KeyEncryptor keyEncryptor;
+    private volatile SettingsStorage settingsRepo;
+    private CompletableFuture<SettingsStorage> storageFuture;
+    private volatile List<String> encryptionSeeds;
+    private KeyRotationJob keyRotation;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private volatile ProviderRegistry providerRegistry;
+    private volatile RateLimiter rateLimiter;
+    private NetworkCoordinator coordinator;
+    private NetworkEvents networkEvents;
+    private volatile CachingSettingsStorage settingsCache;
+    private volatile ConnectionWarmer connectionWarmer;
+    private PluginScheduler.Task keepAliveTask;
+    private DeliveryQueue deliveryQueue;
+    private KeyPool keyPool;
+    private KnowledgeBase knowledgeBase;
+    private ToolRegistry toolRegistry;
+    private ToolExecutor toolExecutor;
+    private PluginScheduler.Task knowledgeRefreshTask;
+    private PluginScheduler scheduler;
+    private volatile TranscriptWriter transcriptWriter;
+    private ChatPipeline chatPipeline;
+    private final AtomicReference<TraceRecorder> traceRecorder = new AtomicReference<>();
+    private volatile PluginAskAIService askAIService;
+    private ModelRouter modelRouter;
+    private RequestHedger requestHedger;
+    private SimilarityCache similarityCache;
+    private volatile PromptFilter promptFilter = PromptFilter.NONE;
+    //bumped by each reload, so a slow build never replaces the filter a later reload built
+    private final AtomicLong promptFilterGeneration = new AtomicLong();
+    private AdmissionController admission;
+    private PluginScheduler.Task loadCheckTask;
+    //null unless storage is SQLite
+    private volatile SqliteMaintenance sqliteMaintenance;
+    private PluginScheduler.Task maintenanceTask;
 
     @Override
     public void onEnable() {
+        long enableStart = System.nanoTime();
+
         //config
         saveDefaultConfig();
         this.pluginConfig = new PluginConfig(getConfig());
+        //JFR settings for AskAI's events, for jcmd JFR.start. kept if the admin edited it
+        if (Files.notExists(getDataFolder().toPath().resolve(JFR_SETTINGS))) saveResource(JFR_SETTINGS, false);
 
-        //crypto
-        this.keyEncryptor = new KeyEncryptor(pluginConfig.getEncryptionSeed(), getDataFolder());
+        //Paper or Folia scheduling
+        this.scheduler = PluginScheduler.create(this);
 
-        //db
-        this.databaseManager = new DatabaseManager(getDataFolder().toPath(), getLogger());
-        try {
-            databaseManager.initialize();
-        } catch (SQLException e) {
-            getLogger().severe("Failed to initialize database: " + e.getMessage());
-            getServer().getPluginManager().disablePlugin(this);
-            return;
-        }
-        this.settingsRepo = new UserSettingsRepository(databaseManager);
-
-        //HTTP client with virtual threads
-        this.httpClient = HttpClient.newBuilder()
-                .executor(Executors.newVirtualThreadPerTaskExecutor())
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
-
-        //provider registry
-        this.providerRegistry = new ProviderRegistry(httpClient);
-
-        //rate limiter
-        this.rateLimiter = new RateLimiter(
-                pluginConfig.getRateLimitRequests(),
-                pluginConfig.getRateLimitWindowSeconds()
+        //server-mode key pool, filled once storage is open
+        this.keyPool = new KeyPool(
+                pluginConfig.getKeyPoolRateLimitedBenchSeconds(),
+                pluginConfig.getKeyPoolInvalidBenchSeconds()
+        );
+
+        //providers from config, one HTTP client each with its own connection settings. registered before
+        //bootstrap, which loads stored keys and so must be able to resolve custom provider ids
+        this.providerRegistry = createProviderRegistry();
+        this.chatPipeline = new ChatPipeline(provider -> providerRegistry.getClient(provider));
+        this.modelRouter = new ModelRouter(pluginConfig.getRoutingSettings());
+        this.requestHedger = new RequestHedger(pluginConfig.getHedgingSettings(), modelRouter::observe);
+        this.similarityCache = new SimilarityCache(pluginConfig.getSimilarityCacheSettings());
+
+        //key derivation and database setup run in parallel in the background
+        bootstrap();
+
+        //open provider connections before the first /chat needs them
+        this.connectionWarmer = new ConnectionWarmer(providerRegistry, getLogger());
+        if (pluginConfig.isWarmupEnabled()) {
+            connectionWarmer.warm(pluginConfig.getAllowedProviders(), 0, true);
+        }
+        scheduleKeepAlive();
+
+        //rate limits and settings changes shared with the other servers on the network, if configured
+        this.coordinator = createCoordinator();
+        if (coordinator != null) {
+            this.networkEvents = new NetworkEvents(coordinator, getLogger(), new NetworkChanges());
+        }
+        this.rateLimiter = createRateLimiter();
+
+        //main-thread delivery, drained once per tick
+        this.deliveryQueue = new DeliveryQueue(
+                scheduler,
+                pluginConfig.getDeliveryMaxMessagesPerTick(),
+                pluginConfig.getDeliveryMaxMillisPerTick()
         );
+        scheduler.runRepeating(deliveryQueue::drain, 1L, 1L);
+
+        //steps down in stages while the server is overloaded
+        this.admission = new AdmissionController(pluginConfig.getLoadSheddingSettings());
+        scheduleLoadCheck();
+
+        //tool calls that read the world, drained under a per-tick budget
+        this.toolRegistry = ToolRegistry.builtIn(pluginConfig.getToolsStaffPermission());
+        this.toolExecutor = new ToolExecutor(scheduler, toolRegistry,
+                pluginConfig.getToolsMaxMillisPerTick(), pluginConfig.getToolsCacheSeconds());
+        scheduler.runRepeating(toolExecutor::drain, 1L, 1L);
+
+        //knowledge base (indexed off the main thread)
+        this.knowledgeBase = new KnowledgeBase(getDataFolder().toPath().resolve("knowledge"), getLogger());
+        scheduleKnowledgeRefresh();
+
+        //optional question/answer log
+        openTranscripts();
+
+        //AskAIService for other plugins
+        registerService();
 
         //register commands via Brigadier lifecycle event
         this.getLifecycleManager().registerEventHandler(LifecycleEvents.COMMANDS, event -> {
@@ -75,40 +205,539 @@ public final class AskAI extends JavaPlugin implements Listener {
         //bStats metrics
         new Metrics(this, 29560);
 
-        getLogger().info("AskAI enabled.");
+        getLogger().info("AskAI enabled in " + millisSince(enableStart) + " ms, finishing startup in the background.");
     }
 
     @Override
     public void onDisable() {
-        if (databaseManager != null) {
-            databaseManager.close();
+        if (scheduler != null) {
+            scheduler.cancelAll();
+        }
+        unregisterService();
+        stopKeyRotation();
+        //a bootstrap still in flight must not leave an open database behind
+        if (storageFuture != null) {
+            try {
+                storageFuture.get(10, TimeUnit.SECONDS).close();
+            } catch (Exception ignored) {
+            }
+        }
+        if (providerRegistry != null) {
+            providerRegistry.close();
         }
+        if (coordinator != null) {
+            coordinator.close();
+        }
+        closeTranscripts();
         getLogger().info("AskAI disabled.");
     }
 
-    //cancel /chat setkey commands from being logged by other plugins
+    //PBKDF2 and opening/migrating the database are the slow parts of startup. they run side by side on
+    //their own threads (the Bukkit async scheduler would not start them until the first tick), and
+    //commands that need either wait on ready
+    private void bootstrap() {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(2,
+                Thread.ofPlatform().daemon().name("AskAI-bootstrap-", 0).factory());
+
+        CompletableFuture<KeyEncryptor> crypto = CompletableFuture.supplyAsync(this::createEncryptor, executor);
+
+        SettingsStorage storage = createStorage();
+        this.storageFuture = CompletableFuture.supplyAsync(() -> {
+            long phaseStart = System.nanoTime();
+            try {
+                storage.initialize();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+            getLogger().info("Opened " + storage.name() + " storage in " + millisSince(phaseStart) + " ms.");
+            return storage;
+        }, executor);
+
+        //word lists can be long, so the filter is built before /chat opens rather than on the main thread
+        long filterGeneration = promptFilterGeneration.incrementAndGet();
+        CompletableFuture<Void> filter = CompletableFuture.runAsync(
+                () -> publishPromptFilter(filterGeneration, createPromptFilter()), executor);
+
+        crypto.thenAcceptBoth(storageFuture, (encryptor, repo) -> {
+            this.keyEncryptor = encryptor;
+            this.settingsCache = new CachingSettingsStorage(repo, pluginConfig.getSettingsCacheSeconds(),
+                    new SettingsChangePublisher());
+            this.settingsRepo = settingsCache;
+            reloadKeyPool();
+        }).thenCombine(filter, (a, b) -> null).whenComplete((ignored, error) -> {
+            executor.shutdown();
+            if (error == null) {
+                getLogger().info("AskAI ready " + millisSince(start) + " ms after enable.");
+                ready.complete(null);
+                scheduleMaintenance();
+                //a seed rotation interrupted by the last shutdown carries on
+                if (KeyRotationJob.hasSavedState(getDataFolder().toPath())) {
+                    startKeyRotation();
+                }
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof SQLException) {
+                getLogger().severe("Failed to initialize " + storage.name() + " database: " + cause.getMessage());
+            } else {
+                getLogger().severe("Failed to start AskAI: " + cause.getMessage());
+            }
+            ready.completeExceptionally(cause);
+            scheduler.runGlobal(() -> getServer().getPluginManager().disablePlugin(this));
+        });
+    }
+
+    //PBKDF2 for the current seed plus every previous one, so this is slow. call off the main thread
+    private KeyEncryptor createEncryptor() {
+        long start = System.nanoTime();
+        List<String> previousSeeds = pluginConfig.getPreviousEncryptionSeeds();
+        KeyEncryptor encryptor = new KeyEncryptor(pluginConfig.getEncryptionSeed(), previousSeeds, getDataFolder());
+        this.encryptionSeeds = seedsOf(pluginConfig);
+        getLogger().info("Derived " + (1 + previousSeeds.size()) + " encryption key(s) in " + millisSince(start) + " ms.");
+        return encryptor;
+    }
+
+    private static List<String> seedsOf(PluginConfig config) {
+        List<String> seeds = new ArrayList<>();
+        seeds.add(config.getEncryptionSeed());
+        seeds.addAll(config.getPreviousEncryptionSeeds());
+        return seeds;
+    }
+
+    //false if a rotation is already running or startup has not finished
+    public synchronized boolean startKeyRotation() {
+        if (!isReady() || (keyRotation != null && keyRotation.isRunning())) return false;
+        this.keyRotation = new KeyRotationJob(settingsRepo, keyEncryptor, getDataFolder().toPath(), getLogger(),
+                pluginConfig.getRotationBatchSize(), pluginConfig.getRotationPauseMillis(), this::reloadKeyPool);
+        keyRotation.start();
+        return true;
+    }
+
+    //false if nothing was running
+    public synchronized boolean stopKeyRotation() {
+        if (keyRotation == null || !keyRotation.isRunning()) return false;
+        keyRotation.stop();
+        return true;
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private SettingsStorage createStorage() {
+        int poolSize = pluginConfig.getStoragePoolSize();
+        String prefix = pluginConfig.getStorageTablePrefix();
+        return switch (pluginConfig.getStorageType()) {
+            case "mysql", "mariadb" -> new MySqlSettingsStorage(
+                    pluginConfig.getMysqlHost(),
+                    pluginConfig.getMysqlPort(),
+                    pluginConfig.getMysqlDatabase(),
+                    pluginConfig.getMysqlUsername(),
+                    pluginConfig.getMysqlPassword(),
+                    poolSize, prefix, getLogger());
+            case "h2" -> new H2SettingsStorage(getDataFolder().toPath(), poolSize, prefix, getLogger());
+            case "sqlite" -> createSqliteStorage();
+            default -> {
+                getLogger().warning("Unknown storage.type '" + pluginConfig.getStorageType() + "', using sqlite.");
+                yield createSqliteStorage();
+            }
+        };
+    }
+
+    private SettingsStorage createSqliteStorage() {
+        DatabaseManager db = new DatabaseManager(getDataFolder().toPath(), getLogger(), pluginConfig.getSqliteTuning());
+        this.sqliteMaintenance = new SqliteMaintenance(db, pluginConfig.getSqliteMaintenanceSettings(), getLogger());
+        return new SqliteSettingsStorage(db);
+    }
+
+    //cancel /chat setkey commands from being logged by other plugins. this sees every command on the
+    //server, so it compares in place instead of lowercasing a copy of each one
     @EventHandler(priority = org.bukkit.event.EventPriority.MONITOR)
     public void onCommandPreprocess(PlayerCommandPreprocessEvent event) {
-        String msg = event.getMessage().toLowerCase();
-        if (msg.startsWith("/chat setkey ")) {
+        CommandPreprocessEvent jfr = new CommandPreprocessEvent();
+        jfr.begin();
+        String msg = event.getMessage();
+        boolean setsKey = startsWithIgnoreCase(msg, "/chat setkey ")
+                || startsWithIgnoreCase(msg, "/chat serverkey add ");
+        if (setsKey) {
             //log a safe version ourselves. the actual command still reaches Brigadier unmodified
             getLogger().info(event.getPlayer().getName() + " set an API key (redacted from logs)");
         }
+        jfr.end();
+        if (jfr.shouldCommit()) {
+            jfr.commandLength = msg.length();
+            jfr.redacted = setsKey;
+            jfr.commit();
+        }
+    }
+
+    private static boolean startsWithIgnoreCase(String text, String prefix) {
+        return text.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    //first player back after a quiet period: reconnect before they ask anything. a network-wide rate
+    //limit lease is fetched now so their first /chat does not wait on the shared store
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        UUID playerId = event.getPlayer().getUniqueId();
+        RateLimiter limiter = rateLimiter;
+        scheduler.runAsync(() -> limiter.prefetch(playerId));
+        if (!pluginConfig.isWarmupEnabled()) return;
+        long idleMillis = pluginConfig.getWarmupIdleSeconds() * 1000L;
+        scheduler.runAsync(() -> connectionWarmer.warm(pluginConfig.getAllowedProviders(), idleMillis, false));
     }
 
-    //clean up rate limiter when player leaves
+    //clean up rate limiter and cached settings when player leaves
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
-        rateLimiter.cleanup(event.getPlayer().getUniqueId());
+        UUID playerId = event.getPlayer().getUniqueId();
+        rateLimiter.cleanup(playerId);
+        toolExecutor.forget(playerId);
+        if (settingsCache != null) settingsCache.invalidate(Set.of(playerId));
     }
 
     public void reloadPluginConfig() {
         reloadConfig();
         this.pluginConfig = new PluginConfig(getConfig());
-        this.rateLimiter = new RateLimiter(
-                pluginConfig.getRateLimitRequests(),
-                pluginConfig.getRateLimitWindowSeconds()
+        //requests already in flight finish on the old clients
+        ProviderRegistry previousRegistry = providerRegistry;
+        this.providerRegistry = createProviderRegistry();
+        this.connectionWarmer = new ConnectionWarmer(providerRegistry, getLogger());
+        previousRegistry.shutdown();
+        if (pluginConfig.isWarmupEnabled()) {
+            connectionWarmer.warm(pluginConfig.getAllowedProviders(), 0, false);
+        }
+        //tokens leased by the old limiter go back to the network bucket the new one takes from
+        RateLimiter previousLimiter = rateLimiter;
+        this.rateLimiter = createRateLimiter();
+        previousLimiter.close();
+        if (settingsCache != null) settingsCache.configure(pluginConfig.getSettingsCacheSeconds());
+        keyPool.configure(
+                pluginConfig.getKeyPoolRateLimitedBenchSeconds(),
+                pluginConfig.getKeyPoolInvalidBenchSeconds()
         );
+        if (isReady()) {
+            scheduler.runAsync(this::reloadKeyPool);
+            //new or retired seeds: derive the keys in the background and swap them in when done
+            if (!seedsOf(pluginConfig).equals(encryptionSeeds)) {
+                stopKeyRotation();
+                scheduler.runAsync(() -> this.keyEncryptor = createEncryptor());
+            }
+        }
+        deliveryQueue.configure(
+                pluginConfig.getDeliveryMaxMessagesPerTick(),
+                pluginConfig.getDeliveryMaxMillisPerTick()
+        );
+        toolExecutor.configure(pluginConfig.getToolsMaxMillisPerTick(), pluginConfig.getToolsCacheSeconds());
+        admission.configure(pluginConfig.getLoadSheddingSettings());
+        scheduleLoadCheck();
+        if (sqliteMaintenance != null) {
+            sqliteMaintenance.configure(pluginConfig.getSqliteMaintenanceSettings());
+            if (isReady()) scheduleMaintenance();
+        }
+        modelRouter.configure(pluginConfig.getRoutingSettings());
+        requestHedger.configure(pluginConfig.getHedgingSettings());
+        similarityCache.configure(pluginConfig.getSimilarityCacheSettings());
+        //the old filter stays in use until the new one is complete
+        long filterGeneration = promptFilterGeneration.incrementAndGet();
+        scheduler.runAsync(() -> publishPromptFilter(filterGeneration, createPromptFilter()));
+        if (!pluginConfig.isApiEnabled()) {
+            unregisterService();
+        } else if (askAIService == null) {
+            registerService();
+        } else {
+            askAIService.configure(pluginConfig);
+        }
+        scheduleKnowledgeRefresh();
+        scheduleKeepAlive();
+        closeTranscripts();
+        openTranscripts();
+    }
+
+    //null when this server is on its own
+    private NetworkCoordinator createCoordinator() {
+        return switch (pluginConfig.getNetworkType()) {
+            case "none" -> null;
+            case "local" -> new InProcessCoordinator();
+            case "redis" -> {
+                getLogger().info("Sharing rate limits and settings changes through Redis at "
+                        + pluginConfig.getRedisHost() + ":" + pluginConfig.getRedisPort() + ".");
+                yield new RedisCoordinator(pluginConfig.getRedisHost(), pluginConfig.getRedisPort(),
+                        pluginConfig.getRedisPassword(), pluginConfig.getRedisDatabase(),
+                        pluginConfig.getRedisKeyPrefix(), pluginConfig.getNetworkTimeoutMillis(),
+                        pluginConfig.getNetworkRetrySeconds(), getLogger());
+            }
+            default -> {
+                getLogger().warning("Unknown network.type '" + pluginConfig.getNetworkType()
+                        + "', limiting per server.");
+                yield null;
+            }
+        };
+    }
+
+    private RateLimiter createRateLimiter() {
+        if (coordinator == null) {
+            return new SlidingWindowRateLimiter(pluginConfig.getRateLimitRequests(),
+                    pluginConfig.getRateLimitWindowSeconds());
+        }
+        return new SharedRateLimiter(coordinator, "chat", pluginConfig.getRateLimitRequests(),
+                pluginConfig.getRateLimitWindowSeconds(), pluginConfig.getNetworkLeaseSize(), getLogger());
+    }
+
+    //writes made on this server, passed on to the rest of the network. called on storage threads
+    private final class SettingsChangePublisher implements CachingSettingsStorage.ChangeListener {
+        @Override
+        public void settingsChanged(Collection<UUID> playerIds) {
+            if (networkEvents != null) networkEvents.settingsChanged(playerIds);
+        }
+
+        @Override
+        public void serverKeysChanged() {
+            if (networkEvents != null) networkEvents.serverKeysChanged();
+        }
+    }
+
+    //writes made on another server. the primary server keys live in the SERVER_UUID settings row
+    private final class NetworkChanges implements NetworkEvents.Handler {
+        @Override
+        public void settingsChanged(Collection<UUID> playerIds) {
+            CachingSettingsStorage cache = settingsCache;
+            if (cache != null) cache.invalidate(playerIds);
+            if (playerIds.contains(SERVER_UUID)) serverKeysChanged();
+        }
+
+        @Override
+        public void serverKeysChanged() {
+            if (isReady()) scheduler.runAsync(AskAI.this::reloadKeyPool);
+        }
+
+        @Override
+        public void resync() {
+            CachingSettingsStorage cache = settingsCache;
+            if (cache != null) cache.invalidateAll();
+            serverKeysChanged();
+        }
+    }
+
+    //registers the providers defined in config and opens a connection pool for each
+    private ProviderRegistry createProviderRegistry() {
+        AIProvider.register(pluginConfig.getProviders(getLogger()::warning));
+        Map<AIProvider, HttpClient> httpClients = new HashMap<>();
+        Map<AIProvider, ExecutorService> executors = new HashMap<>();
+        Map<AIProvider, HttpCompression> compression = new HashMap<>();
+        for (AIProvider provider : AIProvider.values()) {
+            HttpClientSettings settings = pluginConfig.getHttpSettings(provider);
+            ExecutorService executor = settings.executor(provider.id());
+            executors.put(provider, executor);
+            httpClients.put(provider, settings.build(executor));
+            compression.put(provider, settings.compression());
+        }
+        return new ProviderRegistry(httpClients, executors, compression);
+    }
+
+    //blocking, call off the main thread
+    public void reloadKeyPool() {
+        try {
+            UserSettings serverSettings = settingsRepo.load(SERVER_UUID);
+            List<ServerKey> extraKeys = settingsRepo.loadServerKeys();
+            keyPool.reload(serverSettings, extraKeys);
+        } catch (Exception e) {
+            getLogger().warning("Failed to load server keys: " + e.getMessage());
+        }
+    }
+
+    //the model to actually call. "auto" is resolved per request by the router, or falls back to the
+    //provider default when routing has been turned off since the player picked it
+    public String resolveModel(String requester, AIProvider provider, String model, String message,
+                               int promptTokens, boolean grounded) {
+        if (!ModelRouter.AUTO.equalsIgnoreCase(model)) return model;
+        if (!pluginConfig.isRoutingEnabled()) return provider.defaultModel();
+        RoutingDecision decision = modelRouter.route(requester, provider, message, promptTokens, grounded);
+        if (pluginConfig.isRoutingLogDecisions()) {
+            getLogger().info("Routed " + requester + " to " + provider.id() + "/" + decision.model()
+                    + " (" + decision.reason() + ")");
+        }
+        return decision.model();
+    }
+
+    //sender with hedging applied when enabled. the delay is the model's recent p95. the second attempt
+    //goes to hedging.alternate-provider when the question uses no tools (tool call ids do not carry over
+    //between providers) and senders has a key for it, otherwise to the same provider and model. every
+    //attempt is observed for routing and hedging against the provider and model it went to
+    public ChatPipeline.Sender hedged(AIProvider provider, String model, ChatPipeline.Sender sender, boolean usesTools,
+                                      Function<AIProvider, ChatPipeline.Sender> senders) {
+        if (!requestHedger.isEnabled()) return requestHedger.observed(provider, sender);
+        ModelRouter.ModelHealth health = modelRouter.health(provider, model);
+        long delayMillis = requestHedger.delayMillis(health.p95Millis(), health.samples());
+        RequestHedger.Target target = new RequestHedger.Target(provider, providerRegistry.getClient(provider), sender,
+                null);
+        AIProvider alternate = pluginConfig.getHedgingAlternateProvider();
+        if (alternate != null && !alternate.equals(provider) && !usesTools
+                && pluginConfig.getAllowedProviders().contains(alternate)) {
+            ChatPipeline.Sender alternateSender = senders.apply(alternate);
+            if (alternateSender != null) {
+                target = new RequestHedger.Target(alternate, providerRegistry.getClient(alternate), alternateSender,
+                        alternate.defaultModel());
+            }
+        }
+        return requestHedger.wrap(provider, sender, delayMillis, target);
+    }
+
+    //registered before startup finishes, so other plugins can look it up in their own onEnable;
+    //requests made before AskAI is ready are rejected
+    private void registerService() {
+        if (!pluginConfig.isApiEnabled()) return;
+        this.askAIService = new PluginAskAIService(this);
+        getServer().getServicesManager().register(AskAIService.class, askAIService, this, ServicePriority.Normal);
+    }
+
+    private void unregisterService() {
+        PluginAskAIService service = askAIService;
+        askAIService = null;
+        if (service == null) return;
+        getServer().getServicesManager().unregisterAll(this);
+        service.shutdown();
+    }
+
+    private void openTranscripts() {
+        if (!pluginConfig.isTranscriptsEnabled()) return;
+        try {
+            this.transcriptWriter = new TranscriptWriter(
+                    getDataFolder().toPath().resolve("transcripts"),
+                    getLogger(),
+                    pluginConfig.getTranscriptQueueCapacity(),
+                    pluginConfig.getTranscriptMaxSegmentBytes(),
+                    pluginConfig.getTranscriptMaxSegmentAgeMillis(),
+                    pluginConfig.getTranscriptRetentionMillis()
+            );
+        } catch (IOException e) {
+            getLogger().warning("Failed to open transcript log: " + e.getMessage());
+        }
+    }
+
+    private void closeTranscripts() {
+        TranscriptWriter writer = transcriptWriter;
+        transcriptWriter = null;
+        if (writer != null) writer.close();
+    }
+
+    //false if a capture is already running
+    public boolean startCapture() {
+        return traceRecorder.compareAndSet(null, new TraceRecorder(pluginConfig.getCaptureMaxEvents()));
+    }
+
+    //null if no capture was running
+    public TraceRecorder stopCapture() {
+        return traceRecorder.getAndSet(null);
+    }
+
+    //blocking, call off the main thread
+    public Path saveCapture(TraceRecorder recorder) throws IOException {
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path file = getDataFolder().toPath().resolve("captures").resolve("trace-" + stamp + ".csv");
+        TraceFile.write(file, recorder.snapshot());
+        return file;
+    }
+
+    //keeps provider connections open while anyone is online to use them
+    private void scheduleKeepAlive() {
+        if (keepAliveTask != null) {
+            keepAliveTask.cancel();
+            keepAliveTask = null;
+        }
+        int seconds = pluginConfig.getKeepAliveSeconds();
+        if (!pluginConfig.isWarmupEnabled() || seconds <= 0) return;
+        long periodTicks = seconds * 20L;
+        this.keepAliveTask = scheduler.runAsyncRepeating(() -> {
+            if (getServer().getOnlinePlayers().isEmpty()) return;
+            connectionWarmer.warm(pluginConfig.getAllowedProviders(), seconds * 1000L, false);
+        }, periodTicks, periodTicks);
+    }
+
+    private void scheduleLoadCheck() {
+        if (loadCheckTask != null) {
+            loadCheckTask.cancel();
+            loadCheckTask = null;
+        }
+        deliveryQueue.throttle(admission.deliveryThrottle());
+        if (!admission.isEnabled()) return;
+        long periodTicks = pluginConfig.getLoadSheddingCheckTicks();
+        TickHealth health = new TickHealth();
+        this.loadCheckTask = scheduler.runRepeating(() -> checkLoad(health, periodTicks), periodTicks, periodTicks);
+    }
+
+    //main thread (global region on Folia)
+    private void checkLoad(TickHealth health, long periodTicks) {
+        double mspt = health.sample(periodTicks);
+        int pending = pendingWork();
+        AdmissionController.Level changed = admission.update(mspt, pending, System.currentTimeMillis());
+        if (changed == null) return;
+        deliveryQueue.throttle(admission.deliveryThrottle());
+        String message = String.format("Load shedding is now at %s (MSPT %.1f, %d pending).",
+                changed.displayName(), mspt, pending);
+        getLogger().info(message);
+        if (!pluginConfig.isLoadSheddingNotifyAdmins()) return;
+        for (Player player : getServer().getOnlinePlayers()) {
+            if (player.hasPermission("askai.admin")) deliveryQueue.send(player, TextFormatter.info(message));
+        }
+    }
+
+    //questions being answered, queued plugin requests and replies not yet delivered
+    private int pendingWork() {
+        PluginAskAIService api = askAIService;
+        return admission.inFlight() + deliveryQueue.depth() + (api == null ? 0 : api.queued());
+    }
+
+    //SQLite housekeeping, off the main thread and only while AskAI has little to do. called from the
+    //bootstrap thread once ready, and on reload
+    private synchronized void scheduleMaintenance() {
+        if (maintenanceTask != null) {
+            maintenanceTask.cancel();
+            maintenanceTask = null;
+        }
+        SqliteMaintenance maintenance = sqliteMaintenance;
+        if (maintenance == null || !maintenance.settings().enabled()) return;
+        long periodTicks = maintenance.settings().checkMillis() / 50;
+        this.maintenanceTask = scheduler.runAsyncRepeating(() -> maintenance.check(pendingWork()),
+                periodTicks, periodTicks);
+    }
+
+    //two reloads in quick succession can finish their builds in either order; only the newest is kept
+    private void publishPromptFilter(long generation, PromptFilter filter) {
+        synchronized (promptFilterGeneration) {
+            if (promptFilterGeneration.get() == generation) this.promptFilter = filter;
+        }
+    }
+
+    //never fails: rules that cannot be loaded are reported and left out
+    private PromptFilter createPromptFilter() {
+        if (!pluginConfig.isPromptFilterEnabled()) return PromptFilter.NONE;
+        long start = System.nanoTime();
+        PromptFilter filter = PromptFilter.build(pluginConfig.getPromptFilterRules(getLogger()::warning),
+                pluginConfig.getPromptFilterRedactWith(), getDataFolder().toPath(), getLogger()::warning);
+        getLogger().info("Prompt filter loaded " + filter.size() + " words and phrases in "
+                + millisSince(start) + " ms.");
+        return filter;
+    }
+
+    private void scheduleKnowledgeRefresh() {
+        if (knowledgeRefreshTask != null) {
+            knowledgeRefreshTask.cancel();
+            knowledgeRefreshTask = null;
+        }
+        if (!pluginConfig.isKnowledgeBaseEnabled()) return;
+        long periodTicks = pluginConfig.getKnowledgeBaseRefreshSeconds() * 20L;
+        this.knowledgeRefreshTask = scheduler.runAsyncRepeating(knowledgeBase::refresh, 0L, periodTicks);
+    }
+
+    //true once the encryption key and storage are available. commands check this first
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    public CompletableFuture<Void> getReadyFuture() {
+        return ready;
     }
 
     //component getters
@@ -121,7 +750,7 @@ public final class AskAI extends JavaPlugin implements Listener {
         return keyEncryptor;
     }
 
-    public UserSettingsRepository getSettingsRepo() {
+    public SettingsStorage getSettingsRepo() {
         return settingsRepo;
     }
 
@@ -132,4 +761,77 @@ public final class AskAI extends JavaPlugin implements Listener {
     public RateLimiter getRateLimiter() {
         return rateLimiter;
     }
+
+    public PluginScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public KeyPool getKeyPool() {
+        return keyPool;
+    }
+
+    public DeliveryQueue getDeliveryQueue() {
+        return deliveryQueue;
+    }
+
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    //null unless storage is SQLite
+    public SqliteMaintenance getSqliteMaintenance() {
+        return sqliteMaintenance;
+    }
+
+    public PromptFilter getPromptFilter() {
+        return promptFilter;
+    }
+
+    public KnowledgeBase getKnowledgeBase() {
+        return knowledgeBase;
+    }
+
+    public ChatPipeline getChatPipeline() {
+        return chatPipeline;
+    }
+
+    public ToolRegistry getToolRegistry() {
+        return toolRegistry;
+    }
+
+    public ToolExecutor getToolExecutor() {
+        return toolExecutor;
+    }
+
+    //null unless /chat capture is running
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder.get();
+    }
+
+    //null if no rotation has run since startup
+    public synchronized KeyRotationJob getKeyRotation() {
+        return keyRotation;
+    }
+
+    public ModelRouter getModelRouter() {
+        return modelRouter;
+    }
+
+    public RequestHedger getRequestHedger() {
+        return requestHedger;
+    }
+
+    public SimilarityCache getSimilarityCache() {
+        return similarityCache;
+    }
+
+    //null when the plugin API is disabled
+    public PluginAskAIService getAskAIService() {
+        return askAIService;
+    }
+
+    //null when transcripts are disabled
+    public TranscriptWriter getTranscriptWriter() {
+        return transcriptWriter;
+    }
 }
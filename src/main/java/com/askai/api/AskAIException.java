@@ -0,0 +1,12 @@
+package com.askai.api;
+
+//a request AskAI refused or could not complete. the message is safe to show to players
+public class AskAIException extends RuntimeException {
+    public AskAIException(String message) {
+        super(message);
+    }
+
+    public AskAIException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,49 @@
+package com.askai.api;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.UUID;
+
+//one question from another plugin. caller is the plugin name, used for accounting, rate limits and
+//priority. null provider, model and systemPrompt fall back to AskAI's configured defaults
+public record AskAIQuery(String caller, String prompt, String systemPrompt, String provider, String model,
+                         int maxTokens, Priority priority, UUID player) {
+
+    //queued requests run highest priority first, in arrival order within a priority
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    public AskAIQuery {
+        if (caller == null || caller.isBlank()) throw new IllegalArgumentException("caller is required");
+        if (prompt == null || prompt.isBlank()) throw new IllegalArgumentException("prompt is required");
+        if (priority == null) priority = Priority.NORMAL;
+    }
+
+    public static AskAIQuery of(Plugin caller, String prompt) {
+        return new AskAIQuery(caller.getName(), prompt, null, null, null, 0, Priority.NORMAL, null);
+    }
+
+    public AskAIQuery withSystemPrompt(String systemPrompt) {
+        return new AskAIQuery(caller, prompt, systemPrompt, provider, model, maxTokens, priority, player);
+    }
+
+    //provider id such as "openai". a null model means the provider's default, "auto" lets AskAI pick one
+    public AskAIQuery withProvider(String provider, String model) {
+        return new AskAIQuery(caller, prompt, systemPrompt, provider, model, maxTokens, priority, player);
+    }
+
+    //lowers AskAI's response cap for this request; it cannot raise it
+    public AskAIQuery withMaxTokens(int maxTokens) {
+        return new AskAIQuery(caller, prompt, systemPrompt, provider, model, maxTokens, priority, player);
+    }
+
+    public AskAIQuery withPriority(Priority priority) {
+        return new AskAIQuery(caller, prompt, systemPrompt, provider, model, maxTokens, priority, player);
+    }
+
+    //in player key mode the request is paid with this player's key when they have one
+    public AskAIQuery forPlayer(UUID player) {
+        return new AskAIQuery(caller, prompt, systemPrompt, provider, model, maxTokens, priority, player);
+    }
+}
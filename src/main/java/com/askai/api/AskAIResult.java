@@ -0,0 +1,6 @@
+package com.askai.api;
+
+//cached answers report the tokens of the call that produced them
+public record AskAIResult(String text, String provider, String model, int promptTokens, int completionTokens,
+                          String finishReason, boolean cached, long latencyMillis) {
+}
@@ -0,0 +1,26 @@
+package com.askai.api;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+//what other plugins get from Bukkit's ServicesManager:
+//  AskAIService ai = Bukkit.getServicesManager().load(AskAIService.class);
+//  ai.chat(AskAIQuery.of(this, "Greet the player as a grumpy blacksmith")).thenAccept(r -> ...);
+//requests go through the same providers, server key pool, token budget and caching as /chat.
+//futures and callbacks complete on AskAI's own threads, never the main thread
+public interface AskAIService {
+    //fails with AskAIException if AskAI is still starting, the caller is over its rate limit or
+    //queue share, no key is available, or the provider returns an error
+    CompletableFuture<AskAIResult> chat(AskAIQuery query);
+
+    //like chat, but onText receives the answer piece by piece as the provider writes it.
+    //a cached answer arrives as a single piece
+    CompletableFuture<AskAIResult> stream(AskAIQuery query, Consumer<String> onText);
+
+    //false until the encryption key and storage are available
+    boolean isReady();
+
+    //per calling plugin, since startup
+    Map<String, CallerUsage> usage();
+}
@@ -0,0 +1,11 @@
+package com.askai.api;
+
+//rejected requests never reached a provider: rate limited, queue full, or no key
+public record CallerUsage(long requests, long failures, long rejected, long cacheHits,
+                          long promptTokens, long completionTokens, long totalLatencyMillis) {
+
+    public double avgLatencyMillis() {
+        long answered = requests - failures - rejected;
+        return answered <= 0 ? 0 : (double) totalLatencyMillis / answered;
+    }
+}
@@ -0,0 +1,6 @@
+package com.askai.capture;
+
+//one provider call in a captured workload. anonymized: sizes and timings only, no player or text
+public record TraceEvent(long offsetMillis, String provider, String model, int promptChars, int promptTokens,
+                         int responseChars, int completionTokens, long latencyMillis, boolean failed) {
+}
@@ -0,0 +1,62 @@
+package com.askai.capture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+//plain CSV so traces can be inspected, edited or generated with a spreadsheet
+public final class TraceFile {
+    static final String HEADER =
+            "offset_ms,provider,model,prompt_chars,prompt_tokens,response_chars,completion_tokens,latency_ms,failed";
+
+    private TraceFile() {
+    }
+
+    public static void write(Path file, List<TraceEvent> events) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.newLine();
+            for (TraceEvent event : events) {
+                out.write(event.offsetMillis() + "," + clean(event.provider()) + "," + clean(event.model()) + ","
+                        + event.promptChars() + "," + event.promptTokens() + ","
+                        + event.responseChars() + "," + event.completionTokens() + ","
+                        + event.latencyMillis() + "," + event.failed());
+                out.newLine();
+            }
+        }
+    }
+
+    public static List<TraceEvent> read(Path file) throws IOException {
+        List<TraceEvent> events = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("offset_ms")) continue;
+                String[] f = line.split(",", -1);
+                if (f.length != 9) throw new IOException("Line " + lineNumber + ": expected 9 fields, got " + f.length);
+                try {
+                    events.add(new TraceEvent(Long.parseLong(f[0]), f[1], f[2],
+                            Integer.parseInt(f[3]), Integer.parseInt(f[4]),
+                            Integer.parseInt(f[5]), Integer.parseInt(f[6]),
+                            Long.parseLong(f[7]), Boolean.parseBoolean(f[8])));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        events.sort((a, b) -> Long.compare(a.offsetMillis(), b.offsetMillis()));
+        return events;
+    }
+
+    private static String clean(String value) {
+        return value.replace(',', '_').replace('\n', ' ');
+    }
+}
@@ -0,0 +1,52 @@
+package com.askai.capture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//collects one capture session in memory. recording is a queue add, so it is safe on request threads;
+//the file is only written when the capture is stopped. stops accepting events at maxEvents
+public final class TraceRecorder {
+    private final long startNanos = System.nanoTime();
+    private final long startedAt = System.currentTimeMillis();
+    private final int maxEvents;
+    private final ConcurrentLinkedQueue<TraceEvent> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger count = new AtomicInteger();
+
+    public TraceRecorder(int maxEvents) {
+        this.maxEvents = maxEvents;
+    }
+
+    //arrivalNanos is when the player sent the message (for a later tool round, when that round was sent),
+    //so inter-arrival times exclude our own queueing
+    public void record(long arrivalNanos, String provider, String model, int promptChars, int promptTokens,
+                       int responseChars, int completionTokens, long latencyMillis, boolean failed) {
+        if (count.incrementAndGet() > maxEvents) {
+            count.decrementAndGet();
+            return;
+        }
+        long offsetMillis = Math.max(0, (arrivalNanos - startNanos) / 1_000_000);
+        events.add(new TraceEvent(offsetMillis, provider, model, promptChars, promptTokens,
+                responseChars, completionTokens, latencyMillis, failed));
+    }
+
+    public boolean isFull() {
+        return count.get() >= maxEvents;
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    public long startedAt() {
+        return startedAt;
+    }
+
+    //in arrival order; events are added in completion order
+    public List<TraceEvent> snapshot() {
+        List<TraceEvent> sorted = new ArrayList<>(events);
+        sorted.sort((a, b) -> Long.compare(a.offsetMillis(), b.offsetMillis()));
+        return sorted;
+    }
+}
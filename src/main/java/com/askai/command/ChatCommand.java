@@ -1,30 +1,70 @@
 package com.askai.command;
 
 import com.askai.AskAI;
+import com.askai.capture.TraceRecorder;
+import com.askai.config.PluginConfig;
+import com.askai.crypto.KeyRotationJob;
+import com.askai.filter.PromptFilter;
+import com.askai.jfr.ChatCommandEvent;
+import com.askai.jfr.RateLimitCheckEvent;
+import com.askai.keypool.KeyPool;
+import com.askai.knowledge.KnowledgeBase;
+import com.askai.knowledge.Passage;
+import com.askai.load.AdmissionController;
 import com.askai.model.AIProvider;
-import com.askai.model.AIRequest;
 import com.askai.model.AIResponse;
-import com.askai.model.ChatMessage;
+import com.askai.model.ToolDefinition;
 import com.askai.model.UserSettings;
-import com.askai.provider.AIProviderClient;
+import com.askai.pipeline.ChatPipeline;
+import com.askai.pipeline.PromptRejectedException;
+import com.askai.pipeline.SimilarityCache;
+import com.askai.pipeline.TrackedClient;
 import com.askai.provider.AIProviderException;
+import com.askai.routing.ModelRouter;
+import com.askai.service.PluginAskAIService;
+import com.askai.storage.SqliteMaintenance;
+import com.askai.tokens.TokenEstimators;
+import com.askai.transcript.TranscriptRecord;
+import com.askai.transcript.TranscriptWriter;
+import com.askai.util.RateLimiter;
 import com.askai.util.TextFormatter;
 import com.mojang.brigadier.Command;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.suggestion.Suggestions;
 import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import io.papermc.paper.command.brigadier.CommandSourceStack;
 import io.papermc.paper.command.brigadier.Commands;
-import org.bukkit.Bukkit;
+import net.kyori.adventure.text.Component;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public final class ChatCommand {
-    private static final UUID SERVER_UUID = new UUID(0L, 0L);
+    private static final UUID SERVER_UUID = AskAI.SERVER_UUID;
+    //anything that looks like an API key (long alphanumeric strings), stripped from logged errors
+    private static final Pattern KEY_LIKE = Pattern.compile("[A-Za-z0-9_-]{20,}");
+    //one thread per provider for /chat compare, which spends its time waiting on the network
+    private static final Executor COMPARE_RUNNER = task -> Thread.ofVirtual().name("AskAI-compare").start(task);
     private final AskAI plugin;
 
     public ChatCommand(AskAI plugin) {
@@ -43,7 +83,36 @@ public final class ChatCommand {
                                 .then(Commands.argument("provider", StringArgumentType.word())
                                         .suggests(this::suggestProviders)
                                         .then(Commands.argument("key", StringArgumentType.greedyString())
-                                                .executes(this::handleSetKey))))
+                                                .executes(whenReady(this::handleSetKey)))))
+                        // /chat serverkey add|list|remove
+                        .then(Commands.literal("serverkey")
+                                .requires(src -> src.getSender().hasPermission("askai.admin"))
+                                .then(Commands.literal("add")
+                                        .then(Commands.argument("provider", StringArgumentType.word())
+                                                .suggests(this::suggestProviders)
+                                                .then(Commands.argument("key", StringArgumentType.greedyString())
+                                                        .executes(whenReady(this::handleServerKeyAdd)))))
+                                .then(Commands.literal("list")
+                                        .executes(whenReady(this::handleServerKeyList)))
+                                .then(Commands.literal("remove")
+                                        .then(Commands.argument("id", IntegerArgumentType.integer(1))
+                                                .executes(whenReady(this::handleServerKeyRemove)))))
+                        // /chat capture start|stop
+                        .then(Commands.literal("capture")
+                                .requires(src -> src.getSender().hasPermission("askai.admin"))
+                                .then(Commands.literal("start")
+                                        .executes(this::handleCaptureStart))
+                                .then(Commands.literal("stop")
+                                        .executes(this::handleCaptureStop)))
+                        // /chat rotatekeys start|stop|status
+                        .then(Commands.literal("rotatekeys")
+                                .requires(src -> src.getSender().hasPermission("askai.admin"))
+                                .then(Commands.literal("start")
+                                        .executes(whenReady(this::handleRotateStart)))
+                                .then(Commands.literal("stop")
+                                        .executes(this::handleRotateStop))
+                                .then(Commands.literal("status")
+                                        .executes(this::handleRotateStatus)))
                         // /chat setmodel <provider> <model>
                         .then(Commands.literal("setmodel")
                                 .requires(src -> src.getSender().hasPermission("askai.setkey"))
@@ -51,23 +120,40 @@ public final class ChatCommand {
                                         .suggests(this::suggestProviders)
                                         .then(Commands.argument("model", StringArgumentType.word())
                                                 .suggests(this::suggestModels)
-                                                .executes(this::handleSetModel))))
+                                                .executes(whenReady(this::handleSetModel)))))
                         // /chat provider <provider>
                         .then(Commands.literal("provider")
                                 .requires(src -> src.getSender().hasPermission("askai.setkey"))
                                 .then(Commands.argument("provider", StringArgumentType.word())
                                         .suggests(this::suggestProviders)
-                                        .executes(this::handleSetProvider)))
+                                        .executes(whenReady(this::handleSetProvider))))
+                        // /chat compare <message>
+                        .then(Commands.literal("compare")
+                                .requires(src -> src.getSender().hasPermission("askai.compare"))
+                                .then(Commands.argument("message", StringArgumentType.greedyString())
+                                        .executes(whenReady(this::handleCompare))))
                         // /chat status
                         .then(Commands.literal("status")
-                                .executes(this::handleStatus))
+                                .executes(whenReady(this::handleStatus)))
                         // /chat reload
                         .then(Commands.literal("reload")
                                 .requires(src -> src.getSender().hasPermission("askai.admin"))
                                 .executes(this::handleReload))
+                        // /chat stats
+                        .then(Commands.literal("stats")
+                                .requires(src -> src.getSender().hasPermission("askai.admin"))
+                                .executes(this::handleStats))
+                        // /chat routing
+                        .then(Commands.literal("routing")
+                                .requires(src -> src.getSender().hasPermission("askai.admin"))
+                                .executes(this::handleRouting))
+                        // /chat kb
+                        .then(Commands.literal("kb")
+                                .requires(src -> src.getSender().hasPermission("askai.admin"))
+                                .executes(this::handleKnowledgeStats))
                         // /chat <message> (greedy catch all, should be last here)
                         .then(Commands.argument("message", StringArgumentType.greedyString())
-                                .executes(this::handleSend))
+                                .executes(whenReady(this::handleSend)))
                         .build(),
                 "Chat with AI providers",
                 List.of()
@@ -76,6 +162,17 @@ public final class ChatCommand {
 
     //handlers
 
+    //anything that touches stored settings or keys waits for the background startup to finish
+    private Command<CommandSourceStack> whenReady(Command<CommandSourceStack> handler) {
+        return ctx -> {
+            if (!plugin.isReady()) {
+                ctx.getSource().getSender().sendMessage(TextFormatter.info("AskAI is starting, try again in a moment."));
+                return 0;
+            }
+            return handler.run(ctx);
+        };
+    }
+
     private int handleSend(CommandContext<CommandSourceStack> ctx) {
         CommandSender sender = ctx.getSource().getSender();
         if (!(sender instanceof Player player)) {
@@ -83,87 +180,379 @@ public final class ChatCommand {
             return 0;
         }
 
-        String message = StringArgumentType.getString(ctx, "message");
+        //for capture: when the player asked, before any of our own queueing
+        long arrivalNanos = System.nanoTime();
+        String typed = StringArgumentType.getString(ctx, "message");
         UUID playerId = player.getUniqueId();
+        ChatCommandEvent event = new ChatCommandEvent();
+        event.begin();
+        event.messageLength = typed.length();
 
-        //rate limit
-        if (!plugin.getRateLimiter().tryAcquire(playerId)) {
-            player.sendMessage(TextFormatter.error("You are sending messages too fast. Please wait."));
-            return 0;
-        }
-
-        //input validation
-        int maxLen = plugin.getPluginConfig().getMaxMessageLength();
-        if (message.length() > maxLen) {
-            player.sendMessage(TextFormatter.error("Message too long. Max: " + maxLen + " characters."));
-            return 0;
-        }
+        PromptFilter.Result filtered = admit(player, typed, event);
+        if (filtered == null) return 0;
+        String message = filtered.text();
+        AdmissionController admission = plugin.getAdmission();
 
         player.sendMessage(TextFormatter.thinking());
 
         boolean serverMode = plugin.getPluginConfig().isServerKeyMode();
+        boolean useKnowledge = plugin.getPluginConfig().isKnowledgeBaseEnabled();
 
         //run everything async
-        CompletableFuture.runAsync(() -> {
+        plugin.getScheduler().runAsync(admission.track(() -> {
+            long startNanos = System.nanoTime();
+            String providerId = "-";
+            String model = "-";
             try {
+                //server-specific questions: answer from the FAQ outright, or ground the prompt
+                List<Passage> context = List.of();
+                if (useKnowledge) {
+                    KnowledgeBase.Lookup lookup = plugin.getKnowledgeBase().lookup(message,
+                            plugin.getPluginConfig().getKnowledgeBaseTopK(),
+                            plugin.getPluginConfig().getKnowledgeBaseFaqThreshold());
+                    if (lookup.answered()) {
+                        deliver(player, TextFormatter.formatKnowledgeAnswer(lookup.faqAnswer()));
+                        transcribe(player, "knowledge", "faq", TranscriptRecord.Outcome.FAQ, startNanos,
+                                message, lookup.faqAnswer().text(), 0, 0);
+                        event.responseLength = lookup.faqAnswer().text().length();
+                        commit(event, "faq");
+                        return;
+                    }
+                    context = lookup.context();
+                }
+
                 UserSettings settings = plugin.getSettingsRepo().load(playerId);
                 AIProvider provider = settings.activeProvider();
+                providerId = provider.id();
+                String routed = filtered.modelFor(provider);
+                model = admission.model(provider, routed != null ? routed : plugin.resolveModel(player.getName(),
+                        provider, settings.getModel(provider), message,
+                        TokenEstimators.forProvider(provider).estimate(message), !context.isEmpty()));
+                event.provider = providerId;
+                event.model = model;
+
+                //resolve key based on mode. server keys are picked from the pool at send time
+                ChatPipeline.Sender keySender = keySender(settings, serverMode, provider);
+                if (keySender == null) {
+                    deliver(player, TextFormatter.error(serverMode
+                            ? "No server API key set for " + provider.displayName() + ". Ask an admin to set it."
+                            : "No API key set for " + provider.displayName()
+                                    + ". Use: /chat setkey " + provider.id() + " <your-key>"));
+                    commit(event, "no-key");
+                    return;
+                }
 
-                //resolve key based on mode
-                String encryptedKey;
-                if (serverMode) {
-                    UserSettings serverSettings = plugin.getSettingsRepo().load(SERVER_UUID);
-                    encryptedKey = serverSettings.getEncryptedKey(provider);
-                    if (encryptedKey == null) {
-                        runSync(() -> player.sendMessage(TextFormatter.error(
-                                "No server API key set for " + provider.displayName()
-                                        + ". Ask an admin to set it.")));
-                        return;
-                    }
-                } else {
-                    encryptedKey = settings.getEncryptedKey(provider);
-                    if (encryptedKey == null) {
-                        runSync(() -> player.sendMessage(TextFormatter.error(
-                                "No API key set for " + provider.displayName()
-                                        + ". Use: /chat setkey " + provider.id() + " <your-key>")));
+                PluginConfig config = plugin.getPluginConfig();
+                List<ToolDefinition> tools = config.isToolsEnabled()
+                        ? plugin.getToolRegistry().definitions(config.getAllowedTools())
+                        : List.of();
+                ChatPipeline pipeline = plugin.getChatPipeline();
+                ChatPipeline.Prepared prepared = pipeline.prepare(admission.limits(config.getPromptLimits()),
+                        provider, model, message, context, tools);
+
+                //a question worded like one answered recently gets the same answer. answers that used tools
+                //depend on the world at the time and are never reused
+                SimilarityCache similar = plugin.getSimilarityCache();
+                String scope = null;
+                SimilarityCache.Hit hit = null;
+                if (similar.isEnabled() && tools.isEmpty()) {
+                    scope = SimilarityCache.scope(providerId, model, prepared.request().systemPrompt(),
+                            prepared.request().maxTokens());
+                    hit = similar.lookup(scope, message);
+                    if (hit != null && !hit.verify()) {
+                        deliver(player, TextFormatter.formatResponse(provider, hit.response()));
+                        transcribe(player, providerId, model, TranscriptRecord.Outcome.CACHED, startNanos,
+                                message, hit.response().text(), 0, 0);
+                        event.responseLength = hit.response().text().length();
+                        commit(event, "cached");
                         return;
                     }
                 }
 
-                String apiKey = plugin.getKeyEncryptor().decrypt(encryptedKey);
-                String systemPrompt = plugin.getPluginConfig().getSystemPrompt();
-
-                //build request (note that im only supporting single shot requests right now, no chat history, no streaming)
-                AIRequest request = new AIRequest(
-                        settings.getModel(provider),
-                        List.of(new ChatMessage("user", message)),
-                        systemPrompt,
-                        plugin.getPluginConfig().getMaxResponseTokens(),
-                        0.7
-                );
-
-                AIProviderClient client = plugin.getProviderRegistry().getClient(provider);
-                AIResponse response = client.chat(request, apiKey).join();
-
-                runSync(() -> player.sendMessage(TextFormatter.formatResponse(provider, response)));
+                ChatPipeline.Sender hedgedSender = plugin.hedged(provider, model, keySender, !tools.isEmpty(),
+                        alternate -> keySender(settings, serverMode, alternate));
+                AIResponse response = pipeline.execute(provider, prepared,
+                        captured(arrivalNanos, providerId, model, message, prepared, hedgedSender),
+                        call -> plugin.getToolExecutor().invoke(player, call), config.getToolLimits());
+                if (hit != null) {
+                    similar.verify(hit, response);
+                } else if (scope != null) {
+                    similar.put(scope, message, response);
+                }
 
+                deliver(player, TextFormatter.formatResponse(provider, response));
+                transcribe(player, providerId, model, TranscriptRecord.Outcome.OK, startNanos,
+                        message, response.text(), response.promptTokens(), response.completionTokens());
+                event.promptTokens = response.promptTokens();
+                event.completionTokens = response.completionTokens();
+                event.responseLength = response.text().length();
+                commit(event, "ok");
+
+            } catch (PromptRejectedException e) {
+                deliver(player, TextFormatter.error(e.getMessage()));
+                commit(event, "rejected");
             } catch (Exception e) {
                 //CompletableFuture.join() wraps exceptions in CompletionException
                 Throwable cause = e;
-                while (cause.getCause() != null && cause instanceof java.util.concurrent.CompletionException) {
+                while (cause.getCause() != null && cause instanceof CompletionException) {
                     cause = cause.getCause();
                 }
                 String msg = cause instanceof AIProviderException
                         ? cause.getMessage()
                         : "Request failed: " + sanitize(cause.getMessage());
                 plugin.getLogger().warning("AI request failed for " + player.getName() + ": " + sanitize(cause.getMessage()));
-                runSync(() -> player.sendMessage(TextFormatter.error(msg)));
+                deliver(player, TextFormatter.error(msg));
+                transcribe(player, providerId, model, TranscriptRecord.Outcome.ERROR, startNanos,
+                        message, msg, 0, 0);
+                commit(event, "error");
             }
-        });
+        }));
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    //what every question goes through before anything is spent on it. null if it was turned away, in which
+    //case the player has been told why and event committed
+    private PromptFilter.Result admit(Player player, String typed, ChatCommandEvent event) {
+        //the server is overloaded
+        AdmissionController admission = plugin.getAdmission();
+        if (admission.isRejecting()) {
+            player.sendMessage(TextFormatter.info(admission.rejectMessage()));
+            commit(event, "shed");
+            return null;
+        }
+
+        //rate limit
+        if (!tryAcquire(player.getUniqueId())) {
+            player.sendMessage(TextFormatter.error("You are sending messages too fast. Please wait."));
+            commit(event, "limited");
+            return null;
+        }
+
+        //input validation
+        int maxLen = plugin.getPluginConfig().getMaxMessageLength();
+        if (typed.length() > maxLen) {
+            player.sendMessage(TextFormatter.error("Message too long. Max: " + maxLen + " characters."));
+            commit(event, "too-long");
+            return null;
+        }
+
+        //local word lists and patterns
+        PromptFilter.Result filtered = plugin.getPromptFilter().apply(typed);
+        if (filtered.rejected()) {
+            player.sendMessage(TextFormatter.error(filtered.rejectedBy().message()));
+            plugin.getLogger().info("Blocked a /chat from " + player.getName() + " (prompt-filter rule "
+                    + filtered.rejectedBy().name() + ")");
+            transcribe(player, "-", "-", TranscriptRecord.Outcome.BLOCKED, System.nanoTime(), typed,
+                    filtered.rejectedBy().name(), 0, 0);
+            commit(event, "blocked");
+            return null;
+        }
+        return filtered;
+    }
+
+    private int handleCompare(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(TextFormatter.error("Only players can use this command."));
+            return 0;
+        }
+
+        String typed = StringArgumentType.getString(ctx, "message");
+        ChatCommandEvent event = new ChatCommandEvent();
+        event.begin();
+        event.messageLength = typed.length();
+        PromptFilter.Result filtered = admit(player, typed, event);
+        if (filtered == null) return 0;
+        String message = filtered.text();
+
+        player.sendMessage(TextFormatter.thinking());
+
+        boolean serverMode = plugin.getPluginConfig().isServerKeyMode();
+        AdmissionController admission = plugin.getAdmission();
+        plugin.getScheduler().runAsync(admission.track(() -> {
+            try {
+                UserSettings settings = plugin.getSettingsRepo().load(player.getUniqueId());
+                Set<AIProvider> allowed = plugin.getPluginConfig().getAllowedProviders();
+                Map<AIProvider, ChatPipeline.Sender> senders = new LinkedHashMap<>();
+                for (AIProvider provider : AIProvider.values()) {
+                    if (!allowed.contains(provider)) continue;
+                    ChatPipeline.Sender keySender = keySender(settings, serverMode, provider);
+                    if (keySender != null) senders.put(provider, keySender);
+                }
+                if (senders.isEmpty()) {
+                    deliver(player, TextFormatter.error(serverMode
+                            ? "No server API keys are set. Ask an admin to add one."
+                            : "You have no API key for any provider. Use: /chat setkey <provider> <key>"));
+                    commit(event, "no-key");
+                    return;
+                }
+                event.provider = "compare";
+                compare(player, settings, message, senders);
+                commit(event, "compare");
+            } catch (Exception e) {
+                plugin.getLogger().warning("Compare failed for " + player.getName() + ": " + sanitize(e.getMessage()));
+                deliver(player, TextFormatter.error("Compare failed: " + sanitize(e.getMessage())));
+                commit(event, "error");
+            }
+        }));
 
         return Command.SINGLE_SUCCESS;
     }
 
+    //sends message to every provider at once, without hedging or tools so each latency is that provider's
+    //own, and shows each answer as it arrives. providers still busy at the timeout are listed as timed out
+    //and their answers dropped when they come in
+    private void compare(Player player, UserSettings settings, String message,
+                         Map<AIProvider, ChatPipeline.Sender> senders) throws InterruptedException {
+        PluginConfig config = plugin.getPluginConfig();
+        AdmissionController admission = plugin.getAdmission();
+        ChatPipeline pipeline = plugin.getChatPipeline();
+        ChatPipeline.Limits limits = admission.limits(config.getPromptLimits());
+        long timeoutMillis = config.getCompareTimeoutMillis();
+        //guarded by itself. once closed nothing more is delivered
+        Map<AIProvider, Long> finished = new LinkedHashMap<>();
+        AtomicBoolean closed = new AtomicBoolean();
+
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        //every client handed to a sender, so calls still running at the timeout can be cancelled
+        List<TrackedClient> clients = new CopyOnWriteArrayList<>();
+        for (Map.Entry<AIProvider, ChatPipeline.Sender> entry : senders.entrySet()) {
+            AIProvider provider = entry.getKey();
+            ChatPipeline.Sender sender = plugin.getRequestHedger().observed(provider, (client, request) -> {
+                TrackedClient tracked = new TrackedClient(client);
+                clients.add(tracked);
+                if (closed.get()) tracked.cancel();
+                return entry.getValue().send(tracked, request);
+            });
+            calls.add(CompletableFuture.runAsync(() -> {
+                long startNanos = System.nanoTime();
+                String model = provider.defaultModel();
+                Component shown;
+                Long latency = null;
+                try {
+                    model = admission.model(provider, plugin.resolveModel(player.getName(), provider,
+                            settings.getModel(provider), message,
+                            TokenEstimators.forProvider(provider).estimate(message), false));
+                    ChatPipeline.Prepared prepared = pipeline.prepare(limits, provider, model, message, List.of());
+                    AIResponse response = pipeline.execute(provider, prepared, sender);
+                    latency = millisSince(startNanos);
+                    transcribe(player, provider.id(), model, TranscriptRecord.Outcome.OK, startNanos,
+                            message, response.text(), response.promptTokens(), response.completionTokens());
+                    shown = TextFormatter.formatComparedAnswer(provider, model, response, latency);
+                } catch (Exception e) {
+                    Throwable cause = e;
+                    while (cause.getCause() != null && cause instanceof CompletionException) {
+                        cause = cause.getCause();
+                    }
+                    String msg = closed.get() ? "Cancelled after " + timeoutMillis / 1000 + "s"
+                            : cause instanceof AIProviderException || cause instanceof PromptRejectedException
+                            ? cause.getMessage()
+                            : sanitize(cause.getMessage());
+                    transcribe(player, provider.id(), model, TranscriptRecord.Outcome.ERROR, startNanos,
+                            message, msg, 0, 0);
+                    shown = TextFormatter.formatCompareFailure(provider, model, msg, millisSince(startNanos));
+                }
+                synchronized (finished) {
+                    if (closed.get()) return;
+                    finished.put(provider, latency);
+                    deliver(player, shown);
+                }
+            }, COMPARE_RUNNER));
+        }
+
+        try {
+            CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new))
+                    .get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            //whatever has arrived is shown below
+        }
+        synchronized (finished) {
+            closed.set(true);
+            List<AIProvider> timedOut = new ArrayList<>();
+            for (AIProvider provider : senders.keySet()) {
+                if (!finished.containsKey(provider)) timedOut.add(provider);
+            }
+            deliver(player, TextFormatter.formatCompareSummary(finished, timedOut, timeoutMillis));
+        }
+        //nobody waits for the late answers, so their connections and pool keys are freed now
+        for (TrackedClient client : clients) client.cancel();
+    }
+
+    //on the main thread. no limiter waits on the network here; a shared one refills its lease in the background
+    private boolean tryAcquire(UUID playerId) {
+        RateLimiter limiter = plugin.getRateLimiter();
+        RateLimitCheckEvent event = new RateLimitCheckEvent();
+        event.begin();
+        boolean allowed = limiter.tryAcquire(playerId);
+        event.end();
+        if (event.shouldCommit()) {
+            event.limiter = limiter.getClass().getSimpleName();
+            event.allowed = allowed;
+            event.commit();
+        }
+        return allowed;
+    }
+
+    private static void commit(ChatCommandEvent event, String outcome) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.outcome = outcome;
+        event.commit();
+    }
+
+    //how a request to provider is paid for: a lease from the server key pool, or the player's own key.
+    //a provider that takes no key (a local server) is called directly. null if there is no key to use
+    private ChatPipeline.Sender keySender(UserSettings settings, boolean serverMode, AIProvider provider) {
+        if (!provider.requiresKey()) return (client, request) -> client.chat(request, "").join();
+        if (serverMode) {
+            if (!plugin.getKeyPool().hasKeys(provider)) return null;
+            return (client, request) -> plugin.getKeyPool().send(provider, plugin.getKeyEncryptor()::decrypt,
+                    key -> client.chat(request, key));
+        }
+        String encryptedKey = settings.getEncryptedKey(provider);
+        if (encryptedKey == null) return null;
+        return (client, request) -> client.chat(request, plugin.getKeyEncryptor().decrypt(encryptedKey)).join();
+    }
+
+    private void transcribe(Player player, String provider, String model, TranscriptRecord.Outcome outcome,
+                            long startNanos, String prompt, String response, int promptTokens, int completionTokens) {
+        TranscriptWriter writer = plugin.getTranscriptWriter();
+        if (writer == null) return;
+        writer.append(new TranscriptRecord(System.currentTimeMillis(), player.getUniqueId(), player.getName(),
+                provider, model, outcome, (System.nanoTime() - startNanos) / 1_000_000,
+                promptTokens, completionTokens, prompt, response == null ? "" : response));
+    }
+
+    //anonymized workload trace for /chat capture; a failed call is recorded with no response
+    //records every provider call for a running capture, each with its own usage and latency, since replay
+    //treats an event as one call. the first arrives when the player asked; later tool rounds when they were sent
+    private ChatPipeline.Sender captured(long arrivalNanos, String provider, String model, String message,
+                                         ChatPipeline.Prepared prepared, ChatPipeline.Sender sender) {
+        AtomicBoolean first = new AtomicBoolean(true);
+        return (client, request) -> {
+            long sentNanos = System.nanoTime();
+            long arrival = first.getAndSet(false) ? arrivalNanos : sentNanos;
+            AIResponse response;
+            try {
+                response = sender.send(client, request);
+            } catch (RuntimeException e) {
+                TraceRecorder recorder = plugin.getTraceRecorder();
+                if (recorder != null) {
+                    recorder.record(arrival, provider, model, message.length(), prepared.estimatedPromptTokens(),
+                            0, 0, millisSince(sentNanos), true);
+                }
+                throw e;
+            }
+            TraceRecorder recorder = plugin.getTraceRecorder();
+            if (recorder != null) {
+                recorder.record(arrival, provider, model, message.length(), response.promptTokens(),
+                        response.text().length(), response.completionTokens(), millisSince(sentNanos), false);
+            }
+            return response;
+        };
+    }
+
     private int handleSetKey(CommandContext<CommandSourceStack> ctx) {
         CommandSender sender = ctx.getSource().getSender();
         if (!(sender instanceof Player player)) {
@@ -182,7 +571,7 @@ public final class ChatCommand {
 
         AIProvider provider = AIProvider.fromId(providerStr);
         if (provider == null) {
-            player.sendMessage(TextFormatter.error("Unknown provider. Use: openai, anthropic, or gemini"));
+            player.sendMessage(unknownProvider());
             return 0;
         }
 
@@ -193,25 +582,180 @@ public final class ChatCommand {
 
         UUID targetId = serverMode ? SERVER_UUID : player.getUniqueId();
 
-        CompletableFuture.runAsync(() -> {
+        plugin.getScheduler().runAsync(() -> {
             try {
                 String encrypted = plugin.getKeyEncryptor().encrypt(key);
                 plugin.getSettingsRepo().setEncryptedKey(targetId, provider, encrypted);
+                if (serverMode) plugin.reloadKeyPool();
 
                 String successMsg = serverMode
                         ? provider.displayName() + " server API key set."
                         : provider.displayName() + " API key set.";
-                runSync(() -> player.sendMessage(TextFormatter.success(successMsg)));
+                deliver(player, TextFormatter.success(successMsg));
             } catch (Exception e) {
                 String safeMsg = sanitize(e.getMessage());
                 plugin.getLogger().warning("Failed to save key for " + player.getName() + ": " + safeMsg);
-                runSync(() -> player.sendMessage(TextFormatter.error("Failed to save key: " + safeMsg)));
+                deliver(player, TextFormatter.error("Failed to save key: " + safeMsg));
             }
         });
 
         return Command.SINGLE_SUCCESS;
     }
 
+    private int handleServerKeyAdd(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(TextFormatter.error("Only players can use this command."));
+            return 0;
+        }
+
+        String providerStr = StringArgumentType.getString(ctx, "provider");
+        String key = StringArgumentType.getString(ctx, "key");
+
+        AIProvider provider = AIProvider.fromId(providerStr);
+        if (provider == null) {
+            player.sendMessage(unknownProvider());
+            return 0;
+        }
+
+        if (!plugin.getPluginConfig().getAllowedProviders().contains(provider)) {
+            player.sendMessage(TextFormatter.error(provider.displayName() + " is not enabled on this server."));
+            return 0;
+        }
+
+        plugin.getScheduler().runAsync(() -> {
+            try {
+                String encrypted = plugin.getKeyEncryptor().encrypt(key);
+                long id = plugin.getSettingsRepo().addServerKey(provider, encrypted);
+                plugin.reloadKeyPool();
+                int poolSize = plugin.getKeyPool().status(provider).size();
+                deliver(player, TextFormatter.success("Added " + provider.displayName() + " server key #" + id
+                        + " (" + poolSize + " in pool)."));
+            } catch (Exception e) {
+                String safeMsg = sanitize(e.getMessage());
+                plugin.getLogger().warning("Failed to add server key for " + player.getName() + ": " + safeMsg);
+                deliver(player, TextFormatter.error("Failed to add key: " + safeMsg));
+            }
+        });
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleServerKeyList(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(TextFormatter.error("Only players can use this command."));
+            return 0;
+        }
+
+        plugin.getScheduler().runAsync(() -> {
+            Map<AIProvider, List<KeyPool.KeyStatus>> pool = new LinkedHashMap<>();
+            Map<Long, String> masked = new HashMap<>();
+            for (AIProvider provider : AIProvider.values()) {
+                List<KeyPool.KeyStatus> keys = plugin.getKeyPool().status(provider);
+                pool.put(provider, keys);
+                for (KeyPool.KeyStatus key : keys) {
+                    masked.put(key.id(), maskKey(key.encryptedKey()));
+                }
+            }
+            deliver(player, TextFormatter.formatKeyPool(pool, masked));
+        });
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleServerKeyRemove(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(TextFormatter.error("Only players can use this command."));
+            return 0;
+        }
+
+        long id = IntegerArgumentType.getInteger(ctx, "id");
+
+        plugin.getScheduler().runAsync(() -> {
+            try {
+                if (!plugin.getSettingsRepo().removeServerKey(id)) {
+                    deliver(player, TextFormatter.error("No server key #" + id
+                            + ". Primary keys (#0) are replaced with /chat setkey."));
+                    return;
+                }
+                plugin.reloadKeyPool();
+                deliver(player, TextFormatter.success("Removed server key #" + id + "."));
+            } catch (Exception e) {
+                deliver(player, TextFormatter.error("Failed to remove key."));
+            }
+        });
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleCaptureStart(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!plugin.startCapture()) {
+            sender.sendMessage(TextFormatter.error("A capture is already running. Use /chat capture stop first."));
+            return 0;
+        }
+        sender.sendMessage(TextFormatter.success("Capturing request timings (up to "
+                + plugin.getPluginConfig().getCaptureMaxEvents() + " requests). Use /chat capture stop to save."));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleCaptureStop(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        TraceRecorder recorder = plugin.stopCapture();
+        if (recorder == null) {
+            sender.sendMessage(TextFormatter.error("No capture is running."));
+            return 0;
+        }
+
+        plugin.getScheduler().runAsync(() -> {
+            try {
+                Path file = plugin.saveCapture(recorder);
+                deliver(sender, TextFormatter.success("Saved " + recorder.size() + " requests to "
+                        + plugin.getDataFolder().toPath().relativize(file) + "."));
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to save capture: " + e.getMessage());
+                deliver(sender, TextFormatter.error("Failed to save capture: " + e.getMessage()));
+            }
+        });
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleRotateStart(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!plugin.startKeyRotation()) {
+            sender.sendMessage(TextFormatter.error("A key rotation is already running. See /chat rotatekeys status."));
+            return 0;
+        }
+        sender.sendMessage(TextFormatter.success("Re-encrypting stored keys with the current seed in the background. "
+                + "See /chat rotatekeys status."));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleRotateStop(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!plugin.stopKeyRotation()) {
+            sender.sendMessage(TextFormatter.error("No key rotation is running."));
+            return 0;
+        }
+        sender.sendMessage(TextFormatter.success("Key rotation will pause after the current batch. "
+                + "/chat rotatekeys start resumes it."));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleRotateStatus(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        KeyRotationJob job = plugin.getKeyRotation();
+        if (job == null) {
+            sender.sendMessage(TextFormatter.info("No key rotation has run since startup."));
+            return Command.SINGLE_SUCCESS;
+        }
+        sender.sendMessage(TextFormatter.formatRotationProgress(job.progress()));
+        return Command.SINGLE_SUCCESS;
+    }
+
     private int handleSetModel(CommandContext<CommandSourceStack> ctx) {
         CommandSender sender = ctx.getSource().getSender();
         if (!(sender instanceof Player player)) {
@@ -224,17 +768,24 @@ public final class ChatCommand {
 
         AIProvider provider = AIProvider.fromId(providerStr);
         if (provider == null) {
-            player.sendMessage(TextFormatter.error("Unknown provider. Use: openai, anthropic, or gemini"));
+            player.sendMessage(unknownProvider());
             return 0;
         }
 
-        CompletableFuture.runAsync(() -> {
+        boolean auto = ModelRouter.AUTO.equalsIgnoreCase(model);
+        if (auto && !plugin.getPluginConfig().isRoutingEnabled()) {
+            player.sendMessage(TextFormatter.error("Automatic model selection is not enabled on this server."));
+            return 0;
+        }
+
+        plugin.getScheduler().runAsync(() -> {
             try {
-                plugin.getSettingsRepo().setModel(player.getUniqueId(), provider, model);
-                runSync(() -> player.sendMessage(TextFormatter.success(
-                        "Model for " + provider.displayName() + " set to: " + model)));
+                plugin.getSettingsRepo().setModel(player.getUniqueId(), provider, auto ? ModelRouter.AUTO : model);
+                deliver(player, TextFormatter.success(auto
+                        ? "Model for " + provider.displayName() + " set to: auto (picked per question)"
+                        : "Model for " + provider.displayName() + " set to: " + model));
             } catch (Exception e) {
-                runSync(() -> player.sendMessage(TextFormatter.error("Failed to set model.")));
+                deliver(player, TextFormatter.error("Failed to set model."));
             }
         });
 
@@ -251,7 +802,7 @@ public final class ChatCommand {
         String providerStr = StringArgumentType.getString(ctx, "provider");
         AIProvider provider = AIProvider.fromId(providerStr);
         if (provider == null) {
-            player.sendMessage(TextFormatter.error("Unknown provider. Use: openai, anthropic, or gemini"));
+            player.sendMessage(unknownProvider());
             return 0;
         }
 
@@ -260,13 +811,13 @@ public final class ChatCommand {
             return 0;
         }
 
-        CompletableFuture.runAsync(() -> {
+        plugin.getScheduler().runAsync(() -> {
             try {
                 plugin.getSettingsRepo().setActiveProvider(player.getUniqueId(), provider);
-                runSync(() -> player.sendMessage(TextFormatter.success(
-                        "Switched to " + provider.displayName() + " (" + provider.defaultModel() + ")")));
+                deliver(player, TextFormatter.success(
+                        "Switched to " + provider.displayName() + " (" + provider.defaultModel() + ")"));
             } catch (Exception e) {
-                runSync(() -> player.sendMessage(TextFormatter.error("Failed to switch provider.")));
+                deliver(player, TextFormatter.error("Failed to switch provider."));
             }
         });
 
@@ -282,24 +833,75 @@ public final class ChatCommand {
 
         boolean serverMode = plugin.getPluginConfig().isServerKeyMode();
 
-        CompletableFuture.runAsync(() -> {
+        plugin.getScheduler().runAsync(() -> {
             try {
                 UserSettings playerSettings = plugin.getSettingsRepo().load(player.getUniqueId());
                 if (serverMode) {
-                    UserSettings serverSettings = plugin.getSettingsRepo().load(SERVER_UUID);
-                    runSync(() -> player.sendMessage(
-                            TextFormatter.formatServerStatus(playerSettings, serverSettings)));
+                    Map<AIProvider, List<KeyPool.KeyStatus>> pool = new LinkedHashMap<>();
+                    for (AIProvider provider : AIProvider.values()) {
+                        pool.put(provider, plugin.getKeyPool().status(provider));
+                    }
+                    boolean showUsage = player.hasPermission("askai.admin");
+                    deliver(player, TextFormatter.formatServerStatus(playerSettings, pool, showUsage));
                 } else {
-                    runSync(() -> player.sendMessage(TextFormatter.formatStatus(playerSettings)));
+                    deliver(player, TextFormatter.formatStatus(playerSettings));
                 }
             } catch (Exception e) {
-                runSync(() -> player.sendMessage(TextFormatter.error("Failed to load settings.")));
+                deliver(player, TextFormatter.error("Failed to load settings."));
             }
         });
 
         return Command.SINGLE_SUCCESS;
     }
 
+    private int handleStats(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        sender.sendMessage(TextFormatter.formatStats(plugin.getDeliveryQueue().stats()));
+        if (plugin.getRequestHedger().isEnabled()) {
+            sender.sendMessage(TextFormatter.formatHedging(plugin.getRequestHedger().stats()));
+        }
+        PluginAskAIService api = plugin.getAskAIService();
+        if (api != null) {
+            sender.sendMessage(TextFormatter.formatApiUsage(api.usage(), api.queued()));
+        }
+        if (plugin.getAdmission().isEnabled()) {
+            sender.sendMessage(TextFormatter.formatLoad(plugin.getAdmission().status()));
+        }
+        if (plugin.getSimilarityCache().isEnabled()) {
+            sender.sendMessage(TextFormatter.formatSimilarityCache(plugin.getSimilarityCache().stats()));
+        }
+        SqliteMaintenance maintenance = plugin.getSqliteMaintenance();
+        if (maintenance != null && maintenance.settings().enabled()) {
+            sender.sendMessage(TextFormatter.formatSqliteMaintenance(maintenance.status()));
+        }
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleRouting(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!plugin.getPluginConfig().isRoutingEnabled()) {
+            sender.sendMessage(TextFormatter.info("Automatic model selection is disabled in config.yml."));
+            return Command.SINGLE_SUCCESS;
+        }
+        ModelRouter router = plugin.getModelRouter();
+        Map<AIProvider, List<ModelRouter.ModelHealth>> health = new LinkedHashMap<>();
+        for (AIProvider provider : plugin.getPluginConfig().getAllowedProviders()) {
+            health.put(provider, router.health(provider));
+        }
+        sender.sendMessage(TextFormatter.formatRouting(health, router.recent(10)));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private int handleKnowledgeStats(CommandContext<CommandSourceStack> ctx) {
+        CommandSender sender = ctx.getSource().getSender();
+        if (!plugin.getPluginConfig().isKnowledgeBaseEnabled()) {
+            sender.sendMessage(TextFormatter.info("The knowledge base is disabled in config.yml."));
+            return Command.SINGLE_SUCCESS;
+        }
+        sender.sendMessage(TextFormatter.formatKnowledgeStats(plugin.getKnowledgeBase().stats()));
+        return Command.SINGLE_SUCCESS;
+    }
+
     private int handleReload(CommandContext<CommandSourceStack> ctx) {
         CommandSender sender = ctx.getSource().getSender();
         plugin.reloadPluginConfig();
@@ -324,6 +926,10 @@ public final class ChatCommand {
         String providerStr = StringArgumentType.getString(ctx, "provider");
         AIProvider provider = AIProvider.fromId(providerStr);
         if (provider != null) {
+            if (plugin.getPluginConfig().isRoutingEnabled()
+                    && ModelRouter.AUTO.startsWith(builder.getRemainingLowerCase())) {
+                builder.suggest(ModelRouter.AUTO);
+            }
             for (String model : provider.suggestedModels()) {
                 if (model.toLowerCase().startsWith(builder.getRemainingLowerCase())) {
                     builder.suggest(model);
@@ -335,13 +941,43 @@ public final class ChatCommand {
 
     //helpers
 
-    private void runSync(Runnable task) {
-        Bukkit.getScheduler().runTask(plugin, task);
+    private void deliver(Player player, Component message) {
+        plugin.getDeliveryQueue().send(player, message);
+    }
+
+    //console output is thread-safe; players still go through the delivery queue
+    private void deliver(CommandSender sender, Component message) {
+        if (sender instanceof Player player) {
+            deliver(player, message);
+        } else {
+            sender.sendMessage(message);
+        }
+    }
+
+    private Component unknownProvider() {
+        String ids = AIProvider.values().stream()
+                .filter(plugin.getPluginConfig().getAllowedProviders()::contains)
+                .map(AIProvider::id)
+                .collect(Collectors.joining(", "));
+        return TextFormatter.error("Unknown provider. Use: " + ids);
+    }
+
+    //last four characters only, enough to tell keys apart
+    private String maskKey(String encryptedKey) {
+        try {
+            String key = plugin.getKeyEncryptor().decrypt(encryptedKey);
+            return key.length() <= 8 ? "****" : "..." + key.substring(key.length() - 4);
+        } catch (RuntimeException e) {
+            return "(unreadable)";
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
     }
 
     private static String sanitize(String message) {
         if (message == null) return "Unknown error";
-        //strip anything that looks like an API key (long alphanumeric strings)
-        return message.replaceAll("[A-Za-z0-9_-]{20,}", "***");
+        return KEY_LIKE.matcher(message).replaceAll("***");
     }
 }
@@ -1,10 +1,30 @@
 package com.askai.config;
 
+import com.askai.api.AskAIQuery;
+import com.askai.filter.PromptFilter;
+import com.askai.load.AdmissionController;
 import com.askai.model.AIProvider;
+import com.askai.pipeline.ChatPipeline;
+import com.askai.pipeline.RequestHedger;
+import com.askai.pipeline.SimilarityCache;
+import com.askai.routing.ModelRouter;
+import com.askai.provider.HttpClientSettings;
+import com.askai.provider.HttpCompression;
+import com.askai.storage.DatabaseManager;
+import com.askai.storage.SqliteMaintenance;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public final class PluginConfig {
@@ -22,6 +42,26 @@ public final class PluginConfig {
         return config.getString("encryption.seed", "CHANGE-ME-use-a-long-random-string-here");
     }
 
+    public List<String> getPreviousEncryptionSeeds() {
+        return config.getStringList("encryption.previous-seeds");
+    }
+
+    public int getRotationBatchSize() {
+        return config.getInt("encryption.rotation.batch-size", 200);
+    }
+
+    public long getRotationPauseMillis() {
+        return config.getLong("encryption.rotation.pause-millis", 250);
+    }
+
+    public int getKeyPoolRateLimitedBenchSeconds() {
+        return config.getInt("key-pool.rate-limited-bench-seconds", 30);
+    }
+
+    public int getKeyPoolInvalidBenchSeconds() {
+        return config.getInt("key-pool.invalid-bench-seconds", 600);
+    }
+
     public int getRateLimitRequests() {
         return config.getInt("rate-limit.requests", 10);
     }
@@ -30,6 +70,47 @@ public final class PluginConfig {
         return config.getInt("rate-limit.window-seconds", 60);
     }
 
+    //"none" (this server only), "redis", or "local" (an in-process stand-in, for trying it on one server)
+    public String getNetworkType() {
+        return config.getString("network.type", "none").toLowerCase(Locale.ROOT);
+    }
+
+    public String getRedisHost() {
+        return config.getString("network.redis.host", "localhost");
+    }
+
+    public int getRedisPort() {
+        return config.getInt("network.redis.port", 6379);
+    }
+
+    public String getRedisPassword() {
+        return config.getString("network.redis.password", "");
+    }
+
+    public int getRedisDatabase() {
+        return Math.max(0, config.getInt("network.redis.database", 0));
+    }
+
+    public String getRedisKeyPrefix() {
+        return config.getString("network.redis.key-prefix", "askai:");
+    }
+
+    public int getNetworkTimeoutMillis() {
+        return Math.max(10, config.getInt("network.timeout-ms", 200));
+    }
+
+    public int getNetworkRetrySeconds() {
+        return Math.max(0, config.getInt("network.retry-seconds", 5));
+    }
+
+    public int getNetworkLeaseSize() {
+        return Math.max(1, config.getInt("network.lease-size", 3));
+    }
+
+    public int getSettingsCacheSeconds() {
+        return Math.max(0, config.getInt("settings-cache-seconds", 60));
+    }
+
     public int getMaxMessageLength() {
         return config.getInt("max-message-length", 2000);
     }
@@ -38,19 +119,443 @@ public final class PluginConfig {
         return config.getInt("max-response-tokens", 1024);
     }
 
+    public int getMaxPromptTokens() {
+        return config.getInt("token-budget.max-prompt-tokens", 4000);
+    }
+
+    public int getMaxTotalTokens() {
+        return config.getInt("token-budget.max-total-tokens", 0);
+    }
+
     public String getSystemPrompt() {
         return config.getString("system-prompt",
                 "You are a helpful assistant in a Minecraft server. Keep responses concise and relevant. Responses should be clear and concise, not be overly detailed. At the end of the reponse, don't ask the user for more questions or information, just respond accurately, in short.");
     }
 
+    public ChatPipeline.Limits getPromptLimits() {
+        return new ChatPipeline.Limits(getSystemPrompt(), getMaxPromptTokens(), getMaxResponseTokens(),
+                getMaxTotalTokens());
+    }
+
+    public boolean isToolsEnabled() {
+        return config.getBoolean("tools.enabled", false);
+    }
+
+    public Set<String> getAllowedTools() {
+        return Set.copyOf(config.getStringList("tools.allowed"));
+    }
+
+    public String getToolsStaffPermission() {
+        return config.getString("tools.staff-permission", "askai.staff");
+    }
+
+    public ChatPipeline.ToolLimits getToolLimits() {
+        return new ChatPipeline.ToolLimits(
+                Math.max(1, config.getInt("tools.max-rounds", 3)),
+                Math.max(1, config.getInt("tools.max-seconds", 20)) * 1000L);
+    }
+
+    public int getToolsCacheSeconds() {
+        return config.getInt("tools.cache-seconds", 5);
+    }
+
+    public double getToolsMaxMillisPerTick() {
+        return config.getDouble("tools.max-millis-per-tick", 1.0);
+    }
+
+    public int getCaptureMaxEvents() {
+        return Math.max(1, config.getInt("capture.max-events", 100000));
+    }
+
+    public int getDeliveryMaxMessagesPerTick() {
+        return config.getInt("delivery.max-messages-per-tick", 20);
+    }
+
+    public double getDeliveryMaxMillisPerTick() {
+        return config.getDouble("delivery.max-millis-per-tick", 2.0);
+    }
+
+    public boolean isTranscriptsEnabled() {
+        return config.getBoolean("transcripts.enabled", false);
+    }
+
+    public int getTranscriptQueueCapacity() {
+        return config.getInt("transcripts.queue-capacity", 4096);
+    }
+
+    public long getTranscriptMaxSegmentBytes() {
+        return Math.max(1, config.getLong("transcripts.max-segment-mb", 16)) * 1024 * 1024;
+    }
+
+    public long getTranscriptMaxSegmentAgeMillis() {
+        return Math.max(1, config.getLong("transcripts.max-segment-age-hours", 24)) * 3_600_000L;
+    }
+
+    public long getTranscriptRetentionMillis() {
+        return config.getLong("transcripts.retention-days", 30) * 86_400_000L;
+    }
+
+    public boolean isRoutingEnabled() {
+        return config.getBoolean("routing.enabled", false);
+    }
+
+    public boolean isRoutingLogDecisions() {
+        return config.getBoolean("routing.log-decisions", false);
+    }
+
+    public ModelRouter.Settings getRoutingSettings() {
+        Map<AIProvider, List<String>> models = new HashMap<>();
+        for (AIProvider provider : AIProvider.values()) {
+            List<String> list = config.getStringList("routing.models." + provider.id());
+            if (list != null && !list.isEmpty()) models.put(provider, List.copyOf(list));
+        }
+        return new ModelRouter.Settings(
+                models,
+                Math.max(1, config.getInt("routing.complex-tokens", 400)),
+                Math.max(1, config.getInt("routing.window", 200)),
+                Math.max(1, config.getInt("routing.min-samples", 10)),
+                Math.max(1, config.getLong("routing.max-p95-seconds", 20)) * 1000L,
+                config.getDouble("routing.max-error-rate", 0.25),
+                Math.max(1, config.getInt("routing.audit-size", 50))
+        );
+    }
+
+    public RequestHedger.Settings getHedgingSettings() {
+        return new RequestHedger.Settings(
+                config.getBoolean("hedging.enabled", false),
+                Math.max(0, Math.min(1, config.getDouble("hedging.max-fraction", 0.05))),
+                Math.max(1, config.getInt("hedging.min-samples", 20)),
+                Math.max(0, config.getLong("hedging.fallback-delay-ms", 8000)),
+                Math.max(0, config.getLong("hedging.min-delay-ms", 1000))
+        );
+    }
+
+    //null to hedge on the same provider
+    public AIProvider getHedgingAlternateProvider() {
+        return AIProvider.fromId(config.getString("hedging.alternate-provider", ""));
+    }
+
+    public long getCompareTimeoutMillis() {
+        return Math.max(1, config.getLong("compare.timeout-seconds", 30)) * 1000L;
+    }
+
+    public boolean isApiEnabled() {
+        return config.getBoolean("api.enabled", true);
+    }
+
+    public int getApiRateLimitRequests() {
+        return config.getInt("api.rate-limit.requests", 60);
+    }
+
+    public int getApiRateLimitWindowSeconds() {
+        return config.getInt("api.rate-limit.window-seconds", 60);
+    }
+
+    public AIProvider getApiDefaultProvider() {
+        AIProvider provider = AIProvider.fromId(config.getString("api.default-provider", "openai"));
+        return provider != null ? provider : AIProvider.defaultProvider();
+    }
+
+    public int getApiMaxConcurrent() {
+        return Math.max(1, config.getInt("api.max-concurrent", 4));
+    }
+
+    public int getApiMaxQueued() {
+        return Math.max(0, config.getInt("api.max-queued", 256));
+    }
+
+    public int getApiCacheSeconds() {
+        return config.getInt("api.cache-seconds", 300);
+    }
+
+    public int getApiCacheSize() {
+        return config.getInt("api.cache-size", 1000);
+    }
+
+    //api.caller-priority.<plugin name>: high|normal|low. unknown values are ignored
+    public Map<String, AskAIQuery.Priority> getApiCallerPriorities() {
+        ConfigurationSection section = config.getConfigurationSection("api.caller-priority");
+        if (section == null) return Map.of();
+        Map<String, AskAIQuery.Priority> priorities = new HashMap<>();
+        for (String caller : section.getKeys(false)) {
+            String value = section.getString(caller, "");
+            for (AskAIQuery.Priority priority : AskAIQuery.Priority.values()) {
+                if (priority.name().equalsIgnoreCase(value)) priorities.put(caller, priority);
+            }
+        }
+        return Map.copyOf(priorities);
+    }
+
+    //http.providers.<id>.<key> overrides http.<key>
+    public HttpClientSettings getHttpSettings(AIProvider provider) {
+        String override = "http.providers." + provider.id() + ".";
+        return new HttpClientSettings(
+                HttpClientSettings.parseVersion(config.getString(override + "version",
+                        config.getString("http.version", "HTTP_2"))),
+                config.getInt(override + "connect-timeout-seconds",
+                        config.getInt("http.connect-timeout-seconds", 10)),
+                config.getInt(override + "threads", config.getInt("http.threads", 0)),
+                new HttpCompression(
+                        config.getBoolean(override + "compression.responses",
+                                config.getBoolean("http.compression.responses", true)),
+                        Math.max(0, config.getInt(override + "compression.request-min-bytes",
+                                config.getInt("http.compression.request-min-bytes", 8192))))
+        );
+    }
+
+    public boolean isWarmupEnabled() {
+        return config.getBoolean("http.warmup.enabled", true);
+    }
+
+    public int getWarmupIdleSeconds() {
+        return config.getInt("http.warmup.idle-seconds", 240);
+    }
+
+    public int getKeepAliveSeconds() {
+        return config.getInt("http.warmup.keepalive-seconds", 60);
+    }
+
+    public boolean isKnowledgeBaseEnabled() {
+        return config.getBoolean("knowledge-base.enabled", false);
+    }
+
+    public int getKnowledgeBaseTopK() {
+        return Math.max(0, config.getInt("knowledge-base.top-k", 3));
+    }
+
+    public double getKnowledgeBaseFaqThreshold() {
+        return config.getDouble("knowledge-base.faq-threshold", 0.8);
+    }
+
+    public int getKnowledgeBaseRefreshSeconds() {
+        return Math.max(5, config.getInt("knowledge-base.refresh-seconds", 30));
+    }
+
+    public String getStorageType() {
+        return config.getString("storage.type", "sqlite").toLowerCase();
+    }
+
+    public int getStoragePoolSize() {
+        return Math.max(1, config.getInt("storage.pool-size", 4));
+    }
+
+    public String getStorageTablePrefix() {
+        return config.getString("storage.table-prefix", "askai_");
+    }
+
+    public DatabaseManager.Tuning getSqliteTuning() {
+        String synchronous = config.getString("storage.sqlite.synchronous", "NORMAL").toUpperCase(Locale.ROOT);
+        if (!Set.of("OFF", "NORMAL", "FULL", "EXTRA").contains(synchronous)) synchronous = "NORMAL";
+        return new DatabaseManager.Tuning(synchronous,
+                Math.max(0, config.getLong("storage.sqlite.mmap-size-mb", 0)) * 1024L * 1024L);
+    }
+
+    public SqliteMaintenance.Settings getSqliteMaintenanceSettings() {
+        String path = "storage.sqlite.maintenance.";
+        return new SqliteMaintenance.Settings(
+                config.getBoolean(path + "enabled", true),
+                Math.max(10, config.getLong(path + "check-seconds", 300)) * 1000L,
+                Math.max(0, config.getInt(path + "max-pending", 2)),
+                Math.max(0, config.getLong(path + "checkpoint-minutes", 30)) * 60_000L,
+                config.getBoolean(path + "incremental-vacuum", true),
+                Math.max(0, config.getLong(path + "vacuum-minutes", 360)) * 60_000L,
+                Math.max(1, config.getInt(path + "vacuum-pages", 500)),
+                Math.max(0, config.getLong(path + "optimize-minutes", 1440)) * 60_000L);
+    }
+
+    public String getMysqlHost() {
+        return config.getString("storage.mysql.host", "localhost");
+    }
+
+    public int getMysqlPort() {
+        return config.getInt("storage.mysql.port", 3306);
+    }
+
+    public String getMysqlDatabase() {
+        return config.getString("storage.mysql.database", "askai");
+    }
+
+    public String getMysqlUsername() {
+        return config.getString("storage.mysql.username", "askai");
+    }
+
+    public String getMysqlPassword() {
+        return config.getString("storage.mysql.password", "");
+    }
+
+    //providers.<id>: name, protocol, base-url, default-model, models, color, api-key-required.
+    //a built-in id takes anything left out from the built-in definition. empty = the built-in providers
+    public List<AIProvider> getProviders(Consumer<String> warn) {
+        ConfigurationSection section = config.getConfigurationSection("providers");
+        if (section == null) return List.of();
+        List<AIProvider> providers = new ArrayList<>();
+        for (String key : section.getKeys(false)) {
+            String id = key.toLowerCase(Locale.ROOT);
+            String path = "providers." + key + ".";
+            if (!AIProvider.ID_PATTERN.matcher(id).matches()) {
+                warn.accept("Skipping provider '" + key + "': ids may only use letters, digits, - and _.");
+                continue;
+            }
+            AIProvider builtIn = AIProvider.builtIn().stream()
+                    .filter(p -> p.id().equals(id))
+                    .findFirst().orElse(null);
+
+            String protocolId = config.getString(path + "protocol", builtIn != null ? builtIn.protocol().id() : id);
+            AIProvider.Protocol protocol = AIProvider.Protocol.fromId(protocolId);
+            if (protocol == null) {
+                warn.accept("Skipping provider '" + id + "': unknown protocol '" + protocolId
+                        + "', use openai, anthropic or gemini.");
+                continue;
+            }
+
+            URI baseUri = null;
+            String baseUrl = config.getString(path + "base-url", "").trim();
+            if (!baseUrl.isEmpty()) {
+                try {
+                    //the API paths are resolved against it, so it has to end in a slash
+                    baseUri = new URI(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+                } catch (URISyntaxException e) {
+                    baseUri = null;
+                }
+                if (baseUri == null || baseUri.getHost() == null
+                        || !("http".equals(baseUri.getScheme()) || "https".equals(baseUri.getScheme()))) {
+                    warn.accept("Skipping provider '" + id + "': base-url '" + baseUrl + "' is not an http(s) URL.");
+                    continue;
+                }
+            }
+
+            List<String> models = config.getStringList(path + "models");
+            if (models == null || models.isEmpty()) {
+                models = builtIn != null ? builtIn.suggestedModels() : List.of();
+            }
+            String defaultModel = config.getString(path + "default-model",
+                    builtIn != null ? builtIn.defaultModel() : models.isEmpty() ? "" : models.get(0));
+            if (defaultModel == null || defaultModel.isBlank()) {
+                warn.accept("Skipping provider '" + id + "': set a default-model or a list of models.");
+                continue;
+            }
+            if (models.isEmpty()) models = List.of(defaultModel);
+
+            providers.add(new AIProvider(id,
+                    config.getString(path + "name", builtIn != null ? builtIn.displayName() : key),
+                    protocol,
+                    baseUri,
+                    defaultModel,
+                    models,
+                    config.getString(path + "color", builtIn != null ? builtIn.color() : "white"),
+                    config.getBoolean(path + "api-key-required", true)));
+        }
+        return providers;
+    }
+
     public Set<AIProvider> getAllowedProviders() {
         List<String> ids = config.getStringList("allowed-providers");
         if (ids.isEmpty()) {
-            return Set.of(AIProvider.values());
+            return Set.copyOf(AIProvider.values());
         }
         return ids.stream()
                 .map(AIProvider::fromId)
                 .filter(p -> p != null)
                 .collect(Collectors.toUnmodifiableSet());
     }
+
+    public boolean isPromptFilterEnabled() {
+        return config.getBoolean("prompt-filter.enabled", false);
+    }
+
+    public String getPromptFilterRedactWith() {
+        return config.getString("prompt-filter.redact-with", "***");
+    }
+
+    //rules in the order listed; when several route rules match, the first one wins
+    public List<PromptFilter.Rule> getPromptFilterRules(Consumer<String> warn) {
+        ConfigurationSection section = config.getConfigurationSection("prompt-filter.rules");
+        if (section == null) return List.of();
+        List<PromptFilter.Rule> rules = new ArrayList<>();
+        for (String name : section.getKeys(false)) {
+            String path = "prompt-filter.rules." + name + ".";
+            String actionId = config.getString(path + "action", "");
+            PromptFilter.Action action = PromptFilter.Action.fromId(actionId);
+            if (action == null) {
+                warn.accept("Skipping prompt-filter rule '" + name + "': unknown action '" + actionId
+                        + "', use reject, redact or route.");
+                continue;
+            }
+            Map<String, String> models = new HashMap<>();
+            ConfigurationSection modelSection = config.getConfigurationSection(path + "models");
+            if (modelSection != null) {
+                for (String provider : modelSection.getKeys(false)) {
+                    models.put(provider.toLowerCase(Locale.ROOT), modelSection.getString(provider, ""));
+                }
+            }
+            if (action == PromptFilter.Action.ROUTE && models.isEmpty()) {
+                warn.accept("prompt-filter rule '" + name + "' routes but lists no models, so it does nothing.");
+            }
+            rules.add(new PromptFilter.Rule(name, action,
+                    config.getString(path + "message", "Your message was blocked by the server's chat filter."),
+                    config.getStringList(path + "words"),
+                    config.getStringList(path + "files"),
+                    config.getStringList(path + "patterns"),
+                    config.getBoolean(path + "whole-words", true),
+                    Map.copyOf(models)));
+        }
+        return rules;
+    }
+
+    public AdmissionController.Settings getLoadSheddingSettings() {
+        Map<AdmissionController.Level, AdmissionController.Threshold> thresholds =
+                new EnumMap<>(AdmissionController.Level.class);
+        for (AdmissionController.Level level : AdmissionController.Level.values()) {
+            if (level == AdmissionController.Level.NORMAL) continue;
+            String path = "load-shedding." + level.id() + ".";
+            double enterMspt = Math.max(0, config.getDouble(path + "enter-mspt", 0));
+            int enterPending = Math.max(0, config.getInt(path + "enter-pending", 0));
+            //exit values above the enter values would leave a stage as soon as it starts, and an exit value
+            //of 0 or less could never be gone under, so those exit where they entered
+            double exitMspt = config.getDouble(path + "exit-mspt", enterMspt);
+            int exitPending = config.getInt(path + "exit-pending", enterPending);
+            thresholds.put(level, new AdmissionController.Threshold(
+                    enterMspt,
+                    exitMspt > 0 ? Math.min(enterMspt, exitMspt) : enterMspt,
+                    enterPending,
+                    exitPending > 0 ? Math.min(enterPending, exitPending) : enterPending));
+        }
+        Map<String, String> fastModels = new HashMap<>();
+        ConfigurationSection models = config.getConfigurationSection("load-shedding.fast-model.models");
+        if (models != null) {
+            for (String provider : models.getKeys(false)) {
+                fastModels.put(provider.toLowerCase(Locale.ROOT), models.getString(provider, ""));
+            }
+        }
+        return new AdmissionController.Settings(
+                config.getBoolean("load-shedding.enabled", false),
+                Math.max(0, config.getLong("load-shedding.cooldown-seconds", 30)) * 1000L,
+                thresholds,
+                Math.max(1, config.getInt("load-shedding.reduce-tokens.max-response-tokens", 256)),
+                Map.copyOf(fastModels),
+                Math.max(1, config.getInt("load-shedding.defer-delivery.max-messages-per-tick", 2)),
+                config.getString("load-shedding.reject.message",
+                        "The server is busy right now. Please ask again in a minute."));
+    }
+
+    public int getLoadSheddingCheckTicks() {
+        return Math.max(1, config.getInt("load-shedding.check-ticks", 20));
+    }
+
+    public boolean isLoadSheddingNotifyAdmins() {
+        return config.getBoolean("load-shedding.notify-admins", true);
+    }
+
+    public SimilarityCache.Settings getSimilarityCacheSettings() {
+        return new SimilarityCache.Settings(
+                config.getBoolean("similarity-cache.enabled", false),
+                Math.min(1.0, Math.max(0.05, config.getDouble("similarity-cache.threshold", 0.8))),
+                Math.max(1, config.getInt("similarity-cache.bands", 20)),
+                Math.max(1, config.getInt("similarity-cache.rows", 5)),
+                Math.max(1, config.getInt("similarity-cache.shingle-size", 3)),
+                Math.max(1, config.getLong("similarity-cache.max-memory-mb", 16)) * 1024L * 1024L,
+                Math.max(1, config.getLong("similarity-cache.ttl-seconds", 3600)) * 1000L,
+                Math.min(1.0, Math.max(0, config.getDouble("similarity-cache.verify-fraction", 0.05))),
+                Math.min(1.0, Math.max(0, config.getDouble("similarity-cache.answer-similarity", 0.3))));
+    }
 }
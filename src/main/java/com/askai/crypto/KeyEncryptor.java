@@ -1,5 +1,7 @@
 package com.askai.crypto;
 
+import com.askai.jfr.KeyDecryptEvent;
+
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
@@ -11,10 +13,15 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.security.spec.KeySpec;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public final class KeyEncryptor {
     private static final String ALGORITHM = "AES/GCM/NoPadding";
@@ -23,15 +30,36 @@ public final class KeyEncryptor {
     private static final int KEY_BITS = 256;
     private static final int PBKDF2_ITERATIONS = 100_000;
     private static final String SALT_FILE = ".salt";
+    //the default (non-blocking) CSPRNG. getInstanceStrong() can block on a fresh server's entropy pool
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    //ciphertexts are stored as "k<key id>:<base64>" so the right seed can be picked after a rotation.
+    //values written before versioning have no prefix and are tried against every configured seed
+    private static final char VERSION_MARK = 'k';
+    private static final char VERSION_END = ':';
 
-    private final SecretKey secretKey;
+    private final SecretKey currentKey;
+    private final String currentPrefix;
+    //key id -> key, current seed first
+    private final Map<String, SecretKey> keys = new LinkedHashMap<>();
 
     public KeyEncryptor(String configSeed, File dataFolder) {
+        this(configSeed, List.of(), dataFolder);
+    }
+
+    //previousSeeds stay readable so keys written under them can still be decrypted and rotated
+    public KeyEncryptor(String configSeed, List<String> previousSeeds, File dataFolder) {
         try {
             byte[] salt = loadOrCreateSalt(dataFolder);
             SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(configSeed.toCharArray(), salt, PBKDF2_ITERATIONS, KEY_BITS);
-            this.secretKey = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
+            this.currentKey = derive(factory, configSeed, salt);
+            String currentId = keyId(currentKey);
+            this.currentPrefix = VERSION_MARK + currentId + VERSION_END;
+            keys.put(currentId, currentKey);
+            for (String seed : previousSeeds) {
+                SecretKey key = derive(factory, seed, salt);
+                keys.putIfAbsent(keyId(key), key);
+            }
         } catch (GeneralSecurityException e) {
             throw new RuntimeException("Failed to initialize encryption", e);
         }
@@ -41,29 +69,89 @@ public final class KeyEncryptor {
         try {
             Cipher cipher = Cipher.getInstance(ALGORITHM);
             byte[] iv = new byte[IV_BYTES];
-            SecureRandom.getInstanceStrong().nextBytes(iv);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            RANDOM.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, currentKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
             byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
             byte[] combined = new byte[IV_BYTES + ciphertext.length];
             System.arraycopy(iv, 0, combined, 0, IV_BYTES);
             System.arraycopy(ciphertext, 0, combined, IV_BYTES, ciphertext.length);
-            return Base64.getEncoder().encodeToString(combined);
+            return currentPrefix + Base64.getEncoder().encodeToString(combined);
         } catch (GeneralSecurityException e) {
             throw new RuntimeException("Encryption failed", e);
         }
     }
 
     public String decrypt(String encoded) {
+        KeyDecryptEvent event = new KeyDecryptEvent();
+        event.begin();
         try {
-            byte[] combined = Base64.getDecoder().decode(encoded);
-            byte[] iv = Arrays.copyOfRange(combined, 0, IV_BYTES);
-            byte[] ciphertext = Arrays.copyOfRange(combined, IV_BYTES, combined.length);
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
-            return new String(cipher.doFinal(ciphertext), StandardCharsets.UTF_8);
-        } catch (GeneralSecurityException | IllegalArgumentException e) {
-            throw new RuntimeException("Decryption failed. key may have been corrupted or encryption seed changed", e);
+            String plaintext = decrypt(encoded, event);
+            event.succeeded = true;
+            return plaintext;
+        } finally {
+            event.commit();
+        }
+    }
+
+    private String decrypt(String encoded, KeyDecryptEvent event) {
+        int end = encoded.indexOf(VERSION_END);
+        if (end > 0 && encoded.charAt(0) == VERSION_MARK) {
+            event.versioned = true;
+            SecretKey key = keys.get(encoded.substring(1, end));
+            if (key == null) {
+                throw new RuntimeException("Decryption failed. key was encrypted with a seed that is no longer configured");
+            }
+            event.seedsTried = 1;
+            try {
+                return decrypt(key, encoded.substring(end + 1));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new RuntimeException("Decryption failed. key may have been corrupted", e);
+            }
+        }
+
+        //unversioned: GCM's tag tells us which seed it was written with
+        for (SecretKey key : keys.values()) {
+            event.seedsTried++;
+            try {
+                return decrypt(key, encoded);
+            } catch (GeneralSecurityException | IllegalArgumentException ignored) {
+            }
         }
+        throw new RuntimeException("Decryption failed. key may have been corrupted or encryption seed changed");
+    }
+
+    //true if the value is not yet encrypted with the current seed
+    public boolean needsRotation(String encoded) {
+        return !encoded.startsWith(currentPrefix);
+    }
+
+    public String reencrypt(String encoded) {
+        return encrypt(decrypt(encoded));
+    }
+
+    public String currentKeyId() {
+        return currentPrefix.substring(1, currentPrefix.length() - 1);
+    }
+
+    private static String decrypt(SecretKey key, String base64) throws GeneralSecurityException {
+        byte[] combined = Base64.getDecoder().decode(base64);
+        if (combined.length <= IV_BYTES) throw new IllegalArgumentException("Ciphertext too short");
+        byte[] iv = Arrays.copyOfRange(combined, 0, IV_BYTES);
+        byte[] ciphertext = Arrays.copyOfRange(combined, IV_BYTES, combined.length);
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        return new String(cipher.doFinal(ciphertext), StandardCharsets.UTF_8);
+    }
+
+    private static SecretKey derive(SecretKeyFactory factory, String seed, byte[] salt) throws GeneralSecurityException {
+        KeySpec spec = new PBEKeySpec(seed.toCharArray(), salt, PBKDF2_ITERATIONS, KEY_BITS);
+        return new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
+    }
+
+    //short public fingerprint of a derived key. reveals nothing usable about the key or the seed
+    private static String keyId(SecretKey key) throws GeneralSecurityException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getEncoded());
+        return HexFormat.of().formatHex(digest, 0, 4);
     }
 
     private static byte[] loadOrCreateSalt(File dataFolder) {
@@ -76,11 +164,7 @@ public final class KeyEncryptor {
             }
         }
         byte[] salt = new byte[16];
-        try {
-            SecureRandom.getInstanceStrong().nextBytes(salt);
-        } catch (GeneralSecurityException e) {
-            new SecureRandom().nextBytes(salt);
-        }
+        RANDOM.nextBytes(salt);
         try {
             dataFolder.mkdirs();
             Files.write(saltFile.toPath(), salt);
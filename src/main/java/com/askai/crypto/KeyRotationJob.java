@@ -0,0 +1,219 @@
+package com.askai.crypto;
+
+import com.askai.model.ServerKey;
+import com.askai.storage.SettingsStorage;
+import com.askai.storage.StoredKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+//re-encrypts every stored key under the current seed after a rotation. works in small keyset-paged
+//batches, one short transaction each with a pause in between, so the database is never locked for long.
+//the cursor is saved after every batch and the job picks up where it left off after a restart
+public final class KeyRotationJob {
+    private static final String STATE_FILE = "key-rotation.properties";
+
+    public enum State { RUNNING, PAUSED, DONE, FAILED }
+
+    public record Progress(State state, String targetKeyId, int total, long scanned, long rotated,
+                           long alreadyCurrent, long conflicts, long unreadable, long elapsedMillis) {
+    }
+
+    private final SettingsStorage storage;
+    private final KeyEncryptor encryptor;
+    private final Path stateFile;
+    private final Logger logger;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final Runnable onServerKeysChanged;
+
+    private volatile State state = State.PAUSED;
+    private volatile boolean stopRequested;
+    private volatile int total;
+    private volatile long scanned;
+    private volatile long rotated;
+    private volatile long alreadyCurrent;
+    private volatile long conflicts;
+    private volatile long unreadable;
+    private volatile long startedNanos;
+    private volatile long endedNanos;
+    private StoredKey cursor;
+
+    public KeyRotationJob(SettingsStorage storage, KeyEncryptor encryptor, Path dataFolder, Logger logger,
+                          int batchSize, long pauseMillis, Runnable onServerKeysChanged) {
+        this.storage = storage;
+        this.encryptor = encryptor;
+        this.stateFile = dataFolder.resolve(STATE_FILE);
+        this.logger = logger;
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = Math.max(0, pauseMillis);
+        this.onServerKeysChanged = onServerKeysChanged;
+    }
+
+    //an unfinished rotation left behind by a stop or a restart
+    public static boolean hasSavedState(Path dataFolder) {
+        return Files.exists(dataFolder.resolve(STATE_FILE));
+    }
+
+    public void start() {
+        stopRequested = false;
+        state = State.RUNNING;
+        Thread.ofPlatform().daemon().name("AskAI-key-rotation").start(this::run);
+    }
+
+    //finishes the batch in flight, saves the cursor and stops
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    public Progress progress() {
+        long end = endedNanos > startedNanos ? endedNanos : System.nanoTime();
+        long elapsed = startedNanos == 0 ? 0 : (end - startedNanos) / 1_000_000;
+        return new Progress(state, encryptor.currentKeyId(), total, scanned, rotated,
+                alreadyCurrent, conflicts, unreadable, elapsed);
+    }
+
+    private void run() {
+        endedNanos = 0;
+        startedNanos = System.nanoTime();
+        try {
+            rotate();
+        } finally {
+            endedNanos = System.nanoTime();
+        }
+    }
+
+    private void rotate() {
+        try {
+            if (loadState()) {
+                logger.info("Resuming key rotation to seed " + encryptor.currentKeyId() + " after " + scanned + " keys.");
+            } else {
+                logger.info("Starting key rotation to seed " + encryptor.currentKeyId() + ".");
+            }
+            total = storage.countEncryptedKeys();
+
+            //the extra server keys are few; checking them all on every start is cheap and idempotent
+            rotateServerKeys();
+
+            while (!stopRequested) {
+                List<StoredKey> page = storage.loadEncryptedKeys(cursor, batchSize);
+                if (page.isEmpty()) {
+                    finish();
+                    return;
+                }
+                rotateBatch(page);
+                cursor = page.get(page.size() - 1);
+                scanned += page.size();
+                saveState();
+                if (pauseMillis > 0) Thread.sleep(pauseMillis);
+            }
+            state = State.PAUSED;
+            logger.info("Key rotation paused after " + scanned + " of " + total + " keys.");
+        } catch (InterruptedException e) {
+            state = State.PAUSED;
+            Thread.currentThread().interrupt();
+        } catch (SQLException | IOException e) {
+            state = State.FAILED;
+            logger.warning("Key rotation failed after " + scanned + " keys, run it again to resume: " + e.getMessage());
+        }
+    }
+
+    private void rotateBatch(List<StoredKey> page) throws SQLException {
+        List<StoredKey> expected = new ArrayList<>(page.size());
+        List<String> replacements = new ArrayList<>(page.size());
+        for (StoredKey key : page) {
+            if (!encryptor.needsRotation(key.encryptedKey())) {
+                alreadyCurrent++;
+                continue;
+            }
+            try {
+                replacements.add(encryptor.reencrypt(key.encryptedKey()));
+                expected.add(key);
+            } catch (RuntimeException e) {
+                //written under a seed that is no longer configured. left as is; the owner has to set it again
+                unreadable++;
+            }
+        }
+        if (expected.isEmpty()) return;
+
+        int replaced = storage.replaceEncryptedKeys(expected, replacements);
+        rotated += replaced;
+        //the owner set a new key between our read and write. theirs is already under the current seed
+        conflicts += expected.size() - replaced;
+    }
+
+    private void rotateServerKeys() throws SQLException {
+        boolean changed = false;
+        for (ServerKey key : storage.loadServerKeys()) {
+            if (!encryptor.needsRotation(key.encryptedKey())) continue;
+            try {
+                changed |= storage.replaceServerKey(key.id(), key.encryptedKey(), encryptor.reencrypt(key.encryptedKey()));
+            } catch (RuntimeException e) {
+                logger.warning("Server key #" + key.id() + " cannot be decrypted with any configured seed.");
+            }
+        }
+        if (changed) onServerKeysChanged.run();
+    }
+
+    private void finish() throws IOException {
+        Files.deleteIfExists(stateFile);
+        state = State.DONE;
+        logger.info("Key rotation finished: " + rotated + " re-encrypted, " + alreadyCurrent + " already current, "
+                + conflicts + " changed meanwhile, " + unreadable + " unreadable.");
+        //the primary server key lives in the settings table
+        onServerKeysChanged.run();
+    }
+
+    private boolean loadState() throws IOException {
+        if (!Files.exists(stateFile)) return false;
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            saved.load(in);
+        }
+        //a rotation toward a different seed starts over
+        if (!encryptor.currentKeyId().equals(saved.getProperty("target"))) return false;
+
+        String player = saved.getProperty("cursor.player");
+        cursor = player == null ? null : new StoredKey(UUID.fromString(player), saved.getProperty("cursor.provider"), null);
+        scanned = Long.parseLong(saved.getProperty("scanned", "0"));
+        rotated = Long.parseLong(saved.getProperty("rotated", "0"));
+        alreadyCurrent = Long.parseLong(saved.getProperty("current", "0"));
+        conflicts = Long.parseLong(saved.getProperty("conflicts", "0"));
+        unreadable = Long.parseLong(saved.getProperty("unreadable", "0"));
+        return true;
+    }
+
+    //write then rename, so a crash mid-write cannot leave a truncated cursor
+    private void saveState() throws IOException {
+        Properties state = new Properties();
+        state.setProperty("target", encryptor.currentKeyId());
+        if (cursor != null) {
+            state.setProperty("cursor.player", cursor.playerId().toString());
+            state.setProperty("cursor.provider", cursor.provider());
+        }
+        state.setProperty("scanned", Long.toString(scanned));
+        state.setProperty("rotated", Long.toString(rotated));
+        state.setProperty("current", Long.toString(alreadyCurrent));
+        state.setProperty("conflicts", Long.toString(conflicts));
+        state.setProperty("unreadable", Long.toString(unreadable));
+        Path temp = stateFile.resolveSibling(STATE_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            state.store(out, "AskAI key rotation progress. Delete to restart the rotation from the beginning");
+        }
+        Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,129 @@
+package com.askai.delivery;
+
+import com.askai.jfr.DeliveryDrainEvent;
+import com.askai.scheduler.PluginScheduler;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//plugin-wide outbox for player messages. async work enqueues from any thread and one repeating
+//main-thread task drains it each tick under a message and time budget, instead of one scheduled task per message.
+//on Folia the drain runs on the global region and each send hops to the player's own region
+public final class DeliveryQueue {
+    private static final double LAG_EWMA_ALPHA = 0.1;
+
+    private final PluginScheduler scheduler;
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private volatile int maxMessagesPerTick;
+    private volatile long maxNanosPerTick;
+    //load shedding cap on messages per tick, 0 = none
+    private volatile int throttle;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private volatile double avgLagMillis;
+
+    private record Pending(UUID playerId, Component message, long enqueuedNanos) {
+    }
+
+    public record Stats(int depth, double oldestPendingMillis, double avgLagMillis, double maxLagMillis,
+                        long delivered, long coalesced, long dropped) {
+    }
+
+    public DeliveryQueue(PluginScheduler scheduler, int maxMessagesPerTick, double maxMillisPerTick) {
+        this.scheduler = scheduler;
+        configure(maxMessagesPerTick, maxMillisPerTick);
+    }
+
+    public void configure(int maxMessagesPerTick, double maxMillisPerTick) {
+        this.maxMessagesPerTick = Math.max(1, maxMessagesPerTick);
+        this.maxNanosPerTick = (long) (Math.max(0.05, maxMillisPerTick) * 1_000_000);
+    }
+
+    //while the server is overloaded, send at most maxMessagesPerTick a tick and let the rest wait. 0 lifts it
+    public void throttle(int maxMessagesPerTick) {
+        this.throttle = Math.max(0, maxMessagesPerTick);
+    }
+
+    //a complete message, shown on its own line
+    public void send(Player player, Component message) {
+        queue.add(new Pending(player.getUniqueId(), message, System.nanoTime()));
+        depth.incrementAndGet();
+    }
+
+    //main thread (global region on Folia) only
+    public void drain() {
+        DeliveryDrainEvent event = new DeliveryDrainEvent();
+        event.begin();
+        long deadline = System.nanoTime() + maxNanosPerTick;
+        int sent = 0;
+        int limit = throttle > 0 ? Math.min(throttle, maxMessagesPerTick) : maxMessagesPerTick;
+        Pending next;
+        while (sent < limit && System.nanoTime() < deadline && (next = poll()) != null) {
+            Component message = next.message();
+
+            //merge whatever is directly behind it for the same player into one send, within the same budget
+            Pending following;
+            while (System.nanoTime() < deadline && (following = queue.peek()) != null
+                    && following.playerId().equals(next.playerId())) {
+                poll();
+                message = message.append(Component.newline()).append(following.message());
+                coalesced.increment();
+                event.coalesced++;
+                recordLag(following.enqueuedNanos());
+            }
+
+            Player player = Bukkit.getPlayer(next.playerId());
+            if (player == null || !player.isOnline()) {
+                dropped.increment();
+                event.dropped++;
+                continue;
+            }
+            Component merged = message;
+            scheduler.runForPlayer(player, () -> player.sendMessage(merged), dropped::increment);
+            recordLag(next.enqueuedNanos());
+            delivered.increment();
+            sent++;
+        }
+
+        event.end();
+        if (event.dropped + sent > 0 && event.shouldCommit()) {
+            event.delivered = sent;
+            event.remaining = depth.get();
+            event.commit();
+        }
+    }
+
+    private Pending poll() {
+        Pending pending = queue.poll();
+        if (pending != null) depth.decrementAndGet();
+        return pending;
+    }
+
+    private void recordLag(long enqueuedNanos) {
+        long lag = System.nanoTime() - enqueuedNanos;
+        maxLagNanos.accumulateAndGet(lag, Math::max);
+        avgLagMillis += LAG_EWMA_ALPHA * (lag / 1_000_000.0 - avgLagMillis);
+    }
+
+    public int depth() {
+        return depth.get();
+    }
+
+    //max lag is reset each time stats are read, so it reflects the period since the last check
+    public Stats stats() {
+        Pending head = queue.peek();
+        double oldest = head == null ? 0 : (System.nanoTime() - head.enqueuedNanos()) / 1_000_000.0;
+        return new Stats(depth.get(), oldest, avgLagMillis, maxLagNanos.getAndSet(0) / 1_000_000.0,
+                delivered.sum(), coalesced.sum(), dropped.sum());
+    }
+}
@@ -0,0 +1,183 @@
+package com.askai.filter;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+//finds every occurrence of any of a fixed set of strings in one pass over the text, however many there are.
+//matching ignores case char by char, so match offsets are offsets into the original text. immutable once built
+public final class AhoCorasick {
+    //return false to stop scanning
+    @FunctionalInterface
+    public interface MatchHandler {
+        boolean onMatch(int pattern, int start, int end);
+    }
+
+    //state s has edges edgeChars/edgeTargets[edgeStart[s]..edgeStart[s + 1]), sorted by char
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    //the root's edges for ASCII, which is most of what players type. -1 = no edge
+    private final int[] rootAscii = new int[128];
+    private final int[] fail;
+    //nearest state on the failure chain that ends a pattern, 0 = none
+    private final int[] dictionary;
+    //patterns ending at state s: outputs[outputStart[s]..outputStart[s + 1])
+    private final int[] outputStart;
+    private final int[] outputs;
+    private final int[] lengths;
+
+    //empty strings are ignored, and so are their indices
+    public AhoCorasick(List<String> patterns) {
+        //build a trie with linked child lists, then flatten it
+        int capacity = 16;
+        for (String pattern : patterns) capacity += pattern.length();
+        char[] label = new char[capacity];
+        int[] firstChild = new int[capacity];
+        int[] nextSibling = new int[capacity];
+        int[] firstOutput = new int[capacity];
+        int[] nextOutput = new int[patterns.size()];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        Arrays.fill(firstOutput, -1);
+        lengths = new int[patterns.size()];
+        int states = 1;
+        int edges = 0;
+        int outputCount = 0;
+
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            lengths[p] = pattern.length();
+            if (pattern.isEmpty()) continue;
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = fold(pattern.charAt(i));
+                int child = firstChild[state];
+                while (child >= 0 && label[child] != c) child = nextSibling[child];
+                if (child < 0) {
+                    child = states++;
+                    label[child] = c;
+                    nextSibling[child] = firstChild[state];
+                    firstChild[state] = child;
+                    edges++;
+                }
+                state = child;
+            }
+            nextOutput[p] = firstOutput[state];
+            firstOutput[state] = p;
+            outputCount++;
+        }
+
+        edgeStart = new int[states + 1];
+        edgeChars = new char[edges];
+        edgeTargets = new int[edges];
+        outputStart = new int[states + 1];
+        outputs = new int[outputCount];
+        int edge = 0;
+        int output = 0;
+        for (int s = 0; s < states; s++) {
+            edgeStart[s] = edge;
+            int from = edge;
+            for (int child = firstChild[s]; child >= 0; child = nextSibling[child]) {
+                edgeChars[edge] = label[child];
+                edgeTargets[edge++] = child;
+            }
+            sortEdges(from, edge);
+            outputStart[s] = output;
+            for (int p = firstOutput[s]; p >= 0; p = nextOutput[p]) outputs[output++] = p;
+        }
+        edgeStart[states] = edge;
+        outputStart[states] = output;
+
+        Arrays.fill(rootAscii, -1);
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            if (edgeChars[e] < 128) rootAscii[edgeChars[e]] = edgeTargets[e];
+        }
+
+        //failure links breadth first, so a state's failure target is always done before it
+        fail = new int[states];
+        dictionary = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) queue.add(edgeTargets[e]);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int child = edgeTargets[e];
+                char c = edgeChars[e];
+                int f = fail[state];
+                int next;
+                while ((next = step(f, c)) < 0 && f != 0) f = fail[f];
+                fail[child] = next < 0 ? 0 : next;
+                int target = fail[child];
+                dictionary[child] = endsPattern(target) ? target : dictionary[target];
+                queue.add(child);
+            }
+        }
+    }
+
+    private void sortEdges(int from, int to) {
+        //insertion sort: almost every state has one or two edges
+        for (int i = from + 1; i < to; i++) {
+            char c = edgeChars[i];
+            int t = edgeTargets[i];
+            int j = i - 1;
+            while (j >= from && edgeChars[j] > c) {
+                edgeChars[j + 1] = edgeChars[j];
+                edgeTargets[j + 1] = edgeTargets[j];
+                j--;
+            }
+            edgeChars[j + 1] = c;
+            edgeTargets[j + 1] = t;
+        }
+    }
+
+    static char fold(char c) {
+        return c < 128
+                ? (c >= 'A' && c <= 'Z' ? (char) (c + 32) : c)
+                : Character.toLowerCase(c);
+    }
+
+    private boolean endsPattern(int state) {
+        return outputStart[state + 1] > outputStart[state];
+    }
+
+    //-1 if state has no edge for c
+    private int step(int state, char c) {
+        if (state == 0 && c < 128) return rootAscii[c];
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                low = mid + 1;
+            } else if (m > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    //reports matches in order of their end offset. overlapping and nested matches are all reported
+    public void scan(CharSequence text, MatchHandler handler) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) state = fail[state];
+            state = next < 0 ? 0 : next;
+            for (int s = endsPattern(state) ? state : dictionary[state]; s != 0; s = dictionary[s]) {
+                for (int o = outputStart[s]; o < outputStart[s + 1]; o++) {
+                    int pattern = outputs[o];
+                    if (!handler.onMatch(pattern, i + 1 - lengths[pattern], i + 1)) return;
+                }
+            }
+        }
+    }
+
+    public int states() {
+        return fail.length;
+    }
+}
@@ -0,0 +1,257 @@
+package com.askai.filter;
+
+import com.askai.model.AIProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+//checks a prompt against the configured word lists and patterns before it costs a provider call. every word
+//and phrase of every rule goes into one automaton, so a prompt is scanned once whatever the list size. a
+//built filter is immutable; a reload builds a new one and swaps it in
+public final class PromptFilter {
+    public static final PromptFilter NONE = new PromptFilter(List.of(), List.of(), new int[0], new boolean[0],
+            new Pattern[0], "***");
+
+    public enum Action {
+        //refuse the prompt
+        REJECT,
+        //replace the matched text before it is sent
+        REDACT,
+        //send the prompt to the rule's model for the player's provider
+        ROUTE;
+
+        //null if unknown
+        public static Action fromId(String id) {
+            for (Action action : values()) {
+                if (action.name().equalsIgnoreCase(id)) return action;
+            }
+            return null;
+        }
+    }
+
+    //words are matched ignoring case, on word boundaries unless wholeWords is off. files are word lists relative
+    //to the plugin folder, one entry per line, # for comments. models maps provider ids to the model ROUTE uses
+    public record Rule(String name, Action action, String message, List<String> words, List<String> files,
+                       List<String> patterns, boolean wholeWords, Map<String, String> models) {
+    }
+
+    //text is the prompt to send, with redactions applied. rejectedBy and routedBy are null when no rule applied
+    public record Result(String text, Rule rejectedBy, Rule routedBy, int redactions) {
+        public boolean rejected() {
+            return rejectedBy != null;
+        }
+
+        //null to keep the model the player picked
+        public String modelFor(AIProvider provider) {
+            return routedBy == null ? null : routedBy.models().get(provider.id());
+        }
+    }
+
+    private final List<Rule> rules;
+    private final AhoCorasick automaton;
+    //rule index and boundary check for each automaton pattern
+    private final int[] patternRule;
+    private final boolean[] patternWholeWord;
+    //every pattern of a rule as one alternation, or null. precompiled so a check never compiles a regex
+    private final Pattern[] rulePatterns;
+    private final String redactWith;
+    private final int words;
+
+    private PromptFilter(List<Rule> rules, List<String> words, int[] patternRule, boolean[] patternWholeWord,
+                         Pattern[] rulePatterns, String redactWith) {
+        this.rules = rules;
+        this.automaton = new AhoCorasick(words);
+        this.patternRule = patternRule;
+        this.patternWholeWord = patternWholeWord;
+        this.rulePatterns = rulePatterns;
+        this.redactWith = redactWith;
+        this.words = words.size();
+    }
+
+    //reads word list files and compiles patterns. a missing file or bad pattern is reported and left out,
+    //the rest of the rule still applies
+    public static PromptFilter build(List<Rule> rules, String redactWith, Path baseDir, Consumer<String> warn) {
+        List<String> words = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        List<Boolean> wholeWords = new ArrayList<>();
+        Pattern[] rulePatterns = new Pattern[rules.size()];
+        for (int r = 0; r < rules.size(); r++) {
+            Rule rule = rules.get(r);
+            List<String> entries = new ArrayList<>(rule.words());
+            for (String file : rule.files()) {
+                try {
+                    entries.addAll(readWordList(baseDir.resolve(file)));
+                } catch (IOException e) {
+                    warn.accept("prompt-filter rule '" + rule.name() + "': could not read " + file + " ("
+                            + (e instanceof NoSuchFileException ? "not found" : e.getMessage()) + ").");
+                }
+            }
+            for (String entry : entries) {
+                String word = entry.strip();
+                if (word.isEmpty()) continue;
+                words.add(word);
+                owners.add(r);
+                wholeWords.add(rule.wholeWords());
+            }
+
+            List<String> valid = new ArrayList<>();
+            for (String regex : rule.patterns()) {
+                try {
+                    Pattern.compile(regex);
+                    valid.add("(?:" + regex + ")");
+                } catch (PatternSyntaxException e) {
+                    warn.accept("prompt-filter rule '" + rule.name() + "': skipping pattern '" + regex + "' ("
+                            + e.getDescription() + ").");
+                }
+            }
+            if (!valid.isEmpty()) {
+                rulePatterns[r] = Pattern.compile(String.join("|", valid),
+                        Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            }
+        }
+
+        int[] patternRule = new int[words.size()];
+        boolean[] patternWholeWord = new boolean[words.size()];
+        for (int i = 0; i < patternRule.length; i++) {
+            patternRule[i] = owners.get(i);
+            patternWholeWord[i] = wholeWords.get(i);
+        }
+        return new PromptFilter(List.copyOf(rules), words, patternRule, patternWholeWord, rulePatterns, redactWith);
+    }
+
+    static List<String> readWordList(Path file) throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String word = line.strip();
+            if (!word.isEmpty() && !word.startsWith("#")) words.add(word);
+        }
+        return words;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    //words and phrases in the automaton
+    public int size() {
+        return words;
+    }
+
+    public Result apply(String prompt) {
+        if (rules.isEmpty()) return new Result(prompt, null, null, 0);
+        Scan scan = new Scan(prompt);
+        automaton.scan(prompt, scan);
+        if (scan.rejectedBy >= 0) return new Result(prompt, rules.get(scan.rejectedBy), null, 0);
+
+        for (int r = 0; r < rules.size(); r++) {
+            Pattern pattern = rulePatterns[r];
+            if (pattern == null) continue;
+            Matcher matcher = pattern.matcher(prompt);
+            switch (rules.get(r).action()) {
+                case REJECT -> {
+                    if (matcher.find()) return new Result(prompt, rules.get(r), null, 0);
+                }
+                case REDACT -> {
+                    while (matcher.find()) {
+                        if (matcher.end() > matcher.start()) scan.redact(matcher.start(), matcher.end());
+                    }
+                }
+                case ROUTE -> {
+                    if (scan.routedBy < 0 || r < scan.routedBy) {
+                        if (matcher.find()) scan.routedBy = r;
+                    }
+                }
+            }
+        }
+        Rule routedBy = scan.routedBy < 0 ? null : rules.get(scan.routedBy);
+        return new Result(scan.redacted(redactWith), null, routedBy, scan.redactions);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    private final class Scan implements AhoCorasick.MatchHandler {
+        private final String text;
+        private int rejectedBy = -1;
+        private int routedBy = -1;
+        //sorted by start, disjoint
+        private int[] ranges;
+        private int rangeCount;
+        private int redactions;
+
+        Scan(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean onMatch(int pattern, int start, int end) {
+            if (patternWholeWord[pattern] && !onBoundaries(start, end)) return true;
+            int rule = patternRule[pattern];
+            switch (rules.get(rule).action()) {
+                case REJECT -> {
+                    rejectedBy = rule;
+                    return false;
+                }
+                case REDACT -> redact(start, end);
+                case ROUTE -> {
+                    if (routedBy < 0 || rule < routedBy) routedBy = rule;
+                }
+            }
+            return true;
+        }
+
+        //a word must not run on into letters or digits, so "ass" does not match "class"
+        private boolean onBoundaries(int start, int end) {
+            return (start == 0 || !isWordChar(text.charAt(start)) || !isWordChar(text.charAt(start - 1)))
+                    && (end == text.length() || !isWordChar(text.charAt(end - 1)) || !isWordChar(text.charAt(end)));
+        }
+
+        void redact(int start, int end) {
+            redactions++;
+            if (ranges == null) ranges = new int[8];
+            //merge with any range it overlaps or touches
+            int i = 0;
+            while (i < rangeCount && ranges[2 * i + 1] < start) i++;
+            int j = i;
+            while (j < rangeCount && ranges[2 * j] <= end) {
+                start = Math.min(start, ranges[2 * j]);
+                end = Math.max(end, ranges[2 * j + 1]);
+                j++;
+            }
+            int removed = j - i;
+            if (removed == 0) {
+                if (2 * (rangeCount + 1) > ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                System.arraycopy(ranges, 2 * i, ranges, 2 * i + 2, 2 * (rangeCount - i));
+                rangeCount++;
+            } else if (removed > 1) {
+                System.arraycopy(ranges, 2 * j, ranges, 2 * i + 2, 2 * (rangeCount - j));
+                rangeCount -= removed - 1;
+            }
+            ranges[2 * i] = start;
+            ranges[2 * i + 1] = end;
+        }
+
+        String redacted(String replacement) {
+            if (rangeCount == 0) return text;
+            StringBuilder out = new StringBuilder(text.length());
+            int at = 0;
+            for (int i = 0; i < rangeCount; i++) {
+                out.append(text, at, ranges[2 * i]).append(replacement);
+                at = ranges[2 * i + 1];
+            }
+            return out.append(text, at, text.length()).toString();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//one /chat question, from the command arriving on the main thread to its reply being queued
+@Name("askai.ChatCommand")
+@Label("Chat Command")
+@Description("A /chat question from the command to the queued reply, including time waiting for a worker")
+@Category({"AskAI", "Pipeline"})
+@Enabled(false)
+@StackTrace(false)
+public final class ChatCommandEvent extends jdk.jfr.Event {
+    @Label("Provider")
+    public String provider;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Message Length")
+    @DataAmount(DataAmount.BYTES)
+    public int messageLength;
+
+    @Label("Prompt Tokens")
+    public int promptTokens;
+
+    @Label("Completion Tokens")
+    public int completionTokens;
+
+    @Label("Response Length")
+    @DataAmount(DataAmount.BYTES)
+    public int responseLength;
+
+    //ok, faq, cached, compare, shed, limited, too-long, blocked, no-key, rejected or error
+    @Label("Outcome")
+    public String outcome;
+}
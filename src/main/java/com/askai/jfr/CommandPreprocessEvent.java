@@ -0,0 +1,23 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//AskAI sees every command any player runs, so this fires far more often than /chat
+@Name("askai.CommandPreprocess")
+@Label("Command Preprocess")
+@Description("AskAI's check of a player command for API keys to redact from the log")
+@Category({"AskAI", "Main Thread"})
+@Enabled(false)
+@StackTrace(false)
+public final class CommandPreprocessEvent extends jdk.jfr.Event {
+    @Label("Command Length")
+    public int commandLength;
+
+    @Label("Redacted")
+    public boolean redacted;
+}
@@ -0,0 +1,29 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//only drains that had something to do are recorded
+@Name("askai.DeliveryDrain")
+@Label("Delivery Drain")
+@Description("The per-tick main thread task sending queued replies to players")
+@Category({"AskAI", "Main Thread"})
+@Enabled(false)
+@StackTrace(false)
+public final class DeliveryDrainEvent extends jdk.jfr.Event {
+    @Label("Delivered")
+    public int delivered;
+
+    @Label("Coalesced")
+    public int coalesced;
+
+    @Label("Dropped")
+    public int dropped;
+
+    @Label("Remaining")
+    public int remaining;
+}
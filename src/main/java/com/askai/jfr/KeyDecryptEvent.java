@@ -0,0 +1,26 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("askai.KeyDecrypt")
+@Label("Key Decrypt")
+@Description("Decrypting a stored API key")
+@Category({"AskAI", "Crypto"})
+@Enabled(false)
+@StackTrace(false)
+public final class KeyDecryptEvent extends jdk.jfr.Event {
+    //false for keys written before seed rotation, which may take several attempts
+    @Label("Versioned")
+    public boolean versioned;
+
+    @Label("Seeds Tried")
+    public int seedsTried;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,53 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//one HTTP exchange with a provider. a question using tools or hedging makes several
+@Name("askai.ProviderCall")
+@Label("Provider Call")
+@Description("An HTTP request to a provider, from sending it to the parsed answer")
+@Category({"AskAI", "Provider"})
+@Enabled(false)
+@StackTrace(false)
+public final class ProviderCallEvent extends jdk.jfr.Event {
+    @Label("Protocol")
+    public String protocol;
+
+    @Label("Host")
+    public String host;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Streamed")
+    public boolean streamed;
+
+    //as sent, so after compression. -1 when unknown
+    @Label("Request Size")
+    @DataAmount(DataAmount.BYTES)
+    public long requestBytes;
+
+    //0 when no response arrived
+    @Label("Status")
+    public int status;
+
+    @Label("Prompt Tokens")
+    public int promptTokens;
+
+    @Label("Completion Tokens")
+    public int completionTokens;
+
+    @Label("Answer Length")
+    @DataAmount(DataAmount.BYTES)
+    public int answerLength;
+
+    //ok, error or cancelled
+    @Label("Outcome")
+    public String outcome;
+}
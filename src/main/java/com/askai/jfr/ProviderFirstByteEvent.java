@@ -0,0 +1,29 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//ends when the status line and headers arrive, so it covers connecting, the upload and the provider's think time
+@Name("askai.ProviderFirstByte")
+@Label("Provider First Byte")
+@Description("Time from sending a provider request to its response headers")
+@Category({"AskAI", "Provider"})
+@Enabled(false)
+@StackTrace(false)
+public final class ProviderFirstByteEvent extends jdk.jfr.Event {
+    @Label("Protocol")
+    public String protocol;
+
+    @Label("Host")
+    public String host;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Status")
+    public int status;
+}
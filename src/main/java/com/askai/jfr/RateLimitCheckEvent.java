@@ -0,0 +1,23 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//runs on the main thread. a network-wide limiter spends its local lease here and never waits on the shared store
+@Name("askai.RateLimitCheck")
+@Label("Rate Limit Check")
+@Description("A per-player rate limit check for /chat")
+@Category({"AskAI", "Pipeline"})
+@Enabled(false)
+@StackTrace(false)
+public final class RateLimitCheckEvent extends jdk.jfr.Event {
+    @Label("Limiter")
+    public String limiter;
+
+    @Label("Allowed")
+    public boolean allowed;
+}
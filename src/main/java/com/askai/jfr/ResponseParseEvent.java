@@ -0,0 +1,39 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//for a streamed answer this includes waiting for the rest of the stream
+@Name("askai.ResponseParse")
+@Label("Response Parse")
+@Description("Reading and parsing a provider's response body")
+@Category({"AskAI", "Provider"})
+@Enabled(false)
+@StackTrace(false)
+public final class ResponseParseEvent extends jdk.jfr.Event {
+    @Label("Protocol")
+    public String protocol;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Streamed")
+    public boolean streamed;
+
+    //-1 for streamed bodies
+    @Label("Body Length")
+    @DataAmount(DataAmount.BYTES)
+    public int bodyLength;
+
+    @Label("Answer Length")
+    @DataAmount(DataAmount.BYTES)
+    public int answerLength;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
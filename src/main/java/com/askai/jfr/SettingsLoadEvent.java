@@ -0,0 +1,22 @@
+package com.askai.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("askai.SettingsLoad")
+@Label("Settings Load")
+@Description("Loading a player's settings, from the cache or from storage")
+@Category({"AskAI", "Storage"})
+@Enabled(false)
+@StackTrace(false)
+public final class SettingsLoadEvent extends jdk.jfr.Event {
+    @Label("Storage")
+    public String storage;
+
+    @Label("Cached")
+    public boolean cached;
+}
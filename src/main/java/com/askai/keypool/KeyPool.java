@@ -0,0 +1,236 @@
+package com.askai.keypool;
+
+import com.askai.model.AIProvider;
+import com.askai.model.AIResponse;
+import com.askai.model.RateLimitSnapshot;
+import com.askai.model.ServerKey;
+import com.askai.model.UserSettings;
+import com.askai.provider.AIProviderException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+//server-mode keys, several per provider. each request takes the key with the most live headroom,
+//as last reported by the provider's rate-limit headers, discounted by requests already in flight on it.
+//a key that gets a 429 or is rejected as invalid is benched for a while
+public final class KeyPool {
+    public static final long PRIMARY_KEY_ID = 0;
+
+    private volatile Map<AIProvider, List<PooledKey>> keys = new HashMap<>();
+    private volatile long rateLimitedBenchMillis;
+    private volatile long invalidBenchMillis;
+
+    public record KeyStatus(long id, String encryptedKey, long requests, long failures, int inFlight,
+                            double headroom, long benchedForMillis, int lastStatus) {
+    }
+
+    public KeyPool(int rateLimitedBenchSeconds, int invalidBenchSeconds) {
+        configure(rateLimitedBenchSeconds, invalidBenchSeconds);
+    }
+
+    public void configure(int rateLimitedBenchSeconds, int invalidBenchSeconds) {
+        this.rateLimitedBenchMillis = rateLimitedBenchSeconds * 1000L;
+        this.invalidBenchMillis = invalidBenchSeconds * 1000L;
+    }
+
+    //rebuilds the pool from storage. live stats survive for keys that are still present
+    public synchronized void reload(UserSettings serverSettings, List<ServerKey> extraKeys) {
+        Map<String, PooledKey> previous = new HashMap<>();
+        for (List<PooledKey> list : keys.values()) {
+            for (PooledKey key : list) previous.put(identity(key.provider, key.id), key);
+        }
+
+        Map<AIProvider, List<PooledKey>> next = new HashMap<>();
+        for (AIProvider provider : AIProvider.values()) {
+            String primary = serverSettings.getEncryptedKey(provider);
+            if (primary != null) {
+                next.computeIfAbsent(provider, p -> new ArrayList<>())
+                        .add(reuse(previous, provider, PRIMARY_KEY_ID, primary));
+            }
+        }
+        for (ServerKey key : extraKeys) {
+            next.computeIfAbsent(key.provider(), p -> new ArrayList<>())
+                    .add(reuse(previous, key.provider(), key.id(), key.encryptedKey()));
+        }
+        this.keys = next;
+    }
+
+    private static PooledKey reuse(Map<String, PooledKey> previous, AIProvider provider, long id, String encryptedKey) {
+        PooledKey old = previous.get(identity(provider, id));
+        return old != null && old.encryptedKey.equals(encryptedKey) ? old : new PooledKey(provider, id, encryptedKey);
+    }
+
+    //the primary key has id 0 for every provider, so fold the provider into the lookup key
+    private static String identity(AIProvider provider, long id) {
+        return provider.id() + '#' + id;
+    }
+
+    public boolean hasKeys(AIProvider provider) {
+        return !keys.getOrDefault(provider, List.of()).isEmpty();
+    }
+
+    //null if every key for the provider is benched or already tried
+    public Lease acquire(AIProvider provider, Set<Long> exclude) {
+        long now = System.currentTimeMillis();
+        PooledKey best = null;
+        double bestScore = -1;
+        for (PooledKey key : keys.getOrDefault(provider, List.of())) {
+            if (exclude.contains(key.id) || key.benchedUntil > now) continue;
+            double score = key.score(now);
+            if (score > bestScore || (score == bestScore && key.requests.sum() < best.requests.sum())) {
+                best = key;
+                bestScore = score;
+            }
+        }
+        if (best == null) return null;
+        best.inFlight.incrementAndGet();
+        return new Lease(best);
+    }
+
+    //how long until some benched key for the provider is usable again, or 0 if one already is
+    public long millisUntilAvailable(AIProvider provider) {
+        long now = System.currentTimeMillis();
+        return keys.getOrDefault(provider, List.of()).stream()
+                .mapToLong(k -> Math.max(0, k.benchedUntil - now))
+                .min().orElse(0);
+    }
+
+    public List<KeyStatus> status(AIProvider provider) {
+        long now = System.currentTimeMillis();
+        return keys.getOrDefault(provider, List.of()).stream()
+                .sorted(Comparator.comparingLong(k -> k.id))
+                .map(k -> new KeyStatus(k.id, k.encryptedKey, k.requests.sum(), k.failures.sum(), k.inFlight.get(),
+                        k.currentHeadroom(now), Math.max(0, k.benchedUntil - now), k.lastStatus))
+                .toList();
+    }
+
+    //runs call with the key that has the most headroom. a 429 or auth failure benches that key and retries
+    //once per remaining key, so one exhausted key does not fail the request. blocking
+    public AIResponse send(AIProvider provider, UnaryOperator<String> decrypt,
+                           Function<String, CompletableFuture<AIResponse>> call) {
+        Set<Long> tried = new HashSet<>();
+        while (true) {
+            Lease lease = acquire(provider, tried);
+            if (lease == null) {
+                long waitSeconds = (millisUntilAvailable(provider) + 999) / 1000;
+                throw new AIProviderException("All server " + provider.displayName()
+                        + " keys are rate limited. Try again in " + Math.max(1, waitSeconds) + "s.");
+            }
+            tried.add(lease.keyId());
+            try {
+                AIResponse response = call.apply(decrypt.apply(lease.encryptedKey())).join();
+                lease.success(response.rateLimit());
+                return response;
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof AIProviderException failure)) {
+                    lease.failure(0, null);
+                    throw e;
+                }
+                lease.failure(failure.statusCode(), failure.rateLimit());
+                if (!isKeySpecific(failure.statusCode())) throw e;
+            } catch (RuntimeException e) {
+                lease.release();
+                throw e;
+            }
+        }
+    }
+
+    //429 and auth failures are specific to one key, so another key may still succeed
+    public static boolean isKeySpecific(int statusCode) {
+        return statusCode == 429 || statusCode == 401 || statusCode == 403;
+    }
+
+    private static final class PooledKey {
+        private final AIProvider provider;
+        private final long id;
+        private final String encryptedKey;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile RateLimitSnapshot snapshot = RateLimitSnapshot.UNKNOWN;
+        private volatile long benchedUntil;
+        private volatile int lastStatus;
+
+        private PooledKey(AIProvider provider, long id, String encryptedKey) {
+            this.provider = provider;
+            this.id = id;
+            this.encryptedKey = encryptedKey;
+        }
+
+        //unknown or expired headroom counts as full, so untried keys get traffic and learn their limits
+        private double currentHeadroom(long now) {
+            RateLimitSnapshot s = snapshot;
+            double headroom = s.headroom();
+            if (headroom < 0 || (s.resetAtMillis() > 0 && s.resetAtMillis() <= now)) return 1.0;
+            return headroom;
+        }
+
+        private double score(long now) {
+            return currentHeadroom(now) / (1 + inFlight.get());
+        }
+    }
+
+    public final class Lease {
+        private final PooledKey key;
+        private boolean done;
+
+        private Lease(PooledKey key) {
+            this.key = key;
+        }
+
+        public long keyId() {
+            return key.id;
+        }
+
+        public String encryptedKey() {
+            return key.encryptedKey;
+        }
+
+        public void success(RateLimitSnapshot rateLimit) {
+            if (!finish()) return;
+            key.requests.increment();
+            key.lastStatus = 200;
+            if (rateLimit != null && rateLimit != RateLimitSnapshot.UNKNOWN) key.snapshot = rateLimit;
+        }
+
+        //statusCode 0 for failures that never got an HTTP response
+        public void failure(int statusCode, RateLimitSnapshot rateLimit) {
+            if (!finish()) return;
+            key.requests.increment();
+            key.failures.increment();
+            key.lastStatus = statusCode;
+            long now = System.currentTimeMillis();
+            if (statusCode == 429) {
+                long bench = rateLimitedBenchMillis;
+                if (rateLimit != null && rateLimit.retryAfterMillis() > 0) bench = rateLimit.retryAfterMillis();
+                else if (rateLimit != null && rateLimit.resetAtMillis() > now) bench = rateLimit.resetAtMillis() - now;
+                key.benchedUntil = now + bench;
+            } else if (statusCode == 401 || statusCode == 403) {
+                key.benchedUntil = now + invalidBenchMillis;
+            }
+        }
+
+        //give the key back without an outcome, e.g. when the request was never sent
+        public void release() {
+            finish();
+        }
+
+        private boolean finish() {
+            if (done) return false;
+            done = true;
+            key.inFlight.decrementAndGet();
+            return true;
+        }
+    }
+}
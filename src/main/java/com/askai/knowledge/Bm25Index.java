@@ -0,0 +1,163 @@
+package com.askai.knowledge;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//in-memory inverted index with Okapi BM25 scoring. supports removal so files can be re-indexed one at a time
+final class Bm25Index {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<Integer, Doc> docs = new HashMap<>();
+    private final Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long totalLength;
+    private long postingCount;
+    private int nextId;
+
+    record Hit(Passage passage, double score, double headingCoverage) {
+    }
+
+    private record Doc(Passage passage, int length, Map<String, Integer> termFreqs, Set<String> headingTerms) {
+    }
+
+    void remove(int id) {
+        replace(List.of(id), List.of());
+    }
+
+    //drops the old documents and adds the new ones in one step, so a search sees either all of the old
+    //version of a file or all of the new one. returns the new ids in order
+    List<Integer> replace(List<Integer> oldIds, List<Passage> passages) {
+        List<Doc> added = new ArrayList<>(passages.size());
+        for (Passage passage : passages) {
+            List<String> terms = TextAnalyzer.tokenize(passage.heading() + " " + passage.text());
+            Map<String, Integer> tf = new HashMap<>();
+            for (String term : terms) tf.merge(term, 1, Integer::sum);
+            added.add(new Doc(passage, terms.size(), tf, new HashSet<>(TextAnalyzer.tokenize(passage.heading()))));
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int id : oldIds) {
+                Doc doc = docs.remove(id);
+                if (doc == null) continue;
+                for (String term : doc.termFreqs().keySet()) {
+                    Map<Integer, Integer> list = postings.get(term);
+                    if (list == null) continue;
+                    list.remove(id);
+                    if (list.isEmpty()) postings.remove(term);
+                }
+                totalLength -= doc.length();
+                postingCount -= doc.termFreqs().size();
+            }
+            List<Integer> ids = new ArrayList<>(added.size());
+            for (Doc doc : added) {
+                int id = nextId++;
+                docs.put(id, doc);
+                for (Map.Entry<String, Integer> e : doc.termFreqs().entrySet()) {
+                    postings.computeIfAbsent(e.getKey(), k -> new HashMap<>()).put(id, e.getValue());
+                }
+                totalLength += doc.length();
+                postingCount += doc.termFreqs().size();
+                ids.add(id);
+            }
+            return ids;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    List<Hit> search(String query, int limit) {
+        Set<String> queryTerms = new HashSet<>(TextAnalyzer.tokenize(query));
+        if (queryTerms.isEmpty() || limit <= 0) return List.of();
+
+        lock.readLock().lock();
+        try {
+            if (docs.isEmpty()) return List.of();
+            double avgLength = (double) totalLength / docs.size();
+
+            Map<String, Double> idfs = new HashMap<>();
+            double totalIdf = 0;
+            for (String term : queryTerms) {
+                double idf = idf(term);
+                idfs.put(term, idf);
+                totalIdf += idf;
+            }
+
+            Map<Integer, Double> scores = new HashMap<>();
+            for (String term : queryTerms) {
+                Map<Integer, Integer> list = postings.get(term);
+                if (list == null) continue;
+                double idf = idfs.get(term);
+                for (Map.Entry<Integer, Integer> posting : list.entrySet()) {
+                    int tf = posting.getValue();
+                    int length = docs.get(posting.getKey()).length();
+                    double norm = tf + K1 * (1 - B + B * length / avgLength);
+                    scores.merge(posting.getKey(), idf * tf * (K1 + 1) / norm, Double::sum);
+                }
+            }
+
+            PriorityQueue<Map.Entry<Integer, Double>> top =
+                    new PriorityQueue<>(Comparator.comparingDouble(Map.Entry::getValue));
+            for (Map.Entry<Integer, Double> e : scores.entrySet()) {
+                top.offer(e);
+                if (top.size() > limit) top.poll();
+            }
+
+            List<Hit> hits = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                Map.Entry<Integer, Double> e = top.poll();
+                Doc doc = docs.get(e.getKey());
+                //share of the query's idf mass found in the heading. for FAQ entries that is the question
+                double covered = 0;
+                for (String term : queryTerms) {
+                    if (doc.headingTerms().contains(term)) covered += idfs.get(term);
+                }
+                hits.add(new Hit(doc.passage(), e.getValue(), totalIdf > 0 ? covered / totalIdf : 0));
+            }
+            return hits.reversed();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double idf(String term) {
+        Map<Integer, Integer> list = postings.get(term);
+        int df = list == null ? 0 : list.size();
+        return Math.log(1 + (docs.size() - df + 0.5) / (df + 0.5));
+    }
+
+    int documentCount() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long postingCount() {
+        lock.readLock().lock();
+        try {
+            return postingCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.askai.knowledge;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+//indexes .md and .txt files from the plugin's knowledge folder. files under faq/ (or named faq*)
+//are question/answer lists: each heading is a question and the text below it the answer
+public final class KnowledgeBase {
+    private static final int MAX_PASSAGE_CHARS = 1000;
+    private static final double MIN_RELATIVE_SCORE = 0.5;
+
+    private final Path folder;
+    private final Logger logger;
+    private final Bm25Index index = new Bm25Index();
+    private final Map<Path, IndexedFile> files = new HashMap<>();
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final AtomicLong maxQueryNanos = new AtomicLong();
+    private final LongAdder faqAnswers = new LongAdder();
+
+    public record Lookup(Passage faqAnswer, List<Passage> context) {
+        public boolean answered() {
+            return faqAnswer != null;
+        }
+    }
+
+    public record Stats(int files, int passages, int terms, long postings, long approxBytes,
+                        long queries, double avgQueryMicros, double maxQueryMicros, long faqAnswers) {
+    }
+
+    private record IndexedFile(long modified, long size, List<Integer> docIds, long chars) {
+    }
+
+    public KnowledgeBase(Path folder, Logger logger) {
+        this.folder = folder;
+        this.logger = logger;
+    }
+
+    //re-indexes only files whose size or mtime changed, and drops deleted ones
+    public synchronized void refresh() {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(folder);
+        } catch (IOException e) {
+            logger.warning("Failed to create knowledge folder: " + e.getMessage());
+            return;
+        }
+
+        Set<Path> seen = new HashSet<>();
+        int changed = 0;
+        try (Stream<Path> walk = Files.walk(folder)) {
+            for (Path file : walk.filter(Files::isRegularFile).filter(KnowledgeBase::isIndexable).toList()) {
+                seen.add(file);
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                long size = Files.size(file);
+                IndexedFile existing = files.get(file);
+                if (existing != null && existing.modified() == modified && existing.size() == size) continue;
+
+                //a file that cannot be read keeps its old passages until the next refresh
+                try {
+                    files.put(file, indexFile(file, modified, size, existing));
+                    changed++;
+                } catch (IOException e) {
+                    logger.warning("Failed to index " + folder.relativize(file) + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to scan knowledge folder: " + e.getMessage());
+            return;
+        }
+
+        List<Path> removed = files.keySet().stream().filter(p -> !seen.contains(p)).toList();
+        for (Path path : removed) {
+            files.remove(path).docIds().forEach(index::remove);
+        }
+
+        if (changed > 0 || !removed.isEmpty()) {
+            Stats stats = stats();
+            logger.info("Knowledge base refreshed: " + changed + " changed, " + removed.size() + " removed. "
+                    + stats.passages() + " passages, " + stats.terms() + " terms, ~"
+                    + (stats.approxBytes() / 1024) + " KB (" + (System.nanoTime() - start) / 1_000_000 + "ms)");
+        }
+    }
+
+    public Lookup lookup(String query, int topK, double faqThreshold) {
+        long start = System.nanoTime();
+        List<Bm25Index.Hit> hits = index.search(query, Math.max(topK, 1));
+        recordQuery(System.nanoTime() - start);
+
+        if (!hits.isEmpty()) {
+            Bm25Index.Hit best = hits.getFirst();
+            if (best.passage().faq() && best.headingCoverage() >= faqThreshold) {
+                faqAnswers.increment();
+                return new Lookup(best.passage(), List.of());
+            }
+        }
+        //weak matches on common words only cost prompt tokens, so keep passages close to the best one
+        List<Passage> context = new ArrayList<>(hits.size());
+        for (Bm25Index.Hit hit : hits.subList(0, Math.min(topK, hits.size()))) {
+            if (hit.score() < hits.getFirst().score() * MIN_RELATIVE_SCORE) break;
+            context.add(hit.passage());
+        }
+        return new Lookup(null, context);
+    }
+
+    public synchronized Stats stats() {
+        long chars = 0;
+        for (IndexedFile file : files.values()) chars += file.chars();
+        long postings = index.postingCount();
+        int terms = index.termCount();
+        //rough: UTF-16 text plus ~48 bytes per boxed posting entry and ~64 per term
+        long approxBytes = chars * 2 + postings * 48 + terms * 64L;
+        long count = queries.sum();
+        double avgMicros = count == 0 ? 0 : queryNanos.sum() / 1000.0 / count;
+        return new Stats(files.size(), index.documentCount(), terms, postings, approxBytes,
+                count, avgMicros, maxQueryNanos.get() / 1000.0, faqAnswers.sum());
+    }
+
+    private void recordQuery(long nanos) {
+        queries.increment();
+        queryNanos.add(nanos);
+        maxQueryNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    //reads and splits the file before touching the index, then swaps its passages in for the old ones
+    private IndexedFile indexFile(Path file, long modified, long size, IndexedFile existing) throws IOException {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        String source = folder.relativize(file).toString().replace('\\', '/');
+        List<Passage> passages = split(source, content, isFaq(source));
+        List<Integer> ids = index.replace(existing == null ? List.of() : existing.docIds(), passages);
+        return new IndexedFile(modified, size, ids, content.length());
+    }
+
+    //markdown headings start a new passage; long sections and plain text split on blank lines
+    static List<Passage> split(String source, String content, boolean faq) {
+        List<Passage> passages = new ArrayList<>();
+        String heading = "";
+        StringBuilder text = new StringBuilder();
+        for (String line : content.split("\\R")) {
+            if (line.startsWith("#")) {
+                flush(passages, source, heading, text, faq);
+                heading = line.replaceFirst("^#+\\s*", "").trim();
+            } else if (line.isBlank() && text.length() >= MAX_PASSAGE_CHARS) {
+                flush(passages, source, heading, text, faq);
+            } else {
+                if (!text.isEmpty()) text.append('\n');
+                text.append(line);
+            }
+        }
+        flush(passages, source, heading, text, faq);
+        return passages;
+    }
+
+    private static void flush(List<Passage> out, String source, String heading, StringBuilder text, boolean faq) {
+        String body = text.toString().strip();
+        text.setLength(0);
+        if (body.isEmpty()) return;
+        //only a heading makes an FAQ entry answerable on its own
+        out.add(new Passage(source, heading, body, faq && !heading.isEmpty()));
+    }
+
+    private static boolean isIndexable(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".md") || name.endsWith(".txt");
+    }
+
+    private static boolean isFaq(String source) {
+        String lower = source.toLowerCase();
+        return lower.startsWith("faq/") || lower.substring(lower.lastIndexOf('/') + 1).startsWith("faq");
+    }
+}
@@ -0,0 +1,5 @@
+package com.askai.knowledge;
+
+//one indexed chunk of a knowledge file. for FAQ entries the heading is the question and text the answer
+public record Passage(String source, String heading, String text, boolean faq) {
+}
@@ -0,0 +1,40 @@
+package com.askai.knowledge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+//lowercases, splits on anything that is not a letter or digit, drops stopwords and plural 's'
+public final class TextAnalyzer {
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "does", "for", "from", "how",
+            "i", "in", "is", "it", "me", "my", "of", "on", "or", "the", "to", "what", "when", "where",
+            "which", "who", "why", "with", "you", "your", "we", "our", "this", "that", "there", "here");
+
+    private TextAnalyzer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (!current.isEmpty()) {
+                String token = normalize(current.toString());
+                if (!STOPWORDS.contains(token)) tokens.add(token);
+                current.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    //crude plural folding so "warps" matches "warp" without a full stemmer
+    private static String normalize(String token) {
+        if (token.length() > 3 && token.endsWith("s") && !token.endsWith("ss")) {
+            return token.substring(0, token.length() - 1);
+        }
+        return token;
+    }
+}
@@ -0,0 +1,167 @@
+package com.askai.load;
+
+import com.askai.model.AIProvider;
+import com.askai.pipeline.ChatPipeline;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//steps AskAI down in stages while the server is struggling, and back up once it recovers. a stage starts as
+//soon as its enter values are reached (skipping stages if need be) and ends one stage at a time, once its exit
+//values have been cleared and the current stage has lasted cooldown. each stage keeps the ones below it
+public final class AdmissionController {
+    public enum Level {
+        NORMAL("normal"),
+        //answers capped at maxResponseTokens
+        REDUCED_TOKENS("reduce-tokens"),
+        //requests go to the provider's fast model
+        FAST_MODEL("fast-model"),
+        //replies trickle out a few per tick
+        DEFERRED_DELIVERY("defer-delivery"),
+        //new questions are turned away
+        REJECTING("reject");
+
+        private final String id;
+
+        Level(String id) {
+            this.id = id;
+        }
+
+        //also the config section of the stage
+        public String id() {
+            return id;
+        }
+
+        public String displayName() {
+            return name().toLowerCase(Locale.ROOT).replace('_', ' ');
+        }
+    }
+
+    //0 turns a value off. a stage with neither enter value set is never entered
+    public record Threshold(double enterMspt, double exitMspt, int enterPending, int exitPending) {
+        public static final Threshold NEVER = new Threshold(0, 0, 0, 0);
+
+        boolean entered(double mspt, int pending) {
+            return (enterMspt > 0 && mspt >= enterMspt) || (enterPending > 0 && pending >= enterPending);
+        }
+
+        boolean cleared(double mspt, int pending) {
+            return (enterMspt <= 0 || mspt < exitMspt) && (enterPending <= 0 || pending < exitPending);
+        }
+    }
+
+    //thresholds has one entry per level above NORMAL. fastModels maps provider ids to model names
+    public record Settings(boolean enabled, long cooldownMillis, Map<Level, Threshold> thresholds,
+                           int maxResponseTokens, Map<String, String> fastModels, int deferredMessagesPerTick,
+                           String rejectMessage) {
+        Threshold threshold(Level level) {
+            return thresholds.getOrDefault(level, Threshold.NEVER);
+        }
+    }
+
+    //what the last check saw
+    public record Status(Level level, double mspt, int pending, long sinceMillis) {
+    }
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile Settings settings;
+    private volatile Status status = new Status(Level.NORMAL, 0, 0, System.currentTimeMillis());
+
+    public AdmissionController(Settings settings) {
+        configure(settings);
+    }
+
+    //turning it off drops straight back to NORMAL
+    public void configure(Settings settings) {
+        this.settings = settings;
+        if (!settings.enabled()) status = new Status(Level.NORMAL, 0, 0, System.currentTimeMillis());
+    }
+
+    public boolean isEnabled() {
+        return settings.enabled();
+    }
+
+    //counts the task as in flight from now until it has run
+    public Runnable track(Runnable task) {
+        inFlight.incrementAndGet();
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        };
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    //one check from the sampling task. returns the new level, or null if it did not change
+    public synchronized Level update(double mspt, int pending, long nowMillis) {
+        Settings current = settings;
+        Status previous = status;
+        if (!current.enabled()) return null;
+
+        Level target = Level.NORMAL;
+        Level[] levels = Level.values();
+        for (int i = levels.length - 1; i > 0; i--) {
+            if (current.threshold(levels[i]).entered(mspt, pending)) {
+                target = levels[i];
+                break;
+            }
+        }
+
+        Level level = previous.level();
+        long since = previous.sinceMillis();
+        if (target.ordinal() > level.ordinal()) {
+            level = target;
+            since = nowMillis;
+        } else if (level != Level.NORMAL && current.threshold(level).cleared(mspt, pending)
+                && nowMillis - since >= current.cooldownMillis()) {
+            level = levels[level.ordinal() - 1];
+            since = nowMillis;
+        }
+        status = new Status(level, mspt, pending, since);
+        return level == previous.level() ? null : level;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    public Level level() {
+        return status.level();
+    }
+
+    public boolean isRejecting() {
+        return level() == Level.REJECTING;
+    }
+
+    public String rejectMessage() {
+        return settings.rejectMessage();
+    }
+
+    //limits with the answer length capped while tokens are reduced
+    public ChatPipeline.Limits limits(ChatPipeline.Limits limits) {
+        if (level().ordinal() < Level.REDUCED_TOKENS.ordinal()
+                || limits.maxResponseTokens() <= settings.maxResponseTokens()) {
+            return limits;
+        }
+        return new ChatPipeline.Limits(limits.systemPrompt(), limits.maxPromptTokens(), settings.maxResponseTokens(),
+                limits.maxTotalTokens());
+    }
+
+    //the model to use instead of model, which is kept when the provider has no fast model configured
+    public String model(AIProvider provider, String model) {
+        if (level().ordinal() < Level.FAST_MODEL.ordinal()) return model;
+        String fast = settings.fastModels().get(provider.id());
+        return fast == null || fast.isBlank() ? model : fast;
+    }
+
+    //replies per tick while deferring, 0 when delivery runs at its normal rate
+    public int deliveryThrottle() {
+        return level().ordinal() < Level.DEFERRED_DELIVERY.ordinal() ? 0 : settings.deferredMessagesPerTick();
+    }
+}
@@ -0,0 +1,28 @@
+package com.askai.load;
+
+import org.bukkit.Bukkit;
+
+//average milliseconds per tick. Paper reports it directly. Folia has no server-wide tick, so there it is
+//measured from how long the global region took to get through the last sampling period, which only shows
+//ticks that run over their 50 ms
+public final class TickHealth {
+    private static final double TICK_MILLIS = 50.0;
+
+    private boolean reported = true;
+    private long lastNanos;
+
+    //call from a task repeating every periodTicks on the main thread (global region on Folia)
+    public double sample(long periodTicks) {
+        long now = System.nanoTime();
+        double measured = lastNanos == 0 ? TICK_MILLIS : (now - lastNanos) / 1_000_000.0 / periodTicks;
+        lastNanos = now;
+        if (reported) {
+            try {
+                return Bukkit.getServer().getAverageTickTime();
+            } catch (UnsupportedOperationException e) {
+                reported = false;
+            }
+        }
+        return measured;
+    }
+}
@@ -1,25 +1,74 @@
 package com.askai.model;
 
+import java.net.URI;
 import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
-public enum AIProvider {
-    OPENAI("openai", "OpenAI", "gpt-4o-mini",
-            List.of("gpt-5-mini", "gpt-5-nano", "gpt-4o", "gpt-4o-mini", "gpt-4-turbo", "o1-mini")),
-    ANTHROPIC("anthropic", "Anthropic", "claude-haiku-4-5",
-            List.of("claude-sonnet-4-5", "claude-haiku-4-5")),
-    GEMINI("gemini", "Google Gemini", "gemini-2.0-flash",
-            List.of("gemini-2.5-flash", "gemini-2.5-flash-lite", "gemini-2.0-flash", "gemini-1.5-pro", "gemini-1.5-flash"));
+//a provider is defined in config: an id, the wire protocol it speaks and where it lives. the three hosted
+//APIs are built in and used when config defines no providers. instances are equal by id, so settings and
+//maps keyed by a provider keep working after /chat reload replaces the definitions
+public final class AIProvider {
+    public static final Pattern ID_PATTERN = Pattern.compile("[a-z0-9][a-z0-9_-]{0,31}");
+
+    public enum Protocol {
+        OPENAI("openai"),
+        ANTHROPIC("anthropic"),
+        GEMINI("gemini");
+
+        private final String id;
+
+        Protocol(String id) {
+            this.id = id;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public static Protocol fromId(String id) {
+            if (id == null) return null;
+            for (Protocol p : values()) {
+                if (p.id.equalsIgnoreCase(id)) return p;
+            }
+            return null;
+        }
+    }
+
+    public static final AIProvider OPENAI = new AIProvider("openai", "OpenAI", Protocol.OPENAI, null,
+            "gpt-4o-mini", List.of("gpt-5-mini", "gpt-5-nano", "gpt-4o", "gpt-4o-mini", "gpt-4-turbo", "o1-mini"),
+            "green", true);
+    public static final AIProvider ANTHROPIC = new AIProvider("anthropic", "Anthropic", Protocol.ANTHROPIC, null,
+            "claude-haiku-4-5", List.of("claude-sonnet-4-5", "claude-haiku-4-5"),
+            "gold", true);
+    public static final AIProvider GEMINI = new AIProvider("gemini", "Google Gemini", Protocol.GEMINI, null,
+            "gemini-2.0-flash", List.of("gemini-2.5-flash", "gemini-2.5-flash-lite", "gemini-2.0-flash",
+            "gemini-1.5-pro", "gemini-1.5-flash"),
+            "aqua", true);
+
+    private static final List<AIProvider> BUILT_IN = List.of(OPENAI, ANTHROPIC, GEMINI);
+    private static volatile List<AIProvider> registered = BUILT_IN;
 
     private final String id;
     private final String displayName;
+    private final Protocol protocol;
+    private final URI baseUri;
     private final String defaultModel;
     private final List<String> suggestedModels;
+    private final String color;
+    private final boolean requiresKey;
 
-    AIProvider(String id, String displayName, String defaultModel, List<String> suggestedModels) {
-        this.id = id;
+    //baseUri null = the protocol's hosted API
+    public AIProvider(String id, String displayName, Protocol protocol, URI baseUri, String defaultModel,
+                      List<String> suggestedModels, String color, boolean requiresKey) {
+        this.id = id.toLowerCase(Locale.ROOT);
         this.displayName = displayName;
+        this.protocol = protocol;
+        this.baseUri = baseUri;
         this.defaultModel = defaultModel;
-        this.suggestedModels = suggestedModels;
+        this.suggestedModels = List.copyOf(suggestedModels);
+        this.color = color;
+        this.requiresKey = requiresKey;
     }
 
     public String id() {
@@ -30,6 +79,14 @@ public enum AIProvider {
         return displayName;
     }
 
+    public Protocol protocol() {
+        return protocol;
+    }
+
+    public URI baseUri() {
+        return baseUri;
+    }
+
     public String defaultModel() {
         return defaultModel;
     }
@@ -38,11 +95,55 @@ public enum AIProvider {
         return suggestedModels;
     }
 
+    //a named text color or #rrggbb
+    public String color() {
+        return color;
+    }
+
+    //false for local servers that take no API key
+    public boolean requiresKey() {
+        return requiresKey;
+    }
+
+    //providers from the current config, in config order
+    public static List<AIProvider> values() {
+        return registered;
+    }
+
+    public static List<AIProvider> builtIn() {
+        return BUILT_IN;
+    }
+
+    //the provider new players start on
+    public static AIProvider defaultProvider() {
+        return registered.get(0);
+    }
+
+    //an empty list restores the built-in providers
+    public static void register(List<AIProvider> providers) {
+        registered = providers.isEmpty() ? BUILT_IN : List.copyOf(providers);
+    }
+
     public static AIProvider fromId(String id) {
         if (id == null) return null;
-        for (AIProvider p : values()) {
+        for (AIProvider p : registered) {
             if (p.id.equalsIgnoreCase(id)) return p;
         }
         return null;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AIProvider other && id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
 }
@@ -2,11 +2,25 @@ package com.askai.model;
 
 import java.util.List;
 
+//mustAnswer keeps the tools declared (earlier turns refer to them) but forbids calling another one
 public record AIRequest(
         String model,
         List<ChatMessage> messages,
         String systemPrompt,
         int maxTokens,
-        double temperature
+        double temperature,
+        List<ToolDefinition> tools,
+        boolean mustAnswer
 ) {
+    public AIRequest(String model, List<ChatMessage> messages, String systemPrompt, int maxTokens, double temperature) {
+        this(model, messages, systemPrompt, maxTokens, temperature, List.of(), false);
+    }
+
+    public AIRequest withModel(String model) {
+        return new AIRequest(model, messages, systemPrompt, maxTokens, temperature, tools, mustAnswer);
+    }
+
+    public AIRequest withMessages(List<ChatMessage> messages, boolean mustAnswer) {
+        return new AIRequest(model, messages, systemPrompt, maxTokens, temperature, tools, mustAnswer);
+    }
 }
@@ -1,4 +1,17 @@
 package com.askai.model;
 
-public record AIResponse(String text, int promptTokens, int completionTokens, String finishReason) {
+import java.util.List;
+
+//toolCalls is non-empty when the model wants tool results before it answers
+public record AIResponse(String text, int promptTokens, int completionTokens, String finishReason,
+                         RateLimitSnapshot rateLimit, List<ToolCall> toolCalls) {
+
+    public AIResponse(String text, int promptTokens, int completionTokens, String finishReason,
+                      RateLimitSnapshot rateLimit) {
+        this(text, promptTokens, completionTokens, finishReason, rateLimit, List.of());
+    }
+
+    public boolean wantsTools() {
+        return !toolCalls.isEmpty();
+    }
 }
@@ -1,4 +1,19 @@
 package com.askai.model;
 
-public record ChatMessage(String role, String content) {
+import java.util.List;
+
+//toolCalls is set on assistant turns that asked for tools; toolResultFor on the "tool" turn answering one
+public record ChatMessage(String role, String content, List<ToolCall> toolCalls, ToolCall toolResultFor) {
+
+    public ChatMessage(String role, String content) {
+        this(role, content, List.of(), null);
+    }
+
+    public static ChatMessage toolCalls(String text, List<ToolCall> calls) {
+        return new ChatMessage("assistant", text, calls, null);
+    }
+
+    public static ChatMessage toolResult(ToolCall call, String result) {
+        return new ChatMessage("tool", result, List.of(), call);
+    }
 }
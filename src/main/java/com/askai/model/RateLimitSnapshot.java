@@ -0,0 +1,19 @@
+package com.askai.model;
+
+//remaining quota as reported by provider response headers. -1 means the provider did not say
+public record RateLimitSnapshot(long requestsLimit, long requestsRemaining,
+                                long tokensLimit, long tokensRemaining,
+                                long resetAtMillis, long retryAfterMillis) {
+    public static final RateLimitSnapshot UNKNOWN = new RateLimitSnapshot(-1, -1, -1, -1, -1, -1);
+
+    //fraction of the tighter of the two limits still available, or -1 if neither is known
+    public double headroom() {
+        double requests = requestsLimit > 0 && requestsRemaining >= 0
+                ? (double) requestsRemaining / requestsLimit : -1;
+        double tokens = tokensLimit > 0 && tokensRemaining >= 0
+                ? (double) tokensRemaining / tokensLimit : -1;
+        if (requests < 0) return tokens;
+        if (tokens < 0) return requests;
+        return Math.min(requests, tokens);
+    }
+}
@@ -0,0 +1,5 @@
+package com.askai.model;
+
+//one entry of the server-mode key pool. id 0 is the primary key set with /chat setkey
+public record ServerKey(long id, AIProvider provider, String encryptedKey, long addedAt) {
+}
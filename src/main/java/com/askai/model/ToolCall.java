@@ -0,0 +1,6 @@
+package com.askai.model;
+
+//a tool invocation requested by the model. arguments is the raw JSON object text.
+//Gemini has no call ids, so its client makes one up to pair the result with the call
+public record ToolCall(String id, String name, String arguments) {
+}
@@ -0,0 +1,7 @@
+package com.askai.model;
+
+import java.util.List;
+
+//a function the model may call instead of answering directly
+public record ToolDefinition(String name, String description, List<ToolParameter> parameters) {
+}
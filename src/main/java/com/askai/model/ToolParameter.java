@@ -0,0 +1,5 @@
+package com.askai.model;
+
+//one argument of a tool. type is a JSON schema primitive: "string", "integer", "number" or "boolean"
+public record ToolParameter(String name, String type, String description, boolean required) {
+}
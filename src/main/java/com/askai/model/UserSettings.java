@@ -1,6 +1,6 @@
 package com.askai.model;
 
-import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -12,17 +12,19 @@ public final class UserSettings {
 
     public UserSettings(UUID playerId) {
         this.playerId = playerId;
-        this.activeProvider = AIProvider.OPENAI;
-        this.encryptedKeys = new EnumMap<>(AIProvider.class);
-        this.models = new EnumMap<>(AIProvider.class);
+        this.activeProvider = AIProvider.defaultProvider();
+        this.encryptedKeys = new HashMap<>();
+        this.models = new HashMap<>();
     }
 
     public UUID playerId() {
         return playerId;
     }
 
+    //the current definition of the active provider. one removed from config falls back to the default
     public AIProvider activeProvider() {
-        return activeProvider;
+        AIProvider current = AIProvider.fromId(activeProvider.id());
+        return current != null ? current : AIProvider.defaultProvider();
     }
 
     public void setActiveProvider(AIProvider provider) {
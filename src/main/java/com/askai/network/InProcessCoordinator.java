@@ -0,0 +1,99 @@
+package com.askai.network;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+//stand-in for the shared store inside one JVM: network.type "local", and simulating several servers
+//in tests. each peer() is one more server sharing the same buckets and channel
+public final class InProcessCoordinator implements NetworkCoordinator {
+    private final Store store;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public InProcessCoordinator() {
+        this(new Store());
+    }
+
+    private InProcessCoordinator(Store store) {
+        this.store = store;
+        store.nodes.add(this);
+    }
+
+    public InProcessCoordinator peer() {
+        return new InProcessCoordinator(store);
+    }
+
+    @Override
+    public int take(String bucket, int capacity, long windowMillis, int wanted) {
+        return store.take(bucket, capacity, windowMillis, wanted);
+    }
+
+    @Override
+    public void refund(String bucket, int capacity, long windowMillis, int tokens) {
+        store.take(bucket, capacity, windowMillis, -tokens);
+    }
+
+    @Override
+    public void publish(String message) {
+        for (InProcessCoordinator node : store.nodes) {
+            if (node == this) continue;
+            for (Consumer<String> listener : node.listeners) {
+                store.delivery.execute(() -> listener.accept(message));
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String name() {
+        return "in-process";
+    }
+
+    @Override
+    public void close() {
+        store.nodes.remove(this);
+        listeners.clear();
+    }
+
+    private static final class Store {
+        private final List<InProcessCoordinator> nodes = new CopyOnWriteArrayList<>();
+        private final Map<String, Bucket> buckets = new HashMap<>();
+        //one thread, so messages arrive in the order they were published, like a pub/sub channel
+        private final ExecutorService delivery = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().daemon().name("AskAI-network").factory());
+
+        //same arithmetic as RedisCoordinator's script; a negative count refunds
+        synchronized int take(String name, int capacity, long windowMillis, int wanted) {
+            long now = System.currentTimeMillis();
+            //a bucket untouched for a whole window is full again, the same as one never used
+            if (buckets.size() > 4096) buckets.values().removeIf(b -> now - b.updatedMillis > b.windowMillis);
+            Bucket bucket = buckets.computeIfAbsent(name, k -> new Bucket(capacity, now));
+            bucket.windowMillis = windowMillis;
+            double tokens = Math.min(capacity,
+                    bucket.tokens + (now - bucket.updatedMillis) * (double) capacity / windowMillis);
+            int granted = wanted < 0 ? wanted : (int) Math.min(wanted, Math.floor(tokens));
+            bucket.tokens = Math.min(capacity, tokens - granted);
+            bucket.updatedMillis = now;
+            return Math.max(0, granted);
+        }
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long updatedMillis;
+        long windowMillis;
+
+        Bucket(double tokens, long updatedMillis) {
+            this.tokens = tokens;
+            this.updatedMillis = updatedMillis;
+        }
+    }
+}
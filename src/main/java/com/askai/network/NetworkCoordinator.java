@@ -0,0 +1,28 @@
+package com.askai.network;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+//state shared by every AskAI server on a proxy network: token buckets and a broadcast channel.
+//calls block for one round trip to the shared store; an IOException means the store could not be reached
+public interface NetworkCoordinator extends AutoCloseable {
+    //takes up to wanted tokens from a bucket that holds capacity tokens and refills completely over windowMillis.
+    //returns how many were granted, 0 if the bucket is empty
+    int take(String bucket, int capacity, long windowMillis, int wanted) throws IOException;
+
+    //puts unused tokens back, never above capacity
+    void refund(String bucket, int capacity, long windowMillis, int tokens) throws IOException;
+
+    //delivered to the listeners of every other server
+    void publish(String message) throws IOException;
+
+    //messages from other servers arrive on a background thread. after a disconnect the listener gets null
+    //once the connection is back, since messages sent in between were missed
+    void subscribe(Consumer<String> listener);
+
+    //short name for logs, e.g. "Redis"
+    String name();
+
+    @Override
+    void close();
+}
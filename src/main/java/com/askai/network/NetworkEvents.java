@@ -0,0 +1,85 @@
+package com.askai.network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+//tells the other servers which cached state a write on this one made stale. a message is
+//"<origin> settings <uuid>..." or "<origin> serverkeys"; a server ignores its own messages
+public final class NetworkEvents {
+    //most ids per message, so a seed rotation batch stays a few kilobytes
+    private static final int MAX_IDS_PER_MESSAGE = 100;
+
+    public interface Handler {
+        void settingsChanged(Collection<UUID> playerIds);
+
+        void serverKeysChanged();
+
+        //messages may have been missed: drop everything cached
+        void resync();
+    }
+
+    private final NetworkCoordinator coordinator;
+    private final Logger logger;
+    private final String origin = UUID.randomUUID().toString();
+
+    public NetworkEvents(NetworkCoordinator coordinator, Logger logger, Handler handler) {
+        this.coordinator = coordinator;
+        this.logger = logger;
+        coordinator.subscribe(message -> receive(message, handler));
+    }
+
+    //blocking, call off the main thread
+    public void settingsChanged(Collection<UUID> playerIds) {
+        List<UUID> ids = new ArrayList<>(playerIds);
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_MESSAGE) {
+            StringBuilder message = new StringBuilder(origin).append(" settings");
+            for (UUID id : ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_MESSAGE))) {
+                message.append(' ').append(id);
+            }
+            publish(message.toString());
+        }
+    }
+
+    //blocking, call off the main thread
+    public void serverKeysChanged() {
+        publish(origin + " serverkeys");
+    }
+
+    private void publish(String message) {
+        try {
+            coordinator.publish(message);
+        } catch (IOException e) {
+            logger.warning("Could not tell other servers about a settings change (" + e.getMessage()
+                    + "). They will see it once their cached copy expires.");
+        }
+    }
+
+    private void receive(String message, Handler handler) {
+        if (message == null) {
+            handler.resync();
+            return;
+        }
+        String[] parts = message.split(" ");
+        if (parts.length < 2 || parts[0].equals(origin)) return;
+        switch (parts[1]) {
+            case "settings" -> {
+                List<UUID> ids = new ArrayList<>(parts.length - 2);
+                for (int i = 2; i < parts.length; i++) {
+                    try {
+                        ids.add(UUID.fromString(parts[i]));
+                    } catch (IllegalArgumentException ignored) {
+                    }
+                }
+                handler.settingsChanged(ids);
+            }
+            case "serverkeys" -> handler.serverKeysChanged();
+            default -> {
+                //sent by a newer version of the plugin
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.askai.network;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+//shared state in Redis (or anything speaking its protocol: Valkey, KeyDB, Dragonfly). a token bucket is
+//one hash updated by a server-side script, so the refill uses the store's clock and concurrent takes from
+//several servers cannot overdraw it. broadcasts go over one pub/sub channel
+public final class RedisCoordinator implements NetworkCoordinator {
+    //KEYS[1] bucket hash. ARGV capacity, window ms, wanted (negative refunds). returns tokens granted
+    private static final String TAKE_SCRIPT = """
+            redis.replicate_commands()
+            local capacity = tonumber(ARGV[1])
+            local window = tonumber(ARGV[2])
+            local wanted = tonumber(ARGV[3])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'updated')
+            local tokens = tonumber(state[1]) or capacity
+            local updated = tonumber(state[2]) or now
+            tokens = math.min(capacity, tokens + math.max(0, now - updated) * capacity / window)
+            local granted = wanted
+            if wanted > 0 then granted = math.min(wanted, math.floor(tokens)) end
+            tokens = math.min(capacity, tokens - granted)
+            redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'updated', tostring(now))
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            return math.max(0, granted)
+            """;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int database;
+    private final String keyPrefix;
+    private final int timeoutMillis;
+    private final long retryMillis;
+    private final Logger logger;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    private RespConnection connection;
+    private String scriptSha;
+    //after a failure no reconnect is tried before this, so calls fail at once instead of each waiting
+    //out the connect timeout while the store is down
+    private long retryAtMillis;
+    private Thread subscriber;
+    private volatile RespConnection subscription;
+    private volatile boolean closed;
+
+    public RedisCoordinator(String host, int port, String password, int database, String keyPrefix,
+                            int timeoutMillis, int retrySeconds, Logger logger) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.database = database;
+        this.keyPrefix = keyPrefix;
+        this.timeoutMillis = timeoutMillis;
+        this.retryMillis = retrySeconds * 1000L;
+        this.logger = logger;
+    }
+
+    @Override
+    public int take(String bucket, int capacity, long windowMillis, int wanted) throws IOException {
+        return eval(bucket, capacity, windowMillis, wanted);
+    }
+
+    @Override
+    public void refund(String bucket, int capacity, long windowMillis, int tokens) throws IOException {
+        eval(bucket, capacity, windowMillis, -tokens);
+    }
+
+    private synchronized int eval(String bucket, int capacity, long windowMillis, int wanted) throws IOException {
+        String[] args = {keyPrefix + "bucket:" + bucket, Integer.toString(capacity),
+                Long.toString(Math.max(1, windowMillis)), Integer.toString(wanted)};
+        if (scriptSha == null) scriptSha = (String) call("SCRIPT", "LOAD", TAKE_SCRIPT);
+        Object reply;
+        try {
+            reply = call(evalSha(args));
+        } catch (RespConnection.RespException e) {
+            //the store was restarted or flushed its script cache
+            if (!e.getMessage().startsWith("NOSCRIPT")) throw e;
+            scriptSha = (String) call("SCRIPT", "LOAD", TAKE_SCRIPT);
+            reply = call(evalSha(args));
+        }
+        return ((Long) reply).intValue();
+    }
+
+    private String[] evalSha(String[] args) {
+        String[] command = new String[args.length + 3];
+        command[0] = "EVALSHA";
+        command[1] = scriptSha;
+        command[2] = "1";
+        System.arraycopy(args, 0, command, 3, args.length);
+        return command;
+    }
+
+    @Override
+    public synchronized void publish(String message) throws IOException {
+        call("PUBLISH", channel(), message);
+    }
+
+    //an error reply leaves the connection usable; anything else drops it and a call after retryMillis
+    //reconnects
+    private Object call(String... args) throws IOException {
+        if (closed) throw new IOException("Coordinator is closed");
+        if (connection == null) {
+            long now = System.currentTimeMillis();
+            if (now < retryAtMillis) {
+                throw new IOException("unreachable, retrying in " + (retryAtMillis - now + 999) / 1000 + "s");
+            }
+            try {
+                connection = open();
+            } catch (IOException e) {
+                retryAtMillis = now + retryMillis;
+                throw e;
+            }
+            scriptSha = null;
+        }
+        try {
+            return connection.command(args);
+        } catch (RespConnection.RespException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            connection = null;
+            retryAtMillis = System.currentTimeMillis() + retryMillis;
+            throw e instanceof IOException io ? io : new IOException(e);
+        }
+    }
+
+    private RespConnection open() throws IOException {
+        RespConnection conn = new RespConnection(host, port, timeoutMillis);
+        try {
+            conn.handshake(password, database);
+        } catch (IOException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    private String channel() {
+        return keyPrefix + "events";
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+        if (subscriber == null) {
+            subscriber = Thread.ofPlatform().daemon().name("AskAI-redis-subscriber").start(this::listen);
+        }
+    }
+
+    //holds the subscription open, reconnecting with backoff. a quiet connection is pinged, so a dead one
+    //is noticed within two read timeouts
+    private void listen() {
+        long backoffMillis = 1000;
+        boolean connectedBefore = false;
+        boolean warned = false;
+        while (!closed) {
+            try (RespConnection conn = open()) {
+                subscription = conn;
+                conn.setReadTimeout(Math.max(timeoutMillis, 15_000));
+                conn.send("SUBSCRIBE", channel());
+                conn.read();
+                //anything published while this server was not listening is lost
+                if (connectedBefore || warned) {
+                    logger.info("Reconnected to " + name() + " at " + host + ":" + port + ".");
+                    notifyListeners(null);
+                }
+                connectedBefore = true;
+                warned = false;
+                backoffMillis = 1000;
+                boolean awaitingPong = false;
+                while (!closed) {
+                    Object reply;
+                    try {
+                        reply = conn.read();
+                    } catch (SocketTimeoutException e) {
+                        if (awaitingPong) throw e;
+                        conn.send("PING");
+                        awaitingPong = true;
+                        continue;
+                    }
+                    awaitingPong = false;
+                    if (reply instanceof List<?> parts && parts.size() == 3 && "message".equals(parts.get(0))) {
+                        notifyListeners((String) parts.get(2));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (closed) return;
+                if (!warned) {
+                    logger.warning("Lost the " + name() + " subscription at " + host + ":" + port + " ("
+                            + e.getMessage() + "). Retrying in the background.");
+                    warned = true;
+                }
+            } finally {
+                subscription = null;
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+        }
+    }
+
+    private void notifyListeners(String message) {
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                logger.warning("Network event handler failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "Redis";
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        RespConnection sub = subscription;
+        if (sub != null) sub.close();
+        synchronized (this) {
+            if (subscriber != null) subscriber.interrupt();
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.askai.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//one connection speaking the Redis protocol (RESP2). replies come back as String (simple and bulk
+//strings), Long, List<Object> or null. not thread-safe, callers synchronize
+final class RespConnection implements AutoCloseable {
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    RespConnection(String host, int port, int timeoutMillis) throws IOException {
+        this.socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    //AUTH and SELECT, the same for every connection to the store
+    void handshake(String password, int database) throws IOException {
+        if (password != null && !password.isEmpty()) command("AUTH", password);
+        if (database != 0) command("SELECT", Integer.toString(database));
+    }
+
+    Object command(String... args) throws IOException {
+        send(args);
+        return read();
+    }
+
+    void send(String... args) throws IOException {
+        out.write(('*' + Integer.toString(args.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            out.write(('$' + Integer.toString(bytes.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    //a subscriber waits longer than a command, since its connection is quiet between messages
+    void setReadTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    Object read() throws IOException {
+        int type = in.read();
+        if (type == -1) throw new EOFException("Connection closed by the server");
+        String line = readLine();
+        return switch (type) {
+            case '+' -> line;
+            case '-' -> throw new RespException(line);
+            case ':' -> Long.parseLong(line);
+            case '$' -> readBulk(Integer.parseInt(line));
+            case '*' -> readArray(Integer.parseInt(line));
+            default -> throw new IOException("Unexpected reply type '" + (char) type + "'");
+        };
+    }
+
+    private String readBulk(int length) throws IOException {
+        if (length < 0) return null;
+        byte[] bytes = in.readNBytes(length + 2);
+        if (bytes.length < length + 2) throw new EOFException("Connection closed mid-reply");
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private List<Object> readArray(int count) throws IOException {
+        if (count < 0) return null;
+        List<Object> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            try {
+                items.add(read());
+            } catch (RespException e) {
+                //an error inside an array (a failed script step) is a value, not a broken stream
+                items.add(e);
+            }
+        }
+        return items;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c == -1) throw new EOFException("Connection closed mid-reply");
+            if (c == '\r') {
+                if (in.read() != '\n') throw new IOException("Malformed reply line");
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    //an error reply. the connection is still usable
+    static final class RespException extends IOException {
+        RespException(String message) {
+            super(message);
+        }
+    }
+}
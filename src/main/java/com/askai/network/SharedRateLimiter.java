@@ -0,0 +1,152 @@
+package com.askai.network;
+
+import com.askai.util.RateLimiter;
+import com.askai.util.SlidingWindowRateLimiter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+//one token bucket per player for the whole network, so hopping servers does not reset the limit.
+//tokens are fetched leaseSize at a time and spent locally, which keeps most requests off the network.
+//a lease is fetched ahead when the player joins, and what is left goes back when they leave. tryAcquire
+//never waits on the store: with the lease spent it lets the per-server limit decide and refills in the
+//background, charging the tokens it lent to the refill. if the store cannot be reached the per-server
+//limit applies instead
+public final class SharedRateLimiter implements RateLimiter {
+    private static final long WARNING_INTERVAL_MILLIS = 60_000;
+    private static final ExecutorService BACKGROUND = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final NetworkCoordinator coordinator;
+    private final String name;
+    private final int maxRequests;
+    private final long windowMillis;
+    private final int leaseSize;
+    private final RateLimiter fallback;
+    private final Logger logger;
+    private final Map<UUID, Lease> leases = new ConcurrentHashMap<>();
+    private volatile long lastWarningMillis;
+
+    private static final class Lease {
+        final AtomicInteger tokens = new AtomicInteger();
+        //spent through the per-server limit while the lease was empty, owed to the network bucket
+        final AtomicInteger borrowed = new AtomicInteger();
+        final AtomicBoolean refilling = new AtomicBoolean();
+        //the last refill left nothing to spend; no request goes ahead before a token can have come back
+        volatile long deniedUntilMillis;
+    }
+
+    //name keeps limits with different budgets in separate buckets
+    public SharedRateLimiter(NetworkCoordinator coordinator, String name, int maxRequests, int windowSeconds,
+                             int leaseSize, Logger logger) {
+        this.coordinator = coordinator;
+        this.name = name;
+        this.maxRequests = maxRequests;
+        this.windowMillis = windowSeconds * 1000L;
+        this.leaseSize = Math.max(1, Math.min(leaseSize, maxRequests));
+        this.fallback = new SlidingWindowRateLimiter(maxRequests, windowSeconds);
+        this.logger = logger;
+    }
+
+    @Override
+    public boolean tryAcquire(UUID playerId) {
+        if (maxRequests <= 0) return false;
+        Lease lease = leases.computeIfAbsent(playerId, k -> new Lease());
+        if (spend(lease.tokens)) return true;
+        if (System.currentTimeMillis() < lease.deniedUntilMillis) return false;
+        //counted as borrowed before the refill starts, so that refill already repays it
+        boolean allowed = fallback.tryAcquire(playerId);
+        if (allowed) lease.borrowed.incrementAndGet();
+        if (lease.refilling.compareAndSet(false, true)) {
+            BACKGROUND.execute(() -> refill(playerId, lease));
+        }
+        return allowed;
+    }
+
+    private static boolean spend(AtomicInteger tokens) {
+        int left;
+        do {
+            left = tokens.get();
+            if (left <= 0) return false;
+        } while (!tokens.compareAndSet(left, left - 1));
+        return true;
+    }
+
+    @Override
+    public void prefetch(UUID playerId) {
+        if (maxRequests <= 0) return;
+        Lease lease = leases.computeIfAbsent(playerId, k -> new Lease());
+        if (lease.tokens.get() > 0 || !lease.refilling.compareAndSet(false, true)) return;
+        refill(playerId, lease);
+    }
+
+    //off the main thread, holding lease.refilling
+    private void refill(UUID playerId, Lease lease) {
+        try {
+            int owed = lease.borrowed.get();
+            int granted = coordinator.take(bucket(playerId), maxRequests, windowMillis, leaseSize + owed);
+            int paid = Math.min(owed, granted);
+            lease.borrowed.addAndGet(-paid);
+            //what is still owed is paid out of the next refill
+            if (granted == paid) {
+                lease.deniedUntilMillis = System.currentTimeMillis() + Math.max(1, windowMillis / maxRequests);
+                return;
+            }
+            lease.tokens.addAndGet(granted - paid);
+            //the player left while the tokens were on their way
+            if (leases.get(playerId) != lease) release(playerId, lease);
+        } catch (IOException e) {
+            warn(e);
+            //the per-server limit already counted what was lent while the store was away
+            lease.borrowed.set(0);
+        } finally {
+            lease.refilling.set(false);
+        }
+    }
+
+    //called on the main thread, so the refund goes out in the background
+    @Override
+    public void cleanup(UUID playerId) {
+        fallback.cleanup(playerId);
+        Lease lease = leases.remove(playerId);
+        if (lease != null) BACKGROUND.execute(() -> release(playerId, lease));
+    }
+
+    //this limiter is being replaced: every lease goes back, so the new one starts from the full bucket
+    @Override
+    public void close() {
+        for (Map.Entry<UUID, Lease> entry : leases.entrySet()) {
+            if (leases.remove(entry.getKey(), entry.getValue())) {
+                BACKGROUND.execute(() -> release(entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    private void release(UUID playerId, Lease lease) {
+        int unused = lease.tokens.getAndSet(0);
+        if (unused <= 0) return;
+        try {
+            coordinator.refund(bucket(playerId), maxRequests, windowMillis, unused);
+        } catch (IOException e) {
+            warn(e);
+        }
+    }
+
+    private String bucket(UUID playerId) {
+        return name + ":" + playerId;
+    }
+
+    private void warn(IOException e) {
+        long now = System.currentTimeMillis();
+        if (now - lastWarningMillis < WARNING_INTERVAL_MILLIS) return;
+        lastWarningMillis = now;
+        logger.warning("Could not reach " + coordinator.name() + " for rate limits (" + e.getMessage()
+                + "). Limiting per server until it is back.");
+    }
+}
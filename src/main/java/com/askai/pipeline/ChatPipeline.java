@@ -0,0 +1,218 @@
+package com.askai.pipeline;
+
+import com.askai.knowledge.Passage;
+import com.askai.model.AIProvider;
+import com.askai.model.AIRequest;
+import com.askai.model.AIResponse;
+import com.askai.model.ChatMessage;
+import com.askai.model.ToolCall;
+import com.askai.model.ToolDefinition;
+import com.askai.model.ToolParameter;
+import com.askai.provider.AIProviderClient;
+import com.askai.provider.AIProviderException;
+import com.askai.tokens.TokenEstimator;
+import com.askai.tokens.TokenEstimators;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+//the part of a /chat request between "we know who is asking what" and "we have an answer":
+//token budgeting, prompt assembly and the provider call. kept free of Bukkit so the replay
+//tool can drive exactly the same code with a scripted client
+public final class ChatPipeline {
+    public static final int MIN_RESPONSE_TOKENS = 32;
+    private static final double TEMPERATURE = 0.7;
+    //schema framing per tool definition, roughly what the providers bill for an empty parameter object
+    private static final int TOOL_OVERHEAD_TOKENS = 20;
+
+    private final Function<AIProvider, AIProviderClient> clients;
+
+    public record Limits(String systemPrompt, int maxPromptTokens, int maxResponseTokens, int maxTotalTokens) {
+    }
+
+    public record Prepared(AIRequest request, int estimatedPromptTokens) {
+    }
+
+    //agent loop caps: model calls per question (the last one may not call tools) and wall time for all of them
+    public record ToolLimits(int maxRounds, long maxMillis) {
+    }
+
+    //runs one tool call for the asking player. must not throw; failures are results the model can read
+    @FunctionalInterface
+    public interface ToolInvoker {
+        CompletableFuture<String> invoke(ToolCall call);
+    }
+
+    //how the request reaches the provider: a player's own key, or a lease from the server key pool
+    @FunctionalInterface
+    public interface Sender {
+        AIResponse send(AIProviderClient client, AIRequest request);
+    }
+
+    public ChatPipeline(Function<AIProvider, AIProviderClient> clients) {
+        this.clients = clients;
+    }
+
+    //predicts the prompt size locally. drops the least relevant passages first, then rejects
+    public Prepared prepare(Limits limits, AIProvider provider, String model, String message, List<Passage> context) {
+        return prepare(limits, provider, model, message, context, List.of());
+    }
+
+    //tool definitions are sent with every request, so they count against the prompt budget too
+    public Prepared prepare(Limits limits, AIProvider provider, String model, String message, List<Passage> context,
+                            List<ToolDefinition> tools) {
+        TokenEstimator estimator = TokenEstimators.forProvider(provider);
+        List<ChatMessage> messages = List.of(new ChatMessage("user", message));
+        int toolTokens = estimateTools(estimator, tools);
+        String systemPrompt = withKnowledge(limits.systemPrompt(), context);
+        int promptTokens = estimator.estimatePrompt(systemPrompt, messages) + toolTokens;
+        while (promptTokens > limits.maxPromptTokens() && !context.isEmpty()) {
+            context = context.subList(0, context.size() - 1);
+            systemPrompt = withKnowledge(limits.systemPrompt(), context);
+            promptTokens = estimator.estimatePrompt(systemPrompt, messages) + toolTokens;
+        }
+        if (promptTokens > limits.maxPromptTokens()) {
+            throw new PromptRejectedException("Message too long (~" + promptTokens
+                    + " tokens). Max: " + limits.maxPromptTokens() + " tokens.");
+        }
+        int maxTokens = limits.maxTotalTokens() > 0
+                ? Math.min(limits.maxResponseTokens(), limits.maxTotalTokens() - promptTokens)
+                : limits.maxResponseTokens();
+        if (maxTokens < MIN_RESPONSE_TOKENS) {
+            throw new PromptRejectedException("Message too long to leave room for an answer. Try a shorter question.");
+        }
+
+        //single shot requests only, no chat history
+        AIRequest request = new AIRequest(model, messages, systemPrompt, maxTokens, TEMPERATURE, tools, false);
+        return new Prepared(request, promptTokens);
+    }
+
+    //blocking, call off the main thread
+    public AIResponse execute(AIProvider provider, Prepared prepared, Sender sender) {
+        return sender.send(new Calibrating(clients.apply(provider), provider, prepared.estimatedPromptTokens()),
+                prepared.request());
+    }
+
+    //model -> tools -> model until it answers. usage is summed over all rounds; only the first round's
+    //prompt is compared against the local estimate
+    public AIResponse execute(AIProvider provider, Prepared prepared, Sender sender,
+                              ToolInvoker tools, ToolLimits toolLimits) {
+        AIRequest request = prepared.request();
+        if (request.tools().isEmpty()) return execute(provider, prepared, sender);
+
+        AIProviderClient client = clients.apply(provider);
+        long deadline = System.nanoTime() + toolLimits.maxMillis() * 1_000_000;
+        List<ChatMessage> messages = new ArrayList<>(request.messages());
+        int promptTokens = 0;
+        int completionTokens = 0;
+        for (int round = 1; ; round++) {
+            //last round or out of time: the model has to answer with what it has
+            boolean mustAnswer = round >= toolLimits.maxRounds() || System.nanoTime() >= deadline;
+            AIResponse response = sender.send(
+                    round == 1 ? new Calibrating(client, provider, prepared.estimatedPromptTokens()) : client,
+                    request.withMessages(List.copyOf(messages), mustAnswer));
+            promptTokens += response.promptTokens();
+            completionTokens += response.completionTokens();
+            if (!response.wantsTools() || mustAnswer) {
+                return new AIResponse(response.text(), promptTokens, completionTokens,
+                        response.finishReason(), response.rateLimit());
+            }
+
+            //start every call of the round at once, so world queries share a tick
+            List<ToolCall> calls = response.toolCalls();
+            List<CompletableFuture<String>> results = new ArrayList<>(calls.size());
+            for (ToolCall call : calls) {
+                results.add(tools.invoke(call));
+            }
+            messages.add(ChatMessage.toolCalls(response.text(), calls));
+            for (int i = 0; i < calls.size(); i++) {
+                messages.add(ChatMessage.toolResult(calls.get(i), await(results.get(i), deadline)));
+            }
+        }
+    }
+
+    //compares the provider's prompt token count against the local estimate. only the answer of the first
+    //successful call made through this client counts, and a hedge sent to another provider goes through
+    //that provider's own client, so its usage never skews this provider's estimator
+    private static final class Calibrating implements AIProviderClient {
+        private final AIProviderClient client;
+        private final AIProvider provider;
+        private final int estimatedPromptTokens;
+        private final AtomicBoolean observed = new AtomicBoolean();
+
+        private Calibrating(AIProviderClient client, AIProvider provider, int estimatedPromptTokens) {
+            this.client = client;
+            this.provider = provider;
+            this.estimatedPromptTokens = estimatedPromptTokens;
+        }
+
+        @Override
+        public CompletableFuture<AIResponse> chat(AIRequest request, String apiKey) {
+            return observe(client.chat(request, apiKey));
+        }
+
+        @Override
+        public CompletableFuture<AIResponse> stream(AIRequest request, String apiKey, Consumer<String> onText) {
+            return observe(client.stream(request, apiKey, onText));
+        }
+
+        @Override
+        public URI baseUri() {
+            return client.baseUri();
+        }
+
+        //the call itself is handed back, so cancelling it still reaches the HTTP exchange
+        private CompletableFuture<AIResponse> observe(CompletableFuture<AIResponse> call) {
+            call.thenAccept(response -> {
+                if (observed.compareAndSet(false, true)) {
+                    TokenEstimators.observe(provider, estimatedPromptTokens, response.promptTokens());
+                }
+            });
+            return call;
+        }
+    }
+
+    private static String await(CompletableFuture<String> result, long deadline) {
+        try {
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return "{\"error\":\"timed out\"}";
+        } catch (ExecutionException e) {
+            return "{\"error\":\"tool failed\"}";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AIProviderException("Interrupted while waiting for a tool", e);
+        }
+    }
+
+    private static int estimateTools(TokenEstimator estimator, List<ToolDefinition> tools) {
+        int tokens = 0;
+        for (ToolDefinition tool : tools) {
+            tokens += estimator.estimate(tool.name()) + estimator.estimate(tool.description()) + TOOL_OVERHEAD_TOKENS;
+            for (ToolParameter param : tool.parameters()) {
+                tokens += estimator.estimate(param.name()) + estimator.estimate(param.description()) + 4;
+            }
+        }
+        return tokens;
+    }
+
+    static String withKnowledge(String systemPrompt, List<Passage> context) {
+        if (context.isEmpty()) return systemPrompt;
+        StringBuilder sb = new StringBuilder(systemPrompt)
+                .append("\n\nInformation about this server. Prefer it over general knowledge when relevant:");
+        for (Passage passage : context) {
+            sb.append("\n---\n");
+            if (!passage.heading().isEmpty()) sb.append(passage.heading()).append('\n');
+            sb.append(passage.text());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,8 @@
+package com.askai.pipeline;
+
+//the prompt cannot be sent within the configured token budget. the message is player-facing
+public class PromptRejectedException extends RuntimeException {
+    public PromptRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,206 @@
+package com.askai.pipeline;
+
+import com.askai.model.AIProvider;
+import com.askai.model.AIRequest;
+import com.askai.model.AIResponse;
+import com.askai.provider.AIProviderClient;
+import com.askai.provider.AIProviderException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//cuts tail latency: a provider call that has not answered by its model's recent p95 is sent a second time,
+//and whichever answer arrives first is used. the slower call is cancelled. every call earns maxFraction of
+//a hedge, so over time at most that share of calls is sent twice
+public final class RequestHedger {
+    //both attempts block on provider calls for their whole length, so they get cheap threads of their own
+    private static final Executor RUNNER = task -> Thread.ofVirtual().name("AskAI-hedge").start(task);
+    //unused budget carried over, so a quiet period does not allow a burst of hedges afterwards
+    private static final double MAX_SAVED_HEDGES = 10;
+
+    private volatile Settings settings;
+    private final Observer observer;
+    private double budget;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder overBudget = new LongAdder();
+
+    //models with fewer than minSamples recent calls hedge after fallbackDelayMillis
+    public record Settings(boolean enabled, double maxFraction, int minSamples, long fallbackDelayMillis,
+                           long minDelayMillis) {
+    }
+
+    //overBudget counts calls that were slow enough to hedge but found no budget left
+    public record Stats(long calls, long hedged, long hedgeWins, long overBudget) {
+        public double hedgeRate() {
+            return calls == 0 ? 0 : (double) hedged / calls;
+        }
+
+        public double winRate() {
+            return hedged == 0 ? 0 : (double) hedgeWins / hedged;
+        }
+    }
+
+    //where the second attempt goes. a null model keeps the request's model
+    public record Target(AIProvider provider, AIProviderClient client, ChatPipeline.Sender sender, String model) {
+    }
+
+    //told the latency and outcome of every attempt, against the provider and model that attempt went to
+    @FunctionalInterface
+    public interface Observer {
+        void observe(AIProvider provider, String model, long latencyMillis, boolean failed);
+    }
+
+    public RequestHedger(Settings settings, Observer observer) {
+        this.settings = settings;
+        this.observer = observer;
+    }
+
+    public void configure(Settings settings) {
+        this.settings = settings;
+    }
+
+    public boolean isEnabled() {
+        return settings.enabled();
+    }
+
+    //the model's observed p95, once there are enough calls to trust it
+    public long delayMillis(long p95Millis, int samples) {
+        Settings current = settings;
+        long delay = samples >= current.minSamples() ? p95Millis : current.fallbackDelayMillis();
+        return Math.max(current.minDelayMillis(), delay);
+    }
+
+    //only observed when hedging is off. each attempt is observed on its own, so a hedge that wins neither
+    //shortens the primary model's latency nor lends it the alternate provider's
+    public ChatPipeline.Sender wrap(AIProvider provider, ChatPipeline.Sender sender, long delayMillis,
+                                    Target hedge) {
+        ChatPipeline.Sender primary = observed(provider, sender);
+        if (!settings.enabled()) return primary;
+        Target second = new Target(hedge.provider(), hedge.client(), observed(hedge.provider(), hedge.sender()),
+                hedge.model());
+        return (client, request) -> send(client, request, primary, delayMillis, second);
+    }
+
+    //times each call of sender. a call cancelled because the other attempt won counts as the time it had
+    //run, which is all that is known of its latency: leaving it out would hide exactly the slow calls
+    public ChatPipeline.Sender observed(AIProvider provider, ChatPipeline.Sender sender) {
+        return (client, request) -> {
+            long startNanos = System.nanoTime();
+            try {
+                AIResponse response = sender.send(client, request);
+                observer.observe(provider, request.model(), millisSince(startNanos), false);
+                return response;
+            } catch (RuntimeException e) {
+                observer.observe(provider, request.model(), millisSince(startNanos), !cancelled(e));
+                throw e;
+            }
+        };
+    }
+
+    public Stats stats() {
+        return new Stats(calls.sum(), hedged.sum(), hedgeWins.sum(), overBudget.sum());
+    }
+
+    private AIResponse send(AIProviderClient client, AIRequest request, ChatPipeline.Sender sender,
+                            long delayMillis, Target hedge) {
+        calls.increment();
+        earn();
+        TrackedClient primaryClient = new TrackedClient(client);
+        CompletableFuture<AIResponse> primary = CompletableFuture.supplyAsync(
+                () -> sender.send(primaryClient, request), RUNNER);
+        try {
+            return primary.get(delayMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            //slow: hedge below
+        } catch (ExecutionException e) {
+            //a fast failure is not a latency problem. retrying on another key is the sender's business
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            primaryClient.cancel();
+            Thread.currentThread().interrupt();
+            throw new AIProviderException("Interrupted while waiting for the provider", e);
+        }
+
+        if (!spend()) {
+            overBudget.increment();
+            return await(primary, primaryClient, null);
+        }
+        hedged.increment();
+        TrackedClient hedgeClient = new TrackedClient(hedge.client());
+        AIRequest hedgeRequest = hedge.model() == null ? request : request.withModel(hedge.model());
+        CompletableFuture<AIResponse> second = CompletableFuture.supplyAsync(
+                () -> hedge.sender().send(hedgeClient, hedgeRequest), RUNNER);
+
+        //first success wins. the call only fails once both attempts have
+        CompletableFuture<AIResponse> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        primary.whenComplete((response, error) -> settle(winner, response, error, failures, null));
+        second.whenComplete((response, error) -> settle(winner, response, error, failures, hedgeWins::increment));
+        try {
+            return await(winner, primaryClient, hedgeClient);
+        } finally {
+            primaryClient.cancel();
+            hedgeClient.cancel();
+        }
+    }
+
+    private static void settle(CompletableFuture<AIResponse> winner, AIResponse response, Throwable error,
+                               AtomicInteger failures, Runnable onWin) {
+        if (error == null) {
+            if (winner.complete(response) && onWin != null) onWin.run();
+        } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private static AIResponse await(CompletableFuture<AIResponse> future, TrackedClient first,
+                                    TrackedClient second) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            first.cancel();
+            if (second != null) second.cancel();
+            Thread.currentThread().interrupt();
+            throw new AIProviderException("Interrupted while waiting for the provider", e);
+        }
+    }
+
+    private static boolean cancelled(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException) return true;
+        }
+        return false;
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    //unwrap to what a direct sender.send would have thrown
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+        if (cause instanceof RuntimeException runtime) return runtime;
+        return new CompletionException(cause);
+    }
+
+    private synchronized void earn() {
+        budget = Math.min(MAX_SAVED_HEDGES, budget + settings.maxFraction());
+    }
+
+    private synchronized boolean spend() {
+        if (budget < 1) return false;
+        budget -= 1;
+        return true;
+    }
+}
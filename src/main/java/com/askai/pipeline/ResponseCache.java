@@ -0,0 +1,70 @@
+package com.askai.pipeline;
+
+import com.askai.model.AIResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//exact-match answers for repeated questions, least recently used out first. the key must include
+//everything that shapes the answer: provider, model, system prompt, message and response budget
+public final class ResponseCache {
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxEntries;
+    private long ttlMillis;
+
+    private record Entry(AIResponse response, long expiresAtMillis) {
+    }
+
+    public ResponseCache(int maxEntries, int ttlSeconds) {
+        configure(maxEntries, ttlSeconds);
+    }
+
+    //ttlSeconds 0 turns the cache off
+    public synchronized void configure(int maxEntries, int ttlSeconds) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000L;
+        if (ttlMillis == 0) entries.clear();
+        trim();
+    }
+
+    public static String key(String provider, String model, String systemPrompt, String message, int maxTokens) {
+        //the separator cannot appear in a provider id or model name, and the two free-text parts
+        //are length-prefixed so no two requests share a key
+        return provider + '\u0000' + model + '\u0000' + maxTokens + '\u0000'
+                + systemPrompt.length() + ':' + systemPrompt + message;
+    }
+
+    //null on a miss or an expired entry
+    public synchronized AIResponse get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (entry.expiresAtMillis <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.response;
+    }
+
+    //truncated or empty answers are not worth repeating
+    public synchronized void put(String key, AIResponse response) {
+        if (ttlMillis == 0 || response.text().isBlank() || isTruncated(response.finishReason())) return;
+        entries.put(key, new Entry(response, System.currentTimeMillis() + ttlMillis));
+        trim();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void trim() {
+        var it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    static boolean isTruncated(String finishReason) {
+        return "length".equals(finishReason) || "max_tokens".equals(finishReason) || "MAX_TOKENS".equals(finishReason);
+    }
+}
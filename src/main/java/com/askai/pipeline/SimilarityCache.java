@@ -0,0 +1,328 @@
+package com.askai.pipeline;
+
+import com.askai.knowledge.TextAnalyzer;
+import com.askai.model.AIResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+//answers for questions worded like one answered recently. a question is reduced to its content words, glued
+//together and cut into character shingles, so "how do i set home" and "how to sethome?" both become "sethome".
+//MinHash signatures are split into LSH bands to find candidates without comparing against every entry, and a
+//candidate is only served if the exact Jaccard similarity of the two shingle sets reaches the threshold.
+//a sampled share of hits is answered by the provider anyway and the answers compared, which is how false
+//positives are counted
+public final class SimilarityCache {
+    //near misses are lookups whose best candidate fell at most this far short of the threshold
+    private static final double NEAR_MISS_MARGIN = 0.1;
+    //rough per-entry overhead of the maps, the entry and the response object
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    public record Settings(boolean enabled, double threshold, int bands, int rows, int shingleSize,
+                           long maxBytes, long ttlMillis, double verifyFraction, double answerSimilarity) {
+    }
+
+    //verify: the provider should be asked anyway and the answer passed to verify()
+    public record Hit(AIResponse response, double similarity, boolean verify, long entryId) {
+    }
+
+    public record Stats(int entries, long bytes, long lookups, long hits, long nearMisses, long candidates,
+                        long candidatesRejected, long verified, long falsePositives) {
+        public double hitRate() {
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        public double falsePositiveRate() {
+            return verified == 0 ? 0 : (double) falsePositives / verified;
+        }
+    }
+
+    private record Shingled(int[] shingles, int[] signature) {
+    }
+
+    //settings and the MinHash seeds that fit their bands and rows, swapped together so a lookup racing a
+    //reload never pairs new settings with old seeds
+    private record Index(Settings settings, int[] seeds) {
+    }
+
+    private static final class Entry {
+        final long id;
+        final String scope;
+        final int[] shingles;
+        final long[] bandKeys;
+        final long bytes;
+        AIResponse response;
+        long expiresAtMillis;
+        //the last lookup that checked this entry, so an entry found through several bands is checked once
+        long lookupStamp = -1;
+
+        Entry(long id, String scope, int[] shingles, long[] bandKeys, AIResponse response, long expiresAtMillis) {
+            this.id = id;
+            this.scope = scope;
+            this.shingles = shingles;
+            this.bandKeys = bandKeys;
+            this.response = response;
+            this.expiresAtMillis = expiresAtMillis;
+            this.bytes = ENTRY_OVERHEAD_BYTES + 4L * shingles.length + 8L * bandKeys.length
+                    + 2L * response.text().length();
+        }
+    }
+
+    private volatile Index index;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //LSH band key -> entries with that band
+    private final Map<Long, List<Entry>> buckets = new HashMap<>();
+    private long nextId;
+    private long lookupCount;
+    private long bytes;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder nearMisses = new LongAdder();
+    private final LongAdder candidates = new LongAdder();
+    private final LongAdder candidatesRejected = new LongAdder();
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public SimilarityCache(Settings settings) {
+        configure(settings);
+    }
+
+    //a new index shape makes the stored signatures useless, so it empties the cache
+    public synchronized void configure(Settings settings) {
+        Index previous = this.index;
+        if (!settings.enabled() || previous == null || previous.settings().bands() != settings.bands()
+                || previous.settings().rows() != settings.rows()
+                || previous.settings().shingleSize() != settings.shingleSize()) {
+            entries.clear();
+            buckets.clear();
+            bytes = 0;
+            int[] seeds = new int[settings.bands() * settings.rows()];
+            //fixed seeds, so signatures stay comparable for the life of the cache
+            long state = 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < seeds.length; i++) {
+                state += 0x9E3779B97F4A7C15L;
+                seeds[i] = (int) mix(state);
+            }
+            this.index = new Index(settings, seeds);
+        } else {
+            this.index = new Index(settings, previous.seeds());
+        }
+        trim(System.currentTimeMillis());
+    }
+
+    public boolean isEnabled() {
+        return index.settings().enabled();
+    }
+
+    //everything besides the question that shapes the answer
+    public static String scope(String provider, String model, String systemPrompt, int maxTokens) {
+        return ResponseCache.key(provider, model, systemPrompt, "", maxTokens);
+    }
+
+    //null on a miss
+    public Hit lookup(String scope, String message) {
+        Index index = this.index;
+        Settings current = index.settings();
+        if (!current.enabled()) return null;
+        Shingled shingled = shingle(message, index);
+        if (shingled == null) return null;
+        lookups.increment();
+
+        Entry best = null;
+        double bestSimilarity = 0;
+        double bestRejected = 0;
+        int checked = 0;
+        int rejected = 0;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long stamp = lookupCount++;
+            long scopeHash = scopeHash(scope);
+            for (int band = 0; band < current.bands(); band++) {
+                List<Entry> bucket = buckets.get(bandKey(scopeHash, band, shingled.signature(), current.rows()));
+                if (bucket == null) continue;
+                for (Entry entry : bucket) {
+                    if (entry.lookupStamp == stamp) continue;
+                    entry.lookupStamp = stamp;
+                    if (entry.expiresAtMillis <= now || !entry.scope.equals(scope)) continue;
+                    checked++;
+                    double similarity = jaccard(shingled.shingles(), entry.shingles);
+                    if (similarity < current.threshold()) {
+                        rejected++;
+                        bestRejected = Math.max(bestRejected, similarity);
+                    } else if (similarity > bestSimilarity) {
+                        best = entry;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+            if (best != null) entries.get(best.id);
+        }
+        candidates.add(checked);
+        candidatesRejected.add(rejected);
+
+        if (best == null) {
+            if (bestRejected >= current.threshold() - NEAR_MISS_MARGIN) nearMisses.increment();
+            return null;
+        }
+        hits.increment();
+        boolean verify = current.verifyFraction() > 0 && ThreadLocalRandom.current().nextDouble() < current.verifyFraction();
+        return new Hit(best.response, bestSimilarity, verify, best.id);
+    }
+
+    //truncated or empty answers are not worth repeating
+    public void put(String scope, String message, AIResponse response) {
+        Index index = this.index;
+        Settings current = index.settings();
+        if (!current.enabled() || response.text().isBlank() || ResponseCache.isTruncated(response.finishReason())) {
+            return;
+        }
+        Shingled shingled = shingle(message, index);
+        if (shingled == null) return;
+        long scopeHash = scopeHash(scope);
+        long[] bandKeys = new long[current.bands()];
+        for (int band = 0; band < bandKeys.length; band++) {
+            bandKeys[band] = bandKey(scopeHash, band, shingled.signature(), current.rows());
+        }
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Entry entry = new Entry(nextId++, scope, shingled.shingles(), bandKeys, response, now + current.ttlMillis());
+            entries.put(entry.id, entry);
+            for (long key : bandKeys) buckets.computeIfAbsent(key, k -> new ArrayList<>(1)).add(entry);
+            bytes += entry.bytes;
+            trim(now);
+        }
+    }
+
+    //the provider's answer to a hit picked for verification. an answer sharing too few words with the cached
+    //one means the questions were not really the same; the fresh answer replaces the cached one either way
+    public void verify(Hit hit, AIResponse fresh) {
+        Settings current = index.settings();
+        verified.increment();
+        double similarity = jaccard(words(hit.response().text()), words(fresh.text()));
+        if (similarity < current.answerSimilarity()) falsePositives.increment();
+        if (fresh.text().isBlank() || ResponseCache.isTruncated(fresh.finishReason())) return;
+        synchronized (this) {
+            Entry entry = entries.get(hit.entryId());
+            if (entry != null) {
+                bytes += 2L * (fresh.text().length() - entry.response.text().length());
+                entry.response = fresh;
+                entry.expiresAtMillis = System.currentTimeMillis() + current.ttlMillis();
+                trim(System.currentTimeMillis());
+            }
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(entries.size(), bytes, lookups.sum(), hits.sum(), nearMisses.sum(), candidates.sum(),
+                candidatesRejected.sum(), verified.sum(), falsePositives.sum());
+    }
+
+    //expired entries first, then least recently used until within the memory budget
+    private void trim(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.expiresAtMillis > now && bytes <= index.settings().maxBytes()) continue;
+            it.remove();
+            unindex(entry);
+        }
+    }
+
+    private void unindex(Entry entry) {
+        bytes -= entry.bytes;
+        for (long key : entry.bandKeys) {
+            List<Entry> bucket = buckets.get(key);
+            if (bucket == null) continue;
+            bucket.remove(entry);
+            if (bucket.isEmpty()) buckets.remove(key);
+        }
+    }
+
+    //null when the question has no content words
+    private static Shingled shingle(String message, Index index) {
+        String text = String.join("", TextAnalyzer.tokenize(message));
+        if (text.isEmpty()) return null;
+        int size = Math.min(index.settings().shingleSize(), text.length());
+        int[] shingles = new int[text.length() - size + 1];
+        for (int i = 0; i < shingles.length; i++) {
+            int hash = 0;
+            for (int j = i; j < i + size; j++) hash = 31 * hash + text.charAt(j);
+            shingles[i] = (int) mix(hash);
+        }
+        shingles = distinctSorted(shingles);
+
+        int[] seeds = index.seeds();
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int shingle : shingles) {
+            for (int i = 0; i < seeds.length; i++) {
+                int value = (int) mix(shingle ^ seeds[i]);
+                if (value < signature[i]) signature[i] = value;
+            }
+        }
+        return new Shingled(shingles, signature);
+    }
+
+    private static int[] words(String text) {
+        List<String> tokens = TextAnalyzer.tokenize(text);
+        int[] hashes = new int[tokens.size()];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = tokens.get(i).hashCode();
+        return distinctSorted(hashes);
+    }
+
+    private static int[] distinctSorted(int[] values) {
+        Arrays.sort(values);
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) values[n++] = values[i];
+        }
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+
+    //both sorted and distinct
+    static double jaccard(int[] a, int[] b) {
+        if (a.length == 0 && b.length == 0) return 1;
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return (double) common / (a.length + b.length - common);
+    }
+
+    private static long scopeHash(String scope) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < scope.length(); i++) hash = (hash ^ scope.charAt(i)) * 0x100000001B3L;
+        return hash;
+    }
+
+    private static long bandKey(long scopeHash, int band, int[] signature, int rows) {
+        long key = mix(scopeHash + band);
+        for (int i = band * rows; i < (band + 1) * rows; i++) key = mix(key ^ (signature[i] & 0xFFFFFFFFL));
+        return key;
+    }
+
+    //SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
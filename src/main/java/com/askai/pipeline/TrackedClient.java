@@ -0,0 +1,53 @@
+package com.askai.pipeline;
+
+import com.askai.model.AIRequest;
+import com.askai.model.AIResponse;
+import com.askai.provider.AIProviderClient;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+//hands out the client's calls and can cancel them, so a call nobody waits for any more (a losing hedge,
+//a compare past its timeout) stops using its connection. a cancelled call ends the sender's join with a
+//CancellationException, which releases a pool key without counting against it
+public final class TrackedClient implements AIProviderClient {
+    private final AIProviderClient client;
+    private final List<CompletableFuture<AIResponse>> inFlight = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+
+    public TrackedClient(AIProviderClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> chat(AIRequest request, String apiKey) {
+        return track(client.chat(request, apiKey));
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> stream(AIRequest request, String apiKey, Consumer<String> onText) {
+        return track(client.stream(request, apiKey, onText));
+    }
+
+    @Override
+    public URI baseUri() {
+        return client.baseUri();
+    }
+
+    private CompletableFuture<AIResponse> track(CompletableFuture<AIResponse> call) {
+        inFlight.add(call);
+        if (cancelled) call.cancel(true);
+        return call;
+    }
+
+    //calls made after this are cancelled as they start
+    public void cancel() {
+        cancelled = true;
+        for (CompletableFuture<AIResponse> call : inFlight) {
+            if (!call.isDone()) call.cancel(true);
+        }
+    }
+}
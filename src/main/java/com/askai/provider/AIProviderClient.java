@@ -3,8 +3,22 @@ package com.askai.provider;
 import com.askai.model.AIRequest;
 import com.askai.model.AIResponse;
 
+import java.net.URI;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface AIProviderClient {
     CompletableFuture<AIResponse> chat(AIRequest request, String apiKey);
+
+    //like chat, but text is handed to onText piece by piece as the provider produces it. the future
+    //completes with the whole response. clients without a streaming endpoint hand over the full text once
+    default CompletableFuture<AIResponse> stream(AIRequest request, String apiKey, Consumer<String> onText) {
+        return chat(request, apiKey).thenApply(response -> {
+            if (!response.text().isEmpty()) onText.accept(response.text());
+            return response;
+        });
+    }
+
+    //API origin, used for connection warm-up
+    URI baseUri();
 }
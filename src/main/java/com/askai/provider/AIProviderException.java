@@ -1,11 +1,33 @@
 package com.askai.provider;
 
+import com.askai.model.RateLimitSnapshot;
+
 public class AIProviderException extends RuntimeException {
+    private final int statusCode;
+    private final RateLimitSnapshot rateLimit;
+
     public AIProviderException(String message) {
-        super(message);
+        this(message, 0, RateLimitSnapshot.UNKNOWN);
     }
 
     public AIProviderException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = 0;
+        this.rateLimit = RateLimitSnapshot.UNKNOWN;
+    }
+
+    public AIProviderException(String message, int statusCode, RateLimitSnapshot rateLimit) {
+        super(message);
+        this.statusCode = statusCode;
+        this.rateLimit = rateLimit;
+    }
+
+    //HTTP status of the failed response, or 0 if the request never got one
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public RateLimitSnapshot rateLimit() {
+        return rateLimit;
     }
 }
@@ -3,6 +3,9 @@ package com.askai.provider;
 import com.askai.model.AIRequest;
 import com.askai.model.AIResponse;
 import com.askai.model.ChatMessage;
+import com.askai.model.RateLimitSnapshot;
+import com.askai.model.ToolCall;
+import com.askai.model.ToolDefinition;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -12,37 +15,76 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public final class AnthropicClient implements AIProviderClient {
-    private static final String API_URL = "https://api.anthropic.com/v1/messages";
+    private static final String PROTOCOL = "anthropic";
+    private static final URI DEFAULT_BASE_URI = URI.create("https://api.anthropic.com/");
     private static final String API_VERSION = "2023-06-01";
+    //the messages endpoint does not document compressed request bodies
+    private static final boolean ACCEPTS_GZIP_REQUESTS = false;
     private final HttpClient httpClient;
+    private final HttpCompression compression;
+    private final URI baseUri;
+    private final URI apiUri;
 
     public AnthropicClient(HttpClient httpClient) {
+        this(httpClient, DEFAULT_BASE_URI, HttpCompression.NONE);
+    }
+
+    public AnthropicClient(HttpClient httpClient, URI baseUri) {
+        this(httpClient, baseUri, HttpCompression.NONE);
+    }
+
+    public AnthropicClient(HttpClient httpClient, HttpCompression compression) {
+        this(httpClient, DEFAULT_BASE_URI, compression);
+    }
+
+    public AnthropicClient(HttpClient httpClient, URI baseUri, HttpCompression compression) {
         this.httpClient = httpClient;
+        this.compression = compression;
+        this.baseUri = baseUri;
+        this.apiUri = baseUri.resolve("v1/messages");
+    }
+
+    @Override
+    public URI baseUri() {
+        return baseUri;
     }
 
     @Override
     public CompletableFuture<AIResponse> chat(AIRequest request, String apiKey) {
-        String json = buildRequestJson(request);
-        HttpRequest httpReq = HttpRequest.newBuilder()
-                .uri(URI.create(API_URL))
+        HttpRequest httpRequest = newRequest(buildRequestJson(request, false), apiKey);
+        return ProviderExchange.send(httpClient, PROTOCOL, request.model(), httpRequest,
+                HttpCompression.ofString(), this::parseResponse, null);
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> stream(AIRequest request, String apiKey, Consumer<String> onText) {
+        HttpRequest httpRequest = newRequest(buildRequestJson(request, true), apiKey);
+        return ProviderExchange.send(httpClient, PROTOCOL, request.model(), httpRequest,
+                HttpCompression.ofLines(), response -> parseStream(response, onText), ServerSentEvents.READER);
+    }
+
+    private HttpRequest newRequest(String json, String apiKey) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(apiUri)
                 .header("Content-Type", "application/json")
                 .header("x-api-key", apiKey)
                 .header("anthropic-version", API_VERSION)
-                .timeout(Duration.ofSeconds(60))
-                .POST(HttpRequest.BodyPublishers.ofString(json))
-                .build();
-
-        return httpClient.sendAsync(httpReq, HttpResponse.BodyHandlers.ofString())
-                .thenApply(this::parseResponse);
+                .timeout(Duration.ofSeconds(60));
+        return compression.post(builder, json, ACCEPTS_GZIP_REQUESTS).build();
     }
 
-    private String buildRequestJson(AIRequest request) {
+    private String buildRequestJson(AIRequest request, boolean stream) {
         JsonObject root = new JsonObject();
         root.addProperty("model", request.model());
         root.addProperty("max_tokens", request.maxTokens());
+        if (stream) root.addProperty("stream", true);
 
         //anthropic: system message goes in top-level "system" field
         if (request.systemPrompt() != null && !request.systemPrompt().isBlank()) {
@@ -50,39 +92,159 @@ public final class AnthropicClient implements AIProviderClient {
         }
 
         JsonArray messages = new JsonArray();
+        JsonArray pendingResults = null;
         for (ChatMessage msg : request.messages()) {
             //skip system messages, its already being handled above
             if ("system".equals(msg.role())) continue;
+
+            //tool results go back as tool_result blocks, all results of one round in a single user turn
+            if (msg.toolResultFor() != null) {
+                if (pendingResults == null) {
+                    pendingResults = new JsonArray();
+                    JsonObject m = new JsonObject();
+                    m.addProperty("role", "user");
+                    m.add("content", pendingResults);
+                    messages.add(m);
+                }
+                JsonObject block = new JsonObject();
+                block.addProperty("type", "tool_result");
+                block.addProperty("tool_use_id", msg.toolResultFor().id());
+                block.addProperty("content", msg.content());
+                pendingResults.add(block);
+                continue;
+            }
+            pendingResults = null;
+
             JsonObject m = new JsonObject();
             m.addProperty("role", msg.role());
-            m.addProperty("content", msg.content());
+            if (msg.toolCalls().isEmpty()) {
+                m.addProperty("content", msg.content());
+            } else {
+                JsonArray blocks = new JsonArray();
+                if (msg.content() != null && !msg.content().isBlank()) {
+                    JsonObject text = new JsonObject();
+                    text.addProperty("type", "text");
+                    text.addProperty("text", msg.content());
+                    blocks.add(text);
+                }
+                for (ToolCall call : msg.toolCalls()) {
+                    JsonObject use = new JsonObject();
+                    use.addProperty("type", "tool_use");
+                    use.addProperty("id", call.id());
+                    use.addProperty("name", call.name());
+                    use.add("input", ToolSchemas.toObject(call.arguments()));
+                    blocks.add(use);
+                }
+                m.add("content", blocks);
+            }
             messages.add(m);
         }
 
+        if (!request.tools().isEmpty()) {
+            JsonArray tools = new JsonArray();
+            for (ToolDefinition tool : request.tools()) {
+                JsonObject t = new JsonObject();
+                t.addProperty("name", tool.name());
+                t.addProperty("description", tool.description());
+                t.add("input_schema", ToolSchemas.parameters(tool, false));
+                tools.add(t);
+            }
+            root.add("tools", tools);
+            if (request.mustAnswer()) {
+                JsonObject choice = new JsonObject();
+                choice.addProperty("type", "none");
+                root.add("tool_choice", choice);
+            }
+        }
+
         root.add("messages", messages);
         return root.toString();
     }
 
-    private AIResponse parseResponse(HttpResponse<String> response) {
-        if (response.statusCode() == 401) {
-            throw new AIProviderException("Invalid Anthropic API key. Check your key with /chat setkey anthropic <key>");
+    private static void checkStatus(int status, RateLimitSnapshot rateLimit) {
+        if (status == 401) {
+            throw new AIProviderException("Invalid Anthropic API key. Check your key with /chat setkey anthropic <key>",
+                    status, rateLimit);
+        }
+        if (status == 429) {
+            throw new AIProviderException("Anthropic rate limit exceeded. Please wait and try again.",
+                    status, rateLimit);
         }
-        if (response.statusCode() == 429) {
-            throw new AIProviderException("Anthropic rate limit exceeded. Please wait and try again.");
+        if (status >= 400) {
+            throw new AIProviderException("Anthropic returned error " + status, status, rateLimit);
         }
+    }
+
+    //message_start carries the input tokens, content_block_delta the text and message_delta the
+    //stop reason and output tokens. tool calls are not streamed; streaming requests are plain questions
+    private AIResponse parseStream(HttpResponse<Stream<String>> response, Consumer<String> onText) {
+        RateLimitSnapshot rateLimit = RateLimitHeaders.parse(response.headers());
         if (response.statusCode() >= 400) {
-            throw new AIProviderException("Anthropic returned error " + response.statusCode());
+            response.body().close();
+            checkStatus(response.statusCode(), rateLimit);
         }
 
+        StringBuilder text = new StringBuilder();
+        String stopReason = "unknown";
+        int inputTokens = 0;
+        int outputTokens = 0;
+        try (Stream<String> lines = response.body()) {
+            for (String data : ServerSentEvents.data(lines)) {
+                JsonObject event = JsonParser.parseString(data).getAsJsonObject();
+                String type = event.has("type") ? event.get("type").getAsString() : "";
+                switch (type) {
+                    case "message_start" -> {
+                        JsonObject message = event.getAsJsonObject("message");
+                        if (message != null && message.has("usage")) {
+                            inputTokens = message.getAsJsonObject("usage").get("input_tokens").getAsInt();
+                        }
+                    }
+                    case "content_block_delta" -> {
+                        JsonObject delta = event.getAsJsonObject("delta");
+                        if (delta != null && delta.has("text")) {
+                            String piece = delta.get("text").getAsString();
+                            text.append(piece);
+                            onText.accept(piece);
+                        }
+                    }
+                    case "message_delta" -> {
+                        JsonObject delta = event.getAsJsonObject("delta");
+                        if (delta != null && delta.has("stop_reason") && !delta.get("stop_reason").isJsonNull()) {
+                            stopReason = delta.get("stop_reason").getAsString();
+                        }
+                        if (event.has("usage")) {
+                            outputTokens = event.getAsJsonObject("usage").get("output_tokens").getAsInt();
+                        }
+                    }
+                    //overloaded and similar failures can arrive mid-stream with a 200 status
+                    case "error" -> throw new AIProviderException("Anthropic stream failed: "
+                            + event.getAsJsonObject("error").get("message").getAsString(), 0, rateLimit);
+                    default -> {
+                    }
+                }
+            }
+        }
+        return new AIResponse(text.toString(), inputTokens, outputTokens, stopReason, rateLimit);
+    }
+
+    private AIResponse parseResponse(HttpResponse<String> response) {
+        RateLimitSnapshot rateLimit = RateLimitHeaders.parse(response.headers());
+        checkStatus(response.statusCode(), rateLimit);
+
         JsonObject root = JsonParser.parseString(response.body()).getAsJsonObject();
 
         //anthropic returns content as array of blocks
         JsonArray content = root.getAsJsonArray("content");
         StringBuilder text = new StringBuilder();
+        List<ToolCall> toolCalls = new ArrayList<>();
         for (var element : content) {
             JsonObject block = element.getAsJsonObject();
-            if ("text".equals(block.get("type").getAsString())) {
+            String type = block.get("type").getAsString();
+            if ("text".equals(type)) {
                 text.append(block.get("text").getAsString());
+            } else if ("tool_use".equals(type)) {
+                toolCalls.add(new ToolCall(block.get("id").getAsString(), block.get("name").getAsString(),
+                        block.has("input") ? block.get("input").toString() : "{}"));
             }
         }
 
@@ -97,6 +259,6 @@ public final class AnthropicClient implements AIProviderClient {
             outputTokens = usage.get("output_tokens").getAsInt();
         }
 
-        return new AIResponse(text.toString(), inputTokens, outputTokens, stopReason);
+        return new AIResponse(text.toString(), inputTokens, outputTokens, stopReason, rateLimit, toolCalls);
     }
 }
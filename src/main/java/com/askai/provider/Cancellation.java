@@ -0,0 +1,17 @@
+package com.askai.provider;
+
+import java.util.concurrent.CompletableFuture;
+
+final class Cancellation {
+    private Cancellation() {
+    }
+
+    //cancelling a dependent stage does not reach the HttpClient exchange it came from. this does, so a
+    //caller that gives up on an answer (a losing hedge) also frees the connection and stops the download
+    static <T> CompletableFuture<T> propagate(CompletableFuture<?> exchange, CompletableFuture<T> result) {
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) exchange.cancel(true);
+        });
+        return result;
+    }
+}
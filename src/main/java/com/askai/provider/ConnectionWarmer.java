@@ -0,0 +1,60 @@
+package com.askai.provider;
+
+import com.askai.model.AIProvider;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+//opens provider connections ahead of the first request: DNS, TCP and TLS (plus the HTTP/2 session)
+//are paid by a cheap HEAD request instead of a player's /chat. the status code does not matter
+public final class ConnectionWarmer {
+    private static final Duration PING_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ProviderRegistry registry;
+    private final Logger logger;
+
+    public ConnectionWarmer(ProviderRegistry registry, Logger logger) {
+        this.registry = registry;
+        this.logger = logger;
+    }
+
+    //warms every provider that has been idle for at least idleMillis (0 = all)
+    public CompletableFuture<Void> warm(Collection<AIProvider> providers, long idleMillis, boolean log) {
+        CompletableFuture<?>[] pings = providers.stream()
+                .filter(p -> registry.idleMillis(p) >= idleMillis)
+                .map(p -> ping(p, log))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(pings);
+    }
+
+    private CompletableFuture<Void> ping(AIProvider provider, boolean log) {
+        long start = System.nanoTime();
+        return ping(registry.getHttpClient(provider), registry.getClient(provider).baseUri())
+                .handle((status, error) -> {
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    if (error != null) {
+                        logger.warning("Connection warm-up to " + provider.displayName() + " failed: "
+                                + error.getMessage());
+                    } else if (log) {
+                        logger.info("Connected to " + provider.displayName() + " in " + millis + "ms.");
+                    }
+                    return null;
+                });
+    }
+
+    //public so a local TLS stand-in can be targeted directly
+    public static CompletableFuture<Integer> ping(HttpClient client, URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(PING_TIMEOUT)
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(HttpResponse::statusCode);
+    }
+}
@@ -3,6 +3,9 @@ package com.askai.provider;
 import com.askai.model.AIRequest;
 import com.askai.model.AIResponse;
 import com.askai.model.ChatMessage;
+import com.askai.model.RateLimitSnapshot;
+import com.askai.model.ToolCall;
+import com.askai.model.ToolDefinition;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -12,31 +15,70 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public final class GeminiClient implements AIProviderClient {
-    private static final String API_URL_TEMPLATE =
-            "https://generativelanguage.googleapis.com/v1beta/models/%s:generateContent";
+    private static final String PROTOCOL = "gemini";
+    private static final URI DEFAULT_BASE_URI = URI.create("https://generativelanguage.googleapis.com/");
+    private static final String API_PATH_TEMPLATE = "v1beta/models/%s:generateContent";
+    private static final String STREAM_PATH_TEMPLATE = "v1beta/models/%s:streamGenerateContent?alt=sse";
+    //Google APIs accept gzip request bodies
+    private static final boolean ACCEPTS_GZIP_REQUESTS = true;
     private final HttpClient httpClient;
+    private final HttpCompression compression;
+    private final URI baseUri;
 
     public GeminiClient(HttpClient httpClient) {
+        this(httpClient, DEFAULT_BASE_URI, HttpCompression.NONE);
+    }
+
+    public GeminiClient(HttpClient httpClient, URI baseUri) {
+        this(httpClient, baseUri, HttpCompression.NONE);
+    }
+
+    public GeminiClient(HttpClient httpClient, HttpCompression compression) {
+        this(httpClient, DEFAULT_BASE_URI, compression);
+    }
+
+    public GeminiClient(HttpClient httpClient, URI baseUri, HttpCompression compression) {
         this.httpClient = httpClient;
+        this.compression = compression;
+        this.baseUri = baseUri;
+    }
+
+    @Override
+    public URI baseUri() {
+        return baseUri;
     }
 
     @Override
     public CompletableFuture<AIResponse> chat(AIRequest request, String apiKey) {
-        String url = String.format(API_URL_TEMPLATE, request.model());
-        String json = buildRequestJson(request);
-        HttpRequest httpReq = HttpRequest.newBuilder()
-                .uri(URI.create(url))
+        URI uri = baseUri.resolve(String.format(API_PATH_TEMPLATE, request.model()));
+        HttpRequest httpRequest = newRequest(uri, buildRequestJson(request), apiKey);
+        return ProviderExchange.send(httpClient, PROTOCOL, request.model(), httpRequest,
+                HttpCompression.ofString(), this::parseResponse, null);
+    }
+
+    //same request body, different endpoint. each event is a partial GenerateContentResponse
+    @Override
+    public CompletableFuture<AIResponse> stream(AIRequest request, String apiKey, Consumer<String> onText) {
+        URI uri = baseUri.resolve(String.format(STREAM_PATH_TEMPLATE, request.model()));
+        HttpRequest httpRequest = newRequest(uri, buildRequestJson(request), apiKey);
+        return ProviderExchange.send(httpClient, PROTOCOL, request.model(), httpRequest,
+                HttpCompression.ofLines(), response -> parseStream(response, onText), ServerSentEvents.READER);
+    }
+
+    private HttpRequest newRequest(URI uri, String json, String apiKey) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(uri)
                 .header("Content-Type", "application/json")
                 .header("x-goog-api-key", apiKey)
-                .timeout(Duration.ofSeconds(60))
-                .POST(HttpRequest.BodyPublishers.ofString(json))
-                .build();
-
-        return httpClient.sendAsync(httpReq, HttpResponse.BodyHandlers.ofString())
-                .thenApply(this::parseResponse);
+                .timeout(Duration.ofSeconds(60));
+        return compression.post(builder, json, ACCEPTS_GZIP_REQUESTS).build();
     }
 
     private String buildRequestJson(AIRequest request) {
@@ -55,19 +97,75 @@ public final class GeminiClient implements AIProviderClient {
 
         //contents (messages). gemini uses "user" and "model" roles
         JsonArray contents = new JsonArray();
+        JsonArray pendingResults = null;
         for (ChatMessage msg : request.messages()) {
             if ("system".equals(msg.role())) continue;
+
+            //function responses for one round share a single user turn, matched to the call by name
+            if (msg.toolResultFor() != null) {
+                if (pendingResults == null) {
+                    pendingResults = new JsonArray();
+                    JsonObject content = new JsonObject();
+                    content.addProperty("role", "user");
+                    content.add("parts", pendingResults);
+                    contents.add(content);
+                }
+                JsonObject functionResponse = new JsonObject();
+                functionResponse.addProperty("name", msg.toolResultFor().name());
+                functionResponse.add("response", ToolSchemas.toObject(msg.content()));
+                JsonObject part = new JsonObject();
+                part.add("functionResponse", functionResponse);
+                pendingResults.add(part);
+                continue;
+            }
+            pendingResults = null;
+
             JsonObject content = new JsonObject();
             content.addProperty("role", "assistant".equals(msg.role()) ? "model" : msg.role());
             JsonArray parts = new JsonArray();
-            JsonObject part = new JsonObject();
-            part.addProperty("text", msg.content());
-            parts.add(part);
+            if (msg.toolCalls().isEmpty() || (msg.content() != null && !msg.content().isBlank())) {
+                JsonObject part = new JsonObject();
+                part.addProperty("text", msg.content());
+                parts.add(part);
+            }
+            for (ToolCall call : msg.toolCalls()) {
+                JsonObject functionCall = new JsonObject();
+                functionCall.addProperty("name", call.name());
+                functionCall.add("args", ToolSchemas.toObject(call.arguments()));
+                JsonObject part = new JsonObject();
+                part.add("functionCall", functionCall);
+                parts.add(part);
+            }
             content.add("parts", parts);
             contents.add(content);
         }
         root.add("contents", contents);
 
+        if (!request.tools().isEmpty()) {
+            JsonArray declarations = new JsonArray();
+            for (ToolDefinition tool : request.tools()) {
+                JsonObject declaration = new JsonObject();
+                declaration.addProperty("name", tool.name());
+                declaration.addProperty("description", tool.description());
+                if (!tool.parameters().isEmpty()) {
+                    declaration.add("parameters", ToolSchemas.parameters(tool, true));
+                }
+                declarations.add(declaration);
+            }
+            JsonObject tools = new JsonObject();
+            tools.add("functionDeclarations", declarations);
+            JsonArray toolList = new JsonArray();
+            toolList.add(tools);
+            root.add("tools", toolList);
+            if (request.mustAnswer()) {
+                JsonObject callingConfig = new JsonObject();
+                callingConfig.addProperty("mode", "NONE");
+                JsonObject toolConfig = new JsonObject();
+                toolConfig.add("functionCallingConfig", callingConfig);
+                root.add("toolConfig", toolConfig);
+            }
+        }
+
         //generation config
         JsonObject genConfig = new JsonObject();
         genConfig.addProperty("maxOutputTokens", request.maxTokens());
@@ -77,29 +175,85 @@ public final class GeminiClient implements AIProviderClient {
         return root.toString();
     }
 
-    private AIResponse parseResponse(HttpResponse<String> response) {
-        if (response.statusCode() == 400) {
-            throw new AIProviderException("Gemini rejected the request. Check your model name and API key.");
+    private static void checkStatus(int status, RateLimitSnapshot rateLimit) {
+        if (status == 400) {
+            throw new AIProviderException("Gemini rejected the request. Check your model name and API key.",
+                    status, rateLimit);
+        }
+        if (status == 403) {
+            throw new AIProviderException("Invalid Gemini API key. Check your key with /chat setkey gemini <key>",
+                    status, rateLimit);
         }
-        if (response.statusCode() == 403) {
-            throw new AIProviderException("Invalid Gemini API key. Check your key with /chat setkey gemini <key>");
+        if (status == 429) {
+            throw new AIProviderException("Gemini rate limit exceeded. Please wait and try again.",
+                    status, rateLimit);
         }
-        if (response.statusCode() == 429) {
-            throw new AIProviderException("Gemini rate limit exceeded. Please wait and try again.");
+        if (status >= 400) {
+            throw new AIProviderException("Gemini returned error " + status, status, rateLimit);
         }
+    }
+
+    //usage metadata is cumulative, so the last event's counts are the totals.
+    //tool calls are not streamed; streaming requests are plain questions
+    private AIResponse parseStream(HttpResponse<Stream<String>> response, Consumer<String> onText) {
+        RateLimitSnapshot rateLimit = RateLimitHeaders.parse(response.headers());
         if (response.statusCode() >= 400) {
-            throw new AIProviderException("Gemini returned error " + response.statusCode());
+            response.body().close();
+            checkStatus(response.statusCode(), rateLimit);
         }
 
+        StringBuilder text = new StringBuilder();
+        String finishReason = "UNKNOWN";
+        int promptTokens = 0;
+        int completionTokens = 0;
+        try (Stream<String> lines = response.body()) {
+            for (String data : ServerSentEvents.data(lines)) {
+                JsonObject chunk = JsonParser.parseString(data).getAsJsonObject();
+                JsonArray candidates = chunk.has("candidates") ? chunk.getAsJsonArray("candidates") : null;
+                if (candidates != null && !candidates.isEmpty()) {
+                    JsonObject candidate = candidates.get(0).getAsJsonObject();
+                    JsonObject content = candidate.getAsJsonObject("content");
+                    if (content != null && content.has("parts")) {
+                        for (var element : content.getAsJsonArray("parts")) {
+                            JsonObject part = element.getAsJsonObject();
+                            if (!part.has("text")) continue;
+                            String piece = part.get("text").getAsString();
+                            text.append(piece);
+                            onText.accept(piece);
+                        }
+                    }
+                    if (candidate.has("finishReason")) finishReason = candidate.get("finishReason").getAsString();
+                }
+                if (chunk.has("usageMetadata")) {
+                    JsonObject usage = chunk.getAsJsonObject("usageMetadata");
+                    if (usage.has("promptTokenCount")) promptTokens = usage.get("promptTokenCount").getAsInt();
+                    if (usage.has("candidatesTokenCount")) {
+                        completionTokens = usage.get("candidatesTokenCount").getAsInt();
+                    }
+                }
+            }
+        }
+        return new AIResponse(text.toString(), promptTokens, completionTokens, finishReason, rateLimit);
+    }
+
+    private AIResponse parseResponse(HttpResponse<String> response) {
+        RateLimitSnapshot rateLimit = RateLimitHeaders.parse(response.headers());
+        checkStatus(response.statusCode(), rateLimit);
+
         JsonObject root = JsonParser.parseString(response.body()).getAsJsonObject();
         JsonObject candidate = root.getAsJsonArray("candidates").get(0).getAsJsonObject();
         JsonArray parts = candidate.getAsJsonObject("content").getAsJsonArray("parts");
 
         StringBuilder text = new StringBuilder();
+        List<ToolCall> toolCalls = new ArrayList<>();
         for (var element : parts) {
             JsonObject part = element.getAsJsonObject();
             if (part.has("text")) {
                 text.append(part.get("text").getAsString());
+            } else if (part.has("functionCall")) {
+                JsonObject call = part.getAsJsonObject("functionCall");
+                toolCalls.add(new ToolCall("gemini-" + toolCalls.size(), call.get("name").getAsString(),
+                        call.has("args") ? call.get("args").toString() : "{}"));
             }
         }
 
@@ -114,6 +268,6 @@ public final class GeminiClient implements AIProviderClient {
             if (usage.has("candidatesTokenCount")) completionTokens = usage.get("candidatesTokenCount").getAsInt();
         }
 
-        return new AIResponse(text.toString(), promptTokens, completionTokens, finishReason);
+        return new AIResponse(text.toString(), promptTokens, completionTokens, finishReason, rateLimit, toolCalls);
     }
 }
@@ -0,0 +1,39 @@
+package com.askai.provider;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//per-provider connection settings. threads 0 means one virtual thread per task
+public record HttpClientSettings(HttpClient.Version version, int connectTimeoutSeconds, int threads,
+                                 HttpCompression compression) {
+
+    //the client does not stop an executor it was given, so whoever builds one also shuts down its executor
+    public HttpClient build(ExecutorService executor) {
+        return HttpClient.newBuilder()
+                .version(version)
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+                .build();
+    }
+
+    public ExecutorService executor(String name) {
+        if (threads <= 0) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "AskAI-http-" + name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static HttpClient.Version parseVersion(String value) {
+        return "HTTP_1_1".equalsIgnoreCase(value) || "1.1".equals(value)
+                ? HttpClient.Version.HTTP_1_1
+                : HttpClient.Version.HTTP_2;
+    }
+}
@@ -0,0 +1,109 @@
+package com.askai.provider;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//gzip on the wire. the JDK HttpClient neither asks for compressed responses nor decodes them, so
+//acceptGzip adds the header and the body handlers below decode whatever comes back. request bodies of at
+//least gzipRequestMinBytes are compressed for providers whose API accepts Content-Encoding: gzip. 0 = never
+public record HttpCompression(boolean acceptGzip, int gzipRequestMinBytes) {
+    public static final HttpCompression NONE = new HttpCompression(false, 0);
+
+    //sets the JSON body and the encoding headers
+    HttpRequest.Builder post(HttpRequest.Builder builder, String json, boolean providerAcceptsGzip) {
+        if (acceptGzip) builder.header("Accept-Encoding", "gzip");
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        if (providerAcceptsGzip && gzipRequestMinBytes > 0 && body.length >= gzipRequestMinBytes) {
+            builder.header("Content-Encoding", "gzip");
+            body = gzip(body);
+        }
+        return builder.POST(HttpRequest.BodyPublishers.ofByteArray(body));
+    }
+
+    //whole body as a string, gunzipped if the provider compressed it
+    static HttpResponse.BodyHandler<String> ofString() {
+        return info -> isGzip(info.headers())
+                ? HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(),
+                        bytes -> new String(gunzip(bytes), StandardCharsets.UTF_8))
+                : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+    }
+
+    //body lines as they arrive, decompressed incrementally for a gzipped event stream.
+    //closing the stream closes the body and ends the exchange
+    static HttpResponse.BodyHandler<Stream<String>> ofLines() {
+        return info -> isGzip(info.headers())
+                ? HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                        HttpCompression::gunzipLines)
+                : HttpResponse.BodySubscribers.ofLines(StandardCharsets.UTF_8);
+    }
+
+    static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] gunzip(byte[] data) {
+        try (GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gz.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isGzip(HttpHeaders headers) {
+        return headers.firstValue("Content-Encoding").map(v -> v.trim().equalsIgnoreCase("gzip")).orElse(false);
+    }
+
+    //the mapper runs on the client's executor and must not block, but GZIPInputStream reads the gzip header
+    //in its constructor. so the decoder is only created on the first read, on the thread that reads the stream
+    private static Stream<String> gunzipLines(InputStream body) {
+        InputStream lazy = new InputStream() {
+            private InputStream decoded;
+
+            private InputStream decoded() throws IOException {
+                if (decoded == null) decoded = new GZIPInputStream(body);
+                return decoded;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return decoded().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return decoded().read(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                body.close();
+            }
+        };
+        BufferedReader reader = new BufferedReader(new InputStreamReader(lazy, StandardCharsets.UTF_8));
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
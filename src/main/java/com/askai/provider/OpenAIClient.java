@@ -3,6 +3,9 @@ package com.askai.provider;
 import com.askai.model.AIRequest;
 import com.askai.model.AIResponse;
 import com.askai.model.ChatMessage;
+import com.askai.model.RateLimitSnapshot;
+import com.askai.model.ToolCall;
+import com.askai.model.ToolDefinition;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -12,35 +15,81 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public final class OpenAIClient implements AIProviderClient {
-    private static final String API_URL = "https://api.openai.com/v1/chat/completions";
+    private static final String PROTOCOL = "openai";
+    private static final URI DEFAULT_BASE_URI = URI.create("https://api.openai.com/");
+    //the chat completions endpoint does not document compressed request bodies
+    private static final boolean ACCEPTS_GZIP_REQUESTS = false;
     private final HttpClient httpClient;
+    private final HttpCompression compression;
+    private final URI baseUri;
+    private final URI apiUri;
 
     public OpenAIClient(HttpClient httpClient) {
+        this(httpClient, DEFAULT_BASE_URI, HttpCompression.NONE);
+    }
+
+    public OpenAIClient(HttpClient httpClient, URI baseUri) {
+        this(httpClient, baseUri, HttpCompression.NONE);
+    }
+
+    public OpenAIClient(HttpClient httpClient, HttpCompression compression) {
+        this(httpClient, DEFAULT_BASE_URI, compression);
+    }
+
+    public OpenAIClient(HttpClient httpClient, URI baseUri, HttpCompression compression) {
         this.httpClient = httpClient;
+        this.compression = compression;
+        this.baseUri = baseUri;
+        this.apiUri = baseUri.resolve("v1/chat/completions");
+    }
+
+    @Override
+    public URI baseUri() {
+        return baseUri;
     }
 
     @Override
     public CompletableFuture<AIResponse> chat(AIRequest request, String apiKey) {
-        String json = buildRequestJson(request);
-        HttpRequest httpReq = HttpRequest.newBuilder()
-                .uri(URI.create(API_URL))
-                .header("Content-Type", "application/json")
-                .header("Authorization", "Bearer " + apiKey)
-                .timeout(Duration.ofSeconds(60))
-                .POST(HttpRequest.BodyPublishers.ofString(json))
-                .build();
+        HttpRequest httpRequest = newRequest(buildRequestJson(request, false), apiKey);
+        return ProviderExchange.send(httpClient, PROTOCOL, request.model(), httpRequest,
+                HttpCompression.ofString(), this::parseResponse, null);
+    }
 
-        return httpClient.sendAsync(httpReq, HttpResponse.BodyHandlers.ofString())
-                .thenApply(this::parseResponse);
+    @Override
+    public CompletableFuture<AIResponse> stream(AIRequest request, String apiKey, Consumer<String> onText) {
+        HttpRequest httpRequest = newRequest(buildRequestJson(request, true), apiKey);
+        return ProviderExchange.send(httpClient, PROTOCOL, request.model(), httpRequest,
+                HttpCompression.ofLines(), response -> parseStream(response, onText), ServerSentEvents.READER);
+    }
+
+    private HttpRequest newRequest(String json, String apiKey) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(apiUri)
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(60));
+        //local OpenAI-compatible servers often run without a key
+        if (apiKey != null && !apiKey.isEmpty()) builder.header("Authorization", "Bearer " + apiKey);
+        return compression.post(builder, json, ACCEPTS_GZIP_REQUESTS).build();
     }
 
-    private String buildRequestJson(AIRequest request) {
+    private String buildRequestJson(AIRequest request, boolean stream) {
         JsonObject root = new JsonObject();
         root.addProperty("model", request.model());
         root.addProperty("max_completion_tokens", request.maxTokens());
+        if (stream) {
+            //usage only arrives in a final chunk, and only when asked for
+            JsonObject options = new JsonObject();
+            options.addProperty("include_usage", true);
+            root.addProperty("stream", true);
+            root.add("stream_options", options);
+        }
 
         JsonArray messages = new JsonArray();
 
@@ -55,27 +104,119 @@ public final class OpenAIClient implements AIProviderClient {
             JsonObject m = new JsonObject();
             m.addProperty("role", msg.role());
             m.addProperty("content", msg.content());
+            if (!msg.toolCalls().isEmpty()) {
+                JsonArray calls = new JsonArray();
+                for (ToolCall call : msg.toolCalls()) {
+                    JsonObject function = new JsonObject();
+                    function.addProperty("name", call.name());
+                    function.addProperty("arguments", call.arguments());
+                    JsonObject c = new JsonObject();
+                    c.addProperty("id", call.id());
+                    c.addProperty("type", "function");
+                    c.add("function", function);
+                    calls.add(c);
+                }
+                m.add("tool_calls", calls);
+            }
+            if (msg.toolResultFor() != null) {
+                m.addProperty("tool_call_id", msg.toolResultFor().id());
+            }
             messages.add(m);
         }
 
+        if (!request.tools().isEmpty()) {
+            JsonArray tools = new JsonArray();
+            for (ToolDefinition tool : request.tools()) {
+                JsonObject function = new JsonObject();
+                function.addProperty("name", tool.name());
+                function.addProperty("description", tool.description());
+                function.add("parameters", ToolSchemas.parameters(tool, false));
+                JsonObject t = new JsonObject();
+                t.addProperty("type", "function");
+                t.add("function", function);
+                tools.add(t);
+            }
+            root.add("tools", tools);
+            if (request.mustAnswer()) root.addProperty("tool_choice", "none");
+        }
+
         root.add("messages", messages);
         return root.toString();
     }
 
-    private AIResponse parseResponse(HttpResponse<String> response) {
-        if (response.statusCode() == 401) {
-            throw new AIProviderException("Invalid OpenAI API key. Check your key with /chat setkey openai <key>");
+    private static void checkStatus(int status, RateLimitSnapshot rateLimit) {
+        if (status == 401) {
+            throw new AIProviderException("Invalid OpenAI API key. Check your key with /chat setkey openai <key>",
+                    status, rateLimit);
         }
-        if (response.statusCode() == 429) {
-            throw new AIProviderException("OpenAI rate limit exceeded. Please wait and try again.");
+        if (status == 429) {
+            throw new AIProviderException("OpenAI rate limit exceeded. Please wait and try again.",
+                    status, rateLimit);
         }
+        if (status >= 400) {
+            throw new AIProviderException("OpenAI returned error " + status, status, rateLimit);
+        }
+    }
+
+    //tool calls are not streamed; streaming requests are plain questions
+    private AIResponse parseStream(HttpResponse<Stream<String>> response, Consumer<String> onText) {
+        RateLimitSnapshot rateLimit = RateLimitHeaders.parse(response.headers());
         if (response.statusCode() >= 400) {
-            throw new AIProviderException("OpenAI returned error " + response.statusCode());
+            response.body().close();
+            checkStatus(response.statusCode(), rateLimit);
         }
 
+        StringBuilder text = new StringBuilder();
+        String finishReason = "unknown";
+        int promptTokens = 0;
+        int completionTokens = 0;
+        try (Stream<String> lines = response.body()) {
+            for (String data : ServerSentEvents.data(lines)) {
+                JsonObject chunk = JsonParser.parseString(data).getAsJsonObject();
+                JsonArray choices = chunk.has("choices") ? chunk.getAsJsonArray("choices") : null;
+                if (choices != null && !choices.isEmpty()) {
+                    JsonObject choice = choices.get(0).getAsJsonObject();
+                    JsonObject delta = choice.getAsJsonObject("delta");
+                    if (delta != null && delta.has("content") && !delta.get("content").isJsonNull()) {
+                        String piece = delta.get("content").getAsString();
+                        if (!piece.isEmpty()) {
+                            text.append(piece);
+                            onText.accept(piece);
+                        }
+                    }
+                    if (choice.has("finish_reason") && !choice.get("finish_reason").isJsonNull()) {
+                        finishReason = choice.get("finish_reason").getAsString();
+                    }
+                }
+                if (chunk.has("usage") && !chunk.get("usage").isJsonNull()) {
+                    JsonObject usage = chunk.getAsJsonObject("usage");
+                    promptTokens = usage.get("prompt_tokens").getAsInt();
+                    completionTokens = usage.get("completion_tokens").getAsInt();
+                }
+            }
+        }
+        return new AIResponse(text.toString(), promptTokens, completionTokens, finishReason, rateLimit);
+    }
+
+    private AIResponse parseResponse(HttpResponse<String> response) {
+        RateLimitSnapshot rateLimit = RateLimitHeaders.parse(response.headers());
+        checkStatus(response.statusCode(), rateLimit);
+
         JsonObject root = JsonParser.parseString(response.body()).getAsJsonObject();
         JsonObject choice = root.getAsJsonArray("choices").get(0).getAsJsonObject();
-        String text = choice.getAsJsonObject("message").get("content").getAsString();
+        JsonObject message = choice.getAsJsonObject("message");
+        //content is null when the model only calls tools
+        String text = message.has("content") && !message.get("content").isJsonNull()
+                ? message.get("content").getAsString() : "";
+        List<ToolCall> toolCalls = new ArrayList<>();
+        if (message.has("tool_calls") && message.get("tool_calls").isJsonArray()) {
+            for (var element : message.getAsJsonArray("tool_calls")) {
+                JsonObject call = element.getAsJsonObject();
+                JsonObject function = call.getAsJsonObject("function");
+                toolCalls.add(new ToolCall(call.get("id").getAsString(), function.get("name").getAsString(),
+                        function.get("arguments").getAsString()));
+            }
+        }
         String finishReason = choice.has("finish_reason") && !choice.get("finish_reason").isJsonNull()
                 ? choice.get("finish_reason").getAsString() : "unknown";
 
@@ -87,6 +228,6 @@ public final class OpenAIClient implements AIProviderClient {
             completionTokens = usage.get("completion_tokens").getAsInt();
         }
 
-        return new AIResponse(text, promptTokens, completionTokens, finishReason);
+        return new AIResponse(text, promptTokens, completionTokens, finishReason, rateLimit, toolCalls);
     }
 }
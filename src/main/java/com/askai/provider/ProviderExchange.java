@@ -0,0 +1,92 @@
+package com.askai.provider;
+
+import com.askai.jfr.ProviderCallEvent;
+import com.askai.jfr.ProviderFirstByteEvent;
+import com.askai.jfr.ResponseParseEvent;
+import com.askai.model.AIResponse;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+//one request/response exchange with a provider, timed for JFR as a whole, up to the response headers, and
+//while parsing. without a recording that enables the askai events nothing is committed
+final class ProviderExchange {
+    private ProviderExchange() {
+    }
+
+    //a streamed body is read on streamReader, since parsing it blocks until the stream ends. a buffered
+    //body (streamReader null) is parsed on the thread that completes the exchange
+    static <T> CompletableFuture<AIResponse> send(HttpClient httpClient, String protocol, String model,
+                                                  HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                  Function<HttpResponse<T>, AIResponse> parser,
+                                                  Executor streamReader) {
+        String host = request.uri().getHost();
+        boolean streamed = streamReader != null;
+        ProviderCallEvent call = new ProviderCallEvent();
+        ProviderFirstByteEvent firstByte = new ProviderFirstByteEvent();
+        call.begin();
+        firstByte.begin();
+
+        //the body handler is asked for a subscriber as soon as the headers are in
+        CompletableFuture<HttpResponse<T>> exchange = httpClient.sendAsync(request, info -> {
+            firstByte.end();
+            call.status = info.statusCode();
+            if (firstByte.shouldCommit()) {
+                firstByte.protocol = protocol;
+                firstByte.host = host;
+                firstByte.model = model;
+                firstByte.status = info.statusCode();
+                firstByte.commit();
+            }
+            return handler.apply(info);
+        });
+        Function<HttpResponse<T>, AIResponse> parse = response -> parse(response, parser, protocol, model, streamed);
+        CompletableFuture<AIResponse> result = streamed
+                ? exchange.thenApplyAsync(parse, streamReader)
+                : exchange.thenApply(parse);
+
+        result.whenComplete((response, error) -> {
+            call.end();
+            if (!call.shouldCommit()) return;
+            call.protocol = protocol;
+            call.host = host;
+            call.model = model;
+            call.streamed = streamed;
+            call.requestBytes = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(-1L);
+            if (response != null) {
+                call.promptTokens = response.promptTokens();
+                call.completionTokens = response.completionTokens();
+                call.answerLength = response.text() == null ? 0 : response.text().length();
+            }
+            call.outcome = error == null ? "ok" : result.isCancelled() ? "cancelled" : "error";
+            call.commit();
+        });
+        return Cancellation.propagate(exchange, result);
+    }
+
+    private static <T> AIResponse parse(HttpResponse<T> response, Function<HttpResponse<T>, AIResponse> parser,
+                                        String protocol, String model, boolean streamed) {
+        ResponseParseEvent event = new ResponseParseEvent();
+        event.begin();
+        AIResponse parsed = null;
+        try {
+            parsed = parser.apply(response);
+            return parsed;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.protocol = protocol;
+                event.model = model;
+                event.streamed = streamed;
+                event.bodyLength = response.body() instanceof String body ? body.length() : -1;
+                event.answerLength = parsed == null || parsed.text() == null ? 0 : parsed.text().length();
+                event.succeeded = parsed != null;
+                event.commit();
+            }
+        }
+    }
+}
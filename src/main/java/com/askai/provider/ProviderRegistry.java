@@ -2,18 +2,46 @@ package com.askai.provider;
 
 import com.askai.model.AIProvider;
 
+import java.net.URI;
 import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
+//one HttpClient per provider, so each keeps its own connection pool and settings.
+//the client for each provider follows its protocol, pointed at its base URL if it has one
 public final class ProviderRegistry {
-    private final Map<AIProvider, AIProviderClient> clients;
+    //longest a reload waits for the old clients' requests before cutting them off
+    private static final Duration SHUTDOWN_WAIT = Duration.ofMinutes(5);
 
-    public ProviderRegistry(HttpClient httpClient) {
-        this.clients = Map.of(
-                AIProvider.OPENAI, new OpenAIClient(httpClient),
-                AIProvider.ANTHROPIC, new AnthropicClient(httpClient),
-                AIProvider.GEMINI, new GeminiClient(httpClient)
-        );
+    private final Map<AIProvider, HttpClient> httpClients;
+    //each client's executor, stopped once the client has finished with it
+    private final Map<AIProvider, ExecutorService> executors;
+    private final Map<AIProvider, AIProviderClient> clients = new HashMap<>();
+    private final Map<AIProvider, Long> lastUsedNanos = new HashMap<>();
+
+    public ProviderRegistry(Map<AIProvider, HttpClient> httpClients, Map<AIProvider, ExecutorService> executors,
+                            Map<AIProvider, HttpCompression> compression) {
+        this.httpClients = Map.copyOf(httpClients);
+        this.executors = Map.copyOf(executors);
+        httpClients.forEach((provider, http) -> clients.put(provider,
+                createClient(provider, http, compression.getOrDefault(provider, HttpCompression.NONE))));
+    }
+
+    private static AIProviderClient createClient(AIProvider provider, HttpClient http, HttpCompression compression) {
+        URI base = provider.baseUri();
+        return switch (provider.protocol()) {
+            case OPENAI -> base == null
+                    ? new OpenAIClient(http, compression)
+                    : new OpenAIClient(http, base, compression);
+            case ANTHROPIC -> base == null
+                    ? new AnthropicClient(http, compression)
+                    : new AnthropicClient(http, base, compression);
+            case GEMINI -> base == null
+                    ? new GeminiClient(http, compression)
+                    : new GeminiClient(http, base, compression);
+        };
     }
 
     public AIProviderClient getClient(AIProvider provider) {
@@ -21,6 +49,47 @@ public final class ProviderRegistry {
         if (client == null) {
             throw new AIProviderException("No client registered for provider: " + provider.displayName());
         }
+        markUsed(provider);
         return client;
     }
+
+    public HttpClient getHttpClient(AIProvider provider) {
+        return httpClients.get(provider);
+    }
+
+    private void markUsed(AIProvider provider) {
+        synchronized (lastUsedNanos) {
+            lastUsedNanos.put(provider, System.nanoTime());
+        }
+    }
+
+    //time since the provider's connection last carried traffic, or Long.MAX_VALUE if never
+    public long idleMillis(AIProvider provider) {
+        Long last;
+        synchronized (lastUsedNanos) {
+            last = lastUsedNanos.get(provider);
+        }
+        return last == null ? Long.MAX_VALUE : (System.nanoTime() - last) / 1_000_000;
+    }
+
+    //after a reload: requests already in flight finish on the old clients, then their connections close
+    //and their threads stop. the wait happens in the background
+    public void shutdown() {
+        httpClients.values().forEach(HttpClient::shutdown);
+        Thread.ofVirtual().name("AskAI-http-shutdown").start(() -> {
+            try {
+                for (HttpClient http : httpClients.values()) {
+                    http.awaitTermination(SHUTDOWN_WAIT);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            close();
+        });
+    }
+
+    public void close() {
+        httpClients.values().forEach(HttpClient::shutdownNow);
+        executors.values().forEach(ExecutorService::shutdownNow);
+    }
 }
@@ -0,0 +1,101 @@
+package com.askai.provider;
+
+import com.askai.model.RateLimitSnapshot;
+
+import java.net.http.HttpHeaders;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//reads the rate-limit headers OpenAI (x-ratelimit-*) and Anthropic (anthropic-ratelimit-*) send
+//with every response. Gemini sends none, so its snapshots stay UNKNOWN apart from retry-after
+final class RateLimitHeaders {
+    //OpenAI reset durations look like "1s", "6m0s", "120ms" or "1h2m3.5s"
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private RateLimitHeaders() {
+    }
+
+    static RateLimitSnapshot parse(HttpHeaders headers) {
+        long now = System.currentTimeMillis();
+        long retryAfter = headers.firstValue("retry-after").map(RateLimitHeaders::parseSeconds).orElse(-1L);
+
+        if (headers.firstValue("x-ratelimit-limit-requests").isPresent()
+                || headers.firstValue("x-ratelimit-limit-tokens").isPresent()) {
+            long resetRequests = headers.firstValue("x-ratelimit-reset-requests")
+                    .map(RateLimitHeaders::parseDuration).orElse(-1L);
+            long resetTokens = headers.firstValue("x-ratelimit-reset-tokens")
+                    .map(RateLimitHeaders::parseDuration).orElse(-1L);
+            long reset = Math.max(resetRequests, resetTokens);
+            return new RateLimitSnapshot(
+                    number(headers, "x-ratelimit-limit-requests"),
+                    number(headers, "x-ratelimit-remaining-requests"),
+                    number(headers, "x-ratelimit-limit-tokens"),
+                    number(headers, "x-ratelimit-remaining-tokens"),
+                    reset >= 0 ? now + reset : -1,
+                    retryAfter);
+        }
+
+        if (headers.firstValue("anthropic-ratelimit-requests-limit").isPresent()
+                || headers.firstValue("anthropic-ratelimit-tokens-limit").isPresent()) {
+            long resetRequests = headers.firstValue("anthropic-ratelimit-requests-reset")
+                    .map(RateLimitHeaders::parseInstant).orElse(-1L);
+            long resetTokens = headers.firstValue("anthropic-ratelimit-tokens-reset")
+                    .map(RateLimitHeaders::parseInstant).orElse(-1L);
+            return new RateLimitSnapshot(
+                    number(headers, "anthropic-ratelimit-requests-limit"),
+                    number(headers, "anthropic-ratelimit-requests-remaining"),
+                    number(headers, "anthropic-ratelimit-tokens-limit"),
+                    number(headers, "anthropic-ratelimit-tokens-remaining"),
+                    Math.max(resetRequests, resetTokens),
+                    retryAfter);
+        }
+
+        return retryAfter < 0 ? RateLimitSnapshot.UNKNOWN
+                : new RateLimitSnapshot(-1, -1, -1, -1, -1, retryAfter);
+    }
+
+    private static long number(HttpHeaders headers, String name) {
+        return headers.firstValue(name).map(v -> {
+            try {
+                return Long.parseLong(v.trim());
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        }).orElse(-1L);
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return (long) (Double.parseDouble(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static long parseDuration(String value) {
+        Matcher m = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        boolean matched = false;
+        while (m.find()) {
+            matched = true;
+            double amount = Double.parseDouble(m.group(1));
+            millis += switch (m.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1000;
+                default -> amount;
+            };
+        }
+        return matched ? (long) millis : -1;
+    }
+
+    private static long parseInstant(String value) {
+        try {
+            return Instant.parse(value.trim()).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.askai.provider;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+//text/event-stream bodies. every provider puts one JSON document in each event's data field
+final class ServerSentEvents {
+    //reading the line stream blocks until the provider sends more, so it happens on a virtual thread
+    //instead of tying up one of the HttpClient's executor threads for the length of the answer
+    static final Executor READER = task -> Thread.ofVirtual().name("AskAI-stream").start(task);
+
+    private ServerSentEvents() {
+    }
+
+    //the data of each event, in order, read lazily. OpenAI's closing "[DONE]" marker is skipped.
+    //the caller closes the line stream
+    static Iterable<String> data(Stream<String> lines) {
+        Iterator<String> source = lines.iterator();
+        return () -> new Iterator<>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) next = read(source);
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                String event = next;
+                next = null;
+                return event;
+            }
+        };
+    }
+
+    private static String read(Iterator<String> source) {
+        StringBuilder data = null;
+        while (source.hasNext()) {
+            String line = source.next();
+            if (line.isEmpty()) {
+                //a blank line ends the event
+                if (data == null) continue;
+                String event = data.toString();
+                if (!"[DONE]".equals(event)) return event;
+                data = null;
+            } else if (line.startsWith("data:")) {
+                if (data == null) data = new StringBuilder();
+                else data.append('\n');
+                data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+            }
+            //event:, id:, retry: and ":" comment lines carry nothing the providers rely on
+        }
+        return data == null || "[DONE]".contentEquals(data) ? null : data.toString();
+    }
+}
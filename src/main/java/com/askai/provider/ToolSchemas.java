@@ -0,0 +1,48 @@
+package com.askai.provider;
+
+import com.askai.model.ToolDefinition;
+import com.askai.model.ToolParameter;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import java.util.Locale;
+
+//JSON schema for tool parameters. all three APIs take the same shape; Gemini wants upper-case type names
+final class ToolSchemas {
+
+    private ToolSchemas() {
+    }
+
+    static JsonObject parameters(ToolDefinition tool, boolean upperCaseTypes) {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", upperCaseTypes ? "OBJECT" : "object");
+        JsonObject properties = new JsonObject();
+        JsonArray required = new JsonArray();
+        for (ToolParameter param : tool.parameters()) {
+            JsonObject property = new JsonObject();
+            property.addProperty("type", upperCaseTypes ? param.type().toUpperCase(Locale.ROOT) : param.type());
+            property.addProperty("description", param.description());
+            properties.add(param.name(), property);
+            if (param.required()) required.add(param.name());
+        }
+        schema.add("properties", properties);
+        if (!required.isEmpty()) schema.add("required", required);
+        return schema;
+    }
+
+    //tool arguments and results are JSON objects on the wire; anything else is wrapped
+    static JsonObject toObject(String json) {
+        if (json == null || json.isBlank()) return new JsonObject();
+        try {
+            JsonElement element = JsonParser.parseString(json);
+            if (element.isJsonObject()) return element.getAsJsonObject();
+        } catch (JsonSyntaxException ignored) {
+        }
+        JsonObject wrapped = new JsonObject();
+        wrapped.addProperty("result", json);
+        return wrapped;
+    }
+}
@@ -0,0 +1,61 @@
+package com.askai.replay;
+
+import com.askai.capture.TraceEvent;
+import com.askai.model.AIRequest;
+import com.askai.model.AIResponse;
+import com.askai.model.RateLimitSnapshot;
+import com.askai.provider.AIProviderClient;
+import com.askai.provider.AIProviderException;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+//stands in for a provider during replay. the api key names the trace event to reproduce
+//("replay-<index>"), and the reply arrives after that event's recorded latency with its recorded size
+public final class ReplayProviderClient implements AIProviderClient {
+    static final String KEY_PREFIX = "replay-";
+    private static final URI BASE_URI = URI.create("http://replay.invalid/");
+    private static final String FILLER = "The quick brown fox jumps over the lazy dog. ";
+
+    private final List<TraceEvent> events;
+    private final double latencyScale;
+
+    //latencyScale 1.0 keeps recorded provider latencies; 0.2 plays them back 5x faster
+    public ReplayProviderClient(List<TraceEvent> events, double latencyScale) {
+        this.events = events;
+        this.latencyScale = latencyScale;
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> chat(AIRequest request, String apiKey) {
+        TraceEvent event = events.get(Integer.parseInt(apiKey.substring(KEY_PREFIX.length())));
+        long delayMillis = Math.round(event.latencyMillis() * latencyScale);
+        Executor delayed = CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS);
+        return CompletableFuture.supplyAsync(() -> {
+            if (event.failed()) throw new AIProviderException("Replayed failure", 500, RateLimitSnapshot.UNKNOWN);
+            return new AIResponse(text(event.responseChars()), event.promptTokens(), event.completionTokens(),
+                    "stop", RateLimitSnapshot.UNKNOWN);
+        }, delayed);
+    }
+
+    @Override
+    public URI baseUri() {
+        return BASE_URI;
+    }
+
+    static String keyFor(int index) {
+        return KEY_PREFIX + index;
+    }
+
+    //deterministic stand-in text of roughly natural token density
+    static String text(int chars) {
+        StringBuilder sb = new StringBuilder(chars);
+        while (sb.length() < chars) {
+            sb.append(FILLER, 0, Math.min(FILLER.length(), chars - sb.length()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package com.askai.replay;
+
+import com.askai.capture.TraceEvent;
+import com.askai.capture.TraceFile;
+import com.askai.model.AIProvider;
+import com.askai.pipeline.ChatPipeline;
+import com.askai.pipeline.PromptRejectedException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+//re-issues a captured trace through ChatPipeline with a scripted provider, at the recorded
+//arrival times divided by --speed, and reports how the request path held up:
+//  java -cp AskAI.jar com.askai.replay.ReplayTool plugins/AskAI/captures/trace-....csv --speed 5
+public final class ReplayTool {
+    private static final String SYSTEM_PROMPT = "You are a helpful assistant in a Minecraft server.";
+
+    private ReplayTool() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0 || args[0].startsWith("-")) {
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        double speed = 1.0;
+        int workers = 0;
+        boolean scaleLatency = false;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--speed" -> speed = Double.parseDouble(args[++i]);
+                    case "--workers" -> workers = Integer.parseInt(args[++i]);
+                    case "--scale-latency" -> scaleLatency = true;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (speed <= 0) throw new IllegalArgumentException("--speed must be positive");
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        List<TraceEvent> events = TraceFile.read(Path.of(args[0]));
+        if (events.isEmpty()) {
+            System.out.println("Trace is empty.");
+            return;
+        }
+
+        Result result = replay(events, speed, workers, scaleLatency);
+        System.out.println(result.report(speed, workers));
+    }
+
+    //workers 0 mimics the server's unbounded async pool; a positive value caps concurrency
+    static Result replay(List<TraceEvent> events, double speed, int workers, boolean scaleLatency)
+            throws InterruptedException {
+        ReplayProviderClient client = new ReplayProviderClient(events, scaleLatency ? 1.0 / speed : 1.0);
+        ChatPipeline pipeline = new ChatPipeline(provider -> client);
+        ChatPipeline.Limits limits = new ChatPipeline.Limits(SYSTEM_PROMPT, 1_000_000, 4096, 0);
+
+        int n = events.size();
+        long[] queueNanos = new long[n];
+        long[] totalNanos = new long[n];
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(n);
+
+        ExecutorService executor = workers > 0
+                ? Executors.newFixedThreadPool(workers)
+                : Executors.newCachedThreadPool();
+        long baseOffset = events.get(0).offsetMillis();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < n; i++) {
+                TraceEvent event = events.get(i);
+                long due = start + (long) ((event.offsetMillis() - baseOffset) * 1_000_000 / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                int index = i;
+                executor.execute(() -> {
+                    long begun = System.nanoTime();
+                    queueNanos[index] = begun - due;
+                    peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        AIProvider provider = AIProvider.fromId(event.provider());
+                        if (provider == null) provider = AIProvider.OPENAI;
+                        ChatPipeline.Prepared prepared = pipeline.prepare(limits, provider, event.model(),
+                                ReplayProviderClient.text(event.promptChars()), List.of());
+                        pipeline.execute(provider, prepared,
+                                (c, request) -> c.chat(request, ReplayProviderClient.keyFor(index)).join());
+                    } catch (CompletionException | PromptRejectedException e) {
+                        failed.incrementAndGet();
+                    } finally {
+                        inFlight.decrementAndGet();
+                        totalNanos[index] = System.nanoTime() - due;
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Result(n, failed.get(), peakInFlight.get(), elapsed, queueNanos, totalNanos);
+    }
+
+    record Result(int requests, int failed, int peakInFlight, long elapsedNanos,
+                  long[] queueNanos, long[] totalNanos) {
+
+        String report(double speed, int workers) {
+            long[] queue = queueNanos.clone();
+            long[] total = totalNanos.clone();
+            Arrays.sort(queue);
+            Arrays.sort(total);
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.ROOT, """
+                            Replayed %d requests at %.1fx in %.1fs (%s workers)
+                            Throughput: %.1f req/s, peak in flight: %d, failed: %d
+                            Queue wait  p50 %s  p95 %s  p99 %s  max %s
+                            End to end  p50 %s  p95 %s  p99 %s  max %s""",
+                    requests, speed, seconds, workers > 0 ? String.valueOf(workers) : "unbounded",
+                    requests / seconds, peakInFlight, failed,
+                    millis(queue, 0.50), millis(queue, 0.95), millis(queue, 0.99), millis(queue, 1.0),
+                    millis(total, 0.50), millis(total, 0.95), millis(total, 0.99), millis(total, 1.0));
+        }
+
+        private static String millis(long[] sorted, double quantile) {
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return String.format(Locale.ROOT, "%.1fms", sorted[Math.max(0, index)] / 1e6);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -cp AskAI.jar com.askai.replay.ReplayTool <trace.csv>");
+        System.err.println("         [--speed <factor>] [--workers <n>] [--scale-latency]");
+    }
+}
@@ -0,0 +1,154 @@
+package com.askai.routing;
+
+import com.askai.model.AIProvider;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+//picks a model for requests whose model is set to "auto". each provider has an allow-list ordered from
+//lightest to heaviest. the prompt's complexity picks a tier, then live latency and error rates steer
+//away from models that are currently slow or failing. every decision is kept for /chat routing
+public final class ModelRouter {
+    public static final String AUTO = "auto";
+
+    //words that tend to mean the answer needs reasoning rather than a lookup
+    private static final Pattern REASONING = Pattern.compile(
+            "\\b(why|explain|compare|difference|analy[sz]e|step[- ]by[- ]step|design|plan|strategy|calculate|"
+                    + "prove|optimi[sz]e|debug|write|script|code|redstone circuit|algorithm)\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern CODE = Pattern.compile("```|[{};]\\s*$|\\b(function|class|def|return)\\b",
+            Pattern.MULTILINE);
+
+    private volatile Settings settings;
+    private final Map<String, ModelStats> stats = new ConcurrentHashMap<>();
+    private final Deque<RoutingDecision> recent = new ArrayDeque<>();
+
+    //models per provider, lightest first. complexTokens is the prompt size that counts as fully complex
+    //on length alone. models with fewer than minSamples outcomes are assumed healthy
+    public record Settings(Map<AIProvider, List<String>> models, int complexTokens, int window, int minSamples,
+                           long maxP95Millis, double maxErrorRate, int auditSize) {
+    }
+
+    public record ModelHealth(String model, int samples, long p50Millis, long p95Millis, double errorRate) {
+    }
+
+    public ModelRouter(Settings settings) {
+        this.settings = settings;
+    }
+
+    public void configure(Settings settings) {
+        //ring buffers are sized by the window, so a new window starts the statistics over
+        if (settings.window() != this.settings.window()) stats.clear();
+        this.settings = settings;
+    }
+
+    public boolean hasModels(AIProvider provider) {
+        return !settings.models().getOrDefault(provider, List.of()).isEmpty();
+    }
+
+    public RoutingDecision route(String requester, AIProvider provider, String message, int promptTokens,
+                                 boolean grounded) {
+        Settings current = settings;
+        List<String> models = current.models().getOrDefault(provider, List.of());
+        double complexity = complexity(message, promptTokens, grounded, current.complexTokens());
+        if (models.isEmpty()) {
+            return remember(new RoutingDecision(System.currentTimeMillis(), requester, provider,
+                    provider.defaultModel(), provider.defaultModel(), complexity, promptTokens,
+                    "no models allowed for auto, using the default"));
+        }
+
+        int targetTier = Math.min(models.size() - 1, (int) (complexity * models.size()));
+        String target = models.get(targetTier);
+
+        //nearest tier wins, p95 latency (as a fraction of the limit) breaks ties. models over the latency or
+        //error limit only get picked when every model is
+        String best = null;
+        double bestCost = Double.MAX_VALUE;
+        boolean bestHealthy = false;
+        for (int tier = 0; tier < models.size(); tier++) {
+            String model = models.get(tier);
+            ModelHealth health = health(provider, model);
+            boolean known = health.samples() >= current.minSamples();
+            boolean healthy = !known || (health.errorRate() <= current.maxErrorRate()
+                    && health.p95Millis() <= current.maxP95Millis());
+            double cost = Math.abs(tier - targetTier)
+                    + (known ? Math.min(1.0, (double) health.p95Millis() / current.maxP95Millis()) : 0)
+                    + (known ? health.errorRate() : 0);
+            if ((healthy && !bestHealthy) || (healthy == bestHealthy && cost < bestCost)) {
+                best = model;
+                bestCost = cost;
+                bestHealthy = healthy;
+            }
+        }
+
+        String reason;
+        if (best.equals(target)) {
+            reason = String.format("complexity %.2f", complexity);
+        } else {
+            ModelHealth health = health(provider, target);
+            reason = String.format("complexity %.2f, %s skipped (p95 %d ms, %.0f%% errors)", complexity, target,
+                    health.p95Millis(), health.errorRate() * 100);
+        }
+        if (!bestHealthy) reason += ", every model over its limits";
+        return remember(new RoutingDecision(System.currentTimeMillis(), requester, provider, best, target,
+                complexity, promptTokens, reason));
+    }
+
+    //every call feeds the statistics, whether or not it was routed
+    public void observe(AIProvider provider, String model, long latencyMillis, boolean failed) {
+        stats.computeIfAbsent(key(provider, model), k -> new ModelStats(settings.window()))
+                .record(latencyMillis, failed);
+    }
+
+    public ModelHealth health(AIProvider provider, String model) {
+        ModelStats modelStats = stats.get(key(provider, model));
+        return modelStats == null ? new ModelHealth(model, 0, 0, 0, 0) : modelStats.health(model);
+    }
+
+    //allow-listed models in tier order
+    public List<ModelHealth> health(AIProvider provider) {
+        List<ModelHealth> result = new ArrayList<>();
+        for (String model : settings.models().getOrDefault(provider, List.of())) {
+            result.add(health(provider, model));
+        }
+        return result;
+    }
+
+    //newest first
+    public List<RoutingDecision> recent(int limit) {
+        synchronized (recent) {
+            return recent.stream().limit(limit).toList();
+        }
+    }
+
+    //0 is a short lookup-style question, 1 needs the heaviest model. a heuristic: prompt length, words
+    //that ask for reasoning, code, several questions at once, and server info added to the prompt
+    static double complexity(String message, int promptTokens, boolean grounded, int complexTokens) {
+        double score = 0.5 * Math.min(1.0, (double) promptTokens / Math.max(1, complexTokens));
+        //one reasoning word is common in simple questions ("why is the sky blue"), several rarely are
+        long reasoning = REASONING.matcher(message).results().count();
+        if (reasoning > 0) score += 0.4 + 0.1 * Math.min(2, reasoning - 1);
+        if (CODE.matcher(message).find()) score += 0.3;
+        long questions = message.chars().filter(c -> c == '?').count();
+        if (questions > 1) score += 0.15;
+        if (grounded) score += 0.1;
+        return Math.min(1.0, score);
+    }
+
+    private RoutingDecision remember(RoutingDecision decision) {
+        synchronized (recent) {
+            recent.addFirst(decision);
+            while (recent.size() > settings.auditSize()) recent.removeLast();
+        }
+        return decision;
+    }
+
+    private static String key(AIProvider provider, String model) {
+        return provider.id() + '/' + model;
+    }
+}
@@ -0,0 +1,43 @@
+package com.askai.routing;
+
+import java.util.Arrays;
+
+//the last window outcomes for one model. percentiles are over successful calls only, since
+//failures are often fast rejections that would make a struggling model look quick
+final class ModelStats {
+    private final long[] latencies;
+    private final boolean[] failed;
+    private int next;
+    private int count;
+
+    ModelStats(int window) {
+        this.latencies = new long[window];
+        this.failed = new boolean[window];
+    }
+
+    synchronized void record(long latencyMillis, boolean failure) {
+        latencies[next] = latencyMillis;
+        failed[next] = failure;
+        next = (next + 1) % latencies.length;
+        if (count < latencies.length) count++;
+    }
+
+    synchronized ModelRouter.ModelHealth health(String model) {
+        long[] ok = new long[count];
+        int okCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (!failed[i]) ok[okCount++] = latencies[i];
+        }
+        Arrays.sort(ok, 0, okCount);
+        double errorRate = count == 0 ? 0 : (double) (count - okCount) / count;
+        return new ModelRouter.ModelHealth(model, count, percentile(ok, okCount, 0.50),
+                percentile(ok, okCount, 0.95), errorRate);
+    }
+
+    //nearest rank
+    private static long percentile(long[] sorted, int n, double p) {
+        if (n == 0) return 0;
+        int rank = (int) Math.ceil(p * n);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
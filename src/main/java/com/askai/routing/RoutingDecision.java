@@ -0,0 +1,9 @@
+package com.askai.routing;
+
+import com.askai.model.AIProvider;
+
+//why a request set to "auto" went to the model it did. target is the model the prompt alone asked for;
+//model differs from it when live latency or errors ruled the target out
+public record RoutingDecision(long timestamp, String requester, AIProvider provider, String model,
+                              String target, double complexity, int promptTokens, String reason) {
+}
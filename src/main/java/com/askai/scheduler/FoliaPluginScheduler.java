@@ -0,0 +1,54 @@
+package com.askai.scheduler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.TimeUnit;
+
+//Folia has no main thread. global work runs on the global region, player work on the player's region
+final class FoliaPluginScheduler implements PluginScheduler {
+    private static final long MILLIS_PER_TICK = 50;
+
+    private final Plugin plugin;
+
+    FoliaPluginScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public Task runRepeating(Runnable task, long delayTicks, long periodTicks) {
+        //Folia rejects an initial delay below one tick
+        return Bukkit.getServer().getGlobalRegionScheduler()
+                .runAtFixedRate(plugin, t -> task.run(), Math.max(1, delayTicks), periodTicks)::cancel;
+    }
+
+    @Override
+    public Task runAsyncRepeating(Runnable task, long delayTicks, long periodTicks) {
+        return Bukkit.getServer().getAsyncScheduler().runAtFixedRate(plugin, t -> task.run(),
+                Math.max(1, delayTicks * MILLIS_PER_TICK), periodTicks * MILLIS_PER_TICK, TimeUnit.MILLISECONDS)::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getServer().getAsyncScheduler().runNow(plugin, t -> task.run());
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getServer().getGlobalRegionScheduler().run(plugin, t -> task.run());
+    }
+
+    @Override
+    public void runForPlayer(Player player, Runnable task, Runnable retired) {
+        if (!player.getScheduler().execute(plugin, task, retired, 1L)) {
+            retired.run();
+        }
+    }
+
+    @Override
+    public void cancelAll() {
+        Bukkit.getServer().getGlobalRegionScheduler().cancelTasks(plugin);
+        Bukkit.getServer().getAsyncScheduler().cancelTasks(plugin);
+    }
+}
@@ -0,0 +1,40 @@
+package com.askai.scheduler;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+//everything the plugin schedules goes through here so it runs on both Paper and Folia
+public interface PluginScheduler {
+
+    //repeating task on the main thread (Paper) or the global region thread (Folia)
+    Task runRepeating(Runnable task, long delayTicks, long periodTicks);
+
+    Task runAsyncRepeating(Runnable task, long delayTicks, long periodTicks);
+
+    void runAsync(Runnable task);
+
+    //one-shot task on the main thread (Paper) or the global region thread (Folia)
+    void runGlobal(Runnable task);
+
+    //runs on the thread that owns the player. retired runs instead if the player is gone by then
+    void runForPlayer(Player player, Runnable task, Runnable retired);
+
+    void cancelAll();
+
+    interface Task {
+        void cancel();
+    }
+
+    static PluginScheduler create(Plugin plugin) {
+        return isFolia() ? new FoliaPluginScheduler(plugin) : new PaperPluginScheduler(plugin);
+    }
+
+    static boolean isFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.askai.service;
+
+import com.askai.AskAI;
+import com.askai.api.AskAIException;
+import com.askai.api.AskAIQuery;
+import com.askai.api.AskAIResult;
+import com.askai.api.AskAIService;
+import com.askai.api.CallerUsage;
+import com.askai.config.PluginConfig;
+import com.askai.filter.PromptFilter;
+import com.askai.model.AIProvider;
+import com.askai.model.AIRequest;
+import com.askai.model.AIResponse;
+import com.askai.pipeline.ChatPipeline;
+import com.askai.pipeline.PromptRejectedException;
+import com.askai.pipeline.ResponseCache;
+import com.askai.provider.AIProviderClient;
+import com.askai.tokens.TokenEstimators;
+import com.askai.transcript.TranscriptRecord;
+import com.askai.transcript.TranscriptWriter;
+import com.askai.util.RateLimiter;
+import com.askai.util.SlidingWindowRateLimiter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+//AskAIService for other plugins. requests are rate limited per calling plugin, then wait in one priority
+//queue for a small worker pool, so a chatty NPC plugin cannot starve /chat of provider connections or keys
+public final class PluginAskAIService implements AskAIService {
+    private final AskAI plugin;
+    private final ThreadPoolExecutor workers;
+    private final ResponseCache cache;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Counters> usage = new ConcurrentHashMap<>();
+    private volatile RateLimiter rateLimiter;
+    private volatile int maxQueued;
+    private volatile Map<String, AskAIQuery.Priority> callerPriorities;
+
+    public PluginAskAIService(AskAI plugin) {
+        this.plugin = plugin;
+        PluginConfig config = plugin.getPluginConfig();
+        int threads = config.getApiMaxConcurrent();
+        //ThreadPoolExecutor.execute keeps the Job itself in the queue, so the queue can order by it
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                Thread.ofPlatform().daemon().name("AskAI-api-", 0).factory());
+        this.cache = new ResponseCache(config.getApiCacheSize(), config.getApiCacheSeconds());
+        configure(config);
+    }
+
+    public void configure(PluginConfig config) {
+        int threads = config.getApiMaxConcurrent();
+        //core may never exceed max, so grow max first and shrink it last
+        if (threads > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(threads);
+            workers.setCorePoolSize(threads);
+        } else {
+            workers.setCorePoolSize(threads);
+            workers.setMaximumPoolSize(threads);
+        }
+        cache.configure(config.getApiCacheSize(), config.getApiCacheSeconds());
+        this.rateLimiter = new SlidingWindowRateLimiter(config.getApiRateLimitRequests(), config.getApiRateLimitWindowSeconds());
+        this.maxQueued = config.getApiMaxQueued();
+        this.callerPriorities = config.getApiCallerPriorities();
+    }
+
+    //queued requests fail; ones already talking to a provider finish on their own
+    public void shutdown() {
+        for (Runnable pending : workers.shutdownNow()) {
+            ((Job) pending).result.completeExceptionally(new AskAIException("AskAI is shutting down."));
+        }
+    }
+
+    @Override
+    public CompletableFuture<AskAIResult> chat(AskAIQuery query) {
+        return submit(query, null);
+    }
+
+    @Override
+    public CompletableFuture<AskAIResult> stream(AskAIQuery query, Consumer<String> onText) {
+        return submit(query, onText);
+    }
+
+    @Override
+    public boolean isReady() {
+        return plugin.isReady();
+    }
+
+    @Override
+    public Map<String, CallerUsage> usage() {
+        Map<String, CallerUsage> snapshot = new TreeMap<>();
+        usage.forEach((caller, counters) -> snapshot.put(caller, counters.snapshot()));
+        return snapshot;
+    }
+
+    public int queued() {
+        return workers.getQueue().size();
+    }
+
+    private CompletableFuture<AskAIResult> submit(AskAIQuery query, Consumer<String> onText) {
+        Counters counters = usage.computeIfAbsent(query.caller(), c -> new Counters());
+        counters.requests.increment();
+        if (!plugin.isReady()) {
+            return CompletableFuture.failedFuture(reject(counters, "AskAI is starting, try again in a moment."));
+        }
+        if (plugin.getAdmission().isRejecting()) {
+            return CompletableFuture.failedFuture(reject(counters, "The server is overloaded, try again shortly."));
+        }
+        if (!rateLimiter.tryAcquire(callerId(query.caller()))) {
+            return CompletableFuture.failedFuture(reject(counters, query.caller() + " is sending requests too fast."));
+        }
+        if (workers.getQueue().size() >= maxQueued) {
+            return CompletableFuture.failedFuture(reject(counters, "AskAI is busy, try again shortly."));
+        }
+
+        //the server's setting for a plugin wins over what the plugin asks for
+        AskAIQuery.Priority priority = callerPriorities.getOrDefault(query.caller(), query.priority());
+        CompletableFuture<AskAIResult> result = new CompletableFuture<>();
+        try {
+            workers.execute(new Job(priority, sequence.getAndIncrement(), result, () -> answer(query, onText, counters)));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(reject(counters, "AskAI is shutting down."));
+        }
+        return result;
+    }
+
+    //blocking, runs on a worker
+    private AskAIResult answer(AskAIQuery query, Consumer<String> onText, Counters counters) {
+        long startNanos = System.nanoTime();
+        PluginConfig config = plugin.getPluginConfig();
+        AIProvider provider = query.provider() == null ? config.getApiDefaultProvider() : AIProvider.fromId(query.provider());
+        if (provider == null || !config.getAllowedProviders().contains(provider)) {
+            throw reject(counters, "Provider " + (query.provider() == null ? config.getApiDefaultProvider() : query.provider())
+                    + " is not enabled on this server.");
+        }
+
+        //the same word lists and patterns as /chat
+        PromptFilter.Result filtered = plugin.getPromptFilter().apply(query.prompt());
+        if (filtered.rejected()) {
+            transcribe(query, "-", "-", TranscriptRecord.Outcome.BLOCKED, startNanos, filtered.rejectedBy().name(),
+                    0, 0);
+            throw reject(counters, filtered.rejectedBy().message());
+        }
+        String prompt = filtered.text();
+        String routed = filtered.modelFor(provider);
+        String model = plugin.getAdmission().model(provider, routed != null ? routed
+                : query.model() == null ? provider.defaultModel()
+                : plugin.resolveModel("plugin:" + query.caller(), provider, query.model(), prompt,
+                TokenEstimators.forProvider(provider).estimate(prompt), false));
+
+        ChatPipeline.Limits defaults = config.getPromptLimits();
+        ChatPipeline.Limits limits = plugin.getAdmission().limits(new ChatPipeline.Limits(
+                query.systemPrompt() != null ? query.systemPrompt() : defaults.systemPrompt(),
+                defaults.maxPromptTokens(),
+                query.maxTokens() > 0 ? Math.min(query.maxTokens(), defaults.maxResponseTokens()) : defaults.maxResponseTokens(),
+                defaults.maxTotalTokens()));
+
+        String cacheKey = ResponseCache.key(provider.id(), model, limits.systemPrompt(), prompt,
+                limits.maxResponseTokens());
+        AIResponse cached = cache.get(cacheKey);
+        if (cached != null) {
+            counters.cacheHits.increment();
+            if (onText != null) onText.accept(cached.text());
+            long latencyMillis = millisSince(startNanos);
+            counters.latencyMillis.add(latencyMillis);
+            return new AskAIResult(cached.text(), provider.id(), model, cached.promptTokens(),
+                    cached.completionTokens(), cached.finishReason(), true, latencyMillis);
+        }
+
+        ChatPipeline pipeline = plugin.getChatPipeline();
+        ChatPipeline.Prepared prepared;
+        try {
+            prepared = pipeline.prepare(limits, provider, model, prompt, List.of());
+        } catch (PromptRejectedException e) {
+            throw reject(counters, e.getMessage());
+        }
+
+        AIResponse response;
+        try {
+            ChatPipeline.Sender sender = keySender(query, provider, onText, counters);
+            if (sender == null) throw reject(counters, "No server API key set for " + provider.displayName() + ".");
+            //a streamed answer is already on its way to the caller, so only whole answers are hedged
+            sender = onText == null
+                    ? plugin.hedged(provider, model, sender, false, alternate -> keySender(query, alternate, null, counters))
+                    : plugin.getRequestHedger().observed(provider, sender);
+            response = pipeline.execute(provider, prepared, sender);
+        } catch (AskAIException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            counters.failures.increment();
+            String message = cause.getMessage() == null ? "Request failed." : cause.getMessage();
+            transcribe(query, provider.id(), model, TranscriptRecord.Outcome.ERROR, startNanos, message, 0, 0);
+            throw new AskAIException(message, cause);
+        }
+
+        cache.put(cacheKey, response);
+        long latencyMillis = millisSince(startNanos);
+        counters.promptTokens.add(response.promptTokens());
+        counters.completionTokens.add(response.completionTokens());
+        counters.latencyMillis.add(latencyMillis);
+        transcribe(query, provider.id(), model, TranscriptRecord.Outcome.OK, startNanos, response.text(),
+                response.promptTokens(), response.completionTokens());
+        return new AskAIResult(response.text(), provider.id(), model, response.promptTokens(),
+                response.completionTokens(), response.finishReason(), false, latencyMillis);
+    }
+
+    //in player key mode a question asked for a player spends that player's key if they set one.
+    //everything else comes out of the server key pool, unless the provider takes no key. null if there is no key to use
+    private ChatPipeline.Sender keySender(AskAIQuery query, AIProvider provider, Consumer<String> onText,
+                                          Counters counters) {
+        if (!provider.requiresKey()) return (client, request) -> call(client, request, "", onText).join();
+        if (query.player() != null && !plugin.getPluginConfig().isServerKeyMode()) {
+            String encryptedKey;
+            try {
+                encryptedKey = plugin.getSettingsRepo().load(query.player()).getEncryptedKey(provider);
+            } catch (Exception e) {
+                counters.failures.increment();
+                throw new AskAIException("Failed to load the player's settings.", e);
+            }
+            if (encryptedKey != null) {
+                String apiKey = plugin.getKeyEncryptor().decrypt(encryptedKey);
+                return (client, request) -> call(client, request, apiKey, onText).join();
+            }
+        }
+        if (!plugin.getKeyPool().hasKeys(provider)) return null;
+        return (client, request) -> plugin.getKeyPool().send(provider, plugin.getKeyEncryptor()::decrypt,
+                key -> call(client, request, key, onText));
+    }
+
+    private static CompletableFuture<AIResponse> call(AIProviderClient client, AIRequest request, String apiKey,
+                                                      Consumer<String> onText) {
+        return onText == null ? client.chat(request, apiKey) : client.stream(request, apiKey, onText);
+    }
+
+    private void transcribe(AskAIQuery query, String provider, String model, TranscriptRecord.Outcome outcome,
+                            long startNanos, String response, int promptTokens, int completionTokens) {
+        TranscriptWriter writer = plugin.getTranscriptWriter();
+        if (writer == null) return;
+        UUID playerId = query.player() != null ? query.player() : AskAI.SERVER_UUID;
+        writer.append(new TranscriptRecord(System.currentTimeMillis(), playerId, "plugin:" + query.caller(),
+                provider, model, outcome, millisSince(startNanos), promptTokens, completionTokens,
+                query.prompt(), response));
+    }
+
+    private static AskAIException reject(Counters counters, String message) {
+        counters.rejected.increment();
+        return new AskAIException(message);
+    }
+
+    //the rate limiter is keyed by UUID; plugin names get a stable one of their own
+    private static UUID callerId(String caller) {
+        return UUID.nameUUIDFromBytes(("plugin:" + caller).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static final class Counters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder latencyMillis = new LongAdder();
+
+        private CallerUsage snapshot() {
+            return new CallerUsage(requests.sum(), failures.sum(), rejected.sum(), cacheHits.sum(),
+                    promptTokens.sum(), completionTokens.sum(), latencyMillis.sum());
+        }
+    }
+
+    private static final class Job implements Runnable, Comparable<Job> {
+        private final AskAIQuery.Priority priority;
+        private final long sequence;
+        private final CompletableFuture<AskAIResult> result;
+        private final Supplier<AskAIResult> work;
+
+        private Job(AskAIQuery.Priority priority, long sequence, CompletableFuture<AskAIResult> result,
+                    Supplier<AskAIResult> work) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.result = result;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            //the caller gave up while it was queued
+            if (result.isDone()) return;
+            try {
+                result.complete(work.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
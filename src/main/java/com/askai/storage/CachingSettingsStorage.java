@@ -0,0 +1,192 @@
+package com.askai.storage;
+
+import com.askai.jfr.SettingsLoadEvent;
+import com.askai.model.AIProvider;
+import com.askai.model.ServerKey;
+import com.askai.model.UserSettings;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//keeps loaded player settings for a while, so a /chat does not read the database twice. every write
+//through this storage drops the entry and tells the listener, which passes it on to the other servers.
+//settings handed out are shared and must not be modified
+public final class CachingSettingsStorage implements SettingsStorage {
+    public interface ChangeListener {
+        void settingsChanged(Collection<UUID> playerIds);
+
+        void serverKeysChanged();
+    }
+
+    private record Entry(UserSettings settings, long expiresAtMillis) {
+    }
+
+    private final SettingsStorage delegate;
+    private final ChangeListener listener;
+    private final Map<UUID, Entry> cache = new ConcurrentHashMap<>();
+    //bumped by every invalidation, so a load that raced one is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long ttlMillis;
+
+    public CachingSettingsStorage(SettingsStorage delegate, int ttlSeconds, ChangeListener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+        configure(ttlSeconds);
+    }
+
+    //0 turns caching off
+    public void configure(int ttlSeconds) {
+        this.ttlMillis = Math.max(0, ttlSeconds) * 1000L;
+        if (ttlMillis == 0) invalidateAll();
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        delegate.initialize();
+    }
+
+    @Override
+    public UserSettings load(UUID playerId) throws SQLException {
+        SettingsLoadEvent event = new SettingsLoadEvent();
+        event.begin();
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(playerId);
+        if (entry != null && entry.expiresAtMillis > now) {
+            event.cached = true;
+            commit(event);
+            return entry.settings;
+        }
+
+        long before = generation.get();
+        UserSettings settings;
+        try {
+            settings = delegate.load(playerId);
+        } finally {
+            commit(event);
+        }
+        if (ttlMillis > 0) {
+            cache.put(playerId, new Entry(settings, now + ttlMillis));
+            if (generation.get() != before) cache.remove(playerId);
+        }
+        return settings;
+    }
+
+    private void commit(SettingsLoadEvent event) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.storage = delegate.name();
+        event.commit();
+    }
+
+    //a change made elsewhere on the network
+    public void invalidate(Collection<UUID> playerIds) {
+        generation.incrementAndGet();
+        playerIds.forEach(cache::remove);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    private void changed(UUID playerId) {
+        changed(Set.of(playerId));
+    }
+
+    private void changed(Collection<UUID> playerIds) {
+        invalidate(playerIds);
+        listener.settingsChanged(playerIds);
+    }
+
+    @Override
+    public void setEncryptedKey(UUID playerId, AIProvider provider, String encryptedKey) throws SQLException {
+        try {
+            delegate.setEncryptedKey(playerId, provider, encryptedKey);
+        } finally {
+            changed(playerId);
+        }
+    }
+
+    @Override
+    public void setModel(UUID playerId, AIProvider provider, String model) throws SQLException {
+        try {
+            delegate.setModel(playerId, provider, model);
+        } finally {
+            changed(playerId);
+        }
+    }
+
+    @Override
+    public void setActiveProvider(UUID playerId, AIProvider provider) throws SQLException {
+        try {
+            delegate.setActiveProvider(playerId, provider);
+        } finally {
+            changed(playerId);
+        }
+    }
+
+    @Override
+    public List<ServerKey> loadServerKeys() throws SQLException {
+        return delegate.loadServerKeys();
+    }
+
+    @Override
+    public long addServerKey(AIProvider provider, String encryptedKey) throws SQLException {
+        long id = delegate.addServerKey(provider, encryptedKey);
+        listener.serverKeysChanged();
+        return id;
+    }
+
+    @Override
+    public boolean removeServerKey(long id) throws SQLException {
+        boolean removed = delegate.removeServerKey(id);
+        if (removed) listener.serverKeysChanged();
+        return removed;
+    }
+
+    @Override
+    public List<StoredKey> loadEncryptedKeys(StoredKey after, int limit) throws SQLException {
+        return delegate.loadEncryptedKeys(after, limit);
+    }
+
+    @Override
+    public int countEncryptedKeys() throws SQLException {
+        return delegate.countEncryptedKeys();
+    }
+
+    @Override
+    public int replaceEncryptedKeys(List<StoredKey> expected, List<String> replacements) throws SQLException {
+        int replaced = delegate.replaceEncryptedKeys(expected, replacements);
+        if (replaced > 0) {
+            Set<UUID> players = new LinkedHashSet<>();
+            for (StoredKey key : expected) players.add(key.playerId());
+            changed(players);
+        }
+        return replaced;
+    }
+
+    @Override
+    public boolean replaceServerKey(long id, String expected, String replacement) throws SQLException {
+        boolean replaced = delegate.replaceServerKey(id, expected, replacement);
+        if (replaced) listener.serverKeysChanged();
+        return replaced;
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public void close() {
+        cache.clear();
+        delegate.close();
+    }
+}
@@ -5,57 +5,75 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 import java.util.logging.Logger;
 
 public final class DatabaseManager {
+    //append new migrations here. versions must be consecutive starting at 1
+    private static final List<Migration> MIGRATIONS = List.of(
+            new V1InitialSchema(),
+            new V2CompactSettings(),
+            new V3ServerKeyPool()
+    );
+
+    //per connection settings. synchronous is OFF, NORMAL, FULL or EXTRA; mmapBytes 0 turns memory mapping off
+    public record Tuning(String synchronous, long mmapBytes) {
+    }
+
     private final Path dataFolder;
     private final Logger logger;
+    private final Tuning tuning;
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+
     private Connection connection;
+    private String url;
 
-    public DatabaseManager(Path dataFolder, Logger logger) {
+    public DatabaseManager(Path dataFolder, Logger logger, Tuning tuning) {
         this.dataFolder = dataFolder;
         this.logger = logger;
+        this.tuning = tuning;
     }
 
     public void initialize() throws SQLException {
         dataFolder.toFile().mkdirs();
-        String url = "jdbc:sqlite:" + dataFolder.resolve("askai.db");
+        this.url = "jdbc:sqlite:" + databaseFile();
         this.connection = DriverManager.getConnection(url);
 
         try (Statement stmt = connection.createStatement()) {
             stmt.execute("PRAGMA journal_mode=WAL");
             stmt.execute("PRAGMA foreign_keys=ON");
+            //wait out another connection's short write instead of failing with SQLITE_BUSY
+            stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+            tune(stmt);
         }
 
-        createTables();
-        logger.info("Database initialized.");
+        SchemaMigrator migrator = new SchemaMigrator(connection, logger, MIGRATIONS);
+        migrator.migrate();
+        logger.info("Database initialized (schema v" + migrator.currentVersion() + ").");
     }
 
-    private void createTables() throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute("""
-                    CREATE TABLE IF NOT EXISTS user_settings (
-                        player_uuid   TEXT NOT NULL,
-                        provider      TEXT NOT NULL,
-                        setting_key   TEXT NOT NULL,
-                        setting_value TEXT NOT NULL,
-                        updated_at    INTEGER NOT NULL DEFAULT (strftime('%s', 'now')),
-                        PRIMARY KEY (player_uuid, provider, setting_key)
-                    )
-                    """);
+    public Connection getConnection() {
+        return connection;
+    }
 
-            stmt.execute("""
-                    CREATE TABLE IF NOT EXISTS user_active_provider (
-                        player_uuid TEXT PRIMARY KEY,
-                        provider    TEXT NOT NULL DEFAULT 'openai',
-                        updated_at  INTEGER NOT NULL DEFAULT (strftime('%s', 'now'))
-                    )
-                    """);
+    //extra connection for work that needs its own transaction. the caller closes it
+    public Connection openConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys=ON");
+            stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+            tune(stmt);
         }
+        return conn;
     }
 
-    public Connection getConnection() {
-        return connection;
+    private void tune(Statement stmt) throws SQLException {
+        stmt.execute("PRAGMA synchronous=" + tuning.synchronous());
+        stmt.execute("PRAGMA mmap_size=" + tuning.mmapBytes());
+    }
+
+    public Path databaseFile() {
+        return dataFolder.resolve("askai.db");
     }
 
     public void close() {
@@ -0,0 +1,77 @@
+package com.askai.storage;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+//embedded H2. "mem:" databases are handy for tests; file databases live in the plugin folder
+public final class H2SettingsStorage extends PooledSettingsStorage {
+
+    public H2SettingsStorage(Path dataFolder, int poolSize, String tablePrefix, Logger logger) {
+        this("jdbc:h2:file:" + dataFolder.toAbsolutePath().resolve("askai-h2"), poolSize, tablePrefix, logger);
+    }
+
+    public H2SettingsStorage(String url, int poolSize, String tablePrefix, Logger logger) {
+        super(url, new Properties(), poolSize, tablePrefix, logger);
+    }
+
+    @Override
+    public String name() {
+        return "H2";
+    }
+
+    @Override
+    protected void loadDriver() throws SQLException {
+        //the plugin classloader is not visible to DriverManager's service lookup, so register explicitly
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("H2 driver not found", e);
+        }
+    }
+
+    @Override
+    protected List<String> schemaStatements() {
+        return List.of(
+                """
+                CREATE TABLE IF NOT EXISTS %splayers (
+                    player_uuid     BINARY(16)  NOT NULL PRIMARY KEY,
+                    active_provider VARCHAR(32) NOT NULL DEFAULT 'openai',
+                    updated_at      BIGINT      NOT NULL
+                )
+                """.formatted(tablePrefix),
+                """
+                CREATE TABLE IF NOT EXISTS %suser_settings (
+                    player_uuid   BINARY(16)    NOT NULL,
+                    provider      VARCHAR(32)   NOT NULL,
+                    encrypted_key VARCHAR(4096) NULL,
+                    model         VARCHAR(128)  NULL,
+                    updated_at    BIGINT        NOT NULL,
+                    PRIMARY KEY (player_uuid, provider)
+                )
+                """.formatted(tablePrefix),
+                """
+                CREATE TABLE IF NOT EXISTS %sserver_keys (
+                    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    provider      VARCHAR(32)   NOT NULL,
+                    encrypted_key VARCHAR(4096) NOT NULL,
+                    added_at      BIGINT        NOT NULL
+                )
+                """.formatted(tablePrefix)
+        );
+    }
+
+    @Override
+    protected String upsertSql(String table, List<String> keyColumns, List<String> valueColumns) {
+        //MERGE ... KEY only touches the listed columns on update, matching ON CONFLICT DO UPDATE
+        List<String> columns = new ArrayList<>(keyColumns);
+        columns.addAll(valueColumns);
+        return "MERGE INTO " + table + " (" + String.join(", ", columns) + ") KEY ("
+                + String.join(", ", keyColumns) + ") VALUES ("
+                + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")";
+    }
+}
@@ -0,0 +1,13 @@
+package com.askai.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+interface Migration {
+    //the schema version this migration upgrades the database to
+    int version();
+
+    String description();
+
+    void apply(Connection conn) throws SQLException;
+}
@@ -0,0 +1,86 @@
+package com.askai.storage;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+//MySQL and MariaDB, using the Connector/J driver bundled with the server
+public final class MySqlSettingsStorage extends PooledSettingsStorage {
+
+    public MySqlSettingsStorage(String host, int port, String database, String username, String password,
+                                int poolSize, String tablePrefix, Logger logger) {
+        super("jdbc:mysql://" + host + ":" + port + "/" + database, connectionProperties(username, password),
+                poolSize, tablePrefix, logger);
+    }
+
+    private static Properties connectionProperties(String username, String password) {
+        Properties props = new Properties();
+        props.setProperty("user", username);
+        props.setProperty("password", password);
+        //collapse a JDBC batch into one multi-row INSERT on the wire
+        props.setProperty("rewriteBatchedStatements", "true");
+        props.setProperty("cachePrepStmts", "true");
+        props.setProperty("useServerPrepStmts", "false");
+        props.setProperty("characterEncoding", "utf8");
+        return props;
+    }
+
+    @Override
+    public String name() {
+        return "MySQL";
+    }
+
+    @Override
+    protected void loadDriver() throws SQLException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("MySQL driver not found on the server classpath", e);
+        }
+    }
+
+    @Override
+    protected List<String> schemaStatements() {
+        return List.of(
+                """
+                CREATE TABLE IF NOT EXISTS %splayers (
+                    player_uuid     BINARY(16)  NOT NULL PRIMARY KEY,
+                    active_provider VARCHAR(32) NOT NULL DEFAULT 'openai',
+                    updated_at      BIGINT      NOT NULL
+                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                """.formatted(tablePrefix),
+                """
+                CREATE TABLE IF NOT EXISTS %suser_settings (
+                    player_uuid   BINARY(16)   NOT NULL,
+                    provider      VARCHAR(32)  NOT NULL,
+                    encrypted_key TEXT         NULL,
+                    model         VARCHAR(128) NULL,
+                    updated_at    BIGINT       NOT NULL,
+                    PRIMARY KEY (player_uuid, provider)
+                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                """.formatted(tablePrefix),
+                """
+                CREATE TABLE IF NOT EXISTS %sserver_keys (
+                    id            BIGINT      NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                    provider      VARCHAR(32) NOT NULL,
+                    encrypted_key TEXT        NOT NULL,
+                    added_at      BIGINT      NOT NULL
+                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                """.formatted(tablePrefix)
+        );
+    }
+
+    @Override
+    protected String upsertSql(String table, List<String> keyColumns, List<String> valueColumns) {
+        //VALUES() is deprecated in MySQL 8.0.20+ but is the only form MariaDB also accepts
+        List<String> columns = new ArrayList<>(keyColumns);
+        columns.addAll(valueColumns);
+        return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ") "
+                + "ON DUPLICATE KEY UPDATE "
+                + valueColumns.stream().map(c -> c + " = VALUES(" + c + ")").collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,254 @@
+package com.askai.storage;
+
+import com.askai.model.AIProvider;
+import com.askai.model.ServerKey;
+import com.askai.model.UserSettings;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+//shared JDBC logic for pooled backends. reads borrow a pooled connection, writes go through the batcher.
+//these backends are created directly at the v2 layout, so there is no migration history to replay
+public abstract class PooledSettingsStorage implements SettingsStorage {
+    private static final long BORROW_TIMEOUT_MILLIS = 10_000;
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final String url;
+    private final Properties properties;
+    private final int poolSize;
+    protected final String tablePrefix;
+    protected final Logger logger;
+    private ConnectionPool pool;
+    private UpsertBatcher batcher;
+
+    protected PooledSettingsStorage(String url, Properties properties, int poolSize,
+                                    String tablePrefix, Logger logger) {
+        this.url = url;
+        this.properties = properties;
+        this.poolSize = poolSize;
+        this.tablePrefix = tablePrefix;
+        this.logger = logger;
+    }
+
+    //CREATE TABLE IF NOT EXISTS statements for this dialect
+    protected abstract List<String> schemaStatements();
+
+    //upsert of the given columns keyed on the table's primary key columns
+    protected abstract String upsertSql(String table, List<String> keyColumns, List<String> valueColumns);
+
+    protected abstract void loadDriver() throws SQLException;
+
+    @Override
+    public void initialize() throws SQLException {
+        loadDriver();
+        this.pool = new ConnectionPool(url, properties, poolSize, BORROW_TIMEOUT_MILLIS);
+        try (ConnectionPool.Lease lease = pool.borrow();
+             Statement stmt = lease.connection().createStatement()) {
+            for (String ddl : schemaStatements()) {
+                stmt.execute(ddl);
+            }
+        }
+        this.batcher = new UpsertBatcher(pool, logger, MAX_BATCH_SIZE);
+        logger.info("Database initialized (" + name() + ", pool size " + poolSize + ").");
+    }
+
+    @Override
+    public UserSettings load(UUID playerId) throws SQLException {
+        UserSettings settings = new UserSettings(playerId);
+        byte[] uuid = UuidBytes.toBytes(playerId);
+
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            Connection conn = lease.connection();
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT active_provider FROM " + tablePrefix + "players WHERE player_uuid = ?")) {
+                ps.setBytes(1, uuid);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        AIProvider provider = AIProvider.fromId(rs.getString("active_provider"));
+                        if (provider != null) {
+                            settings.setActiveProvider(provider);
+                        }
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT provider, encrypted_key, model FROM " + tablePrefix
+                            + "user_settings WHERE player_uuid = ?")) {
+                ps.setBytes(1, uuid);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        AIProvider provider = AIProvider.fromId(rs.getString("provider"));
+                        if (provider == null) continue;
+
+                        String encryptedKey = rs.getString("encrypted_key");
+                        String model = rs.getString("model");
+                        if (encryptedKey != null) settings.setEncryptedKey(provider, encryptedKey);
+                        if (model != null) settings.setModel(provider, model);
+                    }
+                }
+            }
+        }
+
+        return settings;
+    }
+
+    @Override
+    public void setEncryptedKey(UUID playerId, AIProvider provider, String encryptedKey) throws SQLException {
+        upsertSetting(playerId, provider, "encrypted_key", encryptedKey);
+    }
+
+    @Override
+    public void setModel(UUID playerId, AIProvider provider, String model) throws SQLException {
+        upsertSetting(playerId, provider, "model", model);
+    }
+
+    @Override
+    public void setActiveProvider(UUID playerId, AIProvider provider) throws SQLException {
+        batcher.execute(
+                upsertSql(tablePrefix + "players", List.of("player_uuid"), List.of("active_provider", "updated_at")),
+                UuidBytes.toBytes(playerId), provider.id(), Instant.now().getEpochSecond());
+    }
+
+    @Override
+    public List<ServerKey> loadServerKeys() throws SQLException {
+        List<ServerKey> keys = new ArrayList<>();
+        try (ConnectionPool.Lease lease = pool.borrow();
+             PreparedStatement ps = lease.connection().prepareStatement(
+                     "SELECT id, provider, encrypted_key, added_at FROM " + tablePrefix + "server_keys ORDER BY id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                AIProvider provider = AIProvider.fromId(rs.getString("provider"));
+                if (provider == null) continue;
+                keys.add(new ServerKey(rs.getLong("id"), provider, rs.getString("encrypted_key"), rs.getLong("added_at")));
+            }
+        }
+        return keys;
+    }
+
+    //needs the generated id back, so this bypasses the batcher
+    @Override
+    public long addServerKey(AIProvider provider, String encryptedKey) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow();
+             PreparedStatement ps = lease.connection().prepareStatement(
+                     "INSERT INTO " + tablePrefix + "server_keys (provider, encrypted_key, added_at) VALUES (?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, provider.id());
+            ps.setString(2, encryptedKey);
+            ps.setLong(3, Instant.now().getEpochSecond());
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (!rs.next()) throw new SQLException("No id returned for new server key");
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    @Override
+    public boolean removeServerKey(long id) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow();
+             PreparedStatement ps = lease.connection().prepareStatement(
+                     "DELETE FROM " + tablePrefix + "server_keys WHERE id = ?")) {
+            ps.setLong(1, id);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public List<StoredKey> loadEncryptedKeys(StoredKey after, int limit) throws SQLException {
+        String sql = "SELECT player_uuid, provider, encrypted_key FROM " + tablePrefix
+                + "user_settings WHERE encrypted_key IS NOT NULL"
+                + (after == null ? "" : " AND (player_uuid > ? OR (player_uuid = ? AND provider > ?))")
+                + " ORDER BY player_uuid, provider LIMIT ?";
+        List<StoredKey> page = new ArrayList<>();
+        try (ConnectionPool.Lease lease = pool.borrow();
+             PreparedStatement ps = lease.connection().prepareStatement(sql)) {
+            int i = 1;
+            if (after != null) {
+                byte[] uuid = UuidBytes.toBytes(after.playerId());
+                ps.setBytes(i++, uuid);
+                ps.setBytes(i++, uuid);
+                ps.setString(i++, after.provider());
+            }
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    page.add(new StoredKey(UuidBytes.fromBytes(rs.getBytes("player_uuid")),
+                            rs.getString("provider"), rs.getString("encrypted_key")));
+                }
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public int countEncryptedKeys() throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow();
+             Statement stmt = lease.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tablePrefix
+                     + "user_settings WHERE encrypted_key IS NOT NULL")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    //compare-and-set per row in one transaction. bypasses the batcher, which cannot report row counts
+    @Override
+    public int replaceEncryptedKeys(List<StoredKey> expected, List<String> replacements) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            Connection conn = lease.connection();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE " + tablePrefix + "user_settings "
+                    + "SET encrypted_key = ? WHERE player_uuid = ? AND provider = ? AND encrypted_key = ?")) {
+                for (int i = 0; i < expected.size(); i++) {
+                    StoredKey key = expected.get(i);
+                    ps.setString(1, replacements.get(i));
+                    ps.setBytes(2, UuidBytes.toBytes(key.playerId()));
+                    ps.setString(3, key.provider());
+                    ps.setString(4, key.encryptedKey());
+                    ps.addBatch();
+                }
+                int replaced = 0;
+                for (int count : ps.executeBatch()) {
+                    //some drivers report SUCCESS_NO_INFO (-2) for rewritten batches
+                    replaced += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                conn.commit();
+                return replaced;
+            }
+        }
+    }
+
+    @Override
+    public boolean replaceServerKey(long id, String expected, String replacement) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.borrow();
+             PreparedStatement ps = lease.connection().prepareStatement(
+                     "UPDATE " + tablePrefix + "server_keys SET encrypted_key = ? WHERE id = ? AND encrypted_key = ?")) {
+            ps.setString(1, replacement);
+            ps.setLong(2, id);
+            ps.setString(3, expected);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    private void upsertSetting(UUID playerId, AIProvider provider, String column, String value) throws SQLException {
+        batcher.execute(
+                upsertSql(tablePrefix + "user_settings", List.of("player_uuid", "provider"), List.of(column, "updated_at")),
+                UuidBytes.toBytes(playerId), provider.id(), value, Instant.now().getEpochSecond());
+    }
+
+    @Override
+    public void close() {
+        if (batcher != null) batcher.close();
+        if (pool != null) pool.close();
+    }
+}
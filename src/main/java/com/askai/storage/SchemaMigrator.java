@@ -0,0 +1,67 @@
+package com.askai.storage;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.logging.Logger;
+
+//applies pending migrations in order, tracking progress in PRAGMA user_version
+final class SchemaMigrator {
+    private final Connection connection;
+    private final Logger logger;
+    private final List<Migration> migrations;
+
+    SchemaMigrator(Connection connection, Logger logger, List<Migration> migrations) {
+        this.connection = connection;
+        this.logger = logger;
+        this.migrations = migrations;
+    }
+
+    int currentVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    int latestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.getLast().version();
+    }
+
+    void migrate() throws SQLException {
+        int current = currentVersion();
+        if (current > latestVersion()) {
+            throw new SQLException("Database schema v" + current
+                    + " is newer than this version of AskAI supports (v" + latestVersion() + ")");
+        }
+
+        for (Migration migration : migrations) {
+            if (migration.version() <= current) continue;
+
+            long start = System.nanoTime();
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                migration.apply(connection);
+                //user_version is transactional, so a crash mid-migration leaves the old version in place
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("PRAGMA user_version = " + migration.version());
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw new SQLException("Migration to schema v" + migration.version() + " failed: "
+                        + e.getMessage(), e);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            logger.info("Migrated database to schema v" + migration.version()
+                    + " (" + migration.description() + ") in " + millis + "ms.");
+            current = migration.version();
+        }
+    }
+}
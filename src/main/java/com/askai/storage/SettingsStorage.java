@@ -0,0 +1,45 @@
+package com.askai.storage;
+
+import com.askai.model.AIProvider;
+import com.askai.model.ServerKey;
+import com.askai.model.UserSettings;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+//persistence for per-player provider settings. implementations must be safe to call from any async thread
+public interface SettingsStorage {
+    void initialize() throws SQLException;
+
+    UserSettings load(UUID playerId) throws SQLException;
+
+    void setEncryptedKey(UUID playerId, AIProvider provider, String encryptedKey) throws SQLException;
+
+    void setModel(UUID playerId, AIProvider provider, String model) throws SQLException;
+
+    void setActiveProvider(UUID playerId, AIProvider provider) throws SQLException;
+
+    //additional server-mode pool keys (the primary key still lives in the SERVER_UUID settings)
+    List<ServerKey> loadServerKeys() throws SQLException;
+
+    long addServerKey(AIProvider provider, String encryptedKey) throws SQLException;
+
+    boolean removeServerKey(long id) throws SQLException;
+
+    //seed rotation: keyset-paged scan of stored player keys, ordered by (player, provider). after null starts at the top
+    List<StoredKey> loadEncryptedKeys(StoredKey after, int limit) throws SQLException;
+
+    int countEncryptedKeys() throws SQLException;
+
+    //rewrites each key only if it still holds the value that was read, all in one short transaction.
+    //returns how many were replaced; the rest were changed by their owner in the meantime
+    int replaceEncryptedKeys(List<StoredKey> expected, List<String> replacements) throws SQLException;
+
+    boolean replaceServerKey(long id, String expected, String replacement) throws SQLException;
+
+    //short name for logs, e.g. "SQLite"
+    String name();
+
+    void close();
+}
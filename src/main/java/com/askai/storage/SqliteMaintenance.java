@@ -0,0 +1,186 @@
+package com.askai.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+//keeps a long-running SQLite database in shape from a background task: truncates the WAL file, hands free
+//pages back to the file system a batch at a time and refreshes the query planner's statistics. each job has
+//its own interval, and a check is skipped while AskAI is busy so it never competes with /chat for the file
+public final class SqliteMaintenance {
+    private static final String[] AUTO_VACUUM_MODES = {"none", "full", "incremental"};
+    private static final String[] SYNCHRONOUS_MODES = {"OFF", "NORMAL", "FULL", "EXTRA"};
+
+    //an interval of 0 turns its job off
+    public record Settings(boolean enabled, long checkMillis, int maxPending, long checkpointMillis,
+                           boolean incrementalVacuum, long vacuumMillis, int vacuumPages, long optimizeMillis) {
+    }
+
+    //as of the end of the last check that ran. lastRunMillis is 0 until one has
+    public record Status(String autoVacuum, String synchronous, long mmapBytes, long databaseBytes, long walBytes,
+                         long freePages, long runs, long skippedBusy, long checkpoints, long checkpointsBusy,
+                         long pagesVacuumed, long optimizes, long lastRunMillis, String lastError) {
+    }
+
+    private final DatabaseManager db;
+    private final Logger logger;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Settings settings;
+    private volatile Status status = new Status("?", "?", 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, null);
+
+    //only touched by the check holding running
+    private long lastCheckpoint;
+    private long lastVacuum;
+    private long lastOptimize;
+    private long runs;
+    private long skippedBusy;
+    private long checkpoints;
+    private long checkpointsBusy;
+    private long pagesVacuumed;
+    private long optimizes;
+
+    public SqliteMaintenance(DatabaseManager db, Settings settings, Logger logger) {
+        this.db = db;
+        this.settings = settings;
+        this.logger = logger;
+    }
+
+    public void configure(Settings settings) {
+        this.settings = settings;
+    }
+
+    public Settings settings() {
+        return settings;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    //one check from the repeating task, off the main thread. pending is the work AskAI has in hand
+    public void check(int pending) {
+        Settings current = settings;
+        if (!current.enabled() || !running.compareAndSet(false, true)) return;
+        try {
+            if (pending > current.maxPending()) {
+                skippedBusy++;
+                publish(status, null);
+                return;
+            }
+            run(current);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void run(Settings current) {
+        long now = System.currentTimeMillis();
+        String error = null;
+        Status previous = status;
+        try (Connection conn = db.openConnection(); Statement stmt = conn.createStatement()) {
+            int autoVacuum = queryInt(stmt, "PRAGMA auto_vacuum");
+            if (current.incrementalVacuum() && autoVacuum == 0) {
+                autoVacuum = convertToIncremental(stmt);
+            }
+            if (due(lastCheckpoint, current.checkpointMillis(), now)) {
+                checkpoint(stmt);
+                lastCheckpoint = now;
+            }
+            if (autoVacuum == 2 && due(lastVacuum, current.vacuumMillis(), now)) {
+                long before = queryInt(stmt, "PRAGMA freelist_count");
+                if (before > 0) {
+                    stmt.execute("PRAGMA incremental_vacuum(" + current.vacuumPages() + ")");
+                    pagesVacuumed += before - queryInt(stmt, "PRAGMA freelist_count");
+                }
+                lastVacuum = now;
+            }
+            if (due(lastOptimize, current.optimizeMillis(), now)) {
+                optimize(stmt);
+                lastOptimize = now;
+            }
+            runs++;
+            previous = new Status(mode(AUTO_VACUUM_MODES, autoVacuum),
+                    mode(SYNCHRONOUS_MODES, queryInt(stmt, "PRAGMA synchronous")),
+                    queryLong(stmt, "PRAGMA mmap_size"),
+                    fileSize(db.databaseFile()),
+                    fileSize(Path.of(db.databaseFile() + "-wal")),
+                    queryInt(stmt, "PRAGMA freelist_count"),
+                    0, 0, 0, 0, 0, 0, now, null);
+        } catch (SQLException e) {
+            error = e.getMessage();
+            logger.warning("SQLite maintenance failed: " + error);
+        }
+        publish(previous, error);
+    }
+
+    //auto_vacuum can only leave NONE by rebuilding the file, which is done once. AskAI's database is small,
+    //so this takes moments. returns the mode in effect afterwards
+    private int convertToIncremental(Statement stmt) throws SQLException {
+        long start = System.nanoTime();
+        stmt.execute("PRAGMA auto_vacuum=INCREMENTAL");
+        stmt.execute("VACUUM");
+        int mode = queryInt(stmt, "PRAGMA auto_vacuum");
+        logger.info("Switched askai.db to incremental auto-vacuum in " + (System.nanoTime() - start) / 1_000_000
+                + " ms.");
+        return mode;
+    }
+
+    //copies the WAL into the database and truncates it. busy means a reader held on to part of the log,
+    //which the next checkpoint picks up
+    private void checkpoint(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+            if (rs.next() && rs.getInt(1) != 0) checkpointsBusy++;
+        }
+        checkpoints++;
+    }
+
+    //PRAGMA optimize only analyzes tables whose statistics look stale, and never ones without any, so a
+    //database that was never analyzed gets a full ANALYZE first
+    private void optimize(Statement stmt) throws SQLException {
+        boolean analyzed;
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'sqlite_stat1'")) {
+            analyzed = rs.next();
+        }
+        if (!analyzed) stmt.execute("ANALYZE");
+        stmt.execute("PRAGMA optimize");
+        optimizes++;
+    }
+
+    private void publish(Status base, String error) {
+        status = new Status(base.autoVacuum(), base.synchronous(), base.mmapBytes(), base.databaseBytes(),
+                base.walBytes(), base.freePages(), runs, skippedBusy, checkpoints, checkpointsBusy, pagesVacuumed,
+                optimizes, base.lastRunMillis(), error != null ? error : base.lastError());
+    }
+
+    private static boolean due(long last, long intervalMillis, long now) {
+        return intervalMillis > 0 && now - last >= intervalMillis;
+    }
+
+    private static int queryInt(Statement stmt, String sql) throws SQLException {
+        return (int) queryLong(stmt, sql);
+    }
+
+    private static long queryLong(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static String mode(String[] names, int value) {
+        return value >= 0 && value < names.length ? names[value] : String.valueOf(value);
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
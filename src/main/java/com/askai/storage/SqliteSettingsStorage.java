@@ -0,0 +1,221 @@
+package com.askai.storage;
+
+import com.askai.model.AIProvider;
+import com.askai.model.ServerKey;
+import com.askai.model.UserSettings;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public final class SqliteSettingsStorage implements SettingsStorage {
+    private final DatabaseManager db;
+
+    public SqliteSettingsStorage(DatabaseManager db) {
+        this.db = db;
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        db.initialize();
+    }
+
+    @Override
+    public String name() {
+        return "SQLite";
+    }
+
+    @Override
+    public void close() {
+        db.close();
+    }
+
+    @Override
+    public UserSettings load(UUID playerId) throws SQLException {
+        UserSettings settings = new UserSettings(playerId);
+        Connection conn = db.getConnection();
+
+        //load active provider
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT active_provider FROM players WHERE player_uuid = ?")) {
+            ps.setBytes(1, UuidBytes.toBytes(playerId));
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                AIProvider provider = AIProvider.fromId(rs.getString("active_provider"));
+                if (provider != null) {
+                    settings.setActiveProvider(provider);
+                }
+            }
+        }
+
+        //load all settings (keys and models)
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT provider, encrypted_key, model FROM user_settings WHERE player_uuid = ?")) {
+            ps.setBytes(1, UuidBytes.toBytes(playerId));
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                AIProvider provider = AIProvider.fromId(rs.getString("provider"));
+                if (provider == null) continue;
+
+                String encryptedKey = rs.getString("encrypted_key");
+                String model = rs.getString("model");
+                if (encryptedKey != null) settings.setEncryptedKey(provider, encryptedKey);
+                if (model != null) settings.setModel(provider, model);
+            }
+        }
+
+        return settings;
+    }
+
+    @Override
+    public void setEncryptedKey(UUID playerId, AIProvider provider, String encryptedKey) throws SQLException {
+        upsertSetting(playerId, provider, "encrypted_key", encryptedKey);
+    }
+
+    @Override
+    public void setModel(UUID playerId, AIProvider provider, String model) throws SQLException {
+        upsertSetting(playerId, provider, "model", model);
+    }
+
+    @Override
+    public void setActiveProvider(UUID playerId, AIProvider provider) throws SQLException {
+        Connection conn = db.getConnection();
+        try (PreparedStatement ps = conn.prepareStatement("""
+                INSERT INTO players (player_uuid, active_provider, updated_at)
+                VALUES (?, ?, strftime('%s', 'now'))
+                ON CONFLICT(player_uuid) DO UPDATE SET
+                    active_provider = excluded.active_provider,
+                    updated_at = excluded.updated_at
+                """)) {
+            ps.setBytes(1, UuidBytes.toBytes(playerId));
+            ps.setString(2, provider.id());
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<ServerKey> loadServerKeys() throws SQLException {
+        List<ServerKey> keys = new ArrayList<>();
+        try (PreparedStatement ps = db.getConnection().prepareStatement(
+                "SELECT id, provider, encrypted_key, added_at FROM server_keys ORDER BY id")) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                AIProvider provider = AIProvider.fromId(rs.getString("provider"));
+                if (provider == null) continue;
+                keys.add(new ServerKey(rs.getLong("id"), provider, rs.getString("encrypted_key"), rs.getLong("added_at")));
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public long addServerKey(AIProvider provider, String encryptedKey) throws SQLException {
+        try (PreparedStatement ps = db.getConnection().prepareStatement(
+                "INSERT INTO server_keys (provider, encrypted_key) VALUES (?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, provider.id());
+            ps.setString(2, encryptedKey);
+            ps.executeUpdate();
+            ResultSet rs = ps.getGeneratedKeys();
+            if (!rs.next()) throw new SQLException("No id returned for new server key");
+            return rs.getLong(1);
+        }
+    }
+
+    @Override
+    public boolean removeServerKey(long id) throws SQLException {
+        try (PreparedStatement ps = db.getConnection().prepareStatement("DELETE FROM server_keys WHERE id = ?")) {
+            ps.setLong(1, id);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public List<StoredKey> loadEncryptedKeys(StoredKey after, int limit) throws SQLException {
+        String sql = "SELECT player_uuid, provider, encrypted_key FROM user_settings WHERE encrypted_key IS NOT NULL"
+                + (after == null ? "" : " AND (player_uuid > ? OR (player_uuid = ? AND provider > ?))")
+                + " ORDER BY player_uuid, provider LIMIT ?";
+        List<StoredKey> page = new ArrayList<>();
+        try (PreparedStatement ps = db.getConnection().prepareStatement(sql)) {
+            int i = 1;
+            if (after != null) {
+                byte[] uuid = UuidBytes.toBytes(after.playerId());
+                ps.setBytes(i++, uuid);
+                ps.setBytes(i++, uuid);
+                ps.setString(i++, after.provider());
+            }
+            ps.setInt(i, limit);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                page.add(new StoredKey(UuidBytes.fromBytes(rs.getBytes("player_uuid")),
+                        rs.getString("provider"), rs.getString("encrypted_key")));
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public int countEncryptedKeys() throws SQLException {
+        try (Statement stmt = db.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM user_settings WHERE encrypted_key IS NOT NULL")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    //own short-lived connection so the batch transaction cannot swallow other threads' writes on the shared one
+    @Override
+    public int replaceEncryptedKeys(List<StoredKey> expected, List<String> replacements) throws SQLException {
+        try (Connection conn = db.openConnection()) {
+            conn.setAutoCommit(false);
+            int replaced = 0;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE user_settings SET encrypted_key = ? "
+                            + "WHERE player_uuid = ? AND provider = ? AND encrypted_key = ?")) {
+                for (int i = 0; i < expected.size(); i++) {
+                    StoredKey key = expected.get(i);
+                    ps.setString(1, replacements.get(i));
+                    ps.setBytes(2, UuidBytes.toBytes(key.playerId()));
+                    ps.setString(3, key.provider());
+                    ps.setString(4, key.encryptedKey());
+                    replaced += ps.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            return replaced;
+        }
+    }
+
+    @Override
+    public boolean replaceServerKey(long id, String expected, String replacement) throws SQLException {
+        try (PreparedStatement ps = db.getConnection().prepareStatement(
+                "UPDATE server_keys SET encrypted_key = ? WHERE id = ? AND encrypted_key = ?")) {
+            ps.setString(1, replacement);
+            ps.setLong(2, id);
+            ps.setString(3, expected);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    //column is one of the fixed names above, never user input
+    private void upsertSetting(UUID playerId, AIProvider provider, String column, String value) throws SQLException {
+        Connection conn = db.getConnection();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO user_settings (player_uuid, provider, " + column + ", updated_at) "
+                        + "VALUES (?, ?, ?, strftime('%s', 'now')) "
+                        + "ON CONFLICT(player_uuid, provider) DO UPDATE SET "
+                        + column + " = excluded." + column + ", updated_at = excluded.updated_at")) {
+            ps.setBytes(1, UuidBytes.toBytes(playerId));
+            ps.setString(2, provider.id());
+            ps.setString(3, value);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.askai.storage;
+
+import java.util.UUID;
+
+//one encrypted key cell in user_settings, as seen by the seed rotation scan
+public record StoredKey(UUID playerId, String provider, String encryptedKey) {
+}
@@ -0,0 +1,114 @@
+package com.askai.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+
+//group commit for a remote database: writes that arrive while a flush is in flight
+//are sent together as one JDBC batch in one transaction instead of one round trip each
+final class UpsertBatcher implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final Logger logger;
+    private final int maxBatchSize;
+    private final LinkedBlockingQueue<Upsert> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    UpsertBatcher(ConnectionPool pool, Logger logger, int maxBatchSize) {
+        this.pool = pool;
+        this.logger = logger;
+        this.maxBatchSize = maxBatchSize;
+        this.flusher = Thread.ofPlatform().daemon().name("AskAI-storage-writer").start(this::run);
+    }
+
+    //blocks the calling (async) thread until the write is committed
+    void execute(String sql, Object... params) throws SQLException {
+        if (!running) throw new SQLException("Storage is shutting down");
+        Upsert upsert = new Upsert(sql, params, new CompletableFuture<>());
+        queue.add(upsert);
+        try {
+            upsert.done().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sqlException) throw sqlException;
+            throw new SQLException("Write failed", e.getCause());
+        }
+    }
+
+    private void run() {
+        List<Upsert> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Upsert first = queue.take();
+                batch.add(first);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    queue.drainTo(batch);
+                    if (batch.isEmpty()) break;
+                } else {
+                    continue;
+                }
+            }
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            flush(batch);
+            batch.clear();
+        }
+
+        //anything that slipped in after shutdown started must not leave its caller waiting forever
+        Upsert late;
+        while ((late = queue.poll()) != null) {
+            late.done().completeExceptionally(new SQLException("Storage is shutting down"));
+        }
+    }
+
+    private void flush(List<Upsert> batch) {
+        //statements with the same SQL share one PreparedStatement; arrival order is kept within each
+        Map<String, List<Upsert>> bySql = new LinkedHashMap<>();
+        for (Upsert upsert : batch) {
+            bySql.computeIfAbsent(upsert.sql(), k -> new ArrayList<>()).add(upsert);
+        }
+
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            Connection conn = lease.connection();
+            conn.setAutoCommit(false);
+            for (Map.Entry<String, List<Upsert>> entry : bySql.entrySet()) {
+                try (PreparedStatement ps = conn.prepareStatement(entry.getKey())) {
+                    for (Upsert upsert : entry.getValue()) {
+                        Object[] params = upsert.params();
+                        for (int i = 0; i < params.length; i++) {
+                            ps.setObject(i + 1, params[i]);
+                        }
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            conn.commit();
+            for (Upsert upsert : batch) upsert.done().complete(null);
+        } catch (SQLException | RuntimeException e) {
+            logger.warning("Failed to write " + batch.size() + " setting(s): " + e.getMessage());
+            for (Upsert upsert : batch) upsert.done().completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Upsert(String sql, Object[] params, CompletableFuture<Void> done) {
+    }
+}
@@ -0,0 +1,43 @@
+package com.askai.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//the original text-keyed layout. databases created before versioning already have these tables
+final class V1InitialSchema implements Migration {
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public String description() {
+        return "initial schema";
+    }
+
+    @Override
+    public void apply(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS user_settings (
+                        player_uuid   TEXT NOT NULL,
+                        provider      TEXT NOT NULL,
+                        setting_key   TEXT NOT NULL,
+                        setting_value TEXT NOT NULL,
+                        updated_at    INTEGER NOT NULL DEFAULT (strftime('%s', 'now')),
+                        PRIMARY KEY (player_uuid, provider, setting_key)
+                    )
+                    """);
+
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS user_active_provider (
+                        player_uuid TEXT PRIMARY KEY,
+                        provider    TEXT NOT NULL DEFAULT 'openai',
+                        updated_at  INTEGER NOT NULL DEFAULT (strftime('%s', 'now'))
+                    )
+                    """);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.askai.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+//moves the EAV text-keyed tables to one typed row per player/provider with 16-byte BLOB keys
+final class V2CompactSettings implements Migration {
+    //rows are copied in keyset-paged batches so memory stays flat regardless of table size
+    static final int BATCH_SIZE = 1000;
+
+    @Override
+    public int version() {
+        return 2;
+    }
+
+    @Override
+    public String description() {
+        return "typed columns and binary UUID keys";
+    }
+
+    @Override
+    public void apply(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE user_settings RENAME TO user_settings_v1");
+
+            stmt.execute("""
+                    CREATE TABLE players (
+                        player_uuid     BLOB PRIMARY KEY CHECK (length(player_uuid) = 16),
+                        active_provider TEXT NOT NULL DEFAULT 'openai',
+                        updated_at      INTEGER NOT NULL DEFAULT (strftime('%s', 'now'))
+                    ) WITHOUT ROWID
+                    """);
+
+            stmt.execute("""
+                    CREATE TABLE user_settings (
+                        player_uuid   BLOB NOT NULL CHECK (length(player_uuid) = 16),
+                        provider      TEXT NOT NULL,
+                        encrypted_key TEXT,
+                        model         TEXT,
+                        updated_at    INTEGER NOT NULL DEFAULT (strftime('%s', 'now')),
+                        PRIMARY KEY (player_uuid, provider)
+                    ) WITHOUT ROWID
+                    """);
+        }
+
+        copySettings(conn);
+        copyActiveProviders(conn);
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE user_settings_v1");
+            stmt.execute("DROP TABLE user_active_provider");
+        }
+    }
+
+    private void copySettings(Connection conn) throws SQLException {
+        //a player/provider pair can straddle two batches, so merge instead of overwriting
+        try (PreparedStatement select = conn.prepareStatement("""
+                SELECT player_uuid, provider, setting_key, setting_value, updated_at
+                FROM user_settings_v1
+                WHERE (player_uuid, provider, setting_key) > (?, ?, ?)
+                ORDER BY player_uuid, provider, setting_key
+                LIMIT ?
+                """);
+             PreparedStatement insert = conn.prepareStatement("""
+                     INSERT INTO user_settings (player_uuid, provider, encrypted_key, model, updated_at)
+                     VALUES (?, ?, ?, ?, ?)
+                     ON CONFLICT(player_uuid, provider) DO UPDATE SET
+                         encrypted_key = COALESCE(excluded.encrypted_key, encrypted_key),
+                         model         = COALESCE(excluded.model, model),
+                         updated_at    = MAX(updated_at, excluded.updated_at)
+                     """)) {
+            String lastUuid = "", lastProvider = "", lastKey = "";
+            while (true) {
+                select.setString(1, lastUuid);
+                select.setString(2, lastProvider);
+                select.setString(3, lastKey);
+                select.setInt(4, BATCH_SIZE);
+
+                int rows = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastUuid = rs.getString("player_uuid");
+                        lastProvider = rs.getString("provider");
+                        lastKey = rs.getString("setting_key");
+                        rows++;
+
+                        byte[] uuid = parseUuid(lastUuid);
+                        if (uuid == null) continue;
+
+                        String value = rs.getString("setting_value");
+                        insert.setBytes(1, uuid);
+                        insert.setString(2, lastProvider);
+                        switch (lastKey) {
+                            case "encrypted_api_key" -> {
+                                insert.setString(3, value);
+                                insert.setString(4, null);
+                            }
+                            case "model" -> {
+                                insert.setString(3, null);
+                                insert.setString(4, value);
+                            }
+                            default -> {
+                                continue;
+                            }
+                        }
+                        insert.setLong(5, rs.getLong("updated_at"));
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+                if (rows < BATCH_SIZE) break;
+            }
+        }
+    }
+
+    private void copyActiveProviders(Connection conn) throws SQLException {
+        try (PreparedStatement select = conn.prepareStatement("""
+                SELECT player_uuid, provider, updated_at
+                FROM user_active_provider
+                WHERE player_uuid > ?
+                ORDER BY player_uuid
+                LIMIT ?
+                """);
+             PreparedStatement insert = conn.prepareStatement("""
+                     INSERT OR REPLACE INTO players (player_uuid, active_provider, updated_at)
+                     VALUES (?, ?, ?)
+                     """)) {
+            String lastUuid = "";
+            while (true) {
+                select.setString(1, lastUuid);
+                select.setInt(2, BATCH_SIZE);
+
+                int rows = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastUuid = rs.getString("player_uuid");
+                        rows++;
+
+                        byte[] uuid = parseUuid(lastUuid);
+                        if (uuid == null) continue;
+
+                        insert.setBytes(1, uuid);
+                        insert.setString(2, rs.getString("provider"));
+                        insert.setLong(3, rs.getLong("updated_at"));
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+                if (rows < BATCH_SIZE) break;
+            }
+        }
+    }
+
+    //malformed legacy rows are dropped rather than failing the whole migration
+    private static byte[] parseUuid(String text) {
+        try {
+            return UuidBytes.toBytes(UUID.fromString(text));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.askai.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//additional server-mode API keys, several per provider
+final class V3ServerKeyPool implements Migration {
+
+    @Override
+    public int version() {
+        return 3;
+    }
+
+    @Override
+    public String description() {
+        return "server key pool";
+    }
+
+    @Override
+    public void apply(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE server_keys (
+                        id            INTEGER PRIMARY KEY AUTOINCREMENT,
+                        provider      TEXT NOT NULL,
+                        encrypted_key TEXT NOT NULL,
+                        added_at      INTEGER NOT NULL DEFAULT (strftime('%s', 'now'))
+                    )
+                    """);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.askai.tokens;
+
+//character-class ratio estimator for tokenizers that are not published (Claude) or are
+//SentencePiece-based (Gemini). ratios are characters per token for each class
+final class CalibratedTokenEstimator implements TokenEstimator {
+    private final double lettersPerToken;
+    private final double digitsPerToken;
+    private final double symbolsPerToken;
+    private final double nonLatinPerToken;
+    private final double cjkPerToken;
+    private final int messageOverhead;
+
+    CalibratedTokenEstimator(double lettersPerToken, double digitsPerToken, double symbolsPerToken,
+                             double nonLatinPerToken, double cjkPerToken, int messageOverhead) {
+        this.lettersPerToken = lettersPerToken;
+        this.digitsPerToken = digitsPerToken;
+        this.symbolsPerToken = symbolsPerToken;
+        this.nonLatinPerToken = nonLatinPerToken;
+        this.cjkPerToken = cjkPerToken;
+        this.messageOverhead = messageOverhead;
+    }
+
+    @Override
+    public int estimate(CharSequence text) {
+        int letters = 0, digits = 0, symbols = 0, nonLatin = 0, cjk = 0, newlines = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                if ((c | 0x20) >= 'a' && (c | 0x20) <= 'z') letters++;
+                else if (c >= '0' && c <= '9') digits++;
+                else if (c == '\n') newlines++;
+                else if (c != ' ' && c != '\t' && c != '\r') symbols++;
+            } else if (CharClass.isCjk(c)) {
+                cjk++;
+            } else if (Character.isLetterOrDigit(c)) {
+                nonLatin++;
+            } else if (!Character.isWhitespace(c)) {
+                symbols++;
+            }
+        }
+        double tokens = letters / lettersPerToken
+                + digits / digitsPerToken
+                + symbols / symbolsPerToken
+                + nonLatin / nonLatinPerToken
+                + cjk / cjkPerToken
+                + newlines;
+        return (int) Math.ceil(tokens);
+    }
+
+    @Override
+    public int perMessageOverhead() {
+        return messageOverhead;
+    }
+}
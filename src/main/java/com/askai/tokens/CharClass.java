@@ -0,0 +1,16 @@
+package com.askai.tokens;
+
+final class CharClass {
+
+    private CharClass() {
+    }
+
+    //CJK ideographs, kana and hangul: roughly one token per character on every tokenizer
+    static boolean isCjk(char c) {
+        return (c >= 0x3040 && c <= 0x30FF)
+                || (c >= 0x3400 && c <= 0x4DBF)
+                || (c >= 0x4E00 && c <= 0x9FFF)
+                || (c >= 0xAC00 && c <= 0xD7AF)
+                || (c >= 0xF900 && c <= 0xFAFF);
+    }
+}
@@ -0,0 +1,38 @@
+package com.askai.tokens;
+
+//scales a base estimate by a running correction learned from the usage counts providers report,
+//so the estimate drifts toward the real tokenizer on the server's own traffic
+final class CorrectingTokenEstimator implements TokenEstimator {
+    private static final double ALPHA = 0.05;
+    private static final double MIN_FACTOR = 0.5;
+    private static final double MAX_FACTOR = 2.0;
+
+    private final TokenEstimator base;
+    private volatile double factor = 1.0;
+
+    CorrectingTokenEstimator(TokenEstimator base) {
+        this.base = base;
+    }
+
+    @Override
+    public int estimate(CharSequence text) {
+        return (int) Math.ceil(base.estimate(text) * factor);
+    }
+
+    @Override
+    public int perMessageOverhead() {
+        return base.perMessageOverhead();
+    }
+
+    //estimated is what this estimator predicted (already corrected), actual is the provider's count
+    synchronized void observe(int estimated, int actual) {
+        if (estimated <= 0 || actual <= 0) return;
+        double ratio = actual / (double) estimated;
+        double next = factor * (1 - ALPHA + ALPHA * ratio);
+        factor = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, next));
+    }
+
+    double factor() {
+        return factor;
+    }
+}
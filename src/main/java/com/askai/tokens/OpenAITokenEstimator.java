@@ -0,0 +1,65 @@
+package com.askai.tokens;
+
+//approximates OpenAI's cl100k/o200k BPE without the vocabulary. it walks the text the way the
+//tokenizer's pre-split regex does (words with their leading space, digit groups of three,
+//punctuation runs, whitespace runs) and charges each piece what BPE typically splits it into
+final class OpenAITokenEstimator implements TokenEstimator {
+
+    @Override
+    public int estimate(CharSequence text) {
+        int tokens = 0;
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+
+            //a single space is merged into the following word or punctuation piece
+            if (c == ' ' && i + 1 < n && !Character.isWhitespace(text.charAt(i + 1))) {
+                i++;
+                c = text.charAt(i);
+            }
+
+            if (Character.isLetter(c)) {
+                int ascii = 0;
+                int other = 0;
+                int cjk = 0;
+                while (i < n && Character.isLetter(c = text.charAt(i))) {
+                    if (c < 128) ascii++;
+                    else if (CharClass.isCjk(c)) cjk++;
+                    else other++;
+                    i++;
+                }
+                //common English words up to ~8 letters are one token; longer ones split into sub-words
+                if (ascii > 0) tokens += 1 + (ascii - 1) / 8;
+                tokens += (other + 1) / 2;
+                tokens += cjk;
+            } else if (Character.isDigit(c)) {
+                int digits = 0;
+                while (i < n && Character.isDigit(text.charAt(i))) {
+                    digits++;
+                    i++;
+                }
+                tokens += (digits + 2) / 3;
+            } else if (Character.isWhitespace(c)) {
+                //runs of spaces, tabs or newlines mostly encode as one token
+                while (i < n && Character.isWhitespace(text.charAt(i))) i++;
+                tokens++;
+            } else {
+                int symbols = 0;
+                while (i < n && !Character.isLetterOrDigit(c = text.charAt(i)) && !Character.isWhitespace(c)) {
+                    symbols++;
+                    i++;
+                    //surrogate pairs (emoji) are a single code point but usually 2-3 tokens
+                    if (Character.isHighSurrogate(c)) symbols++;
+                }
+                tokens += (symbols + 1) / 2;
+            }
+        }
+        return tokens;
+    }
+
+    @Override
+    public int perMessageOverhead() {
+        return 4;
+    }
+}
@@ -0,0 +1,25 @@
+package com.askai.tokens;
+
+import com.askai.model.ChatMessage;
+
+import java.util.List;
+
+//offline token count estimate for one provider family. implementations are allocation-free single passes
+//so they can run on the command thread
+public interface TokenEstimator {
+    int estimate(CharSequence text);
+
+    //chat framing tokens added per message (role markers, separators)
+    int perMessageOverhead();
+
+    default int estimatePrompt(String systemPrompt, List<ChatMessage> messages) {
+        int total = 0;
+        if (systemPrompt != null && !systemPrompt.isBlank()) {
+            total += estimate(systemPrompt) + perMessageOverhead();
+        }
+        for (ChatMessage message : messages) {
+            total += estimate(message.content()) + perMessageOverhead();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,38 @@
+package com.askai.tokens;
+
+import com.askai.model.AIProvider;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class TokenEstimators {
+    //one self-correcting estimator per provider, so a local model's tokenizer learns its own ratio
+    //instead of skewing the hosted API that speaks the same protocol
+    private static final Map<AIProvider, CorrectingTokenEstimator> ESTIMATORS = new ConcurrentHashMap<>();
+
+    private TokenEstimators() {
+    }
+
+    public static TokenEstimator forProvider(AIProvider provider) {
+        return estimator(provider);
+    }
+
+    //feed back the provider-reported prompt size so later estimates self-correct
+    public static void observe(AIProvider provider, int estimatedPromptTokens, int actualPromptTokens) {
+        estimator(provider).observe(estimatedPromptTokens, actualPromptTokens);
+    }
+
+    private static CorrectingTokenEstimator estimator(AIProvider provider) {
+        return ESTIMATORS.computeIfAbsent(provider, p -> new CorrectingTokenEstimator(base(p.protocol())));
+    }
+
+    private static TokenEstimator base(AIProvider.Protocol protocol) {
+        return switch (protocol) {
+            case OPENAI -> new OpenAITokenEstimator();
+            //Claude's tokenizer runs ~15% above cl100k on English and splits digits finely
+            case ANTHROPIC -> new CalibratedTokenEstimator(3.5, 1.5, 1.4, 2.0, 1.0, 5);
+            //Gemini's SentencePiece vocabulary is large; digits are always single tokens
+            case GEMINI -> new CalibratedTokenEstimator(4.3, 1.0, 1.6, 2.6, 1.3, 3);
+        };
+    }
+}
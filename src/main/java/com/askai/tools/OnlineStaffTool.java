@@ -0,0 +1,44 @@
+package com.askai.tools;
+
+import com.askai.model.ToolDefinition;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+//staff are players with the configured permission (askai.staff by default)
+final class OnlineStaffTool implements Tool {
+    private static final ToolDefinition DEFINITION = new ToolDefinition("get_online_staff",
+            "Names of server staff members who are online right now.", List.of());
+
+    private final String permission;
+
+    OnlineStaffTool(String permission) {
+        this.permission = permission;
+    }
+
+    @Override
+    public ToolDefinition definition() {
+        return DEFINITION;
+    }
+
+    //permission checks read player state, so this runs with the world queries
+    @Override
+    public boolean touchesWorld() {
+        return true;
+    }
+
+    @Override
+    public String invoke(Player player, JsonObject arguments) {
+        JsonArray staff = new JsonArray();
+        for (Player online : Bukkit.getOnlinePlayers()) {
+            if (online.hasPermission(permission)) staff.add(online.getName());
+        }
+        JsonObject result = new JsonObject();
+        result.add("staff", staff);
+        result.addProperty("count", staff.size());
+        return result.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.askai.tools;
+
+import com.askai.model.ToolDefinition;
+import com.google.gson.JsonObject;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.Locale;
+
+final class PlayerLocationTool implements Tool {
+    private static final ToolDefinition DEFINITION = new ToolDefinition("get_player_location",
+            "Current coordinates, world, dimension and biome of the player asking the question.", List.of());
+
+    @Override
+    public ToolDefinition definition() {
+        return DEFINITION;
+    }
+
+    @Override
+    public boolean touchesWorld() {
+        return true;
+    }
+
+    @Override
+    public String invoke(Player player, JsonObject arguments) {
+        Location location = player.getLocation();
+        JsonObject result = new JsonObject();
+        result.addProperty("x", location.getBlockX());
+        result.addProperty("y", location.getBlockY());
+        result.addProperty("z", location.getBlockZ());
+        result.addProperty("world", location.getWorld().getName());
+        result.addProperty("dimension", location.getWorld().getEnvironment().name().toLowerCase(Locale.ROOT));
+        result.addProperty("biome", location.getBlock().getBiome().getKey().getKey());
+        return result.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.askai.tools;
+
+import com.askai.model.ToolDefinition;
+import com.google.gson.JsonObject;
+import org.bukkit.entity.Player;
+
+//a built-in function the model can call. results are short JSON objects
+public interface Tool {
+    ToolDefinition definition();
+
+    //true if invoke reads world or entity state and must run on the thread that owns the player
+    boolean touchesWorld();
+
+    String invoke(Player player, JsonObject arguments);
+}
@@ -0,0 +1,124 @@
+package com.askai.tools;
+
+import com.askai.model.ToolCall;
+import com.askai.scheduler.PluginScheduler;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//runs tool calls for the agent loop. world queries are queued and drained once per tick on the main
+//thread under a time budget (on Folia each hops to the player's region), and every result is cached
+//per player for a few seconds so repeated questions do not touch the world again
+public final class ToolExecutor {
+    private final PluginScheduler scheduler;
+    private final ToolRegistry registry;
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<CacheKey, Cached> cache = new ConcurrentHashMap<>();
+    private volatile long maxNanosPerTick;
+    private volatile long cacheMillis;
+    //drain thread only
+    private long nextSweepMillis;
+
+    private record Pending(Player player, Tool tool, JsonObject arguments, CompletableFuture<String> result) {
+    }
+
+    private record CacheKey(UUID playerId, String tool, String arguments) {
+    }
+
+    private record Cached(String value, long expiresAt) {
+    }
+
+    public ToolExecutor(PluginScheduler scheduler, ToolRegistry registry, double maxMillisPerTick, int cacheSeconds) {
+        this.scheduler = scheduler;
+        this.registry = registry;
+        configure(maxMillisPerTick, cacheSeconds);
+    }
+
+    public void configure(double maxMillisPerTick, int cacheSeconds) {
+        this.maxNanosPerTick = (long) (Math.max(0.05, maxMillisPerTick) * 1_000_000);
+        this.cacheMillis = Math.max(0, cacheSeconds) * 1000L;
+    }
+
+    //any thread. failures come back as an {"error": ...} result for the model, never as an exception
+    public CompletableFuture<String> invoke(Player player, ToolCall call) {
+        Tool tool = registry.get(call.name());
+        if (tool == null) return CompletableFuture.completedFuture(error("unknown tool " + call.name()));
+
+        CacheKey key = new CacheKey(player.getUniqueId(), call.name(), call.arguments() == null ? "" : call.arguments());
+        Cached hit = cache.get(key);
+        if (hit != null) {
+            if (hit.expiresAt() > System.currentTimeMillis()) return CompletableFuture.completedFuture(hit.value());
+            cache.remove(key, hit);
+        }
+
+        JsonObject arguments = parseArguments(call.arguments());
+        CompletableFuture<String> result;
+        if (tool.touchesWorld()) {
+            result = new CompletableFuture<>();
+            queue.add(new Pending(player, tool, arguments, result));
+        } else {
+            result = CompletableFuture.completedFuture(run(tool, player, arguments));
+        }
+        return result.thenApply(value -> {
+            if (cacheMillis > 0) cache.put(key, new Cached(value, System.currentTimeMillis() + cacheMillis));
+            return value;
+        });
+    }
+
+    //main thread (global region on Folia) only
+    public void drain() {
+        sweepExpired();
+        long start = System.nanoTime();
+        Pending next;
+        while (System.nanoTime() - start < maxNanosPerTick && (next = queue.poll()) != null) {
+            Pending pending = next;
+            scheduler.runForPlayer(pending.player(),
+                    () -> pending.result().complete(run(pending.tool(), pending.player(), pending.arguments())),
+                    () -> pending.result().complete(error("player is offline")));
+        }
+    }
+
+    //arguments come from the model, so keys that are never asked for again would otherwise pile up until the
+    //player quits. once a second is plenty for entries that live a few seconds
+    private void sweepExpired() {
+        long now = System.currentTimeMillis();
+        if (now < nextSweepMillis || cache.isEmpty()) return;
+        nextSweepMillis = now + 1000;
+        cache.values().removeIf(cached -> cached.expiresAt() <= now);
+    }
+
+    public void forget(UUID playerId) {
+        cache.keySet().removeIf(key -> key.playerId().equals(playerId));
+    }
+
+    private static String run(Tool tool, Player player, JsonObject arguments) {
+        try {
+            return tool.invoke(player, arguments);
+        } catch (RuntimeException e) {
+            return error(tool.definition().name() + " failed: " + e.getMessage());
+        }
+    }
+
+    private static JsonObject parseArguments(String json) {
+        if (json == null || json.isBlank()) return new JsonObject();
+        try {
+            JsonElement element = JsonParser.parseString(json);
+            return element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+        } catch (JsonParseException e) {
+            return new JsonObject();
+        }
+    }
+
+    static String error(String message) {
+        JsonObject result = new JsonObject();
+        result.addProperty("error", message);
+        return result.toString();
+    }
+}
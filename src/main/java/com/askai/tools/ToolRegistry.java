@@ -0,0 +1,42 @@
+package com.askai.tools;
+
+import com.askai.model.ToolDefinition;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class ToolRegistry {
+    private final Map<String, Tool> tools = new LinkedHashMap<>();
+
+    public static ToolRegistry builtIn(String staffPermission) {
+        ToolRegistry registry = new ToolRegistry();
+        registry.register(new PlayerLocationTool());
+        registry.register(new WorldTimeTool());
+        registry.register(new OnlineStaffTool(staffPermission));
+        return registry;
+    }
+
+    public void register(Tool tool) {
+        tools.put(tool.definition().name(), tool);
+    }
+
+    public Tool get(String name) {
+        return tools.get(name);
+    }
+
+    public Set<String> names() {
+        return tools.keySet();
+    }
+
+    //definitions to offer the model, in registration order
+    public List<ToolDefinition> definitions(Set<String> enabled) {
+        List<ToolDefinition> definitions = new ArrayList<>();
+        for (Tool tool : tools.values()) {
+            if (enabled.contains(tool.definition().name())) definitions.add(tool.definition());
+        }
+        return definitions;
+    }
+}
@@ -0,0 +1,37 @@
+package com.askai.tools;
+
+import com.askai.model.ToolDefinition;
+import com.google.gson.JsonObject;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+final class WorldTimeTool implements Tool {
+    private static final ToolDefinition DEFINITION = new ToolDefinition("get_world_time",
+            "In-game time of day, day number and weather in the player's world.", List.of());
+
+    @Override
+    public ToolDefinition definition() {
+        return DEFINITION;
+    }
+
+    @Override
+    public boolean touchesWorld() {
+        return true;
+    }
+
+    @Override
+    public String invoke(Player player, JsonObject arguments) {
+        World world = player.getWorld();
+        long ticks = world.getTime();
+        //tick 0 is 06:00
+        long minutesOfDay = ((ticks + 6000) % 24000) * 60 / 1000;
+        JsonObject result = new JsonObject();
+        result.addProperty("time", String.format("%02d:%02d", minutesOfDay / 60, minutesOfDay % 60));
+        result.addProperty("phase", ticks < 12000 ? "day" : ticks < 13800 ? "sunset" : ticks < 22200 ? "night" : "sunrise");
+        result.addProperty("day", world.getFullTime() / 24000 + 1);
+        result.addProperty("weather", world.isThundering() ? "thunderstorm" : world.hasStorm() ? "rain" : "clear");
+        return result.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package com.askai.transcript;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+//offline query tool for transcript segments. needs nothing but the plugin jar:
+//  java -cp AskAI.jar com.askai.transcript.TranscriptReader plugins/AskAI/transcripts --player Steve --since 2025-01-01
+public final class TranscriptReader {
+    private static final DateTimeFormatter OUTPUT_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private TranscriptReader() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args[0].startsWith("-")) {
+            usage(System.err);
+            System.exit(2);
+            return;
+        }
+
+        Path directory = Path.of(args[0]);
+        String player = null;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        int limit = Integer.MAX_VALUE;
+        boolean summary = false;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--player" -> player = args[++i].toLowerCase(Locale.ROOT);
+                    case "--since" -> since = parseTime(args[++i]);
+                    case "--until" -> until = parseTime(args[++i]);
+                    case "--limit" -> limit = Integer.parseInt(args[++i]);
+                    case "--summary" -> summary = true;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | DateTimeParseException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            usage(System.err);
+            System.exit(2);
+            return;
+        }
+
+        int matched = 0;
+        long latencyTotal = 0;
+        long promptTokens = 0;
+        long completionTokens = 0;
+        int errors = 0;
+        for (Path segment : segments(directory)) {
+            try (BufferedReader reader = open(segment)) {
+                String line;
+                while ((line = reader.readLine()) != null && matched < limit) {
+                    TranscriptRecord record = TranscriptRecord.decode(line);
+                    if (record == null || record.timestamp() < since || record.timestamp() >= until) continue;
+                    if (player != null && !record.playerName().toLowerCase(Locale.ROOT).equals(player)
+                            && !record.playerId().toString().equals(player)) continue;
+
+                    matched++;
+                    latencyTotal += record.latencyMillis();
+                    promptTokens += record.promptTokens();
+                    completionTokens += record.completionTokens();
+                    if (record.outcome() == TranscriptRecord.Outcome.ERROR) errors++;
+                    if (!summary) print(System.out, record);
+                }
+            } catch (IOException e) {
+                //a segment still being written or cut short by a crash; keep what was readable
+                System.err.println("Skipping rest of " + segment.getFileName() + ": " + e.getMessage());
+            }
+        }
+
+        if (summary) {
+            System.out.println("Exchanges: " + matched + " (" + errors + " failed)");
+            System.out.println("Tokens: " + promptTokens + " prompt, " + completionTokens + " completion");
+            System.out.println("Average latency: " + (matched == 0 ? 0 : latencyTotal / matched) + " ms");
+        }
+    }
+
+    //segment names sort chronologically, so the output is in time order
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, TranscriptWriter.SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TranscriptWriter.OPEN_SUFFIX) || name.endsWith(TranscriptWriter.CLOSED_SUFFIX)) {
+                    segments.add(file);
+                }
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private static BufferedReader open(Path segment) throws IOException {
+        InputStream in = Files.newInputStream(segment);
+        if (segment.getFileName().toString().endsWith(TranscriptWriter.CLOSED_SUFFIX)) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static void print(PrintStream out, TranscriptRecord record) {
+        String time = LocalDateTime.ofInstant(Instant.ofEpochMilli(record.timestamp()), ZoneId.systemDefault())
+                .format(OUTPUT_TIME);
+        out.println("[" + time + "] " + record.playerName() + " -> " + record.provider() + "/" + record.model()
+                + " " + record.outcome() + " " + record.latencyMillis() + "ms "
+                + record.promptTokens() + "+" + record.completionTokens() + " tokens");
+        out.println("  Q: " + record.prompt().replace("\n", "\n     "));
+        out.println("  A: " + record.response().replace("\n", "\n     "));
+    }
+
+    //accepts 2025-01-31 or 2025-01-31T18:30, in the local time zone
+    private static long parseTime(String value) {
+        LocalDateTime time = value.length() <= 10
+                ? LocalDate.parse(value).atStartOfDay()
+                : LocalDateTime.parse(value);
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: java -cp AskAI.jar com.askai.transcript.TranscriptReader <transcripts-dir>");
+        out.println("         [--player <name|uuid>] [--since <yyyy-MM-dd[THH:mm]>] [--until <yyyy-MM-dd[THH:mm]>]");
+        out.println("         [--limit <n>] [--summary]");
+    }
+}
@@ -0,0 +1,99 @@
+package com.askai.transcript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+//one question/answer exchange. stored as a single tab separated line so segments can be
+//appended without any framing and read back (or grepped) without the plugin on the classpath
+public record TranscriptRecord(long timestamp, UUID playerId, String playerName, String provider, String model,
+                               Outcome outcome, long latencyMillis, int promptTokens, int completionTokens,
+                               String prompt, String response) {
+
+    //BLOCKED records the prompt-filter rule as the response
+    public enum Outcome { OK, FAQ, ERROR, BLOCKED, CACHED }
+
+    private static final String FORMAT_VERSION = "1";
+    private static final int FIELD_COUNT = 12;
+
+    public String encode() {
+        StringBuilder line = new StringBuilder(64 + prompt.length() + response.length());
+        line.append(FORMAT_VERSION).append('\t')
+                .append(timestamp).append('\t')
+                .append(playerId).append('\t');
+        escape(line, playerName).append('\t');
+        escape(line, provider).append('\t');
+        escape(line, model).append('\t');
+        line.append(outcome.name()).append('\t')
+                .append(latencyMillis).append('\t')
+                .append(promptTokens).append('\t')
+                .append(completionTokens).append('\t');
+        escape(line, prompt).append('\t');
+        escape(line, response);
+        return line.toString();
+    }
+
+    //returns null for lines this version cannot read, e.g. a torn last line after a crash
+    public static TranscriptRecord decode(String line) {
+        List<String> fields = new ArrayList<>(FIELD_COUNT);
+        int start = 0;
+        for (int i = 0; i <= line.length(); i++) {
+            if (i == line.length() || line.charAt(i) == '\t') {
+                fields.add(line.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (fields.size() != FIELD_COUNT || !FORMAT_VERSION.equals(fields.get(0))) return null;
+        try {
+            return new TranscriptRecord(
+                    Long.parseLong(fields.get(1)),
+                    UUID.fromString(fields.get(2)),
+                    unescape(fields.get(3)),
+                    unescape(fields.get(4)),
+                    unescape(fields.get(5)),
+                    Outcome.valueOf(fields.get(6)),
+                    Long.parseLong(fields.get(7)),
+                    Integer.parseInt(fields.get(8)),
+                    Integer.parseInt(fields.get(9)),
+                    unescape(fields.get(10)),
+                    unescape(fields.get(11)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static StringBuilder escape(StringBuilder out, String value) {
+        if (value == null) return out;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '\t' -> out.append("\\t");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                default -> out.append(c);
+            }
+        }
+        return out;
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                out.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            switch (next) {
+                case 't' -> out.append('\t');
+                case 'n' -> out.append('\n');
+                case 'r' -> out.append('\r');
+                default -> out.append(next);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,225 @@
+package com.askai.transcript;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+//append-only transcript segments in the data folder. request threads only offer() to a bounded
+//queue and never wait on disk; a single writer thread appends, rotates and gzips. when the queue
+//is full the record is dropped and counted rather than slowing down a reply
+public final class TranscriptWriter implements AutoCloseable {
+    static final String SEGMENT_PREFIX = "transcript-";
+    static final String OPEN_SUFFIX = ".log";
+    static final String CLOSED_SUFFIX = ".log.gz";
+    private static final DateTimeFormatter SEGMENT_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final Path directory;
+    private final Logger logger;
+    private final long maxSegmentBytes;
+    private final long maxSegmentAgeMillis;
+    private final long retentionMillis;
+    private final ArrayBlockingQueue<TranscriptRecord> queue;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    //writer thread only
+    private BufferedWriter out;
+    private Path segment;
+    private long segmentBytes;
+    private long segmentOpenedAt;
+
+    public record Stats(int queued, long written, long dropped) {
+    }
+
+    public TranscriptWriter(Path directory, Logger logger, int queueCapacity, long maxSegmentBytes,
+                            long maxSegmentAgeMillis, long retentionMillis) throws IOException {
+        this.directory = directory;
+        this.logger = logger;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAgeMillis = maxSegmentAgeMillis;
+        this.retentionMillis = retentionMillis;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        Files.createDirectories(directory);
+        this.writerThread = Thread.ofPlatform().daemon().name("AskAI-transcript-writer").start(this::run);
+    }
+
+    //never blocks
+    public void append(TranscriptRecord record) {
+        if (!running || !queue.offer(record)) dropped.increment();
+    }
+
+    public Stats stats() {
+        return new Stats(queue.size(), written.sum(), dropped.sum());
+    }
+
+    private void run() {
+        //segments left open by a crash or an older run are finished first
+        compressLeftovers();
+        pruneExpired();
+
+        List<TranscriptRecord> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                TranscriptRecord first = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                running = false;
+            }
+
+            try {
+                for (TranscriptRecord record : batch) {
+                    write(record);
+                }
+                if (out != null) {
+                    out.flush();
+                    if (System.currentTimeMillis() - segmentOpenedAt >= maxSegmentAgeMillis) rotate();
+                }
+            } catch (IOException e) {
+                dropped.add(batch.size());
+                logger.warning("Failed to write transcript: " + e.getMessage());
+                closeQuietly();
+            }
+            batch.clear();
+        }
+
+        try {
+            if (out != null) rotate();
+        } catch (IOException e) {
+            logger.warning("Failed to close transcript segment: " + e.getMessage());
+        }
+    }
+
+    private void write(TranscriptRecord record) throws IOException {
+        if (out == null) open();
+        String line = record.encode();
+        out.write(line);
+        out.write('\n');
+        //close enough for rotation; exact byte counts would need encoding every line twice
+        segmentBytes += line.length() + 1;
+        written.increment();
+        if (segmentBytes >= maxSegmentBytes) rotate();
+    }
+
+    private void open() throws IOException {
+        //names sort chronologically; two rotations within a millisecond take the next free one
+        long stamp = System.currentTimeMillis();
+        Path candidate;
+        while (Files.exists(candidate = directory.resolve(segmentName(stamp))) || Files.exists(gzipped(candidate))) {
+            stamp++;
+        }
+        segment = candidate;
+        out = Files.newBufferedWriter(segment, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        segmentBytes = 0;
+        segmentOpenedAt = System.currentTimeMillis();
+    }
+
+    private void rotate() throws IOException {
+        Path finished = segment;
+        out.close();
+        out = null;
+        segment = null;
+        compress(finished);
+        pruneExpired();
+    }
+
+    private void compress(Path file) throws IOException {
+        Path target = gzipped(file);
+        Path partial = target.resolveSibling(target.getFileName() + ".tmp");
+        try (InputStream in = Files.newInputStream(file);
+             OutputStream gz = new GZIPOutputStream(Files.newOutputStream(partial), 64 * 1024)) {
+            in.transferTo(gz);
+        }
+        Files.move(partial, target);
+        Files.delete(file);
+    }
+
+    //a crash between the move and the delete in compress leaves the .gz complete next to its .log, which is
+    //then only deleted. one segment that fails does not hold up the rest
+    private void compressLeftovers() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + OPEN_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    if (Files.exists(gzipped(file))) {
+                        Files.delete(file);
+                    } else {
+                        compress(file);
+                    }
+                } catch (IOException e) {
+                    logger.warning("Failed to compress transcript segment " + file.getFileName() + ": "
+                            + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to compress old transcript segments: " + e.getMessage());
+        }
+    }
+
+    private void pruneExpired() {
+        if (retentionMillis <= 0) return;
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + CLOSED_SUFFIX)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff) Files.delete(file);
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to prune transcript segments: " + e.getMessage());
+        }
+    }
+
+    private static String segmentName(long millis) {
+        return SEGMENT_PREFIX + LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault())
+                .format(SEGMENT_NAME) + OPEN_SUFFIX;
+    }
+
+    private static Path gzipped(Path file) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.length() - OPEN_SUFFIX.length()) + CLOSED_SUFFIX);
+    }
+
+    private void closeQuietly() {
+        try {
+            if (out != null) out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+        segment = null;
+    }
+
+    @Override
+    public void close() {
+        //no interrupt: it would close the segment's channel mid-write. the poll timeout bounds the wait
+        running = false;
+        try {
+            writerThread.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
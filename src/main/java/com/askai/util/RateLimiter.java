@@ -1,35 +1,19 @@
 package com.askai.util;
 
-import java.util.Deque;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 
-public final class RateLimiter {
-    private final int maxRequests;
-    private final long windowMillis;
-    private final ConcurrentHashMap<UUID, Deque<Long>> requests = new ConcurrentHashMap<>();
+public interface RateLimiter {
+    //true if the request may go ahead. may be called on the main thread
+    boolean tryAcquire(UUID playerId);
 
-    public RateLimiter(int maxRequests, int windowSeconds) {
-        this.maxRequests = maxRequests;
-        this.windowMillis = windowSeconds * 1000L;
-    }
+    //the player left this server
+    void cleanup(UUID playerId);
 
-    public boolean tryAcquire(UUID playerId) {
-        long now = System.currentTimeMillis();
-        Deque<Long> timestamps = requests.computeIfAbsent(playerId, k -> new ConcurrentLinkedDeque<>());
-        // Expire old entries
-        while (!timestamps.isEmpty() && timestamps.peekFirst() < now - windowMillis) {
-            timestamps.pollFirst();
-        }
-        if (timestamps.size() >= maxRequests) {
-            return false;
-        }
-        timestamps.addLast(now);
-        return true;
+    //the player joined this server. called off the main thread
+    default void prefetch(UUID playerId) {
     }
 
-    public void cleanup(UUID playerId) {
-        requests.remove(playerId);
+    //a reload is replacing this limiter
+    default void close() {
     }
 }
@@ -0,0 +1,38 @@
+package com.askai.util;
+
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+//per-JVM limit: at most maxRequests in any window
+public final class SlidingWindowRateLimiter implements RateLimiter {
+    private final int maxRequests;
+    private final long windowMillis;
+    private final ConcurrentHashMap<UUID, Deque<Long>> requests = new ConcurrentHashMap<>();
+
+    public SlidingWindowRateLimiter(int maxRequests, int windowSeconds) {
+        this.maxRequests = maxRequests;
+        this.windowMillis = windowSeconds * 1000L;
+    }
+
+    @Override
+    public boolean tryAcquire(UUID playerId) {
+        long now = System.currentTimeMillis();
+        Deque<Long> timestamps = requests.computeIfAbsent(playerId, k -> new ConcurrentLinkedDeque<>());
+        // Expire old entries
+        while (!timestamps.isEmpty() && timestamps.peekFirst() < now - windowMillis) {
+            timestamps.pollFirst();
+        }
+        if (timestamps.size() >= maxRequests) {
+            return false;
+        }
+        timestamps.addLast(now);
+        return true;
+    }
+
+    @Override
+    public void cleanup(UUID playerId) {
+        requests.remove(playerId);
+    }
+}
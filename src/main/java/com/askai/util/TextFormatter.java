@@ -1,12 +1,33 @@
 package com.askai.util;
 
+import com.askai.api.CallerUsage;
+import com.askai.crypto.KeyRotationJob;
+import com.askai.delivery.DeliveryQueue;
+import com.askai.keypool.KeyPool;
+import com.askai.knowledge.KnowledgeBase;
+import com.askai.knowledge.Passage;
+import com.askai.load.AdmissionController;
 import com.askai.model.AIProvider;
 import com.askai.model.AIResponse;
 import com.askai.model.UserSettings;
+import com.askai.pipeline.RequestHedger;
+import com.askai.pipeline.SimilarityCache;
+import com.askai.routing.ModelRouter;
+import com.askai.routing.RoutingDecision;
+import com.askai.storage.SqliteMaintenance;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.TextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 public final class TextFormatter {
 
     private TextFormatter() {
@@ -19,6 +40,218 @@ public final class TextFormatter {
                         .decoration(TextDecoration.BOLD, false));
     }
 
+    //one answer of /chat compare, headed by what it cost
+    public static Component formatComparedAnswer(AIProvider provider, String model, AIResponse response,
+                                                 long latencyMillis) {
+        return Component.text("[" + provider.displayName() + "] ").color(providerColor(provider))
+                .decoration(TextDecoration.BOLD, true)
+                .append(Component.text(model + " | " + latencyMillis + " ms | " + response.promptTokens() + " in, "
+                                + response.completionTokens() + " out").color(NamedTextColor.GRAY)
+                        .decoration(TextDecoration.BOLD, false))
+                .append(Component.newline())
+                .append(Component.text(response.text()).color(NamedTextColor.WHITE)
+                        .decoration(TextDecoration.BOLD, false));
+    }
+
+    public static Component formatCompareFailure(AIProvider provider, String model, String message,
+                                                 long latencyMillis) {
+        return Component.text("[" + provider.displayName() + "] ").color(providerColor(provider))
+                .decoration(TextDecoration.BOLD, true)
+                .append(Component.text(model + " | " + latencyMillis + " ms | failed: " + message)
+                        .color(NamedTextColor.RED).decoration(TextDecoration.BOLD, false));
+    }
+
+    //finished maps providers to their latency in the order they answered, null for a failed call
+    public static Component formatCompareSummary(Map<AIProvider, Long> finished, List<AIProvider> timedOut,
+                                                 long timeoutMillis) {
+        Component summary = Component.text("Compare: ").color(NamedTextColor.GOLD)
+                .append(Component.text(finished.size() + " of " + (finished.size() + timedOut.size())
+                        + " finished").color(NamedTextColor.WHITE));
+        for (Map.Entry<AIProvider, Long> entry : finished.entrySet()) {
+            summary = summary.append(Component.text(" | ").color(NamedTextColor.GRAY))
+                    .append(Component.text(entry.getKey().displayName() + " ").color(providerColor(entry.getKey())))
+                    .append(entry.getValue() == null
+                            ? Component.text("failed").color(NamedTextColor.RED)
+                            : Component.text(entry.getValue() + " ms").color(NamedTextColor.WHITE));
+        }
+        for (AIProvider provider : timedOut) {
+            summary = summary.append(Component.text(" | ").color(NamedTextColor.GRAY))
+                    .append(Component.text(provider.displayName() + " ").color(providerColor(provider)))
+                    .append(Component.text("timed out after " + timeoutMillis / 1000 + " s")
+                            .color(NamedTextColor.RED));
+        }
+        return summary;
+    }
+
+    public static Component formatKnowledgeAnswer(Passage passage) {
+        return Component.text("[Server Info] ").color(NamedTextColor.LIGHT_PURPLE)
+                .decoration(TextDecoration.BOLD, true)
+                .append(Component.text(passage.text()).color(NamedTextColor.WHITE)
+                        .decoration(TextDecoration.BOLD, false));
+    }
+
+    public static Component formatKnowledgeStats(KnowledgeBase.Stats stats) {
+        return Component.text("--- AskAI Knowledge Base ---").color(NamedTextColor.GOLD)
+                .decoration(TextDecoration.BOLD, true)
+                .append(Component.newline())
+                .append(Component.text("Index: ").color(NamedTextColor.GRAY)
+                        .decoration(TextDecoration.BOLD, false)
+                        .append(Component.text(stats.files() + " files, " + stats.passages() + " passages, "
+                                + stats.terms() + " terms, ~" + (stats.approxBytes() / 1024) + " KB")
+                                .color(NamedTextColor.WHITE)))
+                .append(Component.newline())
+                .append(Component.text("Queries: ").color(NamedTextColor.GRAY)
+                        .append(Component.text(stats.queries() + String.format(" (avg %.1f us, max %.1f us)",
+                                stats.avgQueryMicros(), stats.maxQueryMicros())).color(NamedTextColor.WHITE)))
+                .append(Component.newline())
+                .append(Component.text("Answered from FAQ: ").color(NamedTextColor.GRAY)
+                        .append(Component.text(String.valueOf(stats.faqAnswers())).color(NamedTextColor.WHITE)));
+    }
+
+    public static Component formatStats(DeliveryQueue.Stats delivery) {
+        return Component.text("--- AskAI Stats ---").color(NamedTextColor.GOLD)
+                .decoration(TextDecoration.BOLD, true)
+                .append(Component.newline())
+                .append(Component.text("Delivery queue: ").color(NamedTextColor.GRAY)
+                        .decoration(TextDecoration.BOLD, false)
+                        .append(Component.text(delivery.depth() + " pending, oldest "
+                                + String.format("%.0f ms", delivery.oldestPendingMillis())).color(NamedTextColor.WHITE)))
+                .append(Component.newline())
+                .append(Component.text("Queue lag: ").color(NamedTextColor.GRAY)
+                        .append(Component.text(String.format("avg %.1f ms, max %.1f ms",
+                                delivery.avgLagMillis(), delivery.maxLagMillis())).color(NamedTextColor.WHITE)))
+                .append(Component.newline())
+                .append(Component.text("Delivered: ").color(NamedTextColor.GRAY)
+                        .append(Component.text(delivery.delivered() + " (" + delivery.coalesced() + " coalesced, "
+                                + delivery.dropped() + " dropped offline)").color(NamedTextColor.WHITE)));
+    }
+
+    //allow-listed models per provider with their live stats, then the latest "auto" decisions
+    public static Component formatRouting(Map<AIProvider, List<ModelRouter.ModelHealth>> health,
+                                          List<RoutingDecision> recent) {
+        Component list = Component.text("--- AskAI Model Routing ---").color(NamedTextColor.GOLD)
+                .decoration(TextDecoration.BOLD, true);
+        for (Map.Entry<AIProvider, List<ModelRouter.ModelHealth>> entry : health.entrySet()) {
+            list = list.append(Component.newline())
+                    .append(Component.text(entry.getKey().displayName()).color(providerColor(entry.getKey()))
+                            .decoration(TextDecoration.BOLD, false));
+            for (ModelRouter.ModelHealth model : entry.getValue()) {
+                String stats = model.samples() == 0 ? " | no requests yet"
+                        : String.format(" | %d req, p50 %d ms, p95 %d ms, %.0f%% errors", model.samples(),
+                        model.p50Millis(), model.p95Millis(), model.errorRate() * 100);
+                list = list.append(Component.newline())
+                        .append(Component.text("    " + model.model()).color(NamedTextColor.WHITE)
+                                .append(Component.text(stats).color(NamedTextColor.GRAY)));
+            }
+        }
+        list = list.append(Component.newline())
+                .append(Component.text("Recent decisions:").color(NamedTextColor.GRAY)
+                        .decoration(TextDecoration.BOLD, false));
+        if (recent.isEmpty()) {
+            list = list.append(Component.text(" none").color(NamedTextColor.GRAY));
+        }
+        for (RoutingDecision decision : recent) {
+            String when = LocalTime.ofInstant(Instant.ofEpochMilli(decision.timestamp()), ZoneId.systemDefault())
+                    .truncatedTo(ChronoUnit.SECONDS).toString();
+            list = list.append(Component.newline())
+                    .append(Component.text("    " + when + " " + decision.requester() + " -> "
+                            + decision.provider().id() + "/" + decision.model()).color(NamedTextColor.WHITE)
+                            .append(Component.text(" | ~" + decision.promptTokens() + " tokens, "
+                                    + decision.reason()).color(NamedTextColor.GRAY)));
+        }
+        return list;
+    }
+
+    public static Component formatHedging(RequestHedger.Stats stats) {
+        return Component.text("Hedging: ").color(NamedTextColor.GRAY)
+                .append(Component.text(String.format("%d of %d calls hedged (%.1f%%), hedge answered first %.0f%%, "
+                                + "%d skipped over budget", stats.hedged(), stats.calls(), stats.hedgeRate() * 100,
+                        stats.winRate() * 100, stats.overBudget())).color(NamedTextColor.WHITE));
+    }
+
+    //the load shedding stage and what the last check saw
+    public static Component formatLoad(AdmissionController.Status status) {
+        NamedTextColor color = switch (status.level()) {
+            case NORMAL -> NamedTextColor.GREEN;
+            case REDUCED_TOKENS, FAST_MODEL -> NamedTextColor.YELLOW;
+            case DEFERRED_DELIVERY, REJECTING -> NamedTextColor.RED;
+        };
+        long seconds = (System.currentTimeMillis() - status.sinceMillis()) / 1000;
+        return Component.text("Load shedding: ").color(NamedTextColor.GRAY)
+                .append(Component.text(status.level().displayName()).color(color))
+                .append(Component.text(String.format(" for %d s (MSPT %.1f, %d pending)", seconds, status.mspt(),
+                        status.pending())).color(NamedTextColor.WHITE));
+    }
+
+    //near-duplicate cache. false positives are hits picked for verification whose fresh answer differed
+    public static Component formatSimilarityCache(SimilarityCache.Stats stats) {
+        return Component.text("Similarity cache: ").color(NamedTextColor.GRAY)
+                .append(Component.text(String.format("%d entries, ~%d KB | %d/%d hits (%.0f%%), %d near misses"
+                                + " | %d LSH candidates, %d below threshold | %d verified, %d false positives (%.0f%%)",
+                        stats.entries(), stats.bytes() / 1024, stats.hits(), stats.lookups(), stats.hitRate() * 100,
+                        stats.nearMisses(), stats.candidates(), stats.candidatesRejected(), stats.verified(),
+                        stats.falsePositives(), stats.falsePositiveRate() * 100)).color(NamedTextColor.WHITE));
+    }
+
+    //SQLite file sizes, tuning and what background maintenance has done
+    public static Component formatSqliteMaintenance(SqliteMaintenance.Status status) {
+        String last = status.lastRunMillis() == 0 ? "not run yet"
+                : "last " + (System.currentTimeMillis() - status.lastRunMillis()) / 60_000 + " min ago";
+        Component line = Component.text("SQLite: ").color(NamedTextColor.GRAY)
+                .append(Component.text(String.format("%d KB + %d KB WAL, %d free pages, %s auto-vacuum,"
+                                + " synchronous %s, mmap %d MB | %d runs (%d skipped busy), %d checkpoints (%d busy),"
+                                + " %d pages vacuumed, %d optimizes, %s",
+                        status.databaseBytes() / 1024, status.walBytes() / 1024, status.freePages(),
+                        status.autoVacuum(), status.synchronous(), status.mmapBytes() / (1024 * 1024), status.runs(),
+                        status.skippedBusy(), status.checkpoints(), status.checkpointsBusy(), status.pagesVacuumed(),
+                        status.optimizes(), last)).color(NamedTextColor.WHITE));
+        if (status.lastError() != null) {
+            line = line.append(Component.text(" | last error: " + status.lastError()).color(NamedTextColor.RED));
+        }
+        return line;
+    }
+
+    //requests from other plugins through AskAIService, one line per calling plugin
+    public static Component formatApiUsage(Map<String, CallerUsage> usage, int queued) {
+        Component list = Component.text("Plugin API: ").color(NamedTextColor.GRAY)
+                .append(Component.text(queued + " queued").color(NamedTextColor.WHITE));
+        for (Map.Entry<String, CallerUsage> entry : usage.entrySet()) {
+            CallerUsage caller = entry.getValue();
+            String line = " | " + caller.requests() + " req, " + caller.cacheHits() + " cached, "
+                    + caller.failures() + " failed, " + caller.rejected() + " rejected, "
+                    + (caller.promptTokens() + caller.completionTokens()) + " tokens, "
+                    + String.format("avg %.0f ms", caller.avgLatencyMillis());
+            list = list.append(Component.newline())
+                    .append(Component.text("    " + entry.getKey()).color(NamedTextColor.WHITE)
+                            .append(Component.text(line).color(NamedTextColor.GRAY)));
+        }
+        return list;
+    }
+
+    public static Component formatRotationProgress(KeyRotationJob.Progress progress) {
+        String percent = progress.total() == 0 ? "100"
+                : String.valueOf(Math.min(100, progress.scanned() * 100 / progress.total()));
+        return Component.text("--- AskAI Key Rotation ---").color(NamedTextColor.GOLD)
+                .decoration(TextDecoration.BOLD, true)
+                .append(Component.newline())
+                .append(Component.text("State: ").color(NamedTextColor.GRAY)
+                        .decoration(TextDecoration.BOLD, false)
+                        .append(Component.text(progress.state() + " (seed " + progress.targetKeyId() + ")")
+                                .color(NamedTextColor.WHITE)))
+                .append(Component.newline())
+                .append(Component.text("Progress: ").color(NamedTextColor.GRAY)
+                        .append(Component.text(progress.scanned() + " of " + progress.total() + " keys (" + percent
+                                + "%) in " + progress.elapsedMillis() / 1000 + "s").color(NamedTextColor.WHITE)))
+                .append(Component.newline())
+                .append(Component.text("Re-encrypted: ").color(NamedTextColor.GRAY)
+                        .append(Component.text(progress.rotated() + " (" + progress.alreadyCurrent() + " already current, "
+                                + progress.conflicts() + " changed meanwhile)").color(NamedTextColor.WHITE)))
+                .append(Component.newline())
+                .append(Component.text("Unreadable: ").color(NamedTextColor.GRAY)
+                        .append(Component.text(String.valueOf(progress.unreadable()))
+                                .color(progress.unreadable() > 0 ? NamedTextColor.RED : NamedTextColor.WHITE)));
+    }
+
     public static Component thinking() {
         return Component.text("[AI] Thinking...").color(NamedTextColor.GRAY)
                 .decoration(TextDecoration.ITALIC, true);
@@ -60,7 +293,9 @@ public final class TextFormatter {
 
         for (AIProvider provider : AIProvider.values()) {
             boolean hasKey = settings.hasKey(provider);
-            Component keyStatus = hasKey
+            Component keyStatus = !provider.requiresKey()
+                    ? Component.text(" [NO KEY NEEDED]").color(NamedTextColor.GREEN)
+                    : hasKey
                     ? Component.text(" [SET]").color(NamedTextColor.GREEN)
                     : Component.text(" [NOT SET]").color(NamedTextColor.RED);
             status = status.append(Component.text("  " + provider.displayName()).color(providerColor(provider)))
@@ -72,7 +307,8 @@ public final class TextFormatter {
         return status;
     }
 
-    public static Component formatServerStatus(UserSettings playerSettings, UserSettings serverSettings) {
+    public static Component formatServerStatus(UserSettings playerSettings,
+                                               Map<AIProvider, List<KeyPool.KeyStatus>> pool, boolean showUsage) {
         AIProvider active = playerSettings.activeProvider();
         Component status = Component.text("--- AskAI Status ---").color(NamedTextColor.GOLD)
                 .decoration(TextDecoration.BOLD, true)
@@ -96,24 +332,62 @@ public final class TextFormatter {
                 .append(Component.newline());
 
         for (AIProvider provider : AIProvider.values()) {
-            boolean hasKey = serverSettings.hasKey(provider);
-            Component keyStatus = hasKey
-                    ? Component.text(" [SET]").color(NamedTextColor.GREEN)
-                    : Component.text(" [NOT SET]").color(NamedTextColor.RED);
+            List<KeyPool.KeyStatus> keys = pool.getOrDefault(provider, List.of());
+            Component keyStatus = !provider.requiresKey()
+                    ? Component.text(" [NO KEY NEEDED]").color(NamedTextColor.GREEN)
+                    : keys.isEmpty()
+                    ? Component.text(" [NOT SET]").color(NamedTextColor.RED)
+                    : Component.text(keys.size() == 1 ? " [SET]" : " [" + keys.size() + " KEYS]").color(NamedTextColor.GREEN);
             status = status.append(Component.text("  " + provider.displayName()).color(providerColor(provider)))
                     .append(keyStatus)
                     .append(Component.text(" | model: " + playerSettings.getModel(provider)).color(NamedTextColor.GRAY))
                     .append(Component.newline());
+            if (showUsage) {
+                for (KeyPool.KeyStatus key : keys) {
+                    status = status.append(formatKeyUsage(key, null)).append(Component.newline());
+                }
+            }
         }
 
         return status;
     }
 
-    private static NamedTextColor providerColor(AIProvider provider) {
-        return switch (provider) {
-            case OPENAI -> NamedTextColor.GREEN;
-            case ANTHROPIC -> NamedTextColor.GOLD;
-            case GEMINI -> NamedTextColor.AQUA;
-        };
+    public static Component formatKeyPool(Map<AIProvider, List<KeyPool.KeyStatus>> pool, Map<Long, String> masked) {
+        Component list = Component.text("--- AskAI Server Keys ---").color(NamedTextColor.GOLD)
+                .decoration(TextDecoration.BOLD, true);
+        for (AIProvider provider : AIProvider.values()) {
+            List<KeyPool.KeyStatus> keys = pool.getOrDefault(provider, List.of());
+            list = list.append(Component.newline())
+                    .append(Component.text(provider.displayName() + " (" + keys.size() + ")")
+                            .color(providerColor(provider)).decoration(TextDecoration.BOLD, false));
+            for (KeyPool.KeyStatus key : keys) {
+                list = list.append(Component.newline()).append(formatKeyUsage(key, masked.get(key.id())));
+            }
+        }
+        return list;
+    }
+
+    private static Component formatKeyUsage(KeyPool.KeyStatus key, String masked) {
+        String label = key.id() == KeyPool.PRIMARY_KEY_ID ? "#0 primary" : "#" + key.id();
+        if (masked != null) label += " " + masked;
+        String usage = " | " + key.requests() + " req, " + key.failures() + " failed, "
+                + key.inFlight() + " in flight, headroom " + Math.round(key.headroom() * 100) + "%";
+        Component line = Component.text("    " + label).color(NamedTextColor.WHITE)
+                .append(Component.text(usage).color(NamedTextColor.GRAY));
+        if (key.benchedForMillis() > 0) {
+            line = line.append(Component.text(" | benched " + (key.benchedForMillis() + 999) / 1000
+                    + "s (HTTP " + key.lastStatus() + ")").color(NamedTextColor.RED));
+        }
+        return line;
+    }
+
+    //the provider's configured color, a name like "gold" or #rrggbb. white if it is neither
+    private static TextColor providerColor(AIProvider provider) {
+        String color = provider.color();
+        if (color == null) return NamedTextColor.WHITE;
+        TextColor parsed = color.startsWith("#")
+                ? TextColor.fromHexString(color)
+                : NamedTextColor.NAMES.value(color.toLowerCase(Locale.ROOT));
+        return parsed != null ? parsed : NamedTextColor.WHITE;
     }
 }
@@ -0,0 +1,221 @@
+package com.askai.network;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedRateLimiterTest {
+    private static final Logger LOGGER = Logger.getLogger("AskAI-test");
+    private static final int MAX_REQUESTS = 5;
+    //long enough that no token comes back while a test runs
+    private static final int WINDOW_SECONDS = 3600;
+    private static final long WINDOW_MILLIS = WINDOW_SECONDS * 1000L;
+    private static final int LEASE_SIZE = 2;
+
+    private InProcessCoordinator serverA;
+    private InProcessCoordinator serverB;
+    //a third server that only inspects the buckets
+    private InProcessCoordinator observer;
+
+    @BeforeEach
+    void open() {
+        serverA = new InProcessCoordinator();
+        serverB = serverA.peer();
+        observer = serverA.peer();
+    }
+
+    @AfterEach
+    void close() {
+        serverA.close();
+        serverB.close();
+        observer.close();
+    }
+
+    @Test
+    void hoppingServersDrawsFromOneBucket() {
+        SharedRateLimiter limiterA = limiter(serverA);
+        SharedRateLimiter limiterB = limiter(serverB);
+        UUID player = UUID.randomUUID();
+
+        limiterA.prefetch(player);
+        assertTrue(limiterA.tryAcquire(player));
+        assertTrue(limiterA.tryAcquire(player));
+        limiterA.cleanup(player);
+
+        //server B leases from what server A left, not from a fresh bucket
+        limiterB.prefetch(player);
+        assertTrue(limiterB.tryAcquire(player));
+        assertEquals(MAX_REQUESTS - 2 * LEASE_SIZE, remaining(player));
+    }
+
+    @Test
+    void borrowedTokensAreRepaidByTheNextLease() throws Exception {
+        Recording recording = new Recording(serverA);
+        SharedRateLimiter limiter = limiter(recording);
+        UUID player = UUID.randomUUID();
+
+        //no lease yet: the per-server limit lets it through and a lease is fetched in the background
+        assertTrue(limiter.tryAcquire(player));
+        Call refill = recording.await();
+        assertEquals("take", refill.kind());
+        assertEquals(LEASE_SIZE + 1, refill.tokens());
+        //the borrowed token came out of the shared bucket along with the lease
+        assertEquals(MAX_REQUESTS - LEASE_SIZE - 1, remaining(player));
+    }
+
+    @Test
+    void cleanupRefundsTheUnusedLease() throws Exception {
+        Recording recording = new Recording(serverA);
+        SharedRateLimiter limiter = limiter(recording);
+        UUID player = UUID.randomUUID();
+
+        limiter.prefetch(player);
+        assertEquals("take", recording.await().kind());
+        assertTrue(limiter.tryAcquire(player));
+        limiter.cleanup(player);
+
+        Call refund = recording.await();
+        assertEquals("refund", refund.kind());
+        assertEquals(LEASE_SIZE - 1, refund.tokens());
+        assertEquals(MAX_REQUESTS - 1, remaining(player));
+    }
+
+    @Test
+    void closeRefundsEveryLease() throws Exception {
+        Recording recording = new Recording(serverA);
+        SharedRateLimiter limiter = limiter(recording);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        limiter.prefetch(first);
+        limiter.prefetch(second);
+        recording.await();
+        recording.await();
+        limiter.close();
+
+        assertEquals("refund", recording.await().kind());
+        assertEquals("refund", recording.await().kind());
+        assertEquals(MAX_REQUESTS, remaining(first));
+        assertEquals(MAX_REQUESTS, remaining(second));
+    }
+
+    @Test
+    void unreachableStoreFallsBackToThePerServerLimit() {
+        SharedRateLimiter limiter = limiter(new Unreachable());
+        UUID player = UUID.randomUUID();
+
+        limiter.prefetch(player);
+        int allowed = 0;
+        for (int i = 0; i < MAX_REQUESTS * 2; i++) {
+            if (limiter.tryAcquire(player)) allowed++;
+        }
+        assertEquals(MAX_REQUESTS, allowed);
+        assertFalse(limiter.tryAcquire(player));
+    }
+
+    private static SharedRateLimiter limiter(NetworkCoordinator coordinator) {
+        return new SharedRateLimiter(coordinator, "chat", MAX_REQUESTS, WINDOW_SECONDS, LEASE_SIZE, LOGGER);
+    }
+
+    //tokens left in the player's network bucket, without changing it
+    private int remaining(UUID player) {
+        String bucket = "chat:" + player;
+        int left = observer.take(bucket, MAX_REQUESTS, WINDOW_MILLIS, MAX_REQUESTS);
+        observer.refund(bucket, MAX_REQUESTS, WINDOW_MILLIS, left);
+        return left;
+    }
+
+    private record Call(String kind, int tokens) {
+    }
+
+    //passes calls through and reports each one once it has reached the store
+    private static final class Recording implements NetworkCoordinator {
+        private final NetworkCoordinator store;
+        private final BlockingQueue<Call> calls = new LinkedBlockingQueue<>();
+
+        Recording(NetworkCoordinator store) {
+            this.store = store;
+        }
+
+        Call await() throws InterruptedException {
+            Call call = calls.poll(5, TimeUnit.SECONDS);
+            assertNotNull(call, "no call reached the store");
+            return call;
+        }
+
+        @Override
+        public int take(String bucket, int capacity, long windowMillis, int wanted) throws IOException {
+            int granted = store.take(bucket, capacity, windowMillis, wanted);
+            calls.add(new Call("take", wanted));
+            return granted;
+        }
+
+        @Override
+        public void refund(String bucket, int capacity, long windowMillis, int tokens) throws IOException {
+            store.refund(bucket, capacity, windowMillis, tokens);
+            calls.add(new Call("refund", tokens));
+        }
+
+        @Override
+        public void publish(String message) throws IOException {
+            store.publish(message);
+        }
+
+        @Override
+        public void subscribe(Consumer<String> listener) {
+            store.subscribe(listener);
+        }
+
+        @Override
+        public String name() {
+            return "recording";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Unreachable implements NetworkCoordinator {
+        @Override
+        public int take(String bucket, int capacity, long windowMillis, int wanted) throws IOException {
+            throw new IOException("connection refused");
+        }
+
+        @Override
+        public void refund(String bucket, int capacity, long windowMillis, int tokens) throws IOException {
+            throw new IOException("connection refused");
+        }
+
+        @Override
+        public void publish(String message) throws IOException {
+            throw new IOException("connection refused");
+        }
+
+        @Override
+        public void subscribe(Consumer<String> listener) {
+        }
+
+        @Override
+        public String name() {
+            return "unreachable";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.askai.provider;
+
+import com.askai.model.AIProvider;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+//warm-up against a local TLS stand-in for a provider, with a self-signed certificate the client trusts
+class ConnectionWarmerTest {
+    private static final char[] PASSWORD = "askai-test".toCharArray();
+
+    private Path keyStoreFile;
+    private HttpsServer server;
+    private SSLContext clientContext;
+    private final Map<String, AtomicInteger> heads = new ConcurrentHashMap<>();
+    private final List<ExecutorService> executors = new ArrayList<>();
+
+    @BeforeEach
+    void start() throws Exception {
+        KeyStore keys = selfSigned();
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keys, PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(keys);
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trust.getTrustManagers(), null);
+
+        server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        server.createContext("/", exchange -> {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                heads.computeIfAbsent(exchange.getRequestURI().getPath(), k -> new AtomicInteger()).incrementAndGet();
+            }
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        server.stop(0);
+        executors.forEach(ExecutorService::shutdownNow);
+        Files.deleteIfExists(keyStoreFile);
+    }
+
+    @Test
+    void pingCompletesTheHandshake() throws Exception {
+        HttpClient client = client();
+        int status = ConnectionWarmer.ping(client, uri("/v1")).get(10, TimeUnit.SECONDS);
+        assertEquals(404, status);
+        assertEquals(1, heads.get("/v1").get());
+    }
+
+    @Test
+    void warmSkipsProvidersUsedRecently() throws Exception {
+        AIProvider idle = provider("idle");
+        AIProvider busy = provider("busy");
+        HttpClient client = client();
+        ProviderRegistry registry = new ProviderRegistry(Map.of(idle, client, busy, client),
+                Map.of(), Map.of());
+        //a /chat just went out to busy
+        registry.getClient(busy);
+
+        new ConnectionWarmer(registry, Logger.getLogger("AskAI-test"))
+                .warm(List.of(idle, busy), 60_000, false)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, heads.get("/idle").get());
+        assertNull(heads.get("/busy"));
+    }
+
+    private AIProvider provider(String id) {
+        return new AIProvider(id, id, AIProvider.Protocol.OPENAI, uri("/" + id), "test-model", List.of(),
+                "white", false);
+    }
+
+    private URI uri(String path) {
+        return URI.create("https://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private HttpClient client() {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        executors.add(executor);
+        return HttpClient.newBuilder().sslContext(clientContext).executor(executor).build();
+    }
+
+    //keytool ships with every JDK, and generating a certificate in plain Java needs internal APIs
+    private KeyStore selfSigned() throws Exception {
+        keyStoreFile = Files.createTempFile("askai-tls", ".p12");
+        Files.delete(keyStoreFile);
+        Path keytool = Path.of(System.getProperty("java.home"), "bin", "keytool");
+        Process process = new ProcessBuilder(keytool.toString(), "-genkeypair", "-alias", "localhost",
+                "-keyalg", "EC", "-groupname", "secp256r1", "-dname", "CN=localhost", "-validity", "1",
+                "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-storetype", "PKCS12",
+                "-keystore", keyStoreFile.toString(), "-storepass", new String(PASSWORD))
+                .redirectErrorStream(true)
+                .start();
+        process.getInputStream().transferTo(OutputStream.nullOutputStream());
+        assertEquals(0, process.waitFor());
+        KeyStore keys = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStoreFile)) {
+            keys.load(in, PASSWORD);
+        }
+        return keys;
+    }
+}
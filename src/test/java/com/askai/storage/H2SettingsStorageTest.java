@@ -0,0 +1,130 @@
+package com.askai.storage;
+
+import com.askai.model.AIProvider;
+import com.askai.model.ServerKey;
+import com.askai.model.UserSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//the SettingsStorage contract against an in-memory H2 database, one fresh database per test
+class H2SettingsStorageTest {
+    private static final Logger LOGGER = Logger.getLogger("AskAI-test");
+
+    private H2SettingsStorage storage;
+
+    @BeforeEach
+    void open() throws Exception {
+        storage = new H2SettingsStorage("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", 2, "askai_",
+                LOGGER);
+        storage.initialize();
+    }
+
+    @AfterEach
+    void close() {
+        storage.close();
+    }
+
+    @Test
+    void upsertsAndLoadsSettings() throws Exception {
+        UUID player = UUID.randomUUID();
+        storage.setEncryptedKey(player, AIProvider.OPENAI, "key-1");
+        storage.setModel(player, AIProvider.OPENAI, "gpt-4o-mini");
+        storage.setActiveProvider(player, AIProvider.ANTHROPIC);
+        //a second write to the same row only replaces its own column
+        storage.setEncryptedKey(player, AIProvider.OPENAI, "key-2");
+
+        UserSettings settings = storage.load(player);
+        assertEquals(AIProvider.ANTHROPIC, settings.activeProvider());
+        assertEquals("key-2", settings.getEncryptedKey(AIProvider.OPENAI));
+        assertEquals("gpt-4o-mini", settings.getModel(AIProvider.OPENAI));
+        assertNull(settings.getEncryptedKey(AIProvider.GEMINI));
+    }
+
+    @Test
+    void unknownPlayerLoadsDefaults() throws Exception {
+        UserSettings settings = storage.load(UUID.randomUUID());
+        assertEquals(AIProvider.defaultProvider(), settings.activeProvider());
+        assertFalse(settings.hasKey(AIProvider.OPENAI));
+    }
+
+    @Test
+    void addsListsReplacesAndRemovesServerKeys() throws Exception {
+        long first = storage.addServerKey(AIProvider.OPENAI, "a");
+        long second = storage.addServerKey(AIProvider.GEMINI, "b");
+
+        List<ServerKey> keys = storage.loadServerKeys();
+        assertEquals(2, keys.size());
+        assertEquals(first, keys.get(0).id());
+        assertEquals(AIProvider.GEMINI, keys.get(1).provider());
+
+        assertFalse(storage.replaceServerKey(second, "stale", "c"));
+        assertTrue(storage.replaceServerKey(second, "b", "c"));
+        assertEquals("c", storage.loadServerKeys().get(1).encryptedKey());
+
+        assertTrue(storage.removeServerKey(first));
+        assertFalse(storage.removeServerKey(first));
+        assertEquals(1, storage.loadServerKeys().size());
+    }
+
+    @Test
+    void pagesThroughEveryKeyOnce() throws Exception {
+        Set<StoredKey> stored = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            UUID player = UUID.randomUUID();
+            for (AIProvider provider : List.of(AIProvider.OPENAI, AIProvider.GEMINI)) {
+                String key = "key-" + i + "-" + provider.id();
+                storage.setEncryptedKey(player, provider, key);
+                stored.add(new StoredKey(player, provider.id(), key));
+            }
+        }
+        //a model without a key is not part of the scan
+        storage.setModel(UUID.randomUUID(), AIProvider.OPENAI, "gpt-4o");
+
+        List<StoredKey> seen = new ArrayList<>();
+        StoredKey after = null;
+        int pages = 0;
+        while (true) {
+            List<StoredKey> page = storage.loadEncryptedKeys(after, 3);
+            if (page.isEmpty()) break;
+            assertTrue(page.size() <= 3);
+            seen.addAll(page);
+            after = page.getLast();
+            pages++;
+        }
+        assertEquals(4, pages);
+        assertEquals(stored.size(), seen.size());
+        assertEquals(stored, new HashSet<>(seen));
+        assertEquals(stored.size(), storage.countEncryptedKeys());
+    }
+
+    @Test
+    void replacesOnlyKeysThatStillHoldTheReadValue() throws Exception {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        storage.setEncryptedKey(alice, AIProvider.OPENAI, "alice-old");
+        storage.setEncryptedKey(bob, AIProvider.OPENAI, "bob-old");
+        List<StoredKey> read = storage.loadEncryptedKeys(null, 10);
+
+        //bob sets a new key between the read and the rewrite
+        storage.setEncryptedKey(bob, AIProvider.OPENAI, "bob-new");
+        List<String> replacements = new ArrayList<>();
+        for (StoredKey key : read) replacements.add(key.encryptedKey().replace("old", "rotated"));
+
+        assertEquals(1, storage.replaceEncryptedKeys(read, replacements));
+        assertEquals("alice-rotated", storage.load(alice).getEncryptedKey(AIProvider.OPENAI));
+        assertEquals("bob-new", storage.load(bob).getEncryptedKey(AIProvider.OPENAI));
+    }
+}
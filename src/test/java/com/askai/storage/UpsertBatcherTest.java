@@ -0,0 +1,94 @@
+package com.askai.storage;
+
+import com.askai.model.AIProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UpsertBatcherTest {
+    private static final Logger LOGGER = Logger.getLogger("AskAI-test");
+
+    private H2SettingsStorage storage;
+    private ConnectionPool pool;
+    private UpsertBatcher batcher;
+
+    @BeforeEach
+    void open() throws Exception {
+        String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        storage = new H2SettingsStorage(url, 1, "askai_", LOGGER);
+        storage.initialize();
+        //one connection, so holding it makes the writer queue up a batch
+        pool = new ConnectionPool(url, new Properties(), 1, 30_000);
+        batcher = new UpsertBatcher(pool, LOGGER, 256);
+    }
+
+    @AfterEach
+    void close() {
+        batcher.close();
+        pool.close();
+        storage.close();
+    }
+
+    @Test
+    void flushesQueuedWritesInArrivalOrder() throws Exception {
+        UUID player = UUID.randomUUID();
+        String settingSql = storage.upsertSql("askai_user_settings", List.of("player_uuid", "provider"),
+                List.of("model", "updated_at"));
+        String playerSql = storage.upsertSql("askai_players", List.of("player_uuid"),
+                List.of("active_provider", "updated_at"));
+
+        List<Thread> writers = new ArrayList<>();
+        ConnectionPool.Lease held = pool.borrow();
+        try {
+            //the first write is taken by the writer, which then waits for the connection
+            writers.add(write(settingSql, player, AIProvider.OPENAI.id(), "model-0"));
+            awaitWaiting(writers.getLast());
+            Thread.sleep(50);
+            //everything after it queues up and goes out as one batch, interleaving two statements
+            for (int i = 1; i <= 5; i++) {
+                writers.add(write(settingSql, player, AIProvider.OPENAI.id(), "model-" + i));
+                awaitWaiting(writers.getLast());
+                writers.add(write(playerSql, player, i % 2 == 0 ? "openai" : "gemini", null));
+                awaitWaiting(writers.getLast());
+            }
+        } finally {
+            held.close();
+        }
+        for (Thread writer : writers) writer.join(10_000);
+
+        assertEquals("model-5", storage.load(player).getModel(AIProvider.OPENAI));
+        assertEquals(AIProvider.GEMINI, storage.load(player).activeProvider());
+    }
+
+    //model == null writes a players row, otherwise a user_settings row
+    private Thread write(String sql, UUID player, String value, String model) {
+        return Thread.ofPlatform().start(() -> {
+            try {
+                if (model == null) {
+                    batcher.execute(sql, UuidBytes.toBytes(player), value, 0L);
+                } else {
+                    batcher.execute(sql, UuidBytes.toBytes(player), value, model, 0L);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    //the writer is blocked in execute(), so its upsert is in the queue
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            if (!thread.isAlive()) return;
+            Thread.sleep(1);
+        }
+    }
+}